@@ -79,6 +79,12 @@ public final class FileTypes {
   /** File type for the JPEG format. */
   public static final int JPEG = 14;
 
+  /**
+   * The number of bytes from the start of a file that {@link #inferFileTypeFromSignature(byte[],
+   * int)} needs to detect every file type that it supports.
+   */
+  public static final int SIGNATURE_LENGTH = 12;
+
   @VisibleForTesting /* package */ static final String HEADER_CONTENT_TYPE = "Content-Type";
 
   private static final String EXTENSION_AC3 = ".ac3";
@@ -236,4 +242,53 @@ public final class FileTypes {
       return FileTypes.UNKNOWN;
     }
   }
+
+  /**
+   * Returns the {@link Type} indicated by the signature (or "magic number") at the start of a file.
+   *
+   * <p>Only file types that can be identified unambiguously from a signature at the very start of
+   * the file are detected. {@link #UNKNOWN} is returned for all other file types, including those
+   * whose data may be preceded by an ID3 tag.
+   *
+   * @param data An array holding the first bytes of the file.
+   * @param length The number of valid bytes in {@code data}. At least {@link #SIGNATURE_LENGTH}
+   *     bytes are needed for every supported file type to be detected.
+   */
+  public static @FileTypes.Type int inferFileTypeFromSignature(byte[] data, int length) {
+    if (hasSignatureAt(data, length, /* offset= */ 0, 'F', 'L', 'V')) {
+      return FileTypes.FLV;
+    } else if (hasSignatureAt(data, length, /* offset= */ 0, 'f', 'L', 'a', 'C')) {
+      return FileTypes.FLAC;
+    } else if ((hasSignatureAt(data, length, /* offset= */ 0, 'R', 'I', 'F', 'F')
+            || hasSignatureAt(data, length, /* offset= */ 0, 'R', 'F', '6', '4'))
+        && hasSignatureAt(data, length, /* offset= */ 8, 'W', 'A', 'V', 'E')) {
+      return FileTypes.WAV;
+    } else if (hasSignatureAt(data, length, /* offset= */ 4, 'f', 't', 'y', 'p')) {
+      return FileTypes.MP4;
+    } else if (hasSignatureAt(data, length, /* offset= */ 0, '#', '!', 'A', 'M', 'R')) {
+      return FileTypes.AMR;
+    } else if (hasSignatureAt(data, length, /* offset= */ 0, 0x00, 0x00, 0x01, 0xBA)) {
+      return FileTypes.PS;
+    } else if (hasSignatureAt(data, length, /* offset= */ 0, 'O', 'g', 'g', 'S')) {
+      return FileTypes.OGG;
+    } else if (hasSignatureAt(data, length, /* offset= */ 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+      return FileTypes.MATROSKA;
+    } else if (hasSignatureAt(data, length, /* offset= */ 0, 0xFF, 0xD8, 0xFF)) {
+      return FileTypes.JPEG;
+    } else {
+      return FileTypes.UNKNOWN;
+    }
+  }
+
+  private static boolean hasSignatureAt(byte[] data, int length, int offset, int... signature) {
+    if (length < offset + signature.length) {
+      return false;
+    }
+    for (int i = 0; i < signature.length; i++) {
+      if ((data[offset + i] & 0xFF) != signature[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
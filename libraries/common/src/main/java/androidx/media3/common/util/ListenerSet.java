@@ -22,6 +22,7 @@ import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.FlagSet;
 import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.concurrent.CopyOnWriteArraySet;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -34,6 +35,11 @@ import org.checkerframework.checker.nullness.qual.NonNull;
  * <p>Events are also guaranteed to be only sent to the listeners registered at the time the event
  * was enqueued and haven't been removed since.
  *
+ * <p>If {@link #setCoalesceEvents(boolean) event coalescing} is enabled, flushed events are not
+ * sent immediately, but collected until the {@link Looper} handles the next message. All events
+ * flushed until then are sent to the listeners in a single batch, followed by a single {@link
+ * IterationFinishedEvent}.
+ *
  * @param <T> The listener type.
  */
 @UnstableApi
@@ -69,6 +75,7 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   private static final int MSG_ITERATION_FINISHED = 0;
+  private static final int MSG_FLUSH_EVENTS = 1;
 
   private final Clock clock;
   private final HandlerWrapper handler;
@@ -76,8 +83,10 @@ public final class ListenerSet<T extends @NonNull Object> {
   private final CopyOnWriteArraySet<ListenerHolder<T>> listeners;
   private final ArrayDeque<Runnable> flushingEvents;
   private final ArrayDeque<Runnable> queuedEvents;
+  private final ArrayDeque<Runnable> coalescedEvents;
 
   private boolean released;
+  private boolean coalesceEvents;
 
   /**
    * Creates a new listener set.
@@ -102,6 +111,7 @@ public final class ListenerSet<T extends @NonNull Object> {
     this.iterationFinishedEvent = iterationFinishedEvent;
     flushingEvents = new ArrayDeque<>();
     queuedEvents = new ArrayDeque<>();
+    coalescedEvents = new ArrayDeque<>();
     // It's safe to use "this" because we don't send a message before exiting the constructor.
     @SuppressWarnings("nullness:methodref.receiver.bound")
     HandlerWrapper handler = clock.createHandler(looper, this::handleMessage);
@@ -109,7 +119,8 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   /**
-   * Copies the listener set.
+   * Copies the listener set. The copy coalesces events if this listener set does, see {@link
+   * #setCoalesceEvents(boolean)}.
    *
    * @param looper The new {@link Looper} for the copied listener set.
    * @param iterationFinishedEvent The new {@link IterationFinishedEvent} sent when all other events
@@ -122,7 +133,8 @@ public final class ListenerSet<T extends @NonNull Object> {
   }
 
   /**
-   * Copies the listener set.
+   * Copies the listener set. The copy coalesces events if this listener set does, see {@link
+   * #setCoalesceEvents(boolean)}.
    *
    * @param looper The new {@link Looper} for the copied listener set.
    * @param clock The new {@link Clock} for the copied listener set.
@@ -133,7 +145,9 @@ public final class ListenerSet<T extends @NonNull Object> {
   @CheckResult
   public ListenerSet<T> copy(
       Looper looper, Clock clock, IterationFinishedEvent<T> iterationFinishedEvent) {
-    return new ListenerSet<>(listeners, looper, clock, iterationFinishedEvent);
+    ListenerSet<T> copy = new ListenerSet<>(listeners, looper, clock, iterationFinishedEvent);
+    copy.coalesceEvents = coalesceEvents;
+    return copy;
   }
 
   /**
@@ -177,6 +191,28 @@ public final class ListenerSet<T extends @NonNull Object> {
     return listeners.size();
   }
 
+  /**
+   * Sets whether events are coalesced.
+   *
+   * <p>If enabled, {@link #flushEvents()} doesn't notify the listeners immediately. Instead, the
+   * flushed events are collected until the {@link Looper} has handled all messages that were
+   * already pending, and are then sent together, so that bursts of events result in a single {@link
+   * IterationFinishedEvent}. Events flushed recursively from a listener are still sent as part of
+   * the ongoing batch.
+   *
+   * <p>If disabled while coalesced events are pending, the pending events are sent immediately.
+   *
+   * <p>Event coalescing is disabled by default.
+   *
+   * @param coalesceEvents Whether events are coalesced.
+   */
+  public void setCoalesceEvents(boolean coalesceEvents) {
+    this.coalesceEvents = coalesceEvents;
+    if (!coalesceEvents) {
+      sendCoalescedEvents();
+    }
+  }
+
   /**
    * Adds an event that is sent to the listeners when {@link #flushEvents} is called.
    *
@@ -185,34 +221,37 @@ public final class ListenerSet<T extends @NonNull Object> {
    * @param event The event.
    */
   public void queueEvent(int eventFlag, Event<T> event) {
-    CopyOnWriteArraySet<ListenerHolder<T>> listenerSnapshot = new CopyOnWriteArraySet<>(listeners);
+    // Iterators of a CopyOnWriteArraySet operate on a snapshot of the set taken at creation, so
+    // there's no need to copy the listeners for every event.
+    Iterator<ListenerHolder<T>> listenerSnapshot = listeners.iterator();
     queuedEvents.add(
         () -> {
-          for (ListenerHolder<T> holder : listenerSnapshot) {
-            holder.invoke(eventFlag, event);
+          while (listenerSnapshot.hasNext()) {
+            listenerSnapshot.next().invoke(eventFlag, event);
           }
         });
   }
 
-  /** Notifies listeners of events previously enqueued with {@link #queueEvent(int, Event)}. */
+  /**
+   * Notifies listeners of events previously enqueued with {@link #queueEvent(int, Event)}.
+   *
+   * <p>If {@link #setCoalesceEvents(boolean) event coalescing} is enabled and no flush is in
+   * progress, the listeners are notified once the {@link Looper} has handled all messages that were
+   * already pending.
+   */
   public void flushEvents() {
     if (queuedEvents.isEmpty()) {
       return;
     }
-    if (!handler.hasMessages(MSG_ITERATION_FINISHED)) {
-      handler.sendMessageAtFrontOfQueue(handler.obtainMessage(MSG_ITERATION_FINISHED));
-    }
-    boolean recursiveFlushInProgress = !flushingEvents.isEmpty();
-    flushingEvents.addAll(queuedEvents);
-    queuedEvents.clear();
-    if (recursiveFlushInProgress) {
-      // Recursive call to flush. Let the outer call handle the flush queue.
+    if (coalesceEvents && flushingEvents.isEmpty()) {
+      coalescedEvents.addAll(queuedEvents);
+      queuedEvents.clear();
+      if (!handler.hasMessages(MSG_FLUSH_EVENTS)) {
+        handler.sendEmptyMessage(MSG_FLUSH_EVENTS);
+      }
       return;
     }
-    while (!flushingEvents.isEmpty()) {
-      flushingEvents.peekFirst().run();
-      flushingEvents.removeFirst();
-    }
+    sendEvents(queuedEvents);
   }
 
   /**
@@ -231,9 +270,12 @@ public final class ListenerSet<T extends @NonNull Object> {
   /**
    * Releases the set of listeners immediately.
    *
-   * <p>This will ensure no events are sent to any listener after this method has been called.
+   * <p>Events that were already flushed but are still pending because of {@link
+   * #setCoalesceEvents(boolean) event coalescing} are sent before the listeners are released. This
+   * will ensure no events are sent to any listener after this method has been called.
    */
   public void release() {
+    sendCoalescedEvents();
     for (ListenerHolder<T> listenerHolder : listeners) {
       listenerHolder.release(iterationFinishedEvent);
     }
@@ -241,7 +283,36 @@ public final class ListenerSet<T extends @NonNull Object> {
     released = true;
   }
 
+  private void sendCoalescedEvents() {
+    handler.removeMessages(MSG_FLUSH_EVENTS);
+    sendEvents(coalescedEvents);
+  }
+
+  private void sendEvents(ArrayDeque<Runnable> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    if (!handler.hasMessages(MSG_ITERATION_FINISHED)) {
+      handler.sendMessageAtFrontOfQueue(handler.obtainMessage(MSG_ITERATION_FINISHED));
+    }
+    boolean recursiveFlushInProgress = !flushingEvents.isEmpty();
+    flushingEvents.addAll(events);
+    events.clear();
+    if (recursiveFlushInProgress) {
+      // Recursive call to flush. Let the outer call handle the flush queue.
+      return;
+    }
+    while (!flushingEvents.isEmpty()) {
+      flushingEvents.peekFirst().run();
+      flushingEvents.removeFirst();
+    }
+  }
+
   private boolean handleMessage(Message message) {
+    if (message.what == MSG_FLUSH_EVENTS) {
+      sendEvents(coalescedEvents);
+      return true;
+    }
     for (ListenerHolder<T> holder : listeners) {
       holder.iterationFinished(iterationFinishedEvent);
       if (handler.hasMessages(MSG_ITERATION_FINISHED)) {
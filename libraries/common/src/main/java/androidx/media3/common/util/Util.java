@@ -86,7 +86,7 @@ import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
@@ -2433,12 +2433,10 @@ public final class Util {
    */
   public static <T extends Object> void moveItems(
       List<T> items, int fromIndex, int toIndex, int newFromIndex) {
-    ArrayDeque<T> removedItems = new ArrayDeque<>();
-    int removedItemsLength = toIndex - fromIndex;
-    for (int i = removedItemsLength - 1; i >= 0; i--) {
-      removedItems.addFirst(items.remove(fromIndex + i));
-    }
-    items.addAll(min(newFromIndex, items.size()), removedItems);
+    List<T> removedItems = items.subList(fromIndex, toIndex);
+    List<T> movedItems = new ArrayList<>(removedItems);
+    removedItems.clear();
+    items.addAll(min(newFromIndex, items.size()), movedItems);
   }
 
   /** Returns whether the table exists in the database. */
@@ -17,6 +17,7 @@ package androidx.media3.common;
 
 import static androidx.media3.common.FileTypes.HEADER_CONTENT_TYPE;
 import static androidx.media3.common.FileTypes.inferFileTypeFromMimeType;
+import static androidx.media3.common.FileTypes.inferFileTypeFromSignature;
 import static androidx.media3.common.FileTypes.inferFileTypeFromUri;
 import static com.google.common.truth.Truth.assertThat;
 
@@ -94,4 +95,34 @@ public class FileTypesTest {
   public void inferFileFormat_fromEmptyUri_returnsUnknownFormat() {
     assertThat(inferFileTypeFromUri(Uri.EMPTY)).isEqualTo(FileTypes.UNKNOWN);
   }
+
+  @Test
+  public void inferFileFormat_fromSignature_returnsExpectedFormat() {
+    byte[] mp4Signature = {0, 0, 0, 0x20, 'f', 't', 'y', 'p', 'i', 's', 'o', 'm'};
+    byte[] wavSignature = {'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E'};
+    byte[] matroskaSignature = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+
+    assertThat(inferFileTypeFromSignature(mp4Signature, mp4Signature.length))
+        .isEqualTo(FileTypes.MP4);
+    assertThat(inferFileTypeFromSignature(wavSignature, wavSignature.length))
+        .isEqualTo(FileTypes.WAV);
+    assertThat(inferFileTypeFromSignature(matroskaSignature, matroskaSignature.length))
+        .isEqualTo(FileTypes.MATROSKA);
+  }
+
+  @Test
+  public void inferFileFormat_fromTruncatedSignature_returnsUnknownFormat() {
+    byte[] mp4Signature = {0, 0, 0, 0x20, 'f', 't', 'y', 'p'};
+
+    assertThat(inferFileTypeFromSignature(mp4Signature, /* length= */ 7))
+        .isEqualTo(FileTypes.UNKNOWN);
+  }
+
+  @Test
+  public void inferFileFormat_fromId3Signature_returnsUnknownFormat() {
+    byte[] id3Signature = {'I', 'D', '3', 4, 0, 0, 0, 0, 0, 0};
+
+    assertThat(inferFileTypeFromSignature(id3Signature, id3Signature.length))
+        .isEqualTo(FileTypes.UNKNOWN);
+  }
 }
@@ -367,6 +367,134 @@ public class ListenerSetTest {
     verify(listener, never()).callback1();
   }
 
+  @Test
+  public void flushEvents_withCoalescing_sendsEventsOfMultipleFlushesInSingleIteration() {
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    listenerSet.setCoalesceEvents(true);
+    TestListener listener = mock(TestListener.class);
+    listenerSet.add(listener);
+
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    listenerSet.sendEvent(EVENT_ID_2, TestListener::callback2);
+    verifyNoMoreInteractions(listener);
+    ShadowLooper.idleMainLooper();
+
+    InOrder inOrder = Mockito.inOrder(listener);
+    inOrder.verify(listener).callback1();
+    inOrder.verify(listener).callback2();
+    inOrder.verify(listener).iterationFinished(createFlagSet(EVENT_ID_1, EVENT_ID_2));
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void flushEvents_withCoalescingAndRecursion_sendsRecursiveEventsInSameIteration() {
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    listenerSet.setCoalesceEvents(true);
+    // Listener1 sends callback3 recursively when receiving callback1.
+    TestListener listener1 =
+        spy(
+            new TestListener() {
+              @Override
+              public void callback1() {
+                listenerSet.sendEvent(EVENT_ID_3, TestListener::callback3);
+              }
+            });
+    TestListener listener2 = mock(TestListener.class);
+    listenerSet.add(listener1);
+    listenerSet.add(listener2);
+
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    listenerSet.sendEvent(EVENT_ID_2, TestListener::callback2);
+    ShadowLooper.idleMainLooper();
+
+    InOrder inOrder = Mockito.inOrder(listener1, listener2);
+    inOrder.verify(listener1).callback1();
+    inOrder.verify(listener2).callback1();
+    inOrder.verify(listener1).callback2();
+    inOrder.verify(listener2).callback2();
+    inOrder.verify(listener1).callback3();
+    inOrder.verify(listener2).callback3();
+    inOrder.verify(listener1).iterationFinished(createFlagSet(EVENT_ID_1, EVENT_ID_2, EVENT_ID_3));
+    inOrder.verify(listener2).iterationFinished(createFlagSet(EVENT_ID_1, EVENT_ID_2, EVENT_ID_3));
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void flushEvents_withCoalescing_doesNotSendEventsQueuedAfterFlush() {
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    listenerSet.setCoalesceEvents(true);
+    TestListener listener = mock(TestListener.class);
+    listenerSet.add(listener);
+
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    listenerSet.queueEvent(EVENT_ID_2, TestListener::callback2);
+    ShadowLooper.idleMainLooper();
+
+    verify(listener).callback1();
+    verify(listener).iterationFinished(createFlagSet(EVENT_ID_1));
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void setCoalesceEvents_disabledWithPendingEvents_sendsPendingEventsImmediately() {
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    listenerSet.setCoalesceEvents(true);
+    TestListener listener = mock(TestListener.class);
+    listenerSet.add(listener);
+
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    listenerSet.setCoalesceEvents(false);
+
+    verify(listener).callback1();
+    ShadowLooper.idleMainLooper();
+    verify(listener).iterationFinished(createFlagSet(EVENT_ID_1));
+    verifyNoMoreInteractions(listener);
+  }
+
+  @Test
+  public void copy_withCoalescing_coalescesEventsInCopy() {
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    listenerSet.setCoalesceEvents(true);
+    TestListener listener = mock(TestListener.class);
+    listenerSet.add(listener);
+    ListenerSet<TestListener> copiedListenerSet =
+        listenerSet.copy(Looper.myLooper(), TestListener::iterationFinished);
+
+    copiedListenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    copiedListenerSet.sendEvent(EVENT_ID_2, TestListener::callback2);
+    verifyNoMoreInteractions(listener);
+    ShadowLooper.idleMainLooper();
+
+    InOrder inOrder = Mockito.inOrder(listener);
+    inOrder.verify(listener).callback1();
+    inOrder.verify(listener).callback2();
+    inOrder.verify(listener).iterationFinished(createFlagSet(EVENT_ID_1, EVENT_ID_2));
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  @Test
+  public void release_withCoalescing_sendsPendingEventsBeforeReleasing() {
+    ListenerSet<TestListener> listenerSet =
+        new ListenerSet<>(Looper.myLooper(), Clock.DEFAULT, TestListener::iterationFinished);
+    listenerSet.setCoalesceEvents(true);
+    TestListener listener = mock(TestListener.class);
+    listenerSet.add(listener);
+
+    listenerSet.sendEvent(EVENT_ID_1, TestListener::callback1);
+    listenerSet.release();
+    listenerSet.sendEvent(EVENT_ID_2, TestListener::callback2);
+    ShadowLooper.idleMainLooper();
+
+    verify(listener).callback1();
+    verify(listener).iterationFinished(createFlagSet(EVENT_ID_1));
+    verifyNoMoreInteractions(listener);
+  }
+
   private interface TestListener {
     default void callback1() {}
 
@@ -46,6 +46,7 @@ import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Formatter;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.zip.Deflater;
@@ -1122,6 +1123,33 @@ public class UtilTest {
     assertThat(Util.tableExists(database, "table")).isFalse();
   }
 
+  @Test
+  public void moveItems_toLaterIndex_movesRange() {
+    List<Integer> items = new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5));
+
+    Util.moveItems(items, /* fromIndex= */ 1, /* toIndex= */ 3, /* newFromIndex= */ 3);
+
+    assertThat(items).containsExactly(0, 3, 4, 1, 2, 5).inOrder();
+  }
+
+  @Test
+  public void moveItems_toEarlierIndex_movesRange() {
+    List<Integer> items = new ArrayList<>(Arrays.asList(0, 1, 2, 3, 4, 5));
+
+    Util.moveItems(items, /* fromIndex= */ 3, /* toIndex= */ 5, /* newFromIndex= */ 0);
+
+    assertThat(items).containsExactly(3, 4, 0, 1, 2, 5).inOrder();
+  }
+
+  @Test
+  public void moveItems_beyondEnd_movesRangeToEnd() {
+    List<Integer> items = new ArrayList<>(Arrays.asList(0, 1, 2, 3));
+
+    Util.moveItems(items, /* fromIndex= */ 0, /* toIndex= */ 2, /* newFromIndex= */ 10);
+
+    assertThat(items).containsExactly(2, 3, 0, 1).inOrder();
+  }
+
   @Test
   public void getStringForTime_withNegativeTime_setsNegativePrefix() {
     assertThat(getStringForTime(new StringBuilder(), new Formatter(), /* timeMs= */ -35000))
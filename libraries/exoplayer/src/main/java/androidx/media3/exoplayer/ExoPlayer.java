@@ -50,6 +50,7 @@ import androidx.media3.datasource.DataSource;
 import androidx.media3.exoplayer.analytics.AnalyticsCollector;
 import androidx.media3.exoplayer.analytics.AnalyticsListener;
 import androidx.media3.exoplayer.analytics.DefaultAnalyticsCollector;
+import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.audio.AudioSink;
 import androidx.media3.exoplayer.audio.DefaultAudioSink;
 import androidx.media3.exoplayer.audio.MediaCodecAudioRenderer;
@@ -447,6 +448,7 @@ public interface ExoPlayer extends Player {
 
     /* package */ Clock clock;
     /* package */ long foregroundModeTimeoutMs;
+    /* package */ boolean coalesceListenerEvents;
     /* package */ Supplier<RenderersFactory> renderersFactorySupplier;
     /* package */ Supplier<MediaSource.Factory> mediaSourceFactorySupplier;
     /* package */ Supplier<TrackSelector> trackSelectorSupplier;
@@ -680,6 +682,28 @@ public interface ExoPlayer extends Player {
       return this;
     }
 
+    /**
+     * Sets whether {@link Player.Listener} events are coalesced.
+     *
+     * <p>If enabled, the player doesn't notify its listeners synchronously. Instead, all events
+     * triggered before the application {@link Looper} has handled its pending messages are sent
+     * together, followed by a single {@link Player.Listener#onEvents} call. This reduces the
+     * overhead of bursts of state changes for apps with many listeners, but means that the player
+     * state may already have changed when a listener is notified.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param coalesceListenerEvents Whether listener events are coalesced.
+     * @return This builder.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    @UnstableApi
+    public Builder experimentalSetCoalesceListenerEvents(boolean coalesceListenerEvents) {
+      checkState(!buildCalled);
+      this.coalesceListenerEvents = coalesceListenerEvents;
+      return this;
+    }
+
     /**
      * Sets the {@link RenderersFactory} that will be used by the player.
      *
@@ -1248,6 +1272,13 @@ public interface ExoPlayer extends Player {
   @UnstableApi
   Clock getClock();
 
+  /**
+   * Returns the {@link PlayerId} that this player passes to its media sources and renderers. It can
+   * be used to prepare a {@link MediaSource} for this player before the source is set on it.
+   */
+  @UnstableApi
+  PlayerId getPlayerId();
+
   /**
    * @deprecated Use {@link #prepare()} instead.
    */
@@ -155,6 +155,7 @@ import java.util.concurrent.TimeoutException;
   private final long seekBackIncrementMs;
   private final long seekForwardIncrementMs;
   private final Clock clock;
+  private final PlayerId playerId;
   private final ComponentListener componentListener;
   private final FrameMetadataListener frameMetadataListener;
   private final AudioBecomingNoisyManager audioBecomingNoisyManager;
@@ -270,6 +271,7 @@ import java.util.concurrent.TimeoutException;
               applicationLooper,
               clock,
               (listener, flags) -> listener.onEvents(this.wrappingPlayer, new Events(flags)));
+      listeners.setCoalesceEvents(builder.coalesceListenerEvents);
       audioOffloadListeners = new CopyOnWriteArraySet<>();
       mediaSourceHolderSnapshots = new ArrayList<>();
       shuffleOrder = new ShuffleOrder.DefaultShuffleOrder(/* length= */ 0);
@@ -318,7 +320,7 @@ import java.util.concurrent.TimeoutException;
               playbackInfoUpdateHandler.post(() -> handlePlaybackInfo(playbackInfoUpdate));
       playbackInfo = PlaybackInfo.createDummy(emptyTrackSelectorResult);
       analyticsCollector.setPlayer(this.wrappingPlayer, applicationLooper);
-      PlayerId playerId =
+      playerId =
           Util.SDK_INT < 31
               ? new PlayerId()
               : Api31.registerMediaMetricsListener(
@@ -444,6 +446,12 @@ import java.util.concurrent.TimeoutException;
     return internalPlayer.getPlaybackLooper();
   }
 
+  @Override
+  public PlayerId getPlayerId() {
+    // Don't verify application thread. We allow calls to this method from any thread.
+    return playerId;
+  }
+
   @Override
   public Looper getApplicationLooper() {
     // Don't verify application thread. We allow calls to this method from any thread.
@@ -2180,14 +2188,15 @@ import java.util.concurrent.TimeoutException;
 
   private List<MediaSourceList.MediaSourceHolder> addMediaSourceHolders(
       int index, List<MediaSource> mediaSources) {
-    List<MediaSourceList.MediaSourceHolder> holders = new ArrayList<>();
+    List<MediaSourceList.MediaSourceHolder> holders = new ArrayList<>(mediaSources.size());
+    List<MediaSourceHolderSnapshot> snapshots = new ArrayList<>(mediaSources.size());
     for (int i = 0; i < mediaSources.size(); i++) {
       MediaSourceList.MediaSourceHolder holder =
           new MediaSourceList.MediaSourceHolder(mediaSources.get(i), useLazyPreparation);
       holders.add(holder);
-      mediaSourceHolderSnapshots.add(
-          i + index, new MediaSourceHolderSnapshot(holder.uid, holder.mediaSource.getTimeline()));
+      snapshots.add(new MediaSourceHolderSnapshot(holder.uid, holder.mediaSource.getTimeline()));
     }
+    mediaSourceHolderSnapshots.addAll(index, snapshots);
     shuffleOrder =
         shuffleOrder.cloneAndInsert(
             /* insertionIndex= */ index, /* insertionCount= */ holders.size());
@@ -2223,9 +2232,7 @@ import java.util.concurrent.TimeoutException;
   }
 
   private void removeMediaSourceHolders(int fromIndex, int toIndexExclusive) {
-    for (int i = toIndexExclusive - 1; i >= fromIndex; i--) {
-      mediaSourceHolderSnapshots.remove(i);
-    }
+    mediaSourceHolderSnapshots.subList(fromIndex, toIndexExclusive).clear();
     shuffleOrder = shuffleOrder.cloneAndRemove(fromIndex, toIndexExclusive);
   }
 
@@ -231,6 +231,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
   @Nullable private ExoPlaybackException pendingRecoverableRendererError;
   private long setForegroundModeTimeoutMs;
   private long playbackMaybeBecameStuckAtMs;
+  @Nullable private Timeline lastLivePlaybackSpeedControlTimeline;
+  @Nullable private MediaPeriodId lastLivePlaybackSpeedControlPeriodId;
+  private boolean lastShouldUseLivePlaybackSpeedControl;
 
   public ExoPlayerImplInternal(
       Renderer[] renderers,
@@ -1125,12 +1128,26 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
   private boolean shouldUseLivePlaybackSpeedControl(
       Timeline timeline, MediaPeriodId mediaPeriodId) {
+    // Timelines and period ids are immutable, so the result can be reused as long as neither
+    // changes. This avoids repeated (and potentially allocating) timeline lookups on every
+    // iteration of the playback loop.
+    if (timeline == lastLivePlaybackSpeedControlTimeline
+        && mediaPeriodId == lastLivePlaybackSpeedControlPeriodId) {
+      return lastShouldUseLivePlaybackSpeedControl;
+    }
+    boolean shouldUseLivePlaybackSpeedControl;
     if (mediaPeriodId.isAd() || timeline.isEmpty()) {
-      return false;
-    }
-    int windowIndex = timeline.getPeriodByUid(mediaPeriodId.periodUid, period).windowIndex;
-    timeline.getWindow(windowIndex, window);
-    return window.isLive() && window.isDynamic && window.windowStartTimeMs != C.TIME_UNSET;
+      shouldUseLivePlaybackSpeedControl = false;
+    } else {
+      int windowIndex = timeline.getPeriodByUid(mediaPeriodId.periodUid, period).windowIndex;
+      timeline.getWindow(windowIndex, window);
+      shouldUseLivePlaybackSpeedControl =
+          window.isLive() && window.isDynamic && window.windowStartTimeMs != C.TIME_UNSET;
+    }
+    lastLivePlaybackSpeedControlTimeline = timeline;
+    lastLivePlaybackSpeedControlPeriodId = mediaPeriodId;
+    lastShouldUseLivePlaybackSpeedControl = shouldUseLivePlaybackSpeedControl;
+    return shouldUseLivePlaybackSpeedControl;
   }
 
   private void scheduleNextWork(long thisOperationStartTimeMs, long intervalMs) {
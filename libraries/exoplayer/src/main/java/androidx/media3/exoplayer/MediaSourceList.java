@@ -15,9 +15,6 @@
  */
 package androidx.media3.exoplayer;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
-
 import android.os.Handler;
 import androidx.annotation.Nullable;
 import androidx.media3.common.Timeline;
@@ -142,10 +139,11 @@ import java.util.Set;
       int index, List<MediaSourceHolder> holders, ShuffleOrder shuffleOrder) {
     if (!holders.isEmpty()) {
       this.shuffleOrder = shuffleOrder;
-      for (int insertionIndex = index; insertionIndex < index + holders.size(); insertionIndex++) {
-        MediaSourceHolder holder = holders.get(insertionIndex - index);
-        if (insertionIndex > 0) {
-          MediaSourceHolder previousHolder = mediaSourceHolders.get(insertionIndex - 1);
+      @Nullable
+      MediaSourceHolder previousHolder = index > 0 ? mediaSourceHolders.get(index - 1) : null;
+      for (int i = 0; i < holders.size(); i++) {
+        MediaSourceHolder holder = holders.get(i);
+        if (previousHolder != null) {
           Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
           holder.reset(
               /* firstWindowIndexInChild= */ previousHolder.firstWindowIndexInChild
@@ -153,12 +151,14 @@ import java.util.Set;
         } else {
           holder.reset(/* firstWindowIndexInChild= */ 0);
         }
-        Timeline newTimeline = holder.mediaSource.getTimeline();
-        correctOffsets(
-            /* startIndex= */ insertionIndex,
-            /* windowOffsetUpdate= */ newTimeline.getWindowCount());
-        mediaSourceHolders.add(insertionIndex, holder);
         mediaSourceByUid.put(holder.uid, holder);
+        previousHolder = holder;
+      }
+      // Insert all holders at once to avoid shifting the following holders once per insertion. The
+      // window offsets of the following holders are updated when creating the new timeline.
+      mediaSourceHolders.addAll(index, holders);
+      for (int i = 0; i < holders.size(); i++) {
+        MediaSourceHolder holder = holders.get(i);
         if (isPrepared) {
           prepareChildSource(holder);
           if (mediaSourceByMediaPeriod.isEmpty()) {
@@ -236,16 +236,8 @@ import java.util.Set;
     if (fromIndex == toIndex || fromIndex == newFromIndex) {
       return createTimeline();
     }
-    int startIndex = min(fromIndex, newFromIndex);
-    int newEndIndex = newFromIndex + (toIndex - fromIndex) - 1;
-    int endIndex = max(newEndIndex, toIndex - 1);
-    int windowOffset = mediaSourceHolders.get(startIndex).firstWindowIndexInChild;
+    // The window offsets of the moved holders are updated when creating the new timeline.
     Util.moveItems(mediaSourceHolders, fromIndex, toIndex, newFromIndex);
-    for (int i = startIndex; i <= endIndex; i++) {
-      MediaSourceHolder holder = mediaSourceHolders.get(i);
-      holder.firstWindowIndexInChild = windowOffset;
-      windowOffset += holder.mediaSource.getTimeline().getWindowCount();
-    }
     return createTimeline();
   }
 
@@ -395,23 +387,16 @@ import java.util.Set;
 
   private void removeMediaSourcesInternal(int fromIndex, int toIndex) {
     for (int index = toIndex - 1; index >= fromIndex; index--) {
-      MediaSourceHolder holder = mediaSourceHolders.remove(index);
+      MediaSourceHolder holder = mediaSourceHolders.get(index);
       mediaSourceByUid.remove(holder.uid);
-      Timeline oldTimeline = holder.mediaSource.getTimeline();
-      correctOffsets(
-          /* startIndex= */ index, /* windowOffsetUpdate= */ -oldTimeline.getWindowCount());
       holder.isRemoved = true;
       if (isPrepared) {
         maybeReleaseChildSource(holder);
       }
     }
-  }
-
-  private void correctOffsets(int startIndex, int windowOffsetUpdate) {
-    for (int i = startIndex; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
-      mediaSourceHolder.firstWindowIndexInChild += windowOffsetUpdate;
-    }
+    // Remove all holders at once to avoid shifting the following holders once per removal. The
+    // window offsets of the following holders are updated when creating the new timeline.
+    mediaSourceHolders.subList(fromIndex, toIndex).clear();
   }
 
   // Internal methods to manage child sources.
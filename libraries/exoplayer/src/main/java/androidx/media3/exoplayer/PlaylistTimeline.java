@@ -19,6 +19,7 @@ import androidx.media3.common.C;
 import androidx.media3.common.Timeline;
 import androidx.media3.common.util.Util;
 import androidx.media3.exoplayer.source.ShuffleOrder;
+import com.google.common.collect.Maps;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -45,7 +46,7 @@ import java.util.List;
     firstWindowInChildIndices = new int[childCount];
     timelines = new Timeline[childCount];
     uids = new Object[childCount];
-    childIndexByUid = new HashMap<>();
+    childIndexByUid = Maps.newHashMapWithExpectedSize(childCount);
     int index = 0;
     int windowCount = 0;
     int periodCount = 0;
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkState;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.TrackGroupArray;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import androidx.media3.exoplayer.upstream.Allocator;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A {@link LoadControl} that chooses its buffer targets dynamically from a forecast of the
+ * rebuffering risk.
+ *
+ * <p>The forecast compares a conservative estimate of the available throughput, derived from the
+ * recent history of {@link BandwidthMeter#getBitrateEstimate()}, with the bitrate of the currently
+ * selected tracks. The less headroom the network has over the media bitrate, and the more the
+ * estimate fluctuates, the more media is buffered before loading is paused.
+ *
+ * <p>Loading is performed in bursts: once loading stops at the high watermark, it does not resume
+ * until the buffer has drained to the low watermark, which lies at least {@link
+ * Builder#setMinBurstDurationMs(int) the minimum burst duration} below it. This keeps the network
+ * idle for long continuous periods, which allows the radio to drop into low power states, rather
+ * than topping up the buffer with many small requests.
+ */
+@UnstableApi
+public class PredictiveLoadControl implements LoadControl {
+
+  /**
+   * The default minimum duration of media that the player will attempt to ensure is buffered at all
+   * times, in milliseconds.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = 15_000;
+
+  /**
+   * The default maximum duration of media that the player will attempt to buffer, in milliseconds.
+   */
+  public static final int DEFAULT_MAX_BUFFER_MS = 60_000;
+
+  /**
+   * The default minimum duration of media that is loaded in a single burst once loading resumes, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_MIN_BURST_DURATION_MS = 20_000;
+
+  /**
+   * The default fraction of the conservative throughput estimate that is assumed to be available
+   * for loading media.
+   */
+  public static final float DEFAULT_BANDWIDTH_FRACTION = 0.8f;
+
+  /**
+   * The default number of standard deviations subtracted from the mean of the bandwidth history to
+   * obtain the conservative throughput estimate.
+   */
+  public static final float DEFAULT_BANDWIDTH_DEVIATION_FACTOR = 1f;
+
+  /** The default number of bandwidth estimates kept in the history. */
+  public static final int DEFAULT_BANDWIDTH_HISTORY_SIZE = 60;
+
+  /** The default minimum interval between two samples of the bandwidth history, in milliseconds. */
+  public static final int DEFAULT_BANDWIDTH_SAMPLE_INTERVAL_MS = 1000;
+
+  /** Builder for {@link PredictiveLoadControl}. */
+  public static final class Builder {
+
+    private final BandwidthMeter bandwidthMeter;
+
+    @Nullable private DefaultAllocator allocator;
+    private int minBufferMs;
+    private int maxBufferMs;
+    private int bufferForPlaybackMs;
+    private int bufferForPlaybackAfterRebufferMs;
+    private int minBurstDurationMs;
+    private float bandwidthFraction;
+    private float bandwidthDeviationFactor;
+    private int bandwidthHistorySize;
+    private int bandwidthSampleIntervalMs;
+    private int backBufferDurationMs;
+    private boolean retainBackBufferFromKeyframe;
+    private Clock clock;
+    private boolean buildCalled;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param bandwidthMeter The {@link BandwidthMeter} whose estimates are used to forecast the
+     *     rebuffering risk. This should be the same instance as the one used by the player.
+     */
+    public Builder(BandwidthMeter bandwidthMeter) {
+      this.bandwidthMeter = bandwidthMeter;
+      minBufferMs = DEFAULT_MIN_BUFFER_MS;
+      maxBufferMs = DEFAULT_MAX_BUFFER_MS;
+      bufferForPlaybackMs = DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS;
+      bufferForPlaybackAfterRebufferMs =
+          DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS;
+      minBurstDurationMs = DEFAULT_MIN_BURST_DURATION_MS;
+      bandwidthFraction = DEFAULT_BANDWIDTH_FRACTION;
+      bandwidthDeviationFactor = DEFAULT_BANDWIDTH_DEVIATION_FACTOR;
+      bandwidthHistorySize = DEFAULT_BANDWIDTH_HISTORY_SIZE;
+      bandwidthSampleIntervalMs = DEFAULT_BANDWIDTH_SAMPLE_INTERVAL_MS;
+      backBufferDurationMs = DefaultLoadControl.DEFAULT_BACK_BUFFER_DURATION_MS;
+      retainBackBufferFromKeyframe = DefaultLoadControl.DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the {@link DefaultAllocator} used by the loader.
+     *
+     * @param allocator The {@link DefaultAllocator}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setAllocator(DefaultAllocator allocator) {
+      checkState(!buildCalled);
+      this.allocator = allocator;
+      return this;
+    }
+
+    /**
+     * Sets the buffer duration parameters.
+     *
+     * @param minBufferMs The minimum duration of media that the player will attempt to ensure is
+     *     buffered at all times, in milliseconds. This is the low watermark used when the network
+     *     has plenty of headroom over the media bitrate.
+     * @param maxBufferMs The maximum duration of media that the player will attempt to buffer, in
+     *     milliseconds.
+     * @param bufferForPlaybackMs The duration of media that must be buffered for playback to start
+     *     or resume following a user action such as a seek, in milliseconds.
+     * @param bufferForPlaybackAfterRebufferMs The default duration of media that must be buffered
+     *     for playback to resume after a rebuffer, in milliseconds. A rebuffer is defined to be
+     *     caused by buffer depletion rather than a user action.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBufferDurationsMs(
+        int minBufferMs,
+        int maxBufferMs,
+        int bufferForPlaybackMs,
+        int bufferForPlaybackAfterRebufferMs) {
+      checkState(!buildCalled);
+      checkArgument(bufferForPlaybackMs >= 0);
+      checkArgument(bufferForPlaybackAfterRebufferMs >= 0);
+      checkArgument(minBufferMs >= bufferForPlaybackMs);
+      checkArgument(minBufferMs >= bufferForPlaybackAfterRebufferMs);
+      checkArgument(maxBufferMs >= minBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.maxBufferMs = maxBufferMs;
+      this.bufferForPlaybackMs = bufferForPlaybackMs;
+      this.bufferForPlaybackAfterRebufferMs = bufferForPlaybackAfterRebufferMs;
+      return this;
+    }
+
+    /**
+     * Sets the minimum duration of media that is loaded in a single burst once loading resumes.
+     * Larger values result in fewer, longer idle periods of the network.
+     *
+     * @param minBurstDurationMs The minimum burst duration, in milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setMinBurstDurationMs(int minBurstDurationMs) {
+      checkState(!buildCalled);
+      checkArgument(minBurstDurationMs >= 0);
+      this.minBurstDurationMs = minBurstDurationMs;
+      return this;
+    }
+
+    /**
+     * Sets the parameters of the throughput forecast.
+     *
+     * @param bandwidthFraction The fraction of the conservative throughput estimate that is assumed
+     *     to be available for loading media.
+     * @param bandwidthDeviationFactor The number of standard deviations subtracted from the mean of
+     *     the bandwidth history to obtain the conservative throughput estimate.
+     * @param bandwidthHistorySize The number of bandwidth estimates kept in the history.
+     * @param bandwidthSampleIntervalMs The minimum interval between two samples of the bandwidth
+     *     history, in milliseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBandwidthForecastParameters(
+        float bandwidthFraction,
+        float bandwidthDeviationFactor,
+        int bandwidthHistorySize,
+        int bandwidthSampleIntervalMs) {
+      checkState(!buildCalled);
+      checkArgument(bandwidthFraction > 0);
+      checkArgument(bandwidthDeviationFactor >= 0);
+      checkArgument(bandwidthHistorySize > 0);
+      checkArgument(bandwidthSampleIntervalMs >= 0);
+      this.bandwidthFraction = bandwidthFraction;
+      this.bandwidthDeviationFactor = bandwidthDeviationFactor;
+      this.bandwidthHistorySize = bandwidthHistorySize;
+      this.bandwidthSampleIntervalMs = bandwidthSampleIntervalMs;
+      return this;
+    }
+
+    /**
+     * Sets the back buffer duration, and whether the back buffer is retained from the previous
+     * keyframe.
+     *
+     * @param backBufferDurationMs The back buffer duration in milliseconds.
+     * @param retainBackBufferFromKeyframe Whether the back buffer is retained from the previous
+     *     keyframe.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setBackBuffer(int backBufferDurationMs, boolean retainBackBufferFromKeyframe) {
+      checkState(!buildCalled);
+      checkArgument(backBufferDurationMs >= 0);
+      this.backBufferDurationMs = backBufferDurationMs;
+      this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to time the samples of the bandwidth history. Should only be set
+     * for testing purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setClock(Clock clock) {
+      checkState(!buildCalled);
+      this.clock = clock;
+      return this;
+    }
+
+    /** Creates a {@link PredictiveLoadControl}. */
+    public PredictiveLoadControl build() {
+      checkState(!buildCalled);
+      buildCalled = true;
+      if (allocator == null) {
+        allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+      }
+      return new PredictiveLoadControl(this, allocator);
+    }
+  }
+
+  /** Lower bound for the low watermark that prevents playback from getting stuck. */
+  private static final long MIN_LOW_WATERMARK_US = 500_000;
+
+  private final DefaultAllocator allocator;
+  private final BandwidthMeter bandwidthMeter;
+  private final Clock clock;
+  private final long minBufferUs;
+  private final long maxBufferUs;
+  private final long bufferForPlaybackUs;
+  private final long bufferForPlaybackAfterRebufferUs;
+  private final long minBurstDurationUs;
+  private final float bandwidthFraction;
+  private final float bandwidthDeviationFactor;
+  private final long bandwidthSampleIntervalMs;
+  private final long backBufferDurationUs;
+  private final boolean retainBackBufferFromKeyframe;
+  private final long[] bandwidthHistory;
+
+  private @NullableType ExoTrackSelection[] trackSelections;
+  private int targetBufferBytes;
+  private boolean isLoading;
+  private int bandwidthHistoryCount;
+  private int bandwidthHistoryWriteIndex;
+  private long lastBandwidthSampleTimeMs;
+
+  private PredictiveLoadControl(Builder builder, DefaultAllocator allocator) {
+    this.allocator = allocator;
+    this.bandwidthMeter = builder.bandwidthMeter;
+    this.clock = builder.clock;
+    this.minBufferUs = Util.msToUs(builder.minBufferMs);
+    this.maxBufferUs = Util.msToUs(builder.maxBufferMs);
+    this.bufferForPlaybackUs = Util.msToUs(builder.bufferForPlaybackMs);
+    this.bufferForPlaybackAfterRebufferUs = Util.msToUs(builder.bufferForPlaybackAfterRebufferMs);
+    this.minBurstDurationUs = Util.msToUs(builder.minBurstDurationMs);
+    this.bandwidthFraction = builder.bandwidthFraction;
+    this.bandwidthDeviationFactor = builder.bandwidthDeviationFactor;
+    this.bandwidthSampleIntervalMs = builder.bandwidthSampleIntervalMs;
+    this.backBufferDurationUs = Util.msToUs(builder.backBufferDurationMs);
+    this.retainBackBufferFromKeyframe = builder.retainBackBufferFromKeyframe;
+    bandwidthHistory = new long[builder.bandwidthHistorySize];
+    trackSelections = new ExoTrackSelection[0];
+    targetBufferBytes = DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+    lastBandwidthSampleTimeMs = C.TIME_UNSET;
+  }
+
+  @Override
+  public void onPrepared() {
+    reset(/* resetAllocator= */ false);
+  }
+
+  @Override
+  public void onTracksSelected(
+      Renderer[] renderers, TrackGroupArray trackGroups, ExoTrackSelection[] trackSelections) {
+    this.trackSelections = trackSelections;
+    int targetBufferSize = 0;
+    for (int i = 0; i < renderers.length; i++) {
+      if (trackSelections[i] != null) {
+        targetBufferSize += DefaultLoadControl.getDefaultBufferSize(renderers[i].getTrackType());
+      }
+    }
+    targetBufferBytes = max(DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE, targetBufferSize);
+    allocator.setTargetBufferSize(targetBufferBytes);
+  }
+
+  @Override
+  public void onStopped() {
+    reset(/* resetAllocator= */ true);
+  }
+
+  @Override
+  public void onReleased() {
+    reset(/* resetAllocator= */ true);
+  }
+
+  @Override
+  public Allocator getAllocator() {
+    return allocator;
+  }
+
+  @Override
+  public long getBackBufferDurationUs() {
+    return backBufferDurationUs;
+  }
+
+  @Override
+  public boolean retainBackBufferFromKeyframe() {
+    return retainBackBufferFromKeyframe;
+  }
+
+  @Override
+  public boolean shouldContinueLoading(
+      long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
+    maybeSampleBandwidth();
+    long lowWatermarkUs = getLowWatermarkUs();
+    long highWatermarkUs = min(maxBufferUs, lowWatermarkUs + minBurstDurationUs);
+    if (playbackSpeed > 1) {
+      // The buffer drains faster than real time, so scale up the watermarks to keep the same
+      // playout duration buffered.
+      lowWatermarkUs = Util.getMediaDurationForPlayoutDuration(lowWatermarkUs, playbackSpeed);
+      highWatermarkUs = Util.getMediaDurationForPlayoutDuration(highWatermarkUs, playbackSpeed);
+      lowWatermarkUs = min(lowWatermarkUs, maxBufferUs);
+      highWatermarkUs = min(highWatermarkUs, maxBufferUs);
+    }
+    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+    if (bufferedDurationUs < MIN_LOW_WATERMARK_US) {
+      // Never leave the buffer almost empty, regardless of the size constraint.
+      isLoading = true;
+    } else if (bufferedDurationUs < lowWatermarkUs) {
+      isLoading = !targetBufferSizeReached;
+    } else if (bufferedDurationUs >= highWatermarkUs || targetBufferSizeReached) {
+      isLoading = false;
+    } // Else continue the current burst, or continue idling.
+    return isLoading;
+  }
+
+  @Override
+  public boolean shouldStartPlayback(
+      long bufferedDurationUs, float playbackSpeed, boolean rebuffering, long targetLiveOffsetUs) {
+    bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+    long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    if (targetLiveOffsetUs != C.TIME_UNSET) {
+      minBufferDurationUs = min(targetLiveOffsetUs / 2, minBufferDurationUs);
+    }
+    return minBufferDurationUs <= 0
+        || bufferedDurationUs >= minBufferDurationUs
+        || allocator.getTotalBytesAllocated() >= targetBufferBytes;
+  }
+
+  /**
+   * Returns the conservative throughput forecast in bits per second, or {@link C#RATE_UNSET_INT} if
+   * no bandwidth estimate is available yet.
+   */
+  @VisibleForTesting
+  /* package */ long getThroughputForecast() {
+    if (bandwidthHistoryCount == 0) {
+      return C.RATE_UNSET_INT;
+    }
+    double mean = 0;
+    for (int i = 0; i < bandwidthHistoryCount; i++) {
+      mean += bandwidthHistory[i];
+    }
+    mean /= bandwidthHistoryCount;
+    double variance = 0;
+    for (int i = 0; i < bandwidthHistoryCount; i++) {
+      double deviation = bandwidthHistory[i] - mean;
+      variance += deviation * deviation;
+    }
+    variance /= bandwidthHistoryCount;
+    double conservativeEstimate = mean - bandwidthDeviationFactor * Math.sqrt(variance);
+    return (long) (max(0, conservativeEstimate) * bandwidthFraction);
+  }
+
+  /**
+   * Returns the low watermark, in microseconds. Loading resumes once the buffered duration drops
+   * below this value.
+   */
+  @VisibleForTesting
+  /* package */ long getLowWatermarkUs() {
+    long lowWatermarkUs = (long) (minBufferUs * getRiskFactor());
+    return max(MIN_LOW_WATERMARK_US, min(lowWatermarkUs, maxBufferUs - minBurstDurationUs));
+  }
+
+  /**
+   * Returns the factor by which the minimum buffer is scaled up to account for the forecast
+   * rebuffering risk. This is the ratio of the selected bitrate to the conservative throughput
+   * forecast, and at least 1.
+   */
+  private float getRiskFactor() {
+    int selectedBitrate = getSelectedBitrate();
+    long throughputForecast = getThroughputForecast();
+    if (selectedBitrate == Format.NO_VALUE || throughputForecast == C.RATE_UNSET_INT) {
+      return 1f;
+    }
+    if (throughputForecast == 0) {
+      return (float) maxBufferUs / max(1, minBufferUs);
+    }
+    return max(1f, (float) selectedBitrate / throughputForecast);
+  }
+
+  /**
+   * Returns the sum of the bitrates of the currently selected formats, or {@link Format#NO_VALUE}
+   * if none of them is known.
+   */
+  private int getSelectedBitrate() {
+    int selectedBitrate = Format.NO_VALUE;
+    for (ExoTrackSelection trackSelection : trackSelections) {
+      if (trackSelection == null) {
+        continue;
+      }
+      int bitrate = trackSelection.getSelectedFormat().bitrate;
+      if (bitrate != Format.NO_VALUE) {
+        selectedBitrate = selectedBitrate == Format.NO_VALUE ? bitrate : selectedBitrate + bitrate;
+      }
+    }
+    return selectedBitrate;
+  }
+
+  private void maybeSampleBandwidth() {
+    if (!isLoading) {
+      // The estimate is not updated while idle, so sampling it would overweight stale values.
+      return;
+    }
+    long nowMs = clock.elapsedRealtime();
+    if (lastBandwidthSampleTimeMs != C.TIME_UNSET
+        && nowMs - lastBandwidthSampleTimeMs < bandwidthSampleIntervalMs) {
+      return;
+    }
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    if (bitrateEstimate <= 0) {
+      return;
+    }
+    lastBandwidthSampleTimeMs = nowMs;
+    bandwidthHistory[bandwidthHistoryWriteIndex] = bitrateEstimate;
+    bandwidthHistoryWriteIndex = (bandwidthHistoryWriteIndex + 1) % bandwidthHistory.length;
+    bandwidthHistoryCount = min(bandwidthHistoryCount + 1, bandwidthHistory.length);
+  }
+
+  private void reset(boolean resetAllocator) {
+    targetBufferBytes = DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE;
+    trackSelections = new ExoTrackSelection[0];
+    isLoading = false;
+    if (resetAllocator) {
+      allocator.reset();
+    }
+  }
+}
@@ -46,6 +46,7 @@ import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.exoplayer.analytics.AnalyticsCollector;
 import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.source.DefaultMediaSourceFactory;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.ShuffleOrder;
@@ -703,6 +704,12 @@ public class SimpleExoPlayer extends BasePlayer
     return player.getPlaybackLooper();
   }
 
+  @Override
+  public PlayerId getPlayerId() {
+    blockUntilConstructorFinished();
+    return player.getPlayerId();
+  }
+
   @Override
   public Looper getApplicationLooper() {
     blockUntilConstructorFinished();
@@ -40,6 +40,9 @@ public class DefaultDownloaderFactory implements DownloaderFactory {
   private final CacheDataSource.Factory cacheDataSourceFactory;
   private final Executor executor;
 
+  private int maxParallelSegmentDownloadsPerHost;
+  private long maxSegmentDownloadBytesPerSecond;
+
   /**
    * Creates an instance.
    *
@@ -66,6 +69,40 @@ public class DefaultDownloaderFactory implements DownloaderFactory {
       CacheDataSource.Factory cacheDataSourceFactory, Executor executor) {
     this.cacheDataSourceFactory = Assertions.checkNotNull(cacheDataSourceFactory);
     this.executor = Assertions.checkNotNull(executor);
+    maxParallelSegmentDownloadsPerHost = SegmentDownloader.DEFAULT_MAX_PARALLEL_DOWNLOADS_PER_HOST;
+    maxSegmentDownloadBytesPerSecond = SegmentDownloader.DEFAULT_MAX_BYTES_PER_SECOND;
+  }
+
+  /**
+   * Sets the maximum number of segments that DASH, HLS and SmoothStreaming downloaders download in
+   * parallel from a single host. The default value is {@link
+   * SegmentDownloader#DEFAULT_MAX_PARALLEL_DOWNLOADS_PER_HOST}.
+   *
+   * @param maxParallelSegmentDownloadsPerHost The maximum number of parallel downloads per host.
+   * @return This factory, for convenience.
+   * @see SegmentDownloader#setMaxParallelDownloadsPerHost(int)
+   */
+  public DefaultDownloaderFactory setMaxParallelSegmentDownloadsPerHost(
+      int maxParallelSegmentDownloadsPerHost) {
+    Assertions.checkArgument(maxParallelSegmentDownloadsPerHost > 0);
+    this.maxParallelSegmentDownloadsPerHost = maxParallelSegmentDownloadsPerHost;
+    return this;
+  }
+
+  /**
+   * Sets the maximum rate, in bytes per second, at which each DASH, HLS and SmoothStreaming
+   * downloader downloads segment data. The default value is {@link
+   * SegmentDownloader#DEFAULT_MAX_BYTES_PER_SECOND}.
+   *
+   * @param maxSegmentDownloadBytesPerSecond The maximum download rate in bytes per second.
+   * @return This factory, for convenience.
+   * @see SegmentDownloader#setMaxBytesPerSecond(long)
+   */
+  public DefaultDownloaderFactory setMaxSegmentDownloadBytesPerSecond(
+      long maxSegmentDownloadBytesPerSecond) {
+    Assertions.checkArgument(maxSegmentDownloadBytesPerSecond > 0);
+    this.maxSegmentDownloadBytesPerSecond = maxSegmentDownloadBytesPerSecond;
+    return this;
   }
 
   @Override
@@ -101,12 +138,19 @@ public class DefaultDownloaderFactory implements DownloaderFactory {
             .setStreamKeys(request.streamKeys)
             .setCustomCacheKey(request.customCacheKey)
             .build();
+    Downloader downloader;
     try {
-      return constructor.newInstance(mediaItem, cacheDataSourceFactory, executor);
+      downloader = constructor.newInstance(mediaItem, cacheDataSourceFactory, executor);
     } catch (Exception e) {
       throw new IllegalStateException(
           "Failed to instantiate downloader for content type " + contentType);
     }
+    if (downloader instanceof SegmentDownloader) {
+      SegmentDownloader<?> segmentDownloader = (SegmentDownloader<?>) downloader;
+      segmentDownloader.setMaxParallelDownloadsPerHost(maxParallelSegmentDownloadsPerHost);
+      segmentDownloader.setMaxBytesPerSecond(maxSegmentDownloadBytesPerSecond);
+    }
+    return downloader;
   }
 
   private static SparseArray<Constructor<? extends Downloader>> createDownloaderConstructors() {
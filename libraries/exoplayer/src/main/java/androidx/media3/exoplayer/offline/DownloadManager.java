@@ -52,8 +52,12 @@ import androidx.media3.exoplayer.scheduler.RequirementsWatcher;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.TreeSet;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
 
@@ -701,9 +705,22 @@ public final class DownloadManager {
     private final WritableDownloadIndex downloadIndex;
     private final DownloaderFactory downloaderFactory;
     private final Handler mainHandler;
-    private final ArrayList<Download> downloads;
     private final HashMap<String, Task> activeTasks;
 
+    // Downloads in non-terminal states, sorted by start time. Downloads in terminal states are only
+    // held by the download index.
+    private final DownloadOrdering downloadOrdering;
+    private final ArrayList<Download> downloads;
+    private final HashMap<String, Download> downloadsById;
+    // Downloads in STATE_QUEUED, and in STATE_REMOVING or STATE_RESTARTING, in the same order as
+    // the downloads list. Downloads in other states always have an active task.
+    private final TreeSet<Download> queuedDownloads;
+    private final TreeSet<Download> removingDownloads;
+
+    // Index writes and updates for the main thread, sent once the current message is processed.
+    private final LinkedHashMap<String, Download> pendingIndexWrites;
+    private final ArrayList<DownloadUpdate> pendingDownloadUpdates;
+
     private @Requirements.RequirementFlags int notMetRequirements;
     private boolean downloadsPaused;
     private int maxParallelDownloads;
@@ -726,8 +743,14 @@ public final class DownloadManager {
       this.maxParallelDownloads = maxParallelDownloads;
       this.minRetryCount = minRetryCount;
       this.downloadsPaused = downloadsPaused;
-      downloads = new ArrayList<>();
       activeTasks = new HashMap<>();
+      downloadOrdering = new DownloadOrdering();
+      downloads = new ArrayList<>();
+      downloadsById = new HashMap<>();
+      queuedDownloads = new TreeSet<>(downloadOrdering);
+      removingDownloads = new TreeSet<>(downloadOrdering);
+      pendingIndexWrites = new LinkedHashMap<>();
+      pendingDownloadUpdates = new ArrayList<>();
     }
 
     @Override
@@ -779,9 +802,11 @@ public final class DownloadManager {
         case MSG_CONTENT_LENGTH_CHANGED:
           task = (Task) message.obj;
           onContentLengthChanged(task, Util.toLong(message.arg1, message.arg2));
+          sendPendingDownloadUpdates();
           return; // No need to post back to mainHandler.
         case MSG_UPDATE_PROGRESS:
           updateProgress();
+          sendPendingDownloadUpdates();
           return; // No need to post back to mainHandler.
         case MSG_RELEASE:
           release();
@@ -789,6 +814,7 @@ public final class DownloadManager {
         default:
           throw new IllegalStateException();
       }
+      sendPendingDownloadUpdates();
       mainHandler
           .obtainMessage(MSG_PROCESSED, processedExternalMessage ? 1 : 0, activeTasks.size())
           .sendToTarget();
@@ -803,11 +829,11 @@ public final class DownloadManager {
             downloadIndex.getDownloads(
                 STATE_QUEUED, STATE_STOPPED, STATE_DOWNLOADING, STATE_REMOVING, STATE_RESTARTING);
         while (cursor.moveToNext()) {
-          downloads.add(cursor.getDownload());
+          setDownloadInternal(cursor.getDownload());
         }
       } catch (IOException e) {
         Log.e(TAG, "Failed to load index.", e);
-        downloads.clear();
+        clearDownloadsInternal();
       } finally {
         Util.closeQuietly(cursor);
       }
@@ -830,9 +856,12 @@ public final class DownloadManager {
 
     private void setStopReason(@Nullable String id, int stopReason) {
       if (id == null) {
-        for (int i = 0; i < downloads.size(); i++) {
-          setStopReason(downloads.get(i), stopReason);
+        // Iterate over a copy, since setting the stop reason modifies the downloads list.
+        ArrayList<Download> downloadsToUpdate = new ArrayList<>(downloads);
+        for (int i = 0; i < downloadsToUpdate.size(); i++) {
+          setStopReason(downloadsToUpdate.get(i), stopReason);
         }
+        writePendingIndexWrites();
         try {
           // Set the stop reason for downloads in terminal states as well.
           downloadIndex.setStopReason(stopReason);
@@ -844,6 +873,7 @@ public final class DownloadManager {
         if (download != null) {
           setStopReason(download, stopReason);
         } else {
+          writePendingIndexWrites();
           try {
             // Set the stop reason if the download is in a terminal state.
             downloadIndex.setStopReason(id, stopReason);
@@ -917,6 +947,7 @@ public final class DownloadManager {
     }
 
     private void removeAllDownloads() {
+      writePendingIndexWrites();
       List<Download> terminalDownloads = new ArrayList<>();
       try (DownloadCursor cursor = downloadIndex.getDownloads(STATE_COMPLETED, STATE_FAILED)) {
         while (cursor.moveToNext()) {
@@ -925,14 +956,15 @@ public final class DownloadManager {
       } catch (IOException e) {
         Log.e(TAG, "Failed to load downloads.");
       }
-      for (int i = 0; i < downloads.size(); i++) {
-        downloads.set(i, copyDownloadWithState(downloads.get(i), STATE_REMOVING, STOP_REASON_NONE));
+      ArrayList<Download> nonTerminalDownloads = new ArrayList<>(downloads);
+      for (int i = 0; i < nonTerminalDownloads.size(); i++) {
+        setDownloadInternal(
+            copyDownloadWithState(nonTerminalDownloads.get(i), STATE_REMOVING, STOP_REASON_NONE));
       }
       for (int i = 0; i < terminalDownloads.size(); i++) {
-        downloads.add(
+        setDownloadInternal(
             copyDownloadWithState(terminalDownloads.get(i), STATE_REMOVING, STOP_REASON_NONE));
       }
-      Collections.sort(downloads, InternalHandler::compareStartTimes);
       try {
         downloadIndex.setStatesToRemoving();
       } catch (IOException e) {
@@ -940,10 +972,9 @@ public final class DownloadManager {
       }
       ArrayList<Download> updateList = new ArrayList<>(downloads);
       for (int i = 0; i < downloads.size(); i++) {
-        DownloadUpdate update =
+        pendingDownloadUpdates.add(
             new DownloadUpdate(
-                downloads.get(i), /* isRemove= */ false, updateList, /* finalException= */ null);
-        mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+                downloads.get(i), /* isRemove= */ false, updateList, /* finalException= */ null));
       }
       syncTasks();
     }
@@ -952,12 +983,14 @@ public final class DownloadManager {
       for (Task task : activeTasks.values()) {
         task.cancel(/* released= */ true);
       }
+      writePendingIndexWrites();
+      pendingDownloadUpdates.clear();
       try {
         downloadIndex.setDownloadingStatesToQueued();
       } catch (IOException e) {
         Log.e(TAG, "Failed to update index.", e);
       }
-      downloads.clear();
+      clearDownloadsInternal();
       thread.quit();
       synchronized (this) {
         released = true;
@@ -968,9 +1001,30 @@ public final class DownloadManager {
     // Start and cancel tasks based on the current download and manager states.
 
     private void syncTasks() {
+      // Only downloads that have an active task, that need a remove task, or for which a download
+      // task can be started need syncing. They're synced in the order of the downloads list.
+      TreeSet<Download> downloadsToSync = new TreeSet<>(removingDownloads);
+      for (String id : activeTasks.keySet()) {
+        @Nullable Download download = downloadsById.get(id);
+        if (download != null) {
+          downloadsToSync.add(download);
+        }
+      }
+      if (canDownloadsRun()) {
+        int startableDownloadCount = maxParallelDownloads - activeDownloadTaskCount;
+        Iterator<Download> queuedDownloadsIterator = queuedDownloads.iterator();
+        while (startableDownloadCount > 0 && queuedDownloadsIterator.hasNext()) {
+          Download download = queuedDownloadsIterator.next();
+          if (!activeTasks.containsKey(download.request.id)) {
+            downloadsToSync.add(download);
+            startableDownloadCount--;
+          }
+        }
+      }
+
       int accumulatingDownloadTaskCount = 0;
-      for (int i = 0; i < downloads.size(); i++) {
-        Download download = downloads.get(i);
+      for (Download downloadToSync : downloadsToSync) {
+        Download download = Assertions.checkNotNull(downloadsById.get(downloadToSync.request.id));
         @Nullable Task activeTask = activeTasks.get(download.request.id);
         switch (download.state) {
           case STATE_STOPPED:
@@ -1149,17 +1203,12 @@ public final class DownloadManager {
               finalException == null ? FAILURE_REASON_NONE : FAILURE_REASON_UNKNOWN,
               download.progress);
       // The download is now in a terminal state, so should not be in the downloads list.
-      downloads.remove(getDownloadIndex(download.request.id));
+      removeDownloadInternal(download.request.id);
       // We still need to update the download index and main thread.
-      try {
-        downloadIndex.putDownload(download);
-      } catch (IOException e) {
-        Log.e(TAG, "Failed to update index.", e);
-      }
-      DownloadUpdate update =
+      pendingIndexWrites.put(download.request.id, download);
+      pendingDownloadUpdates.add(
           new DownloadUpdate(
-              download, /* isRemove= */ false, new ArrayList<>(downloads), finalException);
-      mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+              download, /* isRemove= */ false, new ArrayList<>(downloads), finalException));
     }
 
     private void onRemoveTaskStopped(Download download) {
@@ -1169,34 +1218,29 @@ public final class DownloadManager {
         putDownloadWithState(download, state, download.stopReason);
         syncTasks();
       } else {
-        int removeIndex = getDownloadIndex(download.request.id);
-        downloads.remove(removeIndex);
+        removeDownloadInternal(download.request.id);
+        writePendingIndexWrites();
         try {
           downloadIndex.removeDownload(download.request.id);
         } catch (IOException e) {
           Log.e(TAG, "Failed to remove from database");
         }
-        DownloadUpdate update =
+        pendingDownloadUpdates.add(
             new DownloadUpdate(
                 download,
                 /* isRemove= */ true,
                 new ArrayList<>(downloads),
-                /* finalException= */ null);
-        mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+                /* finalException= */ null));
       }
     }
 
     // Progress updates.
 
     private void updateProgress() {
-      for (int i = 0; i < downloads.size(); i++) {
-        Download download = downloads.get(i);
-        if (download.state == STATE_DOWNLOADING) {
-          try {
-            downloadIndex.putDownload(download);
-          } catch (IOException e) {
-            Log.e(TAG, "Failed to update index.", e);
-          }
+      for (String id : activeTasks.keySet()) {
+        @Nullable Download download = downloadsById.get(id);
+        if (download != null && download.state == STATE_DOWNLOADING) {
+          pendingIndexWrites.put(id, download);
         }
       }
       sendEmptyMessageDelayed(MSG_UPDATE_PROGRESS, UPDATE_PROGRESS_INTERVAL_MS);
@@ -1218,39 +1262,29 @@ public final class DownloadManager {
     private Download putDownload(Download download) {
       // Downloads in terminal states shouldn't be in the downloads list.
       Assertions.checkState(download.state != STATE_COMPLETED && download.state != STATE_FAILED);
-      int changedIndex = getDownloadIndex(download.request.id);
-      if (changedIndex == C.INDEX_UNSET) {
-        downloads.add(download);
-        Collections.sort(downloads, InternalHandler::compareStartTimes);
-      } else {
-        boolean needsSort = download.startTimeMs != downloads.get(changedIndex).startTimeMs;
-        downloads.set(changedIndex, download);
-        if (needsSort) {
-          Collections.sort(downloads, InternalHandler::compareStartTimes);
-        }
-      }
-      try {
-        downloadIndex.putDownload(download);
-      } catch (IOException e) {
-        Log.e(TAG, "Failed to update index.", e);
-      }
-      DownloadUpdate update =
+      setDownloadInternal(download);
+      pendingIndexWrites.put(download.request.id, download);
+      pendingDownloadUpdates.add(
           new DownloadUpdate(
               download,
               /* isRemove= */ false,
               new ArrayList<>(downloads),
-              /* finalException= */ null);
-      mainHandler.obtainMessage(MSG_DOWNLOAD_UPDATE, update).sendToTarget();
+              /* finalException= */ null));
       return download;
     }
 
     @Nullable
     private Download getDownload(String id, boolean loadFromIndex) {
-      int index = getDownloadIndex(id);
-      if (index != C.INDEX_UNSET) {
-        return downloads.get(index);
+      @Nullable Download download = downloadsById.get(id);
+      if (download != null) {
+        return download;
       }
       if (loadFromIndex) {
+        // A terminal download may not have been written to the index yet.
+        download = pendingIndexWrites.get(id);
+        if (download != null) {
+          return download;
+        }
         try {
           return downloadIndex.getDownload(id);
         } catch (IOException e) {
@@ -1260,14 +1294,110 @@ public final class DownloadManager {
       return null;
     }
 
-    private int getDownloadIndex(String id) {
-      for (int i = 0; i < downloads.size(); i++) {
-        Download download = downloads.get(i);
-        if (download.request.id.equals(id)) {
-          return i;
+    /**
+     * Adds a download in a non-terminal state to the downloads list, or replaces the download with
+     * the same ID. Doesn't update the download index or the main thread.
+     */
+    private void setDownloadInternal(Download download) {
+      String id = download.request.id;
+      @Nullable Download previousDownload = downloadsById.get(id);
+      if (previousDownload != null) {
+        removeFromStateBucket(previousDownload);
+        int index = getDownloadIndex(previousDownload);
+        if (download.startTimeMs == previousDownload.startTimeMs) {
+          downloads.set(index, download);
+        } else {
+          downloads.remove(index);
+          downloadOrdering.add(id);
+          downloads.add(-getDownloadIndex(download) - 1, download);
         }
+      } else {
+        downloadOrdering.add(id);
+        downloads.add(-getDownloadIndex(download) - 1, download);
       }
-      return C.INDEX_UNSET;
+      downloadsById.put(id, download);
+      @Nullable TreeSet<Download> stateBucket = getStateBucket(download);
+      if (stateBucket != null) {
+        stateBucket.add(download);
+      }
+    }
+
+    /**
+     * Removes a download from the downloads list. Doesn't update the download index or the main
+     * thread.
+     */
+    private void removeDownloadInternal(String id) {
+      Download download = Assertions.checkNotNull(downloadsById.remove(id));
+      removeFromStateBucket(download);
+      downloads.remove(getDownloadIndex(download));
+      downloadOrdering.remove(id);
+    }
+
+    private void clearDownloadsInternal() {
+      downloads.clear();
+      downloadsById.clear();
+      queuedDownloads.clear();
+      removingDownloads.clear();
+      downloadOrdering.clear();
+    }
+
+    private void removeFromStateBucket(Download download) {
+      @Nullable TreeSet<Download> stateBucket = getStateBucket(download);
+      if (stateBucket != null) {
+        stateBucket.remove(download);
+      }
+    }
+
+    @Nullable
+    private TreeSet<Download> getStateBucket(Download download) {
+      switch (download.state) {
+        case STATE_QUEUED:
+          return queuedDownloads;
+        case STATE_REMOVING:
+        case STATE_RESTARTING:
+          return removingDownloads;
+        case STATE_STOPPED:
+        case STATE_DOWNLOADING:
+        case STATE_COMPLETED:
+        case STATE_FAILED:
+        default:
+          return null;
+      }
+    }
+
+    /**
+     * Returns the index of the download in the downloads list if present, or {@code -(insertion
+     * point) - 1} otherwise.
+     */
+    private int getDownloadIndex(Download download) {
+      return Collections.binarySearch(downloads, download, downloadOrdering);
+    }
+
+    /** Writes the pending index writes to the download index in a single batch. */
+    private void writePendingIndexWrites() {
+      if (pendingIndexWrites.isEmpty()) {
+        return;
+      }
+      try {
+        downloadIndex.putDownloads(new ArrayList<>(pendingIndexWrites.values()));
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to update index.", e);
+      }
+      pendingIndexWrites.clear();
+    }
+
+    /**
+     * Writes the pending index writes, and then sends the pending download updates to the main
+     * thread, so that the index is up to date when listeners are notified.
+     */
+    private void sendPendingDownloadUpdates() {
+      writePendingIndexWrites();
+      for (int i = 0; i < pendingDownloadUpdates.size(); i++) {
+        mainHandler
+            .obtainMessage(MSG_DOWNLOAD_UPDATE, pendingDownloadUpdates.get(i))
+            .sendToTarget();
+      }
+      pendingDownloadUpdates.clear();
     }
 
     private static Download copyDownloadWithState(
@@ -1282,9 +1412,43 @@ public final class DownloadManager {
           FAILURE_REASON_NONE,
           download.progress);
     }
+  }
+
+  /**
+   * Orders downloads by start time, and downloads with the same start time by the order in which
+   * they were added.
+   */
+  private static final class DownloadOrdering implements Comparator<Download> {
 
-    private static int compareStartTimes(Download first, Download second) {
-      return Util.compareLong(first.startTimeMs, second.startTimeMs);
+    private final HashMap<String, Long> sequenceNumbers;
+    private long nextSequenceNumber;
+
+    public DownloadOrdering() {
+      sequenceNumbers = new HashMap<>();
+    }
+
+    /** Orders the download with the given ID after all previously added downloads. */
+    public void add(String id) {
+      sequenceNumbers.put(id, nextSequenceNumber++);
+    }
+
+    public void remove(String id) {
+      sequenceNumbers.remove(id);
+    }
+
+    public void clear() {
+      sequenceNumbers.clear();
+    }
+
+    @Override
+    public int compare(Download first, Download second) {
+      int result = Util.compareLong(first.startTimeMs, second.startTimeMs);
+      if (result != 0) {
+        return result;
+      }
+      return Util.compareLong(
+          Assertions.checkNotNull(sequenceNumbers.get(first.request.id)),
+          Assertions.checkNotNull(sequenceNumbers.get(second.request.id)));
     }
   }
 
@@ -19,6 +19,7 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.StreamKey;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
 import androidx.media3.exoplayer.upstream.ParsingLoadable.Parser;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,4 +50,23 @@ public final class FilteringManifestParser<T extends FilterableManifest<T>> impl
     T manifest = parser.parse(uri, inputStream);
     return streamKeys == null || streamKeys.isEmpty() ? manifest : manifest.copy(streamKeys);
   }
+
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    FilteringManifestParser<?> other = (FilteringManifestParser<?>) obj;
+    return parser.equals(other.parser) && Util.areEqual(streamKeys, other.streamKeys);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = parser.hashCode();
+    result = 31 * result + (streamKeys == null ? 0 : streamKeys.hashCode());
+    return result;
+  }
 }
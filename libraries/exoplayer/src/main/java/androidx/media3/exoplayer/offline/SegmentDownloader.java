@@ -16,15 +16,20 @@
 package androidx.media3.exoplayer.offline;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
 
 import android.net.Uri;
+import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.PriorityTaskManager;
 import androidx.media3.common.PriorityTaskManager.PriorityTooLowException;
 import androidx.media3.common.StreamKey;
 import androidx.media3.common.util.Assertions;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.ConditionVariable;
 import androidx.media3.common.util.RunnableFutureTask;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
@@ -42,6 +47,7 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -75,6 +81,11 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  /** The default maximum number of segments downloaded in parallel from a single host. */
+  public static final int DEFAULT_MAX_PARALLEL_DOWNLOADS_PER_HOST = Integer.MAX_VALUE;
+  /** The default maximum download rate in bytes per second. */
+  public static final long DEFAULT_MAX_BYTES_PER_SECOND = Long.MAX_VALUE;
+
   private static final int BUFFER_SIZE_BYTES = 128 * 1024;
   private static final long MAX_MERGED_SEGMENT_START_TIME_DIFF_US = 20 * C.MICROS_PER_SECOND;
 
@@ -86,6 +97,10 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
   private final CacheKeyFactory cacheKeyFactory;
   @Nullable private final PriorityTaskManager priorityTaskManager;
   private final Executor executor;
+  private final ConditionVariable segmentDownloadFinishedCondition;
+
+  private int maxParallelDownloadsPerHost;
+  private long maxBytesPerSecond;
 
   /**
    * The currently active runnables.
@@ -123,6 +138,36 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     cacheKeyFactory = cacheDataSourceFactory.getCacheKeyFactory();
     priorityTaskManager = cacheDataSourceFactory.getUpstreamPriorityTaskManager();
     activeRunnables = new ArrayList<>();
+    segmentDownloadFinishedCondition = new ConditionVariable();
+    maxParallelDownloadsPerHost = DEFAULT_MAX_PARALLEL_DOWNLOADS_PER_HOST;
+    maxBytesPerSecond = DEFAULT_MAX_BYTES_PER_SECOND;
+  }
+
+  /**
+   * Sets the maximum number of segments that are downloaded in parallel from a single host. Must be
+   * called before {@link #download}.
+   *
+   * <p>The number of parallel downloads is also limited by the {@link Executor}. When a host is at
+   * its limit, segments from other hosts are downloaded first, in playback order. The default value
+   * is {@link #DEFAULT_MAX_PARALLEL_DOWNLOADS_PER_HOST}.
+   *
+   * @param maxParallelDownloadsPerHost The maximum number of parallel downloads per host.
+   */
+  public final void setMaxParallelDownloadsPerHost(int maxParallelDownloadsPerHost) {
+    Assertions.checkArgument(maxParallelDownloadsPerHost > 0);
+    this.maxParallelDownloadsPerHost = maxParallelDownloadsPerHost;
+  }
+
+  /**
+   * Sets the maximum rate at which segment data is downloaded, in bytes per second, aggregated over
+   * all parallel segment downloads. Must be called before {@link #download}. The default value is
+   * {@link #DEFAULT_MAX_BYTES_PER_SECOND}.
+   *
+   * @param maxBytesPerSecond The maximum download rate in bytes per second.
+   */
+  public final void setMaxBytesPerSecond(long maxBytesPerSecond) {
+    Assertions.checkArgument(maxBytesPerSecond > 0);
+    this.maxBytesPerSecond = maxBytesPerSecond;
   }
 
   @Override
@@ -191,6 +236,11 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
                   bytesDownloaded,
                   segmentsDownloaded)
               : null;
+      @Nullable
+      ByteRateLimiter byteRateLimiter =
+          maxBytesPerSecond != Long.MAX_VALUE
+              ? new ByteRateLimiter(maxBytesPerSecond, Clock.DEFAULT)
+              : null;
       pendingSegments.addAll(segments);
       while (!isCanceled && !pendingSegments.isEmpty()) {
         // Block until there aren't any higher priority tasks.
@@ -198,23 +248,37 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
           priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
         }
 
-        // Create and execute a runnable to download the next segment.
-        CacheDataSource segmentDataSource;
-        byte[] temporaryBuffer;
-        if (!recycledRunnables.isEmpty()) {
-          SegmentDownloadRunnable recycledRunnable = recycledRunnables.removeFirst();
-          segmentDataSource = recycledRunnable.dataSource;
-          temporaryBuffer = recycledRunnable.temporaryBuffer;
+        // Create and execute a runnable to download the next segment whose host isn't at its
+        // limit. The condition is closed first so that a download finishing after the segment is
+        // chosen isn't missed.
+        segmentDownloadFinishedCondition.close();
+        @Nullable Segment segment = removeNextDownloadableSegment(pendingSegments);
+        @Nullable SegmentDownloadRunnable downloadRunnable = null;
+        if (segment != null) {
+          CacheDataSource segmentDataSource;
+          byte[] temporaryBuffer;
+          if (!recycledRunnables.isEmpty()) {
+            SegmentDownloadRunnable recycledRunnable = recycledRunnables.removeFirst();
+            segmentDataSource = recycledRunnable.dataSource;
+            temporaryBuffer = recycledRunnable.temporaryBuffer;
+          } else {
+            segmentDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
+            temporaryBuffer = new byte[BUFFER_SIZE_BYTES];
+          }
+          downloadRunnable =
+              new SegmentDownloadRunnable(
+                  segment,
+                  segmentDataSource,
+                  progressNotifier,
+                  byteRateLimiter,
+                  temporaryBuffer,
+                  segmentDownloadFinishedCondition);
+          addActiveRunnable(downloadRunnable);
+          executor.execute(downloadRunnable);
         } else {
-          segmentDataSource = cacheDataSourceFactory.createDataSourceForDownloading();
-          temporaryBuffer = new byte[BUFFER_SIZE_BYTES];
+          // All pending segments are on hosts that are at their limit.
+          segmentDownloadFinishedCondition.block();
         }
-        Segment segment = pendingSegments.removeFirst();
-        SegmentDownloadRunnable downloadRunnable =
-            new SegmentDownloadRunnable(
-                segment, segmentDataSource, progressNotifier, temporaryBuffer);
-        addActiveRunnable(downloadRunnable);
-        executor.execute(downloadRunnable);
 
         // Clean up runnables that have finished.
         for (int j = activeRunnables.size() - 1; j >= 0; j--) {
@@ -246,7 +310,9 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
 
         // Don't move on to the next segment until the runnable for this segment has started. This
         // drip feeds runnables to the executor, rather than providing them all up front.
-        downloadRunnable.blockUntilStarted();
+        if (downloadRunnable != null) {
+          downloadRunnable.blockUntilStarted();
+        }
       }
     } finally {
       // If one of the runnables has thrown an exception, then it's possible there are other active
@@ -274,6 +340,8 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
       for (int i = 0; i < activeRunnables.size(); i++) {
         activeRunnables.get(i).cancel(/* interruptIfRunning= */ true);
       }
+      // Unblock the download thread if it's waiting for a host to become available.
+      segmentDownloadFinishedCondition.open();
     }
   }
 
@@ -416,6 +484,42 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  /**
+   * Removes and returns the first pending segment whose host has fewer than {@link
+   * #maxParallelDownloadsPerHost} active downloads, or returns null if there's no such segment.
+   */
+  @Nullable
+  private Segment removeNextDownloadableSegment(ArrayDeque<Segment> pendingSegments) {
+    if (maxParallelDownloadsPerHost == Integer.MAX_VALUE) {
+      return pendingSegments.removeFirst();
+    }
+    HashMap<String, Integer> activeDownloadCountByHost = new HashMap<>();
+    for (int i = 0; i < activeRunnables.size(); i++) {
+      SegmentDownloadRunnable activeRunnable = (SegmentDownloadRunnable) activeRunnables.get(i);
+      if (!activeRunnable.isSegmentDownloadFinished()) {
+        String host = getHost(activeRunnable.segment);
+        @Nullable Integer activeDownloadCount = activeDownloadCountByHost.get(host);
+        activeDownloadCountByHost.put(
+            host, activeDownloadCount == null ? 1 : activeDownloadCount + 1);
+      }
+    }
+    Iterator<Segment> iterator = pendingSegments.iterator();
+    while (iterator.hasNext()) {
+      Segment segment = iterator.next();
+      @Nullable Integer activeDownloadCount = activeDownloadCountByHost.get(getHost(segment));
+      if (activeDownloadCount == null || activeDownloadCount < maxParallelDownloadsPerHost) {
+        iterator.remove();
+        return segment;
+      }
+    }
+    return null;
+  }
+
+  private static String getHost(Segment segment) {
+    @Nullable String host = segment.dataSpec.uri.getHost();
+    return host != null ? host : "";
+  }
+
   private static void mergeSegments(List<Segment> segments, CacheKeyFactory keyFactory) {
     HashMap<String, Integer> lastIndexByCacheKey = new HashMap<>();
     int nextOutIndex = 0;
@@ -460,26 +564,57 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     public final CacheDataSource dataSource;
     @Nullable private final ProgressNotifier progressNotifier;
     public final byte[] temporaryBuffer;
+    private final ConditionVariable finishedCondition;
     private final CacheWriter cacheWriter;
 
+    private volatile boolean segmentDownloadFinished;
+
     public SegmentDownloadRunnable(
         Segment segment,
         CacheDataSource dataSource,
         @Nullable ProgressNotifier progressNotifier,
-        byte[] temporaryBuffer) {
+        @Nullable ByteRateLimiter byteRateLimiter,
+        byte[] temporaryBuffer,
+        ConditionVariable finishedCondition) {
       this.segment = segment;
       this.dataSource = dataSource;
       this.progressNotifier = progressNotifier;
       this.temporaryBuffer = temporaryBuffer;
+      this.finishedCondition = finishedCondition;
+      @Nullable CacheWriter.ProgressListener cacheWriterProgressListener = progressNotifier;
+      if (byteRateLimiter != null) {
+        cacheWriterProgressListener =
+            (requestLength, bytesCached, newBytesCached) -> {
+              if (progressNotifier != null) {
+                progressNotifier.onProgress(requestLength, bytesCached, newBytesCached);
+              }
+              byteRateLimiter.onBytesTransferred(newBytesCached);
+            };
+      }
       this.cacheWriter =
-          new CacheWriter(dataSource, segment.dataSpec, temporaryBuffer, progressNotifier);
+          new CacheWriter(
+              dataSource, segment.dataSpec, temporaryBuffer, cacheWriterProgressListener);
+    }
+
+    /**
+     * Returns whether the segment download has finished, either successfully or with an error.
+     * Unlike {@link #isDone()}, this is guaranteed to be true once the finished condition has been
+     * opened by this runnable.
+     */
+    public boolean isSegmentDownloadFinished() {
+      return segmentDownloadFinished;
     }
 
     @Override
     protected Void doWork() throws IOException {
-      cacheWriter.cache();
-      if (progressNotifier != null) {
-        progressNotifier.onSegmentDownloaded();
+      try {
+        cacheWriter.cache();
+        if (progressNotifier != null) {
+          progressNotifier.onSegmentDownloaded();
+        }
+      } finally {
+        segmentDownloadFinished = true;
+        finishedCondition.open();
       }
       return null;
     }
@@ -490,6 +625,54 @@ public abstract class SegmentDownloader<M extends FilterableManifest<M>> impleme
     }
   }
 
+  /** Limits the aggregate rate at which data is transferred by multiple threads. */
+  @VisibleForTesting
+  /* package */ static final class ByteRateLimiter {
+
+    private final long maxBytesPerSecond;
+    private final Clock clock;
+
+    @GuardedBy("this")
+    private long nextTransferTimeNs;
+
+    public ByteRateLimiter(long maxBytesPerSecond, Clock clock) {
+      this.maxBytesPerSecond = maxBytesPerSecond;
+      this.clock = clock;
+      nextTransferTimeNs = getElapsedRealtimeNs();
+    }
+
+    /**
+     * Called after bytes have been transferred. Blocks for as long as needed to keep the aggregate
+     * transfer rate at or below the maximum. Returns early if the thread is interrupted, in which
+     * case the interrupted flag is set again.
+     */
+    public void onBytesTransferred(long byteCount) {
+      long delayNs = reserveTransfer(byteCount);
+      if (delayNs > 0) {
+        try {
+          Thread.sleep(delayNs / 1_000_000, (int) (delayNs % 1_000_000));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /**
+     * Records that bytes have been transferred, and returns how long the calling thread needs to
+     * wait before transferring more bytes, in nanoseconds.
+     */
+    public synchronized long reserveTransfer(long byteCount) {
+      long nowNs = getElapsedRealtimeNs();
+      nextTransferTimeNs =
+          max(nextTransferTimeNs, nowNs) + byteCount * C.NANOS_PER_SECOND / maxBytesPerSecond;
+      return nextTransferTimeNs - nowNs;
+    }
+
+    private long getElapsedRealtimeNs() {
+      return clock.elapsedRealtime() * 1_000_000;
+    }
+  }
+
   private static final class ProgressNotifier implements CacheWriter.ProgressListener {
 
     private final ProgressListener progressListener;
@@ -19,6 +19,7 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.DataReader;
+import androidx.media3.common.FileTypes;
 import androidx.media3.common.util.Assertions;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
@@ -28,7 +29,17 @@ import androidx.media3.extractor.ExtractorInput;
 import androidx.media3.extractor.ExtractorOutput;
 import androidx.media3.extractor.ExtractorsFactory;
 import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.amr.AmrExtractor;
+import androidx.media3.extractor.flac.FlacExtractor;
+import androidx.media3.extractor.flv.FlvExtractor;
+import androidx.media3.extractor.jpeg.JpegExtractor;
+import androidx.media3.extractor.mkv.MatroskaExtractor;
 import androidx.media3.extractor.mp3.Mp3Extractor;
+import androidx.media3.extractor.mp4.FragmentedMp4Extractor;
+import androidx.media3.extractor.mp4.Mp4Extractor;
+import androidx.media3.extractor.ogg.OggExtractor;
+import androidx.media3.extractor.ts.PsExtractor;
+import androidx.media3.extractor.wav.WavExtractor;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.List;
@@ -73,6 +84,9 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     if (extractors.length == 1) {
       this.extractor = extractors[0];
     } else {
+      // Sniff the extractors matching the file signature first, so that the remaining sniffers
+      // don't need to scan the input unless the signature turns out to be misleading.
+      extractors = orderBySignature(extractors, extractorInput);
       for (Extractor extractor : extractors) {
         try {
           if (extractor.sniff(extractorInput)) {
@@ -128,4 +142,73 @@ public final class BundledExtractorsAdapter implements ProgressiveMediaExtractor
     return Assertions.checkNotNull(extractor)
         .read(Assertions.checkNotNull(extractorInput), positionHolder);
   }
+
+  /**
+   * Returns the extractors reordered so that those matching the file type inferred from the
+   * signature at the start of the input come first. The relative order of the extractors is
+   * otherwise preserved.
+   */
+  private static Extractor[] orderBySignature(Extractor[] extractors, ExtractorInput input)
+      throws IOException {
+    byte[] signature = new byte[FileTypes.SIGNATURE_LENGTH];
+    int signatureLength = 0;
+    try {
+      while (signatureLength < signature.length) {
+        int bytesPeeked =
+            input.peek(signature, signatureLength, signature.length - signatureLength);
+        if (bytesPeeked == C.RESULT_END_OF_INPUT) {
+          break;
+        }
+        signatureLength += bytesPeeked;
+      }
+    } finally {
+      input.resetPeekPosition();
+    }
+    @FileTypes.Type int fileType = FileTypes.inferFileTypeFromSignature(signature, signatureLength);
+    if (fileType == FileTypes.UNKNOWN) {
+      return extractors;
+    }
+    Extractor[] orderedExtractors = new Extractor[extractors.length];
+    int index = 0;
+    for (Extractor extractor : extractors) {
+      if (getFileType(extractor) == fileType) {
+        orderedExtractors[index++] = extractor;
+      }
+    }
+    for (Extractor extractor : extractors) {
+      if (getFileType(extractor) != fileType) {
+        orderedExtractors[index++] = extractor;
+      }
+    }
+    return orderedExtractors;
+  }
+
+  /**
+   * Returns the {@link FileTypes.Type} read by a bundled extractor, or {@link FileTypes#UNKNOWN}
+   * for other extractors and for file types that {@link FileTypes#inferFileTypeFromSignature} can't
+   * detect.
+   */
+  private static @FileTypes.Type int getFileType(Extractor extractor) {
+    if (extractor instanceof FlvExtractor) {
+      return FileTypes.FLV;
+    } else if (extractor instanceof FlacExtractor) {
+      return FileTypes.FLAC;
+    } else if (extractor instanceof WavExtractor) {
+      return FileTypes.WAV;
+    } else if (extractor instanceof FragmentedMp4Extractor || extractor instanceof Mp4Extractor) {
+      return FileTypes.MP4;
+    } else if (extractor instanceof AmrExtractor) {
+      return FileTypes.AMR;
+    } else if (extractor instanceof PsExtractor) {
+      return FileTypes.PS;
+    } else if (extractor instanceof OggExtractor) {
+      return FileTypes.OGG;
+    } else if (extractor instanceof MatroskaExtractor) {
+      return FileTypes.MATROSKA;
+    } else if (extractor instanceof JpegExtractor) {
+      return FileTypes.JPEG;
+    } else {
+      return FileTypes.UNKNOWN;
+    }
+  }
 }
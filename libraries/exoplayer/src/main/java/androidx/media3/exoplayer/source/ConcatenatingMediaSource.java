@@ -687,9 +687,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
         } else {
           shuffleOrder = shuffleOrder.cloneAndRemove(fromIndex, toIndex);
         }
-        for (int index = toIndex - 1; index >= fromIndex; index--) {
-          removeMediaSourceInternal(index);
-        }
+        removeMediaSourcesInternal(fromIndex, toIndex);
         scheduleTimelineUpdate(removeMessage.onCompletionAction);
         break;
       case MSG_MOVE:
@@ -758,30 +756,34 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   }
 
   private void addMediaSourcesInternal(
-      int index, Collection<MediaSourceHolder> mediaSourceHolders) {
-    for (MediaSourceHolder mediaSourceHolder : mediaSourceHolders) {
-      addMediaSourceInternal(index++, mediaSourceHolder);
+      int index, Collection<MediaSourceHolder> newMediaSourceHolders) {
+    if (newMediaSourceHolders.isEmpty()) {
+      return;
     }
-  }
-
-  private void addMediaSourceInternal(int newIndex, MediaSourceHolder newMediaSourceHolder) {
-    if (newIndex > 0) {
-      MediaSourceHolder previousHolder = mediaSourceHolders.get(newIndex - 1);
-      Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
-      newMediaSourceHolder.reset(
-          newIndex, previousHolder.firstWindowIndexInChild + previousTimeline.getWindowCount());
-    } else {
-      newMediaSourceHolder.reset(newIndex, /* firstWindowIndexInChild= */ 0);
+    // Update the offsets once for the whole range instead of once per added source.
+    int firstWindowIndexInChild = 0;
+    if (index > 0) {
+      MediaSourceHolder previousHolder = mediaSourceHolders.get(index - 1);
+      firstWindowIndexInChild =
+          previousHolder.firstWindowIndexInChild
+              + previousHolder.mediaSource.getTimeline().getWindowCount();
     }
-    Timeline newTimeline = newMediaSourceHolder.mediaSource.getTimeline();
-    correctOffsets(newIndex, /* childIndexUpdate= */ 1, newTimeline.getWindowCount());
-    mediaSourceHolders.add(newIndex, newMediaSourceHolder);
-    mediaSourceByUid.put(newMediaSourceHolder.uid, newMediaSourceHolder);
-    prepareChildSource(newMediaSourceHolder, newMediaSourceHolder.mediaSource);
-    if (isEnabled() && mediaSourceByMediaPeriod.isEmpty()) {
-      enabledMediaSourceHolders.add(newMediaSourceHolder);
-    } else {
-      disableChildSource(newMediaSourceHolder);
+    int childIndex = index;
+    int addedWindowCount = 0;
+    for (MediaSourceHolder newMediaSourceHolder : newMediaSourceHolders) {
+      newMediaSourceHolder.reset(childIndex++, firstWindowIndexInChild + addedWindowCount);
+      addedWindowCount += newMediaSourceHolder.mediaSource.getTimeline().getWindowCount();
+    }
+    correctOffsets(index, /* childIndexUpdate= */ newMediaSourceHolders.size(), addedWindowCount);
+    mediaSourceHolders.addAll(index, newMediaSourceHolders);
+    for (MediaSourceHolder newMediaSourceHolder : newMediaSourceHolders) {
+      mediaSourceByUid.put(newMediaSourceHolder.uid, newMediaSourceHolder);
+      prepareChildSource(newMediaSourceHolder, newMediaSourceHolder.mediaSource);
+      if (isEnabled() && mediaSourceByMediaPeriod.isEmpty()) {
+        enabledMediaSourceHolders.add(newMediaSourceHolder);
+      } else {
+        disableChildSource(newMediaSourceHolder);
+      }
     }
   }
 
@@ -799,13 +801,25 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     scheduleTimelineUpdate();
   }
 
-  private void removeMediaSourceInternal(int index) {
-    MediaSourceHolder holder = mediaSourceHolders.remove(index);
-    mediaSourceByUid.remove(holder.uid);
-    Timeline oldTimeline = holder.mediaSource.getTimeline();
-    correctOffsets(index, /* childIndexUpdate= */ -1, -oldTimeline.getWindowCount());
-    holder.isRemoved = true;
-    maybeReleaseChildSource(holder);
+  private void removeMediaSourcesInternal(int fromIndex, int toIndex) {
+    if (fromIndex >= toIndex) {
+      return;
+    }
+    // Update the offsets once for the whole range instead of once per removed source.
+    List<MediaSourceHolder> removedHolders =
+        new ArrayList<>(mediaSourceHolders.subList(fromIndex, toIndex));
+    int removedWindowCount = 0;
+    for (int i = 0; i < removedHolders.size(); i++) {
+      removedWindowCount += removedHolders.get(i).mediaSource.getTimeline().getWindowCount();
+    }
+    mediaSourceHolders.subList(fromIndex, toIndex).clear();
+    correctOffsets(fromIndex, /* childIndexUpdate= */ fromIndex - toIndex, -removedWindowCount);
+    for (int i = removedHolders.size() - 1; i >= 0; i--) {
+      MediaSourceHolder holder = removedHolders.get(i);
+      mediaSourceByUid.remove(holder.uid);
+      holder.isRemoved = true;
+      maybeReleaseChildSource(holder);
+    }
   }
 
   private void moveMediaSourceInternal(int currentIndex, int newIndex) {
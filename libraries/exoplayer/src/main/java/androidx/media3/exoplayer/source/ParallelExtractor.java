@@ -0,0 +1,513 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+
+import android.net.Uri;
+import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.DataReader;
+import androidx.media3.common.Format;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.extractor.ConstantBitrateSeekMap;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.ExtractorsFactory;
+import androidx.media3.extractor.FlacSeekTableSeekMap;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.SeekMap;
+import androidx.media3.extractor.SeekPoint;
+import androidx.media3.extractor.TrackOutput;
+import androidx.media3.extractor.wav.WavSeekMap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Extracts all the samples of a seekable progressive stream using multiple threads, for offline
+ * processing such as waveform generation or loudness scanning.
+ *
+ * <p>The stream is split into byte ranges starting at the {@link SeekPoint seek points} of its
+ * {@link SeekMap}, and each range is extracted independently by a separate {@link Extractor} on the
+ * provided {@link Executor}. This is only correct if the seek points are exact frame boundaries, so
+ * the stream is only split if its seek map is a {@link WavSeekMap} or a {@link
+ * FlacSeekTableSeekMap}. Other streams, including those whose seek points are estimated (for
+ * example MP3 streams using a {@link ConstantBitrateSeekMap}), are extracted as a single range.
+ *
+ * <p>The samples of a range are held in memory until all the earlier ranges have been output, so at
+ * most {@code maxRangesInFlight} ranges are extracted or held at a time.
+ */
+@UnstableApi
+public final class ParallelExtractor {
+
+  /** Receives the formats and samples output by a {@link ParallelExtractor}. */
+  public interface Output {
+
+    /**
+     * Called when the format of a track is first known, and whenever it changes, before any samples
+     * of the track that have that format are output.
+     *
+     * @param trackId The track ID passed to {@link ExtractorOutput#track(int, int)}.
+     * @param format The {@link Format}.
+     */
+    void onFormat(int trackId, Format format);
+
+    /**
+     * Called for each sample, in stream order.
+     *
+     * @param trackId The track ID passed to {@link ExtractorOutput#track(int, int)}.
+     * @param timeUs The media timestamp of the sample, in microseconds.
+     * @param flags The {@link C.BufferFlags} of the sample.
+     * @param data The sample data.
+     */
+    void onSample(int trackId, long timeUs, @C.BufferFlags int flags, byte[] data);
+  }
+
+  /** The default maximum number of ranges that are extracted or held in memory at a time. */
+  public static final int DEFAULT_MAX_RANGES_IN_FLIGHT = 4;
+
+  private final DataSource.Factory dataSourceFactory;
+  private final ExtractorsFactory extractorsFactory;
+  private final Executor executor;
+  private final int maxRangesInFlight;
+
+  /**
+   * Creates an instance that extracts up to {@link #DEFAULT_MAX_RANGES_IN_FLIGHT} ranges at a time.
+   *
+   * @param dataSourceFactory The {@link DataSource.Factory} used to read each range of the stream.
+   *     The data sources it creates may be used concurrently from multiple threads.
+   * @param extractorsFactory The {@link ExtractorsFactory} providing the extractors to choose from.
+   * @param executor The {@link Executor} on which the ranges are extracted, for example a {@link
+   *     java.util.concurrent.ForkJoinPool}.
+   */
+  public ParallelExtractor(
+      DataSource.Factory dataSourceFactory,
+      ExtractorsFactory extractorsFactory,
+      Executor executor) {
+    this(dataSourceFactory, extractorsFactory, executor, DEFAULT_MAX_RANGES_IN_FLIGHT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory The {@link DataSource.Factory} used to read each range of the stream.
+   *     The data sources it creates may be used concurrently from multiple threads.
+   * @param extractorsFactory The {@link ExtractorsFactory} providing the extractors to choose from.
+   * @param executor The {@link Executor} on which the ranges are extracted, for example a {@link
+   *     java.util.concurrent.ForkJoinPool}.
+   * @param maxRangesInFlight The maximum number of ranges that are being extracted, or whose
+   *     samples are held in memory waiting to be output, at any time. Must be positive.
+   */
+  public ParallelExtractor(
+      DataSource.Factory dataSourceFactory,
+      ExtractorsFactory extractorsFactory,
+      Executor executor,
+      int maxRangesInFlight) {
+    checkArgument(maxRangesInFlight > 0);
+    this.dataSourceFactory = dataSourceFactory;
+    this.extractorsFactory = extractorsFactory;
+    this.executor = executor;
+    this.maxRangesInFlight = maxRangesInFlight;
+  }
+
+  /**
+   * Extracts all the samples of the stream at {@code uri}, blocking until they have been output.
+   *
+   * @param uri The {@link Uri} of the stream.
+   * @param maxRangeCount The maximum number of ranges to split the stream into. Must be positive.
+   * @param output The {@link Output} to which formats and samples are output, on the calling
+   *     thread.
+   * @throws IOException If an error occurs reading or extracting the stream.
+   */
+  public void extract(Uri uri, int maxRangeCount, Output output) throws IOException {
+    checkArgument(maxRangeCount > 0);
+    List<Range> ranges = splitIntoRanges(uri, maxRangeCount);
+    ArrayDeque<FutureTask<List<Sample>>> pendingTasks = new ArrayDeque<>();
+    int nextRangeIndex = 0;
+    SparseArray<Format> outputFormats = new SparseArray<>();
+    try {
+      while (nextRangeIndex < ranges.size() || !pendingTasks.isEmpty()) {
+        while (nextRangeIndex < ranges.size() && pendingTasks.size() < maxRangesInFlight) {
+          Range range = ranges.get(nextRangeIndex++);
+          FutureTask<List<Sample>> task = new FutureTask<>(() -> extractRange(uri, range));
+          pendingTasks.add(task);
+          executor.execute(task);
+        }
+        List<Sample> samples = getResult(pendingTasks.element());
+        pendingTasks.remove();
+        for (int i = 0; i < samples.size(); i++) {
+          Sample sample = samples.get(i);
+          if (!sample.format.equals(outputFormats.get(sample.trackId))) {
+            outputFormats.put(sample.trackId, sample.format);
+            output.onFormat(sample.trackId, sample.format);
+          }
+          output.onSample(sample.trackId, sample.timeUs, sample.flags, sample.data);
+        }
+      }
+    } finally {
+      for (FutureTask<List<Sample>> task : pendingTasks) {
+        task.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+  }
+
+  /**
+   * Reads the {@link SeekMap} of the stream and returns the ranges into which it should be split.
+   */
+  private List<Range> splitIntoRanges(Uri uri, int maxRangeCount) throws IOException {
+    SampleCollector output = new SampleCollector();
+    ProgressiveMediaExtractor extractor = new BundledExtractorsAdapter(extractorsFactory);
+    DataSource dataSource = dataSourceFactory.createDataSource();
+    long streamLength;
+    try {
+      streamLength = readUntilSeekMap(uri, dataSource, extractor, output);
+    } finally {
+      extractor.release();
+      DataSourceUtil.closeQuietly(dataSource);
+    }
+    @Nullable SeekMap seekMap = output.seekMap;
+    long durationUs = seekMap != null ? seekMap.getDurationUs() : C.TIME_UNSET;
+    List<SeekPoint> rangeStarts = new ArrayList<>();
+    rangeStarts.add(SeekPoint.START);
+    if (seekMap != null && hasExactSeekPoints(seekMap) && durationUs != C.TIME_UNSET) {
+      for (int i = 1; i < maxRangeCount; i++) {
+        SeekPoint seekPoint = seekMap.getSeekPoints(durationUs * i / maxRangeCount).first;
+        SeekPoint previousSeekPoint = rangeStarts.get(rangeStarts.size() - 1);
+        if (seekPoint.position > previousSeekPoint.position
+            && seekPoint.timeUs > previousSeekPoint.timeUs) {
+          rangeStarts.add(seekPoint);
+        }
+      }
+    }
+    List<Range> ranges = new ArrayList<>(rangeStarts.size());
+    for (int i = 0; i < rangeStarts.size(); i++) {
+      long endPosition =
+          i < rangeStarts.size() - 1
+              ? rangeStarts.get(i + 1).position
+              : (streamLength != C.LENGTH_UNSET ? streamLength : C.POSITION_UNSET);
+      ranges.add(new Range(rangeStarts.get(i), endPosition, streamLength));
+    }
+    return ranges;
+  }
+
+  /**
+   * Returns whether the seek points of {@code seekMap} are exact frame boundaries, rather than
+   * estimated positions from which the extractor needs to resynchronize.
+   */
+  private static boolean hasExactSeekPoints(SeekMap seekMap) {
+    return seekMap instanceof WavSeekMap || seekMap instanceof FlacSeekTableSeekMap;
+  }
+
+  /** Extracts the samples in {@code range}, in the order in which they are output. */
+  private List<Sample> extractRange(Uri uri, Range range) throws IOException {
+    SampleCollector output = new SampleCollector();
+    ProgressiveMediaExtractor extractor = new BundledExtractorsAdapter(extractorsFactory);
+    DataSource dataSource = dataSourceFactory.createDataSource();
+    try {
+      long position = range.start.position;
+      boolean pendingExtractorSeek = false;
+      if (position != 0) {
+        // The extractor needs to read the stream headers before it can seek into the stream.
+        readUntilSeekMap(uri, dataSource, extractor, output);
+        output.discardSamples();
+        DataSourceUtil.closeQuietly(dataSource);
+        pendingExtractorSeek = true;
+      }
+      PositionHolder positionHolder = new PositionHolder();
+      int result = Extractor.RESULT_SEEK;
+      while (result == Extractor.RESULT_SEEK) {
+        // Reads following a seek outside the range continue to the end of the stream.
+        long endPosition = position < range.endPosition ? range.endPosition : C.POSITION_UNSET;
+        openRange(uri, dataSource, extractor, output, position, endPosition, range.streamLength);
+        if (pendingExtractorSeek) {
+          extractor.seek(position, range.start.timeUs);
+          pendingExtractorSeek = false;
+        }
+        result = readUntilSeekOrEnd(extractor, positionHolder);
+        DataSourceUtil.closeQuietly(dataSource);
+        position = positionHolder.position;
+      }
+      return output.samples;
+    } finally {
+      extractor.release();
+      DataSourceUtil.closeQuietly(dataSource);
+    }
+  }
+
+  /**
+   * Reads from the start of the stream until the extractor has output a {@link SeekMap} or the
+   * stream has ended, and returns the length of the stream, or {@link C#LENGTH_UNSET} if unknown.
+   */
+  private static long readUntilSeekMap(
+      Uri uri, DataSource dataSource, ProgressiveMediaExtractor extractor, SampleCollector output)
+      throws IOException {
+    PositionHolder positionHolder = new PositionHolder();
+    long position = 0;
+    long streamLength = C.LENGTH_UNSET;
+    int result = Extractor.RESULT_SEEK;
+    while (result == Extractor.RESULT_SEEK) {
+      long length = open(uri, dataSource, extractor, output, position);
+      streamLength = length != C.LENGTH_UNSET ? position + length : C.LENGTH_UNSET;
+      result = Extractor.RESULT_CONTINUE;
+      while (result == Extractor.RESULT_CONTINUE && output.seekMap == null) {
+        result = extractor.read(positionHolder);
+      }
+      if (result == Extractor.RESULT_SEEK) {
+        DataSourceUtil.closeQuietly(dataSource);
+        position = positionHolder.position;
+      }
+    }
+    return streamLength;
+  }
+
+  /**
+   * Opens {@code dataSource} to read from {@code position} to the end of the stream, and
+   * initializes the extractor to read from it. Returns the number of bytes that can be read, or
+   * {@link C#LENGTH_UNSET} if unknown.
+   */
+  private static long open(
+      Uri uri,
+      DataSource dataSource,
+      ProgressiveMediaExtractor extractor,
+      ExtractorOutput output,
+      long position)
+      throws IOException {
+    long length = dataSource.open(new DataSpec.Builder().setUri(uri).setPosition(position).build());
+    extractor.init(
+        dataSource,
+        uri,
+        dataSource.getResponseHeaders(),
+        position,
+        length != C.LENGTH_UNSET ? position + length : C.LENGTH_UNSET,
+        output);
+    return length;
+  }
+
+  /**
+   * Opens {@code dataSource} to read from {@code position} to {@code endPosition}, or to the end of
+   * the stream if {@code endPosition} is {@link C#POSITION_UNSET}, and initializes the extractor to
+   * read from it.
+   */
+  private static void openRange(
+      Uri uri,
+      DataSource dataSource,
+      ProgressiveMediaExtractor extractor,
+      ExtractorOutput output,
+      long position,
+      long endPosition,
+      long streamLength)
+      throws IOException {
+    dataSource.open(
+        new DataSpec.Builder()
+            .setUri(uri)
+            .setPosition(position)
+            .setLength(endPosition != C.POSITION_UNSET ? endPosition - position : C.LENGTH_UNSET)
+            .build());
+    // The extractor is given the length of the whole stream, even if the range ends before it.
+    extractor.init(
+        dataSource, uri, dataSource.getResponseHeaders(), position, streamLength, output);
+  }
+
+  private static int readUntilSeekOrEnd(
+      ProgressiveMediaExtractor extractor, PositionHolder positionHolder) throws IOException {
+    int result = Extractor.RESULT_CONTINUE;
+    while (result == Extractor.RESULT_CONTINUE) {
+      if (Thread.interrupted()) {
+        throw new InterruptedIOException();
+      }
+      result = extractor.read(positionHolder);
+    }
+    return result;
+  }
+
+  private static List<Sample> getResult(FutureTask<List<Sample>> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      Throwable cause = checkNotNull(e.getCause());
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /** A range of the stream, starting at a seek point. */
+  private static final class Range {
+
+    /** The seek point at which the range starts. */
+    public final SeekPoint start;
+    /** The position at which the range ends, or {@link C#POSITION_UNSET} for the end of stream. */
+    public final long endPosition;
+    /** The length of the stream, or {@link C#LENGTH_UNSET} if unknown. */
+    public final long streamLength;
+
+    public Range(SeekPoint start, long endPosition, long streamLength) {
+      this.start = start;
+      this.endPosition = endPosition;
+      this.streamLength = streamLength;
+    }
+  }
+
+  private static final class Sample {
+
+    public final int trackId;
+    public final Format format;
+    public final long timeUs;
+    public final @C.BufferFlags int flags;
+    public final byte[] data;
+
+    public Sample(int trackId, Format format, long timeUs, @C.BufferFlags int flags, byte[] data) {
+      this.trackId = trackId;
+      this.format = format;
+      this.timeUs = timeUs;
+      this.flags = flags;
+      this.data = data;
+    }
+  }
+
+  /** An {@link ExtractorOutput} that collects the samples of all tracks in output order. */
+  private static final class SampleCollector implements ExtractorOutput {
+
+    public final List<Sample> samples;
+    private final SparseArray<SampleCollectorTrackOutput> trackOutputs;
+    @Nullable public SeekMap seekMap;
+
+    public SampleCollector() {
+      samples = new ArrayList<>();
+      trackOutputs = new SparseArray<>();
+    }
+
+    @Override
+    public TrackOutput track(int id, @C.TrackType int type) {
+      @Nullable SampleCollectorTrackOutput trackOutput = trackOutputs.get(id);
+      if (trackOutput == null) {
+        trackOutput = new SampleCollectorTrackOutput(id, samples);
+        trackOutputs.put(id, trackOutput);
+      }
+      return trackOutput;
+    }
+
+    /** Discards the samples collected so far, including any partially output samples. */
+    public void discardSamples() {
+      samples.clear();
+      for (int i = 0; i < trackOutputs.size(); i++) {
+        trackOutputs.valueAt(i).discardPendingData();
+      }
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      this.seekMap = seekMap;
+    }
+  }
+
+  private static final class SampleCollectorTrackOutput implements TrackOutput {
+
+    private final int id;
+    private final List<Sample> samples;
+
+    @Nullable private Format format;
+    private byte[] pendingData;
+    private int pendingDataLength;
+
+    public SampleCollectorTrackOutput(int id, List<Sample> samples) {
+      this.id = id;
+      this.samples = samples;
+      pendingData = Util.EMPTY_BYTE_ARRAY;
+    }
+
+    @Override
+    public void format(Format format) {
+      this.format = format;
+    }
+
+    @Override
+    public int sampleData(
+        DataReader input, int length, boolean allowEndOfInput, @SampleDataPart int sampleDataPart)
+        throws IOException {
+      ensurePendingDataCapacity(length);
+      int bytesAppended = input.read(pendingData, pendingDataLength, length);
+      if (bytesAppended == C.RESULT_END_OF_INPUT) {
+        if (allowEndOfInput) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        throw new EOFException();
+      }
+      pendingDataLength += bytesAppended;
+      return bytesAppended;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+      ensurePendingDataCapacity(length);
+      data.readBytes(pendingData, pendingDataLength, length);
+      pendingDataLength += length;
+    }
+
+    @Override
+    public void sampleMetadata(
+        long timeUs,
+        @C.BufferFlags int flags,
+        int size,
+        int offset,
+        @Nullable CryptoData cryptoData) {
+      int sampleStart = pendingDataLength - offset - size;
+      byte[] data = Arrays.copyOfRange(pendingData, sampleStart, sampleStart + size);
+      samples.add(new Sample(id, checkNotNull(format), timeUs, flags, data));
+      // Keep the data that has been output for subsequent samples.
+      System.arraycopy(pendingData, pendingDataLength - offset, pendingData, 0, offset);
+      pendingDataLength = offset;
+    }
+
+    public void discardPendingData() {
+      pendingDataLength = 0;
+    }
+
+    private void ensurePendingDataCapacity(int length) {
+      if (pendingDataLength + length > pendingData.length) {
+        pendingData =
+            Arrays.copyOf(pendingData, max(pendingData.length * 2, pendingDataLength + length));
+      }
+    }
+  }
+}
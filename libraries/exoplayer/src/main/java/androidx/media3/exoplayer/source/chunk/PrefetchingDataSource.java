@@ -0,0 +1,475 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.chunk;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link DataSource} that loads the data of upcoming chunks in parallel with the chunk that's
+ * currently being loaded.
+ *
+ * <p>A chunk source passes the {@link DataSpec DataSpecs} of the chunks it expects to load next to
+ * {@link #setUpcomingDataSpecs(List)}. Some of them are loaded on background threads, and their
+ * data is held in memory until a chunk opens the same {@link DataSpec} through this instance. On
+ * links with a high round trip time this hides the time to first byte of each request. Chunks still
+ * read their data through a single {@link DataSource} in order, so loading and cancellation of
+ * chunks are unaffected.
+ *
+ * <p>Prefetched data is available to the reading chunk while it's still being loaded. If a prefetch
+ * fails, or its data exceeds the maximum prefetch length, the remaining data is read from the
+ * upstream {@link DataSource}. {@link DataSpec DataSpecs} for which no prefetch exists are read
+ * from the upstream {@link DataSource} directly.
+ *
+ * <p>{@link #release()} must be called when the instance is no longer required.
+ */
+@UnstableApi
+public final class PrefetchingDataSource implements DataSource {
+
+  /** The default maximum length of the data held in memory for each prefetched chunk. */
+  public static final int DEFAULT_MAX_PREFETCH_LENGTH = 4 * 1024 * 1024;
+
+  private static final String THREAD_NAME = "ExoPlayer:PrefetchingDataSource";
+  private static final int INITIAL_BUFFER_LENGTH = 64 * 1024;
+  private static final int READ_GRANULARITY = 16 * 1024;
+  private static final int READ_RESULT_INCOMPLETE = -2;
+
+  private final DataSource upstream;
+  private final DataSource.Factory prefetchDataSourceFactory;
+  private final int maxParallelLoadCount;
+  private final int maxPrefetchLength;
+  private final List<TransferListener> transferListeners;
+
+  @GuardedBy("prefetches")
+  private final List<Prefetch> prefetches;
+
+  @GuardedBy("prefetches")
+  @Nullable
+  private ExecutorService executorService;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private Prefetch openedPrefetch;
+  private boolean upstreamOpened;
+  private int readPosition;
+
+  /**
+   * Creates an instance.
+   *
+   * @param upstream The {@link DataSource} from which data that hasn't been prefetched is read.
+   * @param prefetchDataSourceFactory A factory for the {@link DataSource DataSources} that load
+   *     prefetched data.
+   * @param maxParallelLoadCount The maximum number of requests in flight, including the request of
+   *     the chunk that's being loaded. Must be at least 2.
+   * @param maxPrefetchLength The maximum length of the data held in memory for each prefetched
+   *     chunk, in bytes.
+   */
+  public PrefetchingDataSource(
+      DataSource upstream,
+      DataSource.Factory prefetchDataSourceFactory,
+      int maxParallelLoadCount,
+      int maxPrefetchLength) {
+    checkArgument(maxParallelLoadCount >= 2);
+    checkArgument(maxPrefetchLength > 0);
+    this.upstream = upstream;
+    this.prefetchDataSourceFactory = prefetchDataSourceFactory;
+    this.maxParallelLoadCount = maxParallelLoadCount;
+    this.maxPrefetchLength = maxPrefetchLength;
+    transferListeners = new ArrayList<>();
+    prefetches = new ArrayList<>();
+  }
+
+  /**
+   * Returns the maximum number of requests in flight, including the request of the chunk that's
+   * being loaded.
+   */
+  public int getMaxParallelLoadCount() {
+    return maxParallelLoadCount;
+  }
+
+  /**
+   * Sets the {@link DataSpec DataSpecs} of the chunks that are expected to be loaded next, in load
+   * order.
+   *
+   * <p>The first {@link DataSpec} is the one of the chunk that's about to be loaded. It isn't
+   * prefetched, but an existing prefetch for it is kept. Up to {@code maxParallelLoadCount - 1} of
+   * the following {@link DataSpec DataSpecs} are prefetched. Existing prefetches for {@link
+   * DataSpec DataSpecs} that aren't in the list are canceled, for example after a seek or a track
+   * switch.
+   *
+   * <p>{@link DataSpec DataSpecs} with an HTTP body or with {@link
+   * DataSpec#FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED} set aren't prefetched.
+   *
+   * @param dataSpecs The {@link DataSpec DataSpecs} of the chunks that are expected to be loaded
+   *     next.
+   */
+  public void setUpcomingDataSpecs(List<DataSpec> dataSpecs) {
+    int upcomingCount = min(dataSpecs.size(), maxParallelLoadCount);
+    synchronized (prefetches) {
+      for (int i = prefetches.size() - 1; i >= 0; i--) {
+        Prefetch prefetch = prefetches.get(i);
+        if (indexOfSameRequest(dataSpecs, upcomingCount, prefetch.dataSpec) == C.INDEX_UNSET) {
+          prefetches.remove(i);
+          prefetch.cancel();
+        }
+      }
+      for (int i = 1; i < upcomingCount; i++) {
+        DataSpec dataSpec = dataSpecs.get(i);
+        if (dataSpec.httpBody != null
+            || dataSpec.isFlagSet(DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED)
+            || indexOfSameRequest(prefetches, dataSpec) != C.INDEX_UNSET) {
+          continue;
+        }
+        if (executorService == null) {
+          executorService =
+              Executors.newFixedThreadPool(
+                  maxParallelLoadCount - 1, runnable -> new Thread(runnable, THREAD_NAME));
+        }
+        DataSource prefetchDataSource = prefetchDataSourceFactory.createDataSource();
+        for (int j = 0; j < transferListeners.size(); j++) {
+          prefetchDataSource.addTransferListener(transferListeners.get(j));
+        }
+        Prefetch prefetch = new Prefetch(dataSpec, prefetchDataSource);
+        prefetches.add(prefetch);
+        prefetch.start(executorService);
+      }
+    }
+  }
+
+  /** Cancels all prefetches and releases the prefetch threads. */
+  public void release() {
+    synchronized (prefetches) {
+      for (int i = 0; i < prefetches.size(); i++) {
+        prefetches.get(i).cancel();
+      }
+      prefetches.clear();
+      if (executorService != null) {
+        executorService.shutdown();
+        executorService = null;
+      }
+    }
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+    synchronized (prefetches) {
+      transferListeners.add(transferListener);
+    }
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    readPosition = 0;
+    @Nullable Prefetch prefetch = removePrefetch(dataSpec);
+    if (prefetch != null) {
+      try {
+        if (prefetch.blockUntilOpened()) {
+          openedPrefetch = prefetch;
+          return prefetch.openedLength;
+        }
+      } catch (InterruptedException e) {
+        prefetch.cancel();
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      // The prefetch failed before any data was loaded. Load the data from upstream instead.
+    }
+    upstreamOpened = true;
+    return upstream.open(dataSpec);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    @Nullable Prefetch prefetch = openedPrefetch;
+    if (prefetch == null) {
+      return upstream.read(buffer, offset, length);
+    }
+    int bytesRead;
+    try {
+      bytesRead = prefetch.read(readPosition, buffer, offset, length);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    if (bytesRead > 0) {
+      readPosition += bytesRead;
+      return bytesRead;
+    } else if (bytesRead == C.RESULT_END_OF_INPUT
+        || (prefetch.openedLength != C.LENGTH_UNSET && readPosition == prefetch.openedLength)) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    // The prefetch stopped before the end of the data. Read the remaining data from upstream.
+    prefetch.cancel();
+    openedPrefetch = null;
+    upstreamOpened = true;
+    upstream.open(Util.castNonNull(dataSpec).subrange(readPosition));
+    return upstream.read(buffer, offset, length);
+  }
+
+  @Nullable
+  @Override
+  public Uri getUri() {
+    @Nullable Prefetch prefetch = openedPrefetch;
+    if (prefetch != null) {
+      return prefetch.uri;
+    }
+    return upstreamOpened ? upstream.getUri() : null;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    @Nullable Prefetch prefetch = openedPrefetch;
+    if (prefetch != null) {
+      return prefetch.responseHeaders;
+    }
+    return upstreamOpened ? upstream.getResponseHeaders() : Collections.emptyMap();
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataSpec = null;
+    if (openedPrefetch != null) {
+      openedPrefetch.cancel();
+      openedPrefetch = null;
+    }
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  @Nullable
+  private Prefetch removePrefetch(DataSpec dataSpec) {
+    synchronized (prefetches) {
+      int index = indexOfSameRequest(prefetches, dataSpec);
+      return index == C.INDEX_UNSET ? null : prefetches.remove(index);
+    }
+  }
+
+  private static int indexOfSameRequest(List<Prefetch> prefetches, DataSpec dataSpec) {
+    for (int i = 0; i < prefetches.size(); i++) {
+      if (isSameRequest(prefetches.get(i).dataSpec, dataSpec)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  private static int indexOfSameRequest(List<DataSpec> dataSpecs, int count, DataSpec dataSpec) {
+    for (int i = 0; i < count; i++) {
+      if (isSameRequest(dataSpecs.get(i), dataSpec)) {
+        return i;
+      }
+    }
+    return C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns whether two {@link DataSpec DataSpecs} request the same data. Flags that don't affect
+   * the returned data are ignored.
+   */
+  private static boolean isSameRequest(DataSpec dataSpec, DataSpec other) {
+    return dataSpec.uri.equals(other.uri)
+        && dataSpec.uriPositionOffset == other.uriPositionOffset
+        && dataSpec.position == other.position
+        && dataSpec.length == other.length
+        && dataSpec.httpMethod == other.httpMethod
+        && dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP) == other.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+        && Util.areEqual(dataSpec.key, other.key)
+        && dataSpec.httpRequestHeaders.equals(other.httpRequestHeaders);
+  }
+
+  /** Loads the data of a single {@link DataSpec} into memory. */
+  private final class Prefetch implements Runnable {
+
+    public final DataSpec dataSpec;
+
+    private final DataSource dataSource;
+
+    @GuardedBy("this")
+    private byte[] data;
+
+    @GuardedBy("this")
+    private int length;
+
+    @GuardedBy("this")
+    private boolean opened;
+
+    @GuardedBy("this")
+    private boolean loadedToEnd;
+
+    @GuardedBy("this")
+    private boolean finished;
+
+    @GuardedBy("this")
+    private boolean canceled;
+
+    @GuardedBy("this")
+    @Nullable
+    private Future<?> future;
+
+    // Written before opened is set, and read after opened has been observed.
+    private long openedLength;
+    @Nullable private Uri uri;
+    private Map<String, List<String>> responseHeaders;
+
+    public Prefetch(DataSpec dataSpec, DataSource dataSource) {
+      this.dataSpec = dataSpec;
+      this.dataSource = dataSource;
+      data = Util.EMPTY_BYTE_ARRAY;
+      openedLength = C.LENGTH_UNSET;
+      responseHeaders = Collections.emptyMap();
+    }
+
+    public synchronized void start(ExecutorService executorService) {
+      future = executorService.submit(this);
+    }
+
+    public synchronized void cancel() {
+      if (!canceled) {
+        canceled = true;
+        data = Util.EMPTY_BYTE_ARRAY;
+        if (future != null) {
+          future.cancel(/* mayInterruptIfRunning= */ true);
+        }
+        notifyAll();
+      }
+    }
+
+    /**
+     * Blocks until the prefetch has been opened or has failed.
+     *
+     * @return Whether the prefetch has been opened.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public synchronized boolean blockUntilOpened() throws InterruptedException {
+      while (!opened && !finished && !canceled) {
+        wait();
+      }
+      return opened && !canceled;
+    }
+
+    /**
+     * Reads prefetched data, blocking until it's available.
+     *
+     * @param position The position in the data from which to read.
+     * @param buffer The buffer into which the data should be read.
+     * @param offset The start offset into {@code buffer} at which data should be written.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes read, {@link C#RESULT_END_OF_INPUT} if all data has been read, or
+     *     {@link #READ_RESULT_INCOMPLETE} if the prefetch stopped before the end of the data.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public synchronized int read(int position, byte[] buffer, int offset, int length)
+        throws InterruptedException {
+      while (position == this.length && !finished && !canceled) {
+        wait();
+      }
+      if (canceled) {
+        return READ_RESULT_INCOMPLETE;
+      } else if (position < this.length) {
+        int bytesToRead = min(length, this.length - position);
+        System.arraycopy(data, position, buffer, offset, bytesToRead);
+        return bytesToRead;
+      }
+      return loadedToEnd ? C.RESULT_END_OF_INPUT : READ_RESULT_INCOMPLETE;
+    }
+
+    @Override
+    public void run() {
+      try {
+        long openedLength = dataSource.open(dataSpec);
+        synchronized (this) {
+          if (canceled) {
+            return;
+          }
+          this.openedLength = openedLength;
+          uri = dataSource.getUri();
+          responseHeaders = dataSource.getResponseHeaders();
+          data =
+              new byte
+                  [openedLength != C.LENGTH_UNSET
+                      ? (int) min(openedLength, maxPrefetchLength)
+                      : min(INITIAL_BUFFER_LENGTH, maxPrefetchLength)];
+          opened = true;
+          notifyAll();
+        }
+        byte[] buffer = new byte[READ_GRANULARITY];
+        while (true) {
+          int bytesToRead;
+          synchronized (this) {
+            if (canceled || length == maxPrefetchLength) {
+              return;
+            }
+            bytesToRead = min(buffer.length, maxPrefetchLength - length);
+          }
+          int bytesRead = dataSource.read(buffer, /* offset= */ 0, bytesToRead);
+          synchronized (this) {
+            if (canceled) {
+              return;
+            }
+            if (bytesRead == C.RESULT_END_OF_INPUT) {
+              loadedToEnd = true;
+              return;
+            }
+            if (length + bytesRead > data.length) {
+              data =
+                  Arrays.copyOf(
+                      data, min(maxPrefetchLength, max(data.length * 2, length + bytesRead)));
+            }
+            System.arraycopy(buffer, /* srcPos= */ 0, data, length, bytesRead);
+            length += bytesRead;
+            notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        // Ignore. The remaining data is loaded from upstream when it's read.
+      } finally {
+        DataSourceUtil.closeQuietly(dataSource);
+        synchronized (this) {
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.preload;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkState;
+
+import android.os.Looper;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.RendererCapabilities;
+import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.trackselection.TrackSelector;
+import androidx.media3.exoplayer.upstream.Allocator;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preloads the {@link MediaSource MediaSources} of a playlist around the currently playing item, so
+ * that transitions to neighbouring items start instantly.
+ *
+ * <p>The sources of the next {@code nextItemCount} and previous {@code previousItemCount} items
+ * relative to the {@link #setCurrentIndex(int) current index} are prepared, have their tracks
+ * selected and load up to {@code targetPreloadDurationUs} of media, as long as the total number of
+ * preloaded bytes stays within {@code maxPreloadBytes}. Sources outside of this range are cleared.
+ * The app sets the {@link PreloadMediaSource} returned by {@link #getMediaSource(int)} on the
+ * player when transitioning to an item.
+ *
+ * <p>This class is not thread safe and must be used on the thread the player is accessed from.
+ */
+@UnstableApi
+public final class DefaultPreloadManager {
+
+  /** The default number of items after the current item that are preloaded. */
+  public static final int DEFAULT_NEXT_ITEM_COUNT = 2;
+
+  /** The default number of items before the current item that are preloaded. */
+  public static final int DEFAULT_PREVIOUS_ITEM_COUNT = 1;
+
+  /** The default duration of media preloaded for each item, in microseconds. */
+  public static final long DEFAULT_TARGET_PRELOAD_DURATION_US = 5_000_000;
+
+  /** The default maximum number of bytes preloaded across all items. */
+  public static final long DEFAULT_MAX_PRELOAD_BYTES = 20 * 1024 * 1024;
+
+  /** Builder for {@link DefaultPreloadManager}. */
+  public static final class Builder {
+
+    private final TrackSelector trackSelector;
+    private final BandwidthMeter bandwidthMeter;
+    private final RendererCapabilities[] rendererCapabilities;
+    private final Allocator allocator;
+    private final Looper preloadLooper;
+    private int nextItemCount;
+    private int previousItemCount;
+    private long targetPreloadDurationUs;
+    private long maxPreloadBytes;
+    private PlayerId playerId;
+    private Clock clock;
+    private boolean buildCalled;
+
+    /**
+     * Creates a new builder.
+     *
+     * @param trackSelector The {@link TrackSelector} used to select tracks for preloading. It must
+     *     not be the instance used by the player.
+     * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+     * @param rendererCapabilities The {@link RendererCapabilities} of the renderers of the player.
+     * @param allocator The {@link Allocator} of the player's {@link
+     *     androidx.media3.exoplayer.LoadControl}.
+     * @param preloadLooper The playback {@link Looper} of the player.
+     */
+    public Builder(
+        TrackSelector trackSelector,
+        BandwidthMeter bandwidthMeter,
+        RendererCapabilities[] rendererCapabilities,
+        Allocator allocator,
+        Looper preloadLooper) {
+      this.trackSelector = trackSelector;
+      this.bandwidthMeter = bandwidthMeter;
+      this.rendererCapabilities = rendererCapabilities;
+      this.allocator = allocator;
+      this.preloadLooper = preloadLooper;
+      nextItemCount = DEFAULT_NEXT_ITEM_COUNT;
+      previousItemCount = DEFAULT_PREVIOUS_ITEM_COUNT;
+      targetPreloadDurationUs = DEFAULT_TARGET_PRELOAD_DURATION_US;
+      maxPreloadBytes = DEFAULT_MAX_PRELOAD_BYTES;
+      playerId = PlayerId.UNSET;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the number of items around the current item that are preloaded.
+     *
+     * @param previousItemCount The number of items before the current item.
+     * @param nextItemCount The number of items after the current item.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setPreloadItemCounts(int previousItemCount, int nextItemCount) {
+      checkState(!buildCalled);
+      checkArgument(previousItemCount >= 0 && nextItemCount >= 0);
+      this.previousItemCount = previousItemCount;
+      this.nextItemCount = nextItemCount;
+      return this;
+    }
+
+    /**
+     * Sets the duration of media preloaded for each item. A value of 0 only prepares the source and
+     * its first period without loading media.
+     *
+     * @param targetPreloadDurationUs The target duration, in microseconds.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setTargetPreloadDurationUs(long targetPreloadDurationUs) {
+      checkState(!buildCalled);
+      checkArgument(targetPreloadDurationUs >= 0);
+      this.targetPreloadDurationUs = targetPreloadDurationUs;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes preloaded across all items.
+     *
+     * @param maxPreloadBytes The maximum number of bytes.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setMaxPreloadBytes(long maxPreloadBytes) {
+      checkState(!buildCalled);
+      checkArgument(maxPreloadBytes >= 0);
+      this.maxPreloadBytes = maxPreloadBytes;
+      return this;
+    }
+
+    /**
+     * Sets the {@link PlayerId} of the player, which is passed to the sources when they are
+     * preloaded. The default value is {@link PlayerId#UNSET}.
+     *
+     * @param playerId The {@link androidx.media3.exoplayer.ExoPlayer#getPlayerId() PlayerId} of the
+     *     player.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setPlayerId(PlayerId playerId) {
+      checkState(!buildCalled);
+      this.playerId = playerId;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to measure the preload durations. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setClock(Clock clock) {
+      checkState(!buildCalled);
+      this.clock = clock;
+      return this;
+    }
+
+    /** Builds the {@link DefaultPreloadManager}. */
+    public DefaultPreloadManager build() {
+      checkState(!buildCalled);
+      buildCalled = true;
+      return new DefaultPreloadManager(this);
+    }
+  }
+
+  private final PreloadMediaSource.Factory preloadMediaSourceFactory;
+  private final int nextItemCount;
+  private final int previousItemCount;
+  private final long targetPreloadDurationUs;
+  private final long maxPreloadBytes;
+  private final List<PreloadMediaSource> mediaSources;
+
+  /** A snapshot of {@link #mediaSources} that can be read on the preload thread. */
+  private volatile ImmutableList<PreloadMediaSource> mediaSourcesSnapshot;
+
+  private final AtomicLong totalStartupTimeSavedMs;
+  private final AtomicInteger usedPreloadCount;
+
+  private int currentIndex;
+
+  private DefaultPreloadManager(Builder builder) {
+    nextItemCount = builder.nextItemCount;
+    previousItemCount = builder.previousItemCount;
+    targetPreloadDurationUs = builder.targetPreloadDurationUs;
+    maxPreloadBytes = builder.maxPreloadBytes;
+    mediaSources = new ArrayList<>();
+    mediaSourcesSnapshot = ImmutableList.of();
+    totalStartupTimeSavedMs = new AtomicLong();
+    usedPreloadCount = new AtomicInteger();
+    currentIndex = C.INDEX_UNSET;
+    preloadMediaSourceFactory =
+        new PreloadMediaSource.Factory(
+                new PreloadControlImpl(),
+                builder.trackSelector,
+                builder.bandwidthMeter,
+                builder.rendererCapabilities,
+                builder.allocator,
+                builder.preloadLooper)
+            .setPlayerId(builder.playerId)
+            .setClock(builder.clock);
+  }
+
+  /**
+   * Adds a {@link MediaSource} at the end of the playlist.
+   *
+   * @param mediaSource The {@link MediaSource} to add.
+   */
+  public void add(MediaSource mediaSource) {
+    add(mediaSources.size(), mediaSource);
+  }
+
+  /**
+   * Adds a {@link MediaSource} at the given position in the playlist.
+   *
+   * @param index The index at which to add the source.
+   * @param mediaSource The {@link MediaSource} to add.
+   */
+  public void add(int index, MediaSource mediaSource) {
+    mediaSources.add(index, preloadMediaSourceFactory.createMediaSource(mediaSource));
+    if (currentIndex != C.INDEX_UNSET && index <= currentIndex) {
+      currentIndex++;
+    }
+    onMediaSourcesChanged();
+  }
+
+  /**
+   * Removes the {@link MediaSource} at the given position from the playlist, and discards its
+   * preloaded data.
+   *
+   * @param index The index of the source to remove.
+   */
+  public void remove(int index) {
+    PreloadMediaSource mediaSource = mediaSources.remove(index);
+    mediaSource.clear();
+    if (index < currentIndex) {
+      currentIndex--;
+    } else if (index == currentIndex) {
+      currentIndex = C.INDEX_UNSET;
+    }
+    onMediaSourcesChanged();
+  }
+
+  /** Returns the number of items in the playlist. */
+  public int getSize() {
+    return mediaSources.size();
+  }
+
+  /**
+   * Returns the {@link MediaSource} to set on the player for the item at the given position. If the
+   * item has been preloaded, the player reuses the preloaded source and period.
+   *
+   * @param index The index of the item.
+   * @return The {@link PreloadMediaSource} of the item.
+   */
+  public PreloadMediaSource getMediaSource(int index) {
+    return mediaSources.get(index);
+  }
+
+  /**
+   * Sets the index of the item that is currently playing, and updates the preloaded items around
+   * it.
+   *
+   * @param currentIndex The index of the current item.
+   */
+  public void setCurrentIndex(int currentIndex) {
+    checkArgument(currentIndex >= 0 && currentIndex < mediaSources.size());
+    this.currentIndex = currentIndex;
+    invalidate();
+  }
+
+  /** Returns the index of the item that is currently playing, or {@link C#INDEX_UNSET}. */
+  public int getCurrentIndex() {
+    return currentIndex;
+  }
+
+  /**
+   * Starts preloading the items in the preload range around the current item, and clears the
+   * preloaded data of all other items.
+   */
+  public void invalidate() {
+    for (int i = 0; i < mediaSources.size(); i++) {
+      PreloadMediaSource mediaSource = mediaSources.get(i);
+      if (i == currentIndex) {
+        continue;
+      }
+      if (isInPreloadRange(i)) {
+        mediaSource.preload();
+      } else {
+        mediaSource.clear();
+      }
+    }
+  }
+
+  /**
+   * Discards preloaded data under memory pressure, for example from {@link
+   * android.content.ComponentCallbacks2#onTrimMemory(int)}.
+   *
+   * @param keepNextItem Whether the preloaded data of the item directly after the current item is
+   *     kept, so that the most likely transition stays instant.
+   */
+  public void trimMemory(boolean keepNextItem) {
+    for (int i = 0; i < mediaSources.size(); i++) {
+      boolean isNextItem = currentIndex != C.INDEX_UNSET && i == currentIndex + 1;
+      if (i != currentIndex && !(keepNextItem && isNextItem)) {
+        mediaSources.get(i).clear();
+      }
+    }
+  }
+
+  /** Returns the number of bytes currently held by preloaded items. */
+  public long getTotalPreloadedBytes() {
+    return getTotalPreloadedBytes(mediaSourcesSnapshot);
+  }
+
+  /**
+   * Returns the accumulated startup time saved by transitions to preloaded items, in milliseconds.
+   */
+  public long getTotalStartupTimeSavedMs() {
+    return totalStartupTimeSavedMs.get();
+  }
+
+  /** Returns the number of transitions that used a preloaded item. */
+  public int getUsedPreloadCount() {
+    return usedPreloadCount.get();
+  }
+
+  /** Releases the manager and discards all preloaded data. */
+  public void release() {
+    for (int i = 0; i < mediaSources.size(); i++) {
+      mediaSources.get(i).clear();
+    }
+    mediaSources.clear();
+    currentIndex = C.INDEX_UNSET;
+    onMediaSourcesChanged();
+  }
+
+  private boolean isInPreloadRange(int index) {
+    if (currentIndex == C.INDEX_UNSET) {
+      return false;
+    }
+    int offset = index - currentIndex;
+    return offset > 0 ? offset <= nextItemCount : -offset <= previousItemCount;
+  }
+
+  private void onMediaSourcesChanged() {
+    mediaSourcesSnapshot = ImmutableList.copyOf(mediaSources);
+  }
+
+  private static long getTotalPreloadedBytes(List<PreloadMediaSource> mediaSources) {
+    long totalPreloadedBytes = 0;
+    for (int i = 0; i < mediaSources.size(); i++) {
+      PreloadMediaSource mediaSource = mediaSources.get(i);
+      if (!mediaSource.isUsedByPlayer()) {
+        totalPreloadedBytes += mediaSource.getPreloadedBytes();
+      }
+    }
+    return totalPreloadedBytes;
+  }
+
+  private final class PreloadControlImpl implements PreloadMediaSource.PreloadControl {
+
+    @Override
+    public boolean onSourcePrepared(PreloadMediaSource mediaSource) {
+      return isWithinByteBudget();
+    }
+
+    @Override
+    public boolean onTracksSelected(PreloadMediaSource mediaSource) {
+      return targetPreloadDurationUs > 0 && isWithinByteBudget();
+    }
+
+    @Override
+    public boolean onContinueLoadingRequested(
+        PreloadMediaSource mediaSource, long bufferedDurationUs) {
+      return bufferedDurationUs < targetPreloadDurationUs && isWithinByteBudget();
+    }
+
+    @Override
+    public void onUsedByPlayer(PreloadMediaSource mediaSource) {
+      usedPreloadCount.incrementAndGet();
+      totalStartupTimeSavedMs.addAndGet(mediaSource.getPreloadWorkDurationMs());
+    }
+
+    private boolean isWithinByteBudget() {
+      return getTotalPreloadedBytes(mediaSourcesSnapshot) < maxPreloadBytes;
+    }
+  }
+}
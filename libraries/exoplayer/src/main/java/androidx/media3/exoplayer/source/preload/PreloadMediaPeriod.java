@@ -0,0 +1,301 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.preload;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.TrackGroupArray;
+import androidx.media3.exoplayer.SeekParameters;
+import androidx.media3.exoplayer.source.MediaPeriod;
+import androidx.media3.exoplayer.source.SampleStream;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import java.io.IOException;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A {@link MediaPeriod} that can be prepared, and can have tracks selected and loaded, before it is
+ * handed to the player.
+ *
+ * <p>Once the player calls {@link #prepare(Callback, long)}, all callbacks are forwarded to the
+ * player. If the tracks selected by the player match the tracks selected for preloading, the
+ * preloaded {@link SampleStream SampleStreams} and their buffered media are reused, and the wrapped
+ * period is updated to use the player's {@link ExoTrackSelection ExoTrackSelections}.
+ */
+/* package */ final class PreloadMediaPeriod implements MediaPeriod {
+
+  /** The wrapped {@link MediaPeriod}. */
+  public final MediaPeriod mediaPeriod;
+
+  @Nullable private Callback callback;
+  @Nullable private PreloadTrackSelectionHolder preloadTrackSelectionHolder;
+  private boolean prepareInternalCalled;
+  private boolean prepared;
+
+  /**
+   * Creates the preload media period.
+   *
+   * @param mediaPeriod The wrapped {@link MediaPeriod}.
+   */
+  public PreloadMediaPeriod(MediaPeriod mediaPeriod) {
+    this.mediaPeriod = mediaPeriod;
+  }
+
+  /**
+   * Starts preparing the period for preloading.
+   *
+   * @param callback The {@link Callback} receiving preparation and loading events until the player
+   *     calls {@link #prepare(Callback, long)}.
+   * @param positionUs The expected start position, in microseconds.
+   */
+  public void preload(Callback callback, long positionUs) {
+    this.callback = callback;
+    if (prepared) {
+      callback.onPrepared(this);
+    }
+    if (!prepareInternalCalled) {
+      prepareInternal(positionUs);
+    }
+  }
+
+  /** Returns whether the wrapped period has completed preparation. */
+  public boolean isPrepared() {
+    return prepared;
+  }
+
+  /**
+   * Selects the tracks to be loaded while preloading. The selections are enabled by this method,
+   * and disabled once they are replaced or the player selects its own tracks.
+   *
+   * @param selections The {@link ExoTrackSelection} for each renderer, or null if the renderer is
+   *     disabled.
+   * @param positionUs The position at which the tracks should start loading, in microseconds.
+   * @return The actual position at which the tracks were enabled, in microseconds.
+   */
+  public long selectTracksForPreloading(
+      @NullableType ExoTrackSelection[] selections, long positionUs) {
+    @NullableType SampleStream[] preloadedStreams = new SampleStream[selections.length];
+    boolean[] preloadedStreamResetFlags = new boolean[selections.length];
+    boolean[] mayRetainStreamFlags = new boolean[selections.length];
+    if (preloadTrackSelectionHolder != null) {
+      // Release any streams of a previous preload track selection.
+      System.arraycopy(
+          preloadTrackSelectionHolder.streams,
+          /* srcPos= */ 0,
+          preloadedStreams,
+          /* destPos= */ 0,
+          selections.length);
+      disableSelections(preloadTrackSelectionHolder.selections);
+    }
+    for (@Nullable ExoTrackSelection selection : selections) {
+      if (selection != null) {
+        selection.enable();
+      }
+    }
+    long trackSelectionPositionUs =
+        mediaPeriod.selectTracks(
+            selections,
+            mayRetainStreamFlags,
+            preloadedStreams,
+            preloadedStreamResetFlags,
+            positionUs);
+    preloadTrackSelectionHolder =
+        new PreloadTrackSelectionHolder(selections, preloadedStreams, trackSelectionPositionUs);
+    return trackSelectionPositionUs;
+  }
+
+  /** Disables the track selection made for preloading, if there is one. */
+  public void releasePreloadTrackSelection() {
+    if (preloadTrackSelectionHolder != null) {
+      disableSelections(preloadTrackSelectionHolder.selections);
+      preloadTrackSelectionHolder = null;
+    }
+  }
+
+  @Override
+  public void prepare(Callback callback, long positionUs) {
+    this.callback = callback;
+    if (prepared) {
+      callback.onPrepared(this);
+      return;
+    }
+    if (!prepareInternalCalled) {
+      prepareInternal(positionUs);
+    }
+  }
+
+  @Override
+  public void maybeThrowPrepareError() throws IOException {
+    mediaPeriod.maybeThrowPrepareError();
+  }
+
+  @Override
+  public TrackGroupArray getTrackGroups() {
+    return mediaPeriod.getTrackGroups();
+  }
+
+  @Override
+  public long selectTracks(
+      @NullableType ExoTrackSelection[] selections,
+      boolean[] mayRetainStreamFlags,
+      @NullableType SampleStream[] streams,
+      boolean[] streamResetFlags,
+      long positionUs) {
+    @Nullable PreloadTrackSelectionHolder holder = preloadTrackSelectionHolder;
+    if (holder == null) {
+      return mediaPeriod.selectTracks(
+          selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+    }
+    preloadTrackSelectionHolder = null;
+    disableSelections(holder.selections);
+    boolean canReuseStreams =
+        positionUs == holder.trackSelectionPositionUs
+            && selections.length == holder.selections.length;
+    for (int i = 0; canReuseStreams && i < selections.length; i++) {
+      canReuseStreams = streams[i] == null && isSameSelection(selections[i], holder.selections[i]);
+    }
+    if (canReuseStreams) {
+      // Let the wrapped period retain the preloaded streams, so that it switches to the player's
+      // selections, for example for adaptive track selection.
+      for (int i = 0; i < selections.length; i++) {
+        streams[i] = holder.streams[i];
+        mayRetainStreamFlags[i] = true;
+      }
+      long trackSelectionPositionUs =
+          mediaPeriod.selectTracks(
+              selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+      for (int i = 0; i < selections.length; i++) {
+        // The preloaded streams are new to the player.
+        streamResetFlags[i] |= streams[i] != null;
+      }
+      return trackSelectionPositionUs;
+    }
+    // Hand the preloaded streams to the wrapped period so that they are released.
+    for (int i = 0; i < min(selections.length, holder.streams.length); i++) {
+      if (streams[i] == null && holder.streams[i] != null) {
+        streams[i] = holder.streams[i];
+        mayRetainStreamFlags[i] = false;
+      }
+    }
+    return mediaPeriod.selectTracks(
+        selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+  }
+
+  @Override
+  public void discardBuffer(long positionUs, boolean toKeyframe) {
+    mediaPeriod.discardBuffer(positionUs, toKeyframe);
+  }
+
+  @Override
+  public long readDiscontinuity() {
+    return mediaPeriod.readDiscontinuity();
+  }
+
+  @Override
+  public long seekToUs(long positionUs) {
+    return mediaPeriod.seekToUs(positionUs);
+  }
+
+  @Override
+  public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+    return mediaPeriod.getAdjustedSeekPositionUs(positionUs, seekParameters);
+  }
+
+  @Override
+  public long getBufferedPositionUs() {
+    return mediaPeriod.getBufferedPositionUs();
+  }
+
+  @Override
+  public long getNextLoadPositionUs() {
+    return mediaPeriod.getNextLoadPositionUs();
+  }
+
+  @Override
+  public boolean continueLoading(long positionUs) {
+    return mediaPeriod.continueLoading(positionUs);
+  }
+
+  @Override
+  public boolean isLoading() {
+    return mediaPeriod.isLoading();
+  }
+
+  @Override
+  public void reevaluateBuffer(long positionUs) {
+    mediaPeriod.reevaluateBuffer(positionUs);
+  }
+
+  private void prepareInternal(long positionUs) {
+    prepareInternalCalled = true;
+    mediaPeriod.prepare(
+        new Callback() {
+          @Override
+          public void onPrepared(MediaPeriod mediaPeriod) {
+            prepared = true;
+            checkNotNull(callback).onPrepared(PreloadMediaPeriod.this);
+          }
+
+          @Override
+          public void onContinueLoadingRequested(MediaPeriod source) {
+            checkNotNull(callback).onContinueLoadingRequested(PreloadMediaPeriod.this);
+          }
+        },
+        positionUs);
+  }
+
+  private static void disableSelections(@NullableType ExoTrackSelection[] selections) {
+    for (@Nullable ExoTrackSelection selection : selections) {
+      if (selection != null) {
+        selection.disable();
+      }
+    }
+  }
+
+  private static boolean isSameSelection(
+      @Nullable ExoTrackSelection selection, @Nullable ExoTrackSelection preloadSelection) {
+    if (selection == null || preloadSelection == null) {
+      return selection == preloadSelection;
+    }
+    if (!selection.getTrackGroup().equals(preloadSelection.getTrackGroup())
+        || selection.length() != preloadSelection.length()) {
+      return false;
+    }
+    for (int i = 0; i < selection.length(); i++) {
+      if (selection.getIndexInTrackGroup(i) != preloadSelection.getIndexInTrackGroup(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class PreloadTrackSelectionHolder {
+
+    public final @NullableType ExoTrackSelection[] selections;
+    public final @NullableType SampleStream[] streams;
+    public final long trackSelectionPositionUs;
+
+    public PreloadTrackSelectionHolder(
+        @NullableType ExoTrackSelection[] selections,
+        @NullableType SampleStream[] streams,
+        long trackSelectionPositionUs) {
+      this.selections = selections;
+      this.streams = streams;
+      this.trackSelectionPositionUs = trackSelectionPositionUs;
+    }
+  }
+}
@@ -0,0 +1,528 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.preload;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Pair;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.Log;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.ExoPlaybackException;
+import androidx.media3.exoplayer.RendererCapabilities;
+import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.source.CompositeMediaSource;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
+import androidx.media3.exoplayer.source.MediaPeriod;
+import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.source.MediaSourceEventListener;
+import androidx.media3.exoplayer.trackselection.TrackSelector;
+import androidx.media3.exoplayer.trackselection.TrackSelectorResult;
+import androidx.media3.exoplayer.upstream.Allocation;
+import androidx.media3.exoplayer.upstream.Allocator;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MediaSource} that can prepare its wrapped source, create the first {@link MediaPeriod},
+ * select tracks and load media before it is used by a player.
+ *
+ * <p>When the player subsequently prepares this source and creates the preloaded period, the
+ * already prepared source and period are handed to the player, which saves the manifest and
+ * initialization latency on playback start. If the player starts at the preloaded position, the
+ * media loaded while preloading is reused as well, which also saves the first chunk latency.
+ *
+ * <p>The bytes buffered by the preloaded period are counted as they are allocated, see {@link
+ * #getPreloadedBytes()}.
+ *
+ * <p>The {@link Looper} used for preloading must be the playback looper of the player that will use
+ * this source (see {@link androidx.media3.exoplayer.ExoPlayer#getPlaybackLooper()}). The public
+ * methods of this class can be called from any thread.
+ */
+@UnstableApi
+public final class PreloadMediaSource extends CompositeMediaSource<Void> {
+
+  /** Controls how far a {@link PreloadMediaSource} is preloaded. */
+  public interface PreloadControl {
+
+    /**
+     * Called on the preload thread when the wrapped source has been prepared.
+     *
+     * @param mediaSource The {@link PreloadMediaSource} that has its wrapped source prepared.
+     * @return Whether the source should continue preloading by preparing its first period.
+     */
+    boolean onSourcePrepared(PreloadMediaSource mediaSource);
+
+    /**
+     * Called on the preload thread when the first period has been prepared and its tracks have been
+     * selected.
+     *
+     * @param mediaSource The {@link PreloadMediaSource} that has its period prepared.
+     * @return Whether the source should continue preloading by loading media.
+     */
+    boolean onTracksSelected(PreloadMediaSource mediaSource);
+
+    /**
+     * Called on the preload thread when the preloaded period requests to continue loading.
+     *
+     * @param mediaSource The {@link PreloadMediaSource} requesting to continue loading.
+     * @param bufferedDurationUs The duration of media buffered from the preload start position, in
+     *     microseconds.
+     * @return Whether the period should continue loading.
+     */
+    boolean onContinueLoadingRequested(PreloadMediaSource mediaSource, long bufferedDurationUs);
+
+    /**
+     * Called on the preload thread when the player uses the preloaded period.
+     *
+     * @param mediaSource The {@link PreloadMediaSource} whose preloaded period is used.
+     */
+    void onUsedByPlayer(PreloadMediaSource mediaSource);
+  }
+
+  /** Factory for {@link PreloadMediaSource}. */
+  public static final class Factory {
+
+    private final PreloadControl preloadControl;
+    private final TrackSelector trackSelector;
+    private final BandwidthMeter bandwidthMeter;
+    private final RendererCapabilities[] rendererCapabilities;
+    private final Allocator allocator;
+    private final Looper preloadLooper;
+    private PlayerId playerId;
+    private Clock clock;
+
+    /**
+     * Creates a new factory.
+     *
+     * @param preloadControl The {@link PreloadControl} deciding how far sources are preloaded.
+     * @param trackSelector The {@link TrackSelector} used to select tracks for preloading. It must
+     *     not be the instance used by the player, and is initialized by this factory.
+     * @param bandwidthMeter The {@link BandwidthMeter} of the player.
+     * @param rendererCapabilities The {@link RendererCapabilities} of the renderers of the player.
+     * @param allocator The {@link Allocator} of the player's {@link
+     *     androidx.media3.exoplayer.LoadControl}.
+     * @param preloadLooper The playback {@link Looper} of the player.
+     */
+    public Factory(
+        PreloadControl preloadControl,
+        TrackSelector trackSelector,
+        BandwidthMeter bandwidthMeter,
+        RendererCapabilities[] rendererCapabilities,
+        Allocator allocator,
+        Looper preloadLooper) {
+      this.preloadControl = preloadControl;
+      this.trackSelector = trackSelector;
+      this.bandwidthMeter = bandwidthMeter;
+      this.rendererCapabilities = rendererCapabilities;
+      this.allocator = allocator;
+      this.preloadLooper = preloadLooper;
+      playerId = PlayerId.UNSET;
+      clock = Clock.DEFAULT;
+      trackSelector.init(/* listener= */ () -> {}, bandwidthMeter);
+    }
+
+    /**
+     * Sets the {@link PlayerId} the wrapped sources are prepared with when they are preloaded. The
+     * default value is {@link PlayerId#UNSET}.
+     *
+     * <p>A wrapped source keeps the {@link PlayerId} it was first prepared with, so this should be
+     * the {@link androidx.media3.exoplayer.ExoPlayer#getPlayerId() PlayerId} of the player that
+     * will use the preloaded sources.
+     *
+     * @param playerId The {@link PlayerId}.
+     * @return This factory, for convenience.
+     */
+    public Factory setPlayerId(PlayerId playerId) {
+      this.playerId = playerId;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to measure the preload durations. Should only be set for testing
+     * purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This factory, for convenience.
+     */
+    public Factory setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Creates a {@link PreloadMediaSource} wrapping the given source.
+     *
+     * @param mediaSource The {@link MediaSource} to wrap.
+     * @return The {@link PreloadMediaSource}.
+     */
+    public PreloadMediaSource createMediaSource(MediaSource mediaSource) {
+      return new PreloadMediaSource(mediaSource, this);
+    }
+  }
+
+  private static final String TAG = "PreloadMediaSource";
+
+  private final MediaSource mediaSource;
+  private final PreloadControl preloadControl;
+  private final TrackSelector trackSelector;
+  private final BandwidthMeter bandwidthMeter;
+  private final RendererCapabilities[] rendererCapabilities;
+  private final ByteCountingAllocator allocator;
+  private final Clock clock;
+  private final PlayerId playerId;
+  private final Handler preloadHandler;
+  private final MediaSourceCaller preloadCaller;
+
+  @Nullable private Timeline timeline;
+  @Nullable private PreloadMediaPeriod preloadMediaPeriod;
+  @Nullable private MediaPeriodId preloadMediaPeriodId;
+  private long preloadStartPositionUs;
+  private boolean isPreloadCallerRegistered;
+  private volatile boolean isUsedByPlayer;
+  private long preloadStartTimeMs;
+  private volatile long preloadWorkDurationMs;
+
+  private PreloadMediaSource(MediaSource mediaSource, Factory factory) {
+    this.mediaSource = mediaSource;
+    this.preloadControl = factory.preloadControl;
+    this.trackSelector = factory.trackSelector;
+    this.bandwidthMeter = factory.bandwidthMeter;
+    this.rendererCapabilities = factory.rendererCapabilities;
+    this.allocator = new ByteCountingAllocator(factory.allocator);
+    this.clock = factory.clock;
+    this.playerId = factory.playerId;
+    preloadHandler = Util.createHandler(factory.preloadLooper, /* callback= */ null);
+    preloadCaller = (source, timeline) -> {};
+    preloadStartPositionUs = C.TIME_UNSET;
+    preloadStartTimeMs = C.TIME_UNSET;
+    addEventListener(preloadHandler, new PreloadEventListener());
+  }
+
+  /**
+   * Starts preloading the source from the default position of its first window.
+   *
+   * <p>Preloading continues for as long as the {@link PreloadControl} allows it. Calling this
+   * method while the source is already preloaded has no effect. If the source is used by the
+   * player, it is preloaded again once the player releases the preloaded period.
+   */
+  public void preload() {
+    preloadHandler.post(
+        () -> {
+          if (!isPreloadCallerRegistered) {
+            isPreloadCallerRegistered = true;
+            preloadStartTimeMs = clock.elapsedRealtime();
+            prepareSource(preloadCaller, bandwidthMeter.getTransferListener(), playerId);
+          } else {
+            // The source is already prepared, but its preloaded period may have been released by
+            // the player.
+            maybePreloadPeriod();
+          }
+        });
+  }
+
+  /**
+   * Discards all preloaded data. The source can be preloaded again by calling {@link #preload()}.
+   *
+   * <p>If the source is used by the player, only the reference held for preloading is released.
+   */
+  public void clear() {
+    preloadHandler.post(
+        () -> {
+          if (!isPreloadCallerRegistered) {
+            return;
+          }
+          isPreloadCallerRegistered = false;
+          if (!isUsedByPlayer) {
+            releasePreloadMediaPeriod();
+          }
+          releaseSource(preloadCaller);
+        });
+  }
+
+  /** Returns whether the player has taken over the preloaded period. */
+  public boolean isUsedByPlayer() {
+    return isUsedByPlayer;
+  }
+
+  /**
+   * Returns the number of bytes currently buffered by the preloaded period, including partially
+   * loaded and initialization data.
+   */
+  public long getPreloadedBytes() {
+    return allocator.getAllocatedBytes();
+  }
+
+  /**
+   * Returns the time spent preparing and loading before the source was used by the player, in
+   * milliseconds. This is the startup time the player saves by using the preloaded source.
+   */
+  public long getPreloadWorkDurationMs() {
+    return preloadWorkDurationMs;
+  }
+
+  /** Returns the {@link Timeline} of the wrapped source, or null if it is not prepared yet. */
+  @Nullable
+  public Timeline getTimeline() {
+    return timeline;
+  }
+
+  @Override
+  public MediaItem getMediaItem() {
+    return mediaSource.getMediaItem();
+  }
+
+  @Override
+  protected void prepareSourceInternal(@Nullable TransferListener mediaTransferListener) {
+    super.prepareSourceInternal(mediaTransferListener);
+    prepareChildSource(/* id= */ null, mediaSource);
+  }
+
+  @Override
+  protected void onChildSourceInfoRefreshed(Void id, MediaSource mediaSource, Timeline timeline) {
+    this.timeline = timeline;
+    refreshSourceInfo(timeline);
+    maybePreloadPeriod();
+  }
+
+  @Override
+  public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
+    @Nullable PreloadMediaPeriod preloadMediaPeriod = this.preloadMediaPeriod;
+    if (preloadMediaPeriod != null
+        && !isUsedByPlayer
+        && checkNotNull(preloadMediaPeriodId).periodUid.equals(id.periodUid)) {
+      // The prepared period is reused even if the player starts from a different position. Its
+      // preloaded streams are only reused if the player starts from the preloaded position.
+      isUsedByPlayer = true;
+      if (preloadStartTimeMs != C.TIME_UNSET && preloadWorkDurationMs == 0) {
+        preloadWorkDurationMs = clock.elapsedRealtime() - preloadStartTimeMs;
+      }
+      preloadControl.onUsedByPlayer(this);
+      return preloadMediaPeriod;
+    }
+    if (preloadMediaPeriod != null && !isUsedByPlayer) {
+      // The player plays a different period, so the preloaded period is of no use.
+      Log.d(TAG, "Releasing preloaded period not used by the player");
+      releasePreloadMediaPeriod();
+    }
+    return mediaSource.createPeriod(id, allocator, startPositionUs);
+  }
+
+  @Override
+  public void releasePeriod(MediaPeriod mediaPeriod) {
+    if (mediaPeriod == preloadMediaPeriod) {
+      this.preloadMediaPeriod = null;
+      preloadMediaPeriodId = null;
+      isUsedByPlayer = false;
+      preloadStartTimeMs = C.TIME_UNSET;
+      preloadWorkDurationMs = 0;
+      this.mediaSource.releasePeriod(((PreloadMediaPeriod) mediaPeriod).mediaPeriod);
+      // If the source is still meant to be preloaded, for example because it's next to the item the
+      // player transitioned to, preload a new period so that transitioning back is instant too.
+      maybePreloadPeriod();
+    } else {
+      this.mediaSource.releasePeriod(mediaPeriod);
+    }
+  }
+
+  @Override
+  protected void releaseSourceInternal() {
+    super.releaseSourceInternal();
+    timeline = null;
+    preloadStartTimeMs = C.TIME_UNSET;
+  }
+
+  /**
+   * Creates and preloads the first period if the source is meant to be preloaded, its timeline is
+   * known and there is no preloaded period yet.
+   */
+  private void maybePreloadPeriod() {
+    @Nullable Timeline timeline = this.timeline;
+    if (!isPreloadCallerRegistered
+        || isUsedByPlayer
+        || preloadMediaPeriod != null
+        || timeline == null
+        || timeline.isEmpty()
+        || !preloadControl.onSourcePrepared(this)) {
+      return;
+    }
+    if (preloadStartTimeMs == C.TIME_UNSET) {
+      preloadStartTimeMs = clock.elapsedRealtime();
+    }
+    Pair<Object, Long> periodPosition =
+        timeline.getPeriodPositionUs(
+            new Timeline.Window(),
+            new Timeline.Period(),
+            /* windowIndex= */ 0,
+            /* windowPositionUs= */ C.TIME_UNSET);
+    MediaPeriodId periodId = new MediaPeriodId(periodPosition.first);
+    preloadStartPositionUs = periodPosition.second;
+    preloadMediaPeriodId = periodId;
+    preloadMediaPeriod =
+        new PreloadMediaPeriod(
+            mediaSource.createPeriod(periodId, allocator, preloadStartPositionUs));
+    preloadMediaPeriod.preload(new PreloadMediaPeriodCallback(), preloadStartPositionUs);
+  }
+
+  private void releasePreloadMediaPeriod() {
+    @Nullable PreloadMediaPeriod preloadMediaPeriod = this.preloadMediaPeriod;
+    if (preloadMediaPeriod != null) {
+      this.preloadMediaPeriod = null;
+      preloadMediaPeriodId = null;
+      preloadMediaPeriod.releasePreloadTrackSelection();
+      mediaSource.releasePeriod(preloadMediaPeriod.mediaPeriod);
+    }
+  }
+
+  private void updatePreloadWorkDuration() {
+    if (!isUsedByPlayer && preloadStartTimeMs != C.TIME_UNSET) {
+      preloadWorkDurationMs = clock.elapsedRealtime() - preloadStartTimeMs;
+    }
+  }
+
+  private final class PreloadMediaPeriodCallback implements MediaPeriod.Callback {
+
+    @Override
+    public void onPrepared(MediaPeriod mediaPeriod) {
+      if (isUsedByPlayer) {
+        return;
+      }
+      updatePreloadWorkDuration();
+      PreloadMediaPeriod preloadMediaPeriod = (PreloadMediaPeriod) mediaPeriod;
+      TrackSelectorResult trackSelectorResult;
+      try {
+        trackSelectorResult =
+            trackSelector.selectTracks(
+                rendererCapabilities,
+                preloadMediaPeriod.getTrackGroups(),
+                checkNotNull(preloadMediaPeriodId),
+                checkNotNull(timeline));
+      } catch (ExoPlaybackException e) {
+        Log.e(TAG, "Failed to select tracks for preloading", e);
+        return;
+      }
+      preloadStartPositionUs =
+          preloadMediaPeriod.selectTracksForPreloading(
+              trackSelectorResult.selections, preloadStartPositionUs);
+      if (preloadControl.onTracksSelected(PreloadMediaSource.this)) {
+        preloadMediaPeriod.continueLoading(preloadStartPositionUs);
+      }
+    }
+
+    @Override
+    public void onContinueLoadingRequested(MediaPeriod mediaPeriod) {
+      if (isUsedByPlayer) {
+        return;
+      }
+      updatePreloadWorkDuration();
+      if (!((PreloadMediaPeriod) mediaPeriod).isPrepared()) {
+        // Some periods, for example progressive ones, load media to complete their preparation.
+        mediaPeriod.continueLoading(preloadStartPositionUs);
+        return;
+      }
+      long bufferedPositionUs = mediaPeriod.getBufferedPositionUs();
+      if (bufferedPositionUs != C.TIME_END_OF_SOURCE
+          && preloadControl.onContinueLoadingRequested(
+              PreloadMediaSource.this, max(0, bufferedPositionUs - preloadStartPositionUs))) {
+        mediaPeriod.continueLoading(preloadStartPositionUs);
+      }
+    }
+  }
+
+  private final class PreloadEventListener implements MediaSourceEventListener {
+
+    @Override
+    public void onLoadError(
+        int windowIndex,
+        @Nullable MediaPeriodId mediaPeriodId,
+        LoadEventInfo loadEventInfo,
+        MediaLoadData mediaLoadData,
+        IOException error,
+        boolean wasCanceled) {
+      if (!isUsedByPlayer) {
+        Log.w(TAG, "Preload error", error);
+      }
+    }
+  }
+
+  /**
+   * An {@link Allocator} that counts the bytes currently allocated through it, so that all media
+   * buffered by the preloaded period is accounted for as soon as it is loaded.
+   */
+  private static final class ByteCountingAllocator implements Allocator {
+
+    private final Allocator allocator;
+    private final AtomicLong allocatedBytes;
+
+    public ByteCountingAllocator(Allocator allocator) {
+      this.allocator = allocator;
+      allocatedBytes = new AtomicLong();
+    }
+
+    public long getAllocatedBytes() {
+      return allocatedBytes.get();
+    }
+
+    @Override
+    public Allocation allocate() {
+      Allocation allocation = allocator.allocate();
+      allocatedBytes.addAndGet(allocator.getIndividualAllocationLength());
+      return allocation;
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      allocatedBytes.addAndGet(-allocator.getIndividualAllocationLength());
+      allocator.release(allocation);
+    }
+
+    @Override
+    public void release(AllocationNode allocationNode) {
+      int allocationCount = 0;
+      for (@Nullable AllocationNode node = allocationNode; node != null; node = node.next()) {
+        allocationCount++;
+      }
+      allocatedBytes.addAndGet(-(long) allocationCount * allocator.getIndividualAllocationLength());
+      allocator.release(allocationNode);
+    }
+
+    @Override
+    public void trim() {
+      allocator.trim();
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+      return (int) allocatedBytes.get();
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return allocator.getIndividualAllocationLength();
+    }
+  }
+}
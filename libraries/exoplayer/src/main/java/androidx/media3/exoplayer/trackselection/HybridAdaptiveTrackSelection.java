@@ -0,0 +1,459 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.trackselection;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.CallSuper;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.TrackGroup;
+import androidx.media3.common.TrackSelection;
+import androidx.media3.common.util.Clock;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.chunk.MediaChunk;
+import androidx.media3.exoplayer.source.chunk.MediaChunkIterator;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import com.google.common.collect.Iterables;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * An adaptive {@link ExoTrackSelection} that combines a throughput estimate with the state of the
+ * buffer to select tracks, in the style of model predictive control.
+ *
+ * <p>For each track, the selection forecasts the size of the next few chunks using the {@link
+ * MediaChunkIterator MediaChunkIterators} passed to {@link #updateSelectedTrack}, and simulates how
+ * the buffer would evolve if those chunks were loaded at the estimated throughput. Chunk sizes are
+ * taken from {@link DataSpec#length} when known, for example from a DASH segment index or HLS byte
+ * ranges, and derived from {@link Format#bitrate} otherwise. Each track is scored by the
+ * logarithmic utility of its bitrate, minus penalties for predicted rebuffering, for draining the
+ * buffer below a reserve, and for switching away from the previous track. The track with the
+ * highest score is selected.
+ *
+ * <p>The throughput is predicted as the harmonic mean of recent bandwidth estimates. Buffered media
+ * beyond the reserve may be spent on higher quality, which makes the selection less sensitive to
+ * short throughput drops than selecting on throughput alone. To avoid oscillating between adjacent
+ * tracks on variable links, only part of that surplus may be spent when switching up, while the
+ * current track may drain the buffer down to the reserve.
+ */
+@UnstableApi
+public class HybridAdaptiveTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link HybridAdaptiveTrackSelection} instances. */
+  public static class Factory implements ExoTrackSelection.Factory {
+
+    private final int lookaheadChunkCount;
+    private final int bufferReserveMs;
+    private final float bandwidthFraction;
+    private final float rebufferPenalty;
+    private final float switchPenalty;
+    private final Clock clock;
+
+    /** Creates a factory with default parameters. */
+    public Factory() {
+      this(
+          DEFAULT_LOOKAHEAD_CHUNK_COUNT,
+          DEFAULT_BUFFER_RESERVE_MS,
+          DEFAULT_BANDWIDTH_FRACTION,
+          DEFAULT_REBUFFER_PENALTY,
+          DEFAULT_SWITCH_PENALTY,
+          Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a factory.
+     *
+     * @param lookaheadChunkCount The number of upcoming chunks for which the buffer is simulated.
+     *     Must be positive.
+     * @param bufferReserveMs The duration of buffered media, in milliseconds, that the selection
+     *     avoids spending on higher quality. Buffered media beyond this duration may be drained to
+     *     load a track whose bitrate exceeds the estimated throughput.
+     * @param bandwidthFraction The fraction of the estimated bandwidth that the selection should
+     *     consider available for use. Setting to a value less than 1 is recommended to account for
+     *     inaccuracies in the bandwidth estimator.
+     * @param rebufferPenalty The penalty for each second of predicted rebuffering, as a multiple of
+     *     the utility of the highest quality track.
+     * @param switchPenalty The penalty for switching tracks, as a multiple of the difference in
+     *     utility between the previous and the new track over the duration of one chunk.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        int lookaheadChunkCount,
+        int bufferReserveMs,
+        float bandwidthFraction,
+        float rebufferPenalty,
+        float switchPenalty,
+        Clock clock) {
+      checkArgument(lookaheadChunkCount > 0);
+      this.lookaheadChunkCount = lookaheadChunkCount;
+      this.bufferReserveMs = bufferReserveMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.rebufferPenalty = rebufferPenalty;
+      this.switchPenalty = switchPenalty;
+      this.clock = clock;
+    }
+
+    @Override
+    public final @NullableType ExoTrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions,
+        BandwidthMeter bandwidthMeter,
+        MediaPeriodId mediaPeriodId,
+        Timeline timeline) {
+      return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+          definitions,
+          definition ->
+              new HybridAdaptiveTrackSelection(
+                  definition.group,
+                  definition.tracks,
+                  definition.type,
+                  bandwidthMeter,
+                  lookaheadChunkCount,
+                  bufferReserveMs,
+                  bandwidthFraction,
+                  rebufferPenalty,
+                  switchPenalty,
+                  clock));
+    }
+  }
+
+  public static final int DEFAULT_LOOKAHEAD_CHUNK_COUNT = 5;
+  public static final int DEFAULT_BUFFER_RESERVE_MS = 10_000;
+  public static final float DEFAULT_BANDWIDTH_FRACTION = 0.8f;
+  public static final float DEFAULT_REBUFFER_PENALTY = 4f;
+  public static final float DEFAULT_SWITCH_PENALTY = 1f;
+
+  /**
+   * The chunk duration assumed if neither the chunk iterators nor the queue provide a duration, in
+   * microseconds.
+   */
+  private static final long FALLBACK_CHUNK_DURATION_US = 2_000_000;
+  /** The number of recent bandwidth estimates whose harmonic mean is used as throughput. */
+  private static final int BITRATE_ESTIMATE_COUNT = 5;
+  /**
+   * The fraction of the buffered duration above the reserve that may be spent to switch to a higher
+   * quality track. Leaving a margin when switching up, while allowing the current track to drain
+   * the buffer down to the reserve, avoids switching back and forth at a single buffer level.
+   */
+  private static final float UP_SWITCH_SPENDABLE_FRACTION = 0.25f;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final int lookaheadChunkCount;
+  private final long bufferReserveUs;
+  private final float bandwidthFraction;
+  private final float rebufferPenalty;
+  private final float switchPenalty;
+  private final Clock clock;
+  private final long[] chunkSizesBits;
+  private final long[] chunkDurationsUs;
+  private final long[] bitrateEstimates;
+
+  private float playbackSpeed;
+  private int bitrateEstimateCount;
+  private int selectedIndex;
+  private @C.SelectionReason int reason;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   */
+  public HybridAdaptiveTrackSelection(
+      TrackGroup group, int[] tracks, BandwidthMeter bandwidthMeter) {
+    this(
+        group,
+        tracks,
+        TrackSelection.TYPE_UNSET,
+        bandwidthMeter,
+        DEFAULT_LOOKAHEAD_CHUNK_COUNT,
+        DEFAULT_BUFFER_RESERVE_MS,
+        DEFAULT_BANDWIDTH_FRACTION,
+        DEFAULT_REBUFFER_PENALTY,
+        DEFAULT_SWITCH_PENALTY,
+        Clock.DEFAULT);
+  }
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param type The type that will be returned from {@link TrackSelection#getType()}.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param lookaheadChunkCount The number of upcoming chunks for which the buffer is simulated.
+   *     Must be positive.
+   * @param bufferReserveMs The duration of buffered media, in milliseconds, that the selection
+   *     avoids spending on higher quality.
+   * @param bandwidthFraction The fraction of the estimated bandwidth that the selection should
+   *     consider available for use.
+   * @param rebufferPenalty The penalty for each second of predicted rebuffering, as a multiple of
+   *     the utility of the highest quality track.
+   * @param switchPenalty The penalty for switching tracks, as a multiple of the difference in
+   *     utility between the previous and the new track over the duration of one chunk.
+   * @param clock The {@link Clock}.
+   */
+  protected HybridAdaptiveTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      @Type int type,
+      BandwidthMeter bandwidthMeter,
+      int lookaheadChunkCount,
+      long bufferReserveMs,
+      float bandwidthFraction,
+      float rebufferPenalty,
+      float switchPenalty,
+      Clock clock) {
+    super(group, tracks, type);
+    checkArgument(lookaheadChunkCount > 0);
+    this.bandwidthMeter = bandwidthMeter;
+    this.lookaheadChunkCount = lookaheadChunkCount;
+    this.bufferReserveUs = bufferReserveMs * 1000L;
+    this.bandwidthFraction = bandwidthFraction;
+    this.rebufferPenalty = rebufferPenalty;
+    this.switchPenalty = switchPenalty;
+    this.clock = clock;
+    chunkSizesBits = new long[lookaheadChunkCount];
+    chunkDurationsUs = new long[lookaheadChunkCount];
+    bitrateEstimates = new long[BITRATE_ESTIMATE_COUNT];
+    playbackSpeed = 1f;
+    reason = C.SELECTION_REASON_UNKNOWN;
+  }
+
+  @CallSuper
+  @Override
+  public void enable() {
+    reason = C.SELECTION_REASON_UNKNOWN;
+    bitrateEstimateCount = 0;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+    int previousSelectedIndex = selectedIndex;
+    @C.SelectionReason int previousReason = reason;
+    if (!queue.isEmpty()) {
+      MediaChunk lastChunk = Iterables.getLast(queue);
+      int formatIndexOfPreviousChunk = indexOf(lastChunk.trackFormat);
+      if (formatIndexOfPreviousChunk != C.INDEX_UNSET) {
+        previousSelectedIndex = formatIndexOfPreviousChunk;
+        previousReason = lastChunk.trackSelectionReason;
+      }
+    }
+    boolean isInitialSelection = reason == C.SELECTION_REASON_UNKNOWN;
+    int newSelectedIndex =
+        determineIdealSelectedIndex(
+            nowMs,
+            bufferedDurationUs,
+            isInitialSelection ? C.INDEX_UNSET : previousSelectedIndex,
+            getLastChunkDurationUs(queue),
+            mediaChunkIterators);
+    if (isInitialSelection) {
+      reason = C.SELECTION_REASON_INITIAL;
+    } else {
+      reason =
+          newSelectedIndex == previousSelectedIndex ? previousReason : C.SELECTION_REASON_ADAPTIVE;
+    }
+    selectedIndex = newSelectedIndex;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public @C.SelectionReason int getSelectionReason() {
+    return reason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  /**
+   * Returns the utility of loading a track with the given bitrate, per second of media.
+   *
+   * @param bitrate The bitrate of the track, in bits per second.
+   * @param lowestBitrate The lowest bitrate of all tracks in the selection, in bits per second.
+   */
+  protected double getUtility(int bitrate, int lowestBitrate) {
+    return bitrate <= lowestBitrate ? 0 : Math.log((double) bitrate / lowestBitrate);
+  }
+
+  private int determineIdealSelectedIndex(
+      long nowMs,
+      long bufferedDurationUs,
+      int previousSelectedIndex,
+      long fallbackChunkDurationUs,
+      MediaChunkIterator[] mediaChunkIterators) {
+    // Tracks are sorted by decreasing bitrate.
+    int lowestBitrate = max(getFormat(length - 1).bitrate, 1);
+    double highestUtility = getUtility(getFormat(0).bitrate, lowestBitrate);
+    double rebufferPenaltyPerUs = rebufferPenalty * highestUtility / C.MICROS_PER_SECOND;
+    double previousUtility =
+        previousSelectedIndex == C.INDEX_UNSET
+            ? 0
+            : getUtility(getFormat(previousSelectedIndex).bitrate, lowestBitrate);
+    long throughputBps = max((long) (getThroughputEstimate() * bandwidthFraction), 1);
+    long timeToFirstByteUs = max(bandwidthMeter.getTimeToFirstByteEstimateUs(), 0);
+    long initialBufferUs =
+        Util.getPlayoutDurationForMediaDuration(max(bufferedDurationUs, 0), playbackSpeed);
+    long reserveUs = min(initialBufferUs, bufferReserveUs);
+    long upSwitchReserveUs =
+        initialBufferUs <= bufferReserveUs
+            ? initialBufferUs
+            : initialBufferUs
+                - (long) ((initialBufferUs - bufferReserveUs) * UP_SWITCH_SPENDABLE_FRACTION);
+    int previousBitrate =
+        previousSelectedIndex == C.INDEX_UNSET
+            ? Integer.MAX_VALUE
+            : getFormat(previousSelectedIndex).bitrate;
+
+    int bestIndex = C.INDEX_UNSET;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < length; i++) {
+      if (isBlacklisted(i, nowMs)) {
+        continue;
+      }
+      Format format = getFormat(i);
+      int chunkCount =
+          forecastChunks(
+              i < mediaChunkIterators.length ? mediaChunkIterators[i] : MediaChunkIterator.EMPTY,
+              format,
+              fallbackChunkDurationUs);
+      double utility = getUtility(format.bitrate, lowestBitrate);
+      double score = 0;
+      long bufferUs = initialBufferUs;
+      for (int j = 0; j < chunkCount; j++) {
+        long loadDurationUs =
+            timeToFirstByteUs + chunkSizesBits[j] * C.MICROS_PER_SECOND / throughputBps;
+        if (loadDurationUs > bufferUs) {
+          score -= rebufferPenaltyPerUs * (loadDurationUs - bufferUs);
+          bufferUs = 0;
+        } else {
+          bufferUs -= loadDurationUs;
+        }
+        long chunkPlayoutDurationUs =
+            Util.getPlayoutDurationForMediaDuration(chunkDurationsUs[j], playbackSpeed);
+        bufferUs += chunkPlayoutDurationUs;
+        score += utility * chunkPlayoutDurationUs / C.MICROS_PER_SECOND;
+      }
+      long candidateReserveUs = format.bitrate > previousBitrate ? upSwitchReserveUs : reserveUs;
+      if (bufferUs < candidateReserveUs) {
+        score -= rebufferPenaltyPerUs * (candidateReserveUs - bufferUs);
+      }
+      if (previousSelectedIndex != C.INDEX_UNSET) {
+        score -=
+            switchPenalty
+                * abs(utility - previousUtility)
+                * Util.getPlayoutDurationForMediaDuration(chunkDurationsUs[0], playbackSpeed)
+                / C.MICROS_PER_SECOND;
+      }
+      if (score > bestScore) {
+        bestScore = score;
+        bestIndex = i;
+      }
+    }
+    return bestIndex == C.INDEX_UNSET ? selectedIndex : bestIndex;
+  }
+
+  /**
+   * Returns the harmonic mean of the recent estimates of the bandwidth meter, which is robust to
+   * short spikes in the estimate.
+   */
+  private long getThroughputEstimate() {
+    bitrateEstimates[bitrateEstimateCount % bitrateEstimates.length] =
+        bandwidthMeter.getBitrateEstimate();
+    bitrateEstimateCount++;
+    int count = min(bitrateEstimateCount, bitrateEstimates.length);
+    double inverseSum = 0;
+    for (int i = 0; i < count; i++) {
+      inverseSum += 1d / max(bitrateEstimates[i], 1);
+    }
+    return (long) (count / inverseSum);
+  }
+
+  /**
+   * Populates {@link #chunkSizesBits} and {@link #chunkDurationsUs} with a forecast of the upcoming
+   * chunks of a track, and returns the number of forecast chunks.
+   */
+  private int forecastChunks(
+      MediaChunkIterator iterator, Format format, long fallbackChunkDurationUs) {
+    int chunkCount = 0;
+    while (chunkCount < lookaheadChunkCount && iterator.next()) {
+      long chunkDurationUs = iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs();
+      long chunkLength = iterator.getDataSpec().length;
+      chunkDurationsUs[chunkCount] = chunkDurationUs;
+      chunkSizesBits[chunkCount] =
+          chunkLength != C.LENGTH_UNSET
+              ? chunkLength * C.BITS_PER_BYTE
+              : getEstimatedChunkSizeBits(format, chunkDurationUs);
+      chunkCount++;
+    }
+    iterator.reset();
+    if (chunkCount == 0) {
+      // Assume that the next chunk has a duration similar to the last one in the queue.
+      long chunkDurationUs =
+          fallbackChunkDurationUs != C.TIME_UNSET
+              ? fallbackChunkDurationUs
+              : FALLBACK_CHUNK_DURATION_US;
+      chunkDurationsUs[0] = chunkDurationUs;
+      chunkSizesBits[0] = getEstimatedChunkSizeBits(format, chunkDurationUs);
+      chunkCount = 1;
+    }
+    return chunkCount;
+  }
+
+  private static long getEstimatedChunkSizeBits(Format format, long chunkDurationUs) {
+    return format.bitrate == Format.NO_VALUE
+        ? 0
+        : format.bitrate * chunkDurationUs / C.MICROS_PER_SECOND;
+  }
+
+  /**
+   * Returns the duration of the last chunk in the queue, in microseconds, or {@link C#TIME_UNSET}
+   * if the queue is empty or if the last chunk has an undefined start or end time.
+   */
+  private static long getLastChunkDurationUs(List<? extends MediaChunk> queue) {
+    if (queue.isEmpty()) {
+      return C.TIME_UNSET;
+    }
+    MediaChunk lastChunk = Iterables.getLast(queue);
+    return lastChunk.startTimeUs != C.TIME_UNSET && lastChunk.endTimeUs != C.TIME_UNSET
+        ? lastChunk.endTimeUs - lastChunk.startTimeUs
+        : C.TIME_UNSET;
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkNotNull;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.datasource.StatsDataSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the most recent response and parsed object for each manifest or playlist URI, so that
+ * refreshes of content that hasn't changed are cheap.
+ *
+ * <p>When a cached response exists, the next request for the same URI is made conditional by adding
+ * {@code If-None-Match} and {@code If-Modified-Since} headers derived from the {@code ETag} and
+ * {@code Last-Modified} headers of the cached response. If the server responds with {@code 304 Not
+ * Modified}, or if it responds with content that is byte-for-byte identical to the cached response,
+ * the cached object is returned without parsing the response again.
+ *
+ * <p>A cached object is only returned for a load whose {@link ParsingLoadable.Parser} is
+ * {@linkplain Object#equals(Object) equal} to the parser that produced it. Parsers whose output
+ * depends on state other than the response, such as a previously loaded playlist, should implement
+ * {@link Object#equals(Object)} so that they're only equal to parsers with the same state. Parsers
+ * that don't implement it are only equal to themselves, in which case an unchanged response is
+ * parsed again by each new parser instance, but still isn't transferred again.
+ *
+ * <p>Cached objects are shared between loads, so the cache must only be used with parsers that
+ * produce immutable objects. An instance may be shared between media sources and is safe to use
+ * from multiple threads.
+ */
+@UnstableApi
+public final class ManifestResponseCache {
+
+  /** The default maximum number of cached responses. */
+  public static final int DEFAULT_MAX_ENTRY_COUNT = 16;
+
+  private static final int HTTP_NOT_MODIFIED = 304;
+
+  private final int maxEntryCount;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<String, Entry> entries;
+
+  @GuardedBy("this")
+  private long savedBytes;
+
+  @GuardedBy("this")
+  private long parseTimeUs;
+
+  @GuardedBy("this")
+  private long savedParseTimeUs;
+
+  /** Creates an instance that caches at most {@link #DEFAULT_MAX_ENTRY_COUNT} responses. */
+  public ManifestResponseCache() {
+    this(DEFAULT_MAX_ENTRY_COUNT);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxEntryCount The maximum number of cached responses. The least recently used response
+   *     is evicted when this number is exceeded.
+   */
+  public ManifestResponseCache(int maxEntryCount) {
+    checkArgument(maxEntryCount > 0);
+    this.maxEntryCount = maxEntryCount;
+    entries = new LinkedHashMap<>(/* initialCapacity= */ 16, /* loadFactor= */ 0.75f, true);
+  }
+
+  /**
+   * Returns the number of response bytes that weren't transferred because the server confirmed that
+   * a cached response was still valid.
+   */
+  public synchronized long getSavedBytes() {
+    return savedBytes;
+  }
+
+  /** Returns the total time spent parsing responses, in microseconds. */
+  public synchronized long getParseTimeUs() {
+    return parseTimeUs;
+  }
+
+  /**
+   * Returns the time that parsing unchanged responses would have taken, in microseconds, estimated
+   * from the time it took to parse the cached responses.
+   */
+  public synchronized long getSavedParseTimeUs() {
+    return savedParseTimeUs;
+  }
+
+  /** Removes all cached responses. Statistics are not reset. */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Loads and parses the object defined by the {@link DataSpec}, using a cached response where
+   * possible. Must only be called for a {@link DataSpec} for which {@link #isCacheable(DataSpec)}
+   * returns true.
+   *
+   * @param dataSource The {@link StatsDataSource} through which the response should be read.
+   * @param dataSpec The {@link DataSpec} of the object to read.
+   * @param parser The {@link ParsingLoadable.Parser} to parse the object from the response.
+   * @return The parsed object.
+   * @throws IOException If an error occurs loading or parsing the response.
+   */
+  @SuppressWarnings("unchecked") // Cached results are only returned for an equal parser.
+  /* package */ <T> T load(
+      StatsDataSource dataSource, DataSpec dataSpec, ParsingLoadable.Parser<? extends T> parser)
+      throws IOException {
+    checkArgument(isCacheable(dataSpec));
+    String key = dataSpec.key != null ? dataSpec.key : dataSpec.uri.toString();
+    @Nullable Entry cachedEntry;
+    synchronized (this) {
+      cachedEntry = entries.get(key);
+    }
+    DataSpec requestDataSpec =
+        cachedEntry == null
+            ? dataSpec
+            : dataSpec.withAdditionalHeaders(cachedEntry.getConditionalRequestHeaders());
+    Uri uri;
+    byte[] data;
+    int contentHash;
+    @Nullable String entityTag;
+    @Nullable String lastModified;
+    // The cached entry, if the response is known to be the same as the cached one.
+    @Nullable Entry unchangedEntry = null;
+    try {
+      dataSource.open(requestDataSpec);
+      uri = checkNotNull(dataSource.getUri());
+      data = DataSourceUtil.readToEnd(dataSource);
+      contentHash = Arrays.hashCode(data);
+      Map<String, List<String>> responseHeaders = dataSource.getResponseHeaders();
+      entityTag = getHeaderValue(responseHeaders, "ETag");
+      lastModified = getHeaderValue(responseHeaders, "Last-Modified");
+      if (cachedEntry != null
+          && cachedEntry.contentHash == contentHash
+          && cachedEntry.uri.equals(uri)
+          && Arrays.equals(cachedEntry.data, data)) {
+        // The server didn't confirm it with a 304 response, but the content is unchanged.
+        unchangedEntry = cachedEntry;
+      }
+    } catch (HttpDataSource.InvalidResponseCodeException e) {
+      if (cachedEntry == null || e.responseCode != HTTP_NOT_MODIFIED) {
+        throw e;
+      }
+      unchangedEntry = cachedEntry;
+      uri = cachedEntry.uri;
+      data = cachedEntry.data;
+      contentHash = cachedEntry.contentHash;
+      entityTag = cachedEntry.entityTag;
+      lastModified = cachedEntry.lastModified;
+      synchronized (this) {
+        savedBytes += data.length;
+      }
+    } finally {
+      DataSourceUtil.closeQuietly(dataSource);
+    }
+
+    if (unchangedEntry != null && unchangedEntry.parser.equals(parser)) {
+      // Parsing the unchanged content again would produce the same result.
+      synchronized (this) {
+        savedParseTimeUs += unchangedEntry.parseTimeUs;
+        putEntry(
+            key,
+            new Entry(
+                uri,
+                data,
+                contentHash,
+                unchangedEntry.parser,
+                unchangedEntry.result,
+                unchangedEntry.parseTimeUs,
+                entityTag,
+                lastModified));
+      }
+      return (T) unchangedEntry.result;
+    }
+
+    long parseStartTimeNs = System.nanoTime();
+    T result = parser.parse(uri, new ByteArrayInputStream(data));
+    long entryParseTimeUs = (System.nanoTime() - parseStartTimeNs) / 1000;
+    synchronized (this) {
+      parseTimeUs += entryParseTimeUs;
+      putEntry(
+          key,
+          new Entry(
+              uri, data, contentHash, parser, result, entryParseTimeUs, entityTag, lastModified));
+    }
+    return result;
+  }
+
+  @GuardedBy("this")
+  private void putEntry(String key, Entry entry) {
+    entries.put(key, entry);
+    if (entries.size() > maxEntryCount) {
+      String eldestKey = entries.keySet().iterator().next();
+      entries.remove(eldestKey);
+    }
+  }
+
+  /** Returns whether responses for the given {@link DataSpec} can be cached. */
+  /* package */ static boolean isCacheable(DataSpec dataSpec) {
+    return dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+        && dataSpec.position == 0
+        && dataSpec.length == C.LENGTH_UNSET;
+  }
+
+  @Nullable
+  private static String getHeaderValue(Map<String, List<String>> headers, String name) {
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+  private static final class Entry {
+
+    public final Uri uri;
+    public final byte[] data;
+    public final int contentHash;
+    public final ParsingLoadable.Parser<?> parser;
+    public final Object result;
+    public final long parseTimeUs;
+    @Nullable public final String entityTag;
+    @Nullable public final String lastModified;
+
+    public Entry(
+        Uri uri,
+        byte[] data,
+        int contentHash,
+        ParsingLoadable.Parser<?> parser,
+        Object result,
+        long parseTimeUs,
+        @Nullable String entityTag,
+        @Nullable String lastModified) {
+      this.uri = uri;
+      this.data = data;
+      this.contentHash = contentHash;
+      this.parser = parser;
+      this.result = result;
+      this.parseTimeUs = parseTimeUs;
+      this.entityTag = entityTag;
+      this.lastModified = lastModified;
+    }
+
+    public Map<String, String> getConditionalRequestHeaders() {
+      Map<String, String> headers = new HashMap<>();
+      if (entityTag != null) {
+        headers.put("If-None-Match", entityTag);
+      }
+      if (lastModified != null) {
+        headers.put("If-Modified-Since", lastModified);
+      }
+      return headers;
+    }
+  }
+}
@@ -103,6 +103,7 @@ public final class ParsingLoadable<T> implements Loadable {
 
   private final StatsDataSource dataSource;
   private final Parser<? extends T> parser;
+  @Nullable private final ManifestResponseCache responseCache;
 
   @Nullable private volatile T result;
 
@@ -113,11 +114,29 @@ public final class ParsingLoadable<T> implements Loadable {
    * @param parser Parses the object from the response.
    */
   public ParsingLoadable(DataSource dataSource, Uri uri, int type, Parser<? extends T> parser) {
+    this(dataSource, uri, type, parser, /* responseCache= */ null);
+  }
+
+  /**
+   * @param dataSource A {@link DataSource} to use when loading the data.
+   * @param uri The {@link Uri} from which the object should be loaded.
+   * @param type See {@link #type}.
+   * @param parser Parses the object from the response.
+   * @param responseCache An optional {@link ManifestResponseCache} used to avoid reloading and
+   *     reparsing unchanged responses, or {@code null} to always load and parse the response.
+   */
+  public ParsingLoadable(
+      DataSource dataSource,
+      Uri uri,
+      int type,
+      Parser<? extends T> parser,
+      @Nullable ManifestResponseCache responseCache) {
     this(
         dataSource,
         new DataSpec.Builder().setUri(uri).setFlags(DataSpec.FLAG_ALLOW_GZIP).build(),
         type,
-        parser);
+        parser,
+        responseCache);
   }
 
   /**
@@ -128,10 +147,28 @@ public final class ParsingLoadable<T> implements Loadable {
    */
   public ParsingLoadable(
       DataSource dataSource, DataSpec dataSpec, int type, Parser<? extends T> parser) {
+    this(dataSource, dataSpec, type, parser, /* responseCache= */ null);
+  }
+
+  /**
+   * @param dataSource A {@link DataSource} to use when loading the data.
+   * @param dataSpec The {@link DataSpec} from which the object should be loaded.
+   * @param type See {@link #type}.
+   * @param parser Parses the object from the response.
+   * @param responseCache An optional {@link ManifestResponseCache} used to avoid reloading and
+   *     reparsing unchanged responses, or {@code null} to always load and parse the response.
+   */
+  public ParsingLoadable(
+      DataSource dataSource,
+      DataSpec dataSpec,
+      int type,
+      Parser<? extends T> parser,
+      @Nullable ManifestResponseCache responseCache) {
     this.dataSource = new StatsDataSource(dataSource);
     this.dataSpec = dataSpec;
     this.type = type;
     this.parser = parser;
+    this.responseCache = responseCache;
     loadTaskId = LoadEventInfo.getNewId();
   }
 
@@ -175,6 +212,10 @@ public final class ParsingLoadable<T> implements Loadable {
   public final void load() throws IOException {
     // We always load from the beginning, so reset bytesRead to 0.
     dataSource.resetBytesRead();
+    if (responseCache != null && ManifestResponseCache.isCacheable(dataSpec)) {
+      result = responseCache.load(dataSource, dataSpec, parser);
+      return;
+    }
     DataSourceInputStream inputStream = new DataSourceInputStream(dataSource, dataSpec);
     try {
       inputStream.open();
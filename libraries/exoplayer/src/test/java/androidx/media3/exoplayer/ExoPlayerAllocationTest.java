@@ -0,0 +1,604 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.test.utils.robolectric.RobolectricUtil.runMainLooperUntil;
+import static androidx.media3.test.utils.robolectric.TestPlayerRunHelper.runUntilPlaybackState;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static java.lang.Math.min;
+import static org.junit.Assume.assumeTrue;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.Player;
+import androidx.media3.common.TrackGroup;
+import androidx.media3.common.TrackGroupArray;
+import androidx.media3.common.util.HandlerWrapper;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.decoder.DecoderInputBuffer;
+import androidx.media3.exoplayer.source.BaseMediaSource;
+import androidx.media3.exoplayer.source.ConcatenatingMediaSource;
+import androidx.media3.exoplayer.source.MediaPeriod;
+import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.SampleStream;
+import androidx.media3.exoplayer.source.SinglePeriodTimeline;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import androidx.media3.exoplayer.upstream.Allocator;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.TestExoPlayerBuilder;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+/** Tests that the steady-state playback loop of {@link ExoPlayer} doesn't allocate. */
+@RunWith(AndroidJUnit4.class)
+public final class ExoPlayerAllocationTest {
+
+  private static final Format VIDEO_FORMAT =
+      new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build();
+
+  /**
+   * The playback position until which allocations aren't measured. One-off allocations, for example
+   * for class loading and the initial state changes, happen before this position.
+   */
+  private static final long WARM_UP_POSITION_MS = 1_000;
+
+  /** The number of playback loop iterations that are measured after the warm-up. */
+  private static final int MEASURED_ITERATION_COUNT = 100;
+
+  @Before
+  public void setUp() {
+    // Robolectric records every trace section, which would be counted as an allocation.
+    setAppTracingAllowed(false);
+  }
+
+  @After
+  public void tearDown() {
+    setAppTracingAllowed(true);
+  }
+
+  @Test
+  public void steadyStatePlayback_doesNotAllocateInPlaybackLoop() throws Exception {
+    List<Long> allocatedBytesPerIteration =
+        measureSteadyStateAllocations(new IdleMediaSource(/* durationUs= */ 100_000_000));
+
+    assertAllocationFree(allocatedBytesPerIteration);
+  }
+
+  @Test
+  public void steadyStatePlayback_withConcatenatedSource_doesNotAllocateInPlaybackLoop()
+      throws Exception {
+    List<Long> allocatedBytesPerIteration =
+        measureSteadyStateAllocations(
+            new ConcatenatingMediaSource(
+                new IdleMediaSource(/* durationUs= */ 100_000_000),
+                new IdleMediaSource(/* durationUs= */ 100_000_000)));
+
+    assertAllocationFree(allocatedBytesPerIteration);
+  }
+
+  /**
+   * Plays the given source until it reaches a steady state, and returns the number of bytes
+   * allocated by each subsequent message handled on the playback thread.
+   */
+  private static List<Long> measureSteadyStateAllocations(MediaSource mediaSource)
+      throws TimeoutException {
+    AllocationCountingClock clock = new AllocationCountingClock();
+    assumeTrue("Per-thread allocation counters are not supported", clock.isSupported());
+    ExoPlayer player =
+        new TestExoPlayerBuilder(ApplicationProvider.getApplicationContext())
+            .setClock(clock)
+            .setRenderers(new IdleRenderer())
+            .build();
+    player.setMediaSource(mediaSource);
+    player.prepare();
+    player.play();
+    runUntilPlaybackState(player, Player.STATE_READY);
+    runMainLooperUntil(() -> player.getCurrentPosition() >= WARM_UP_POSITION_MS);
+
+    clock.startCounting();
+    runMainLooperUntil(() -> clock.getCountedIterationCount() >= MEASURED_ITERATION_COUNT);
+    List<Long> allocatedBytesPerIteration = clock.stopCounting();
+    player.release();
+    ShadowLooper.idleMainLooper();
+    return allocatedBytesPerIteration;
+  }
+
+  private static void assertAllocationFree(List<Long> allocatedBytesPerIteration) {
+    assertThat(allocatedBytesPerIteration.size()).isAtLeast(MEASURED_ITERATION_COUNT);
+    for (int i = 0; i < allocatedBytesPerIteration.size(); i++) {
+      assertWithMessage("Bytes allocated by iteration " + i)
+          .that(allocatedBytesPerIteration.get(i))
+          .isEqualTo(0);
+    }
+  }
+
+  private static void setAppTracingAllowed(boolean allowed) {
+    ReflectionHelpers.callStaticMethod(
+        Trace.class, "setAppTracingAllowed", ClassParameter.from(boolean.class, allowed));
+  }
+
+  /**
+   * A {@link FakeClock} that measures the bytes allocated by each message handled by the playback
+   * thread of the player.
+   *
+   * <p>Allocations made by the clock itself while the player schedules messages are excluded, as
+   * they are an artifact of the fake clock. Per-thread allocation counters are an extension of some
+   * JVMs, so they are looked up reflectively, and {@link #isSupported()} returns false if they
+   * aren't available.
+   */
+  private static final class AllocationCountingClock extends FakeClock {
+
+    private static final int METHOD_HANDLE_WARM_UP_INVOCATION_COUNT = 1_000;
+
+    @Nullable private final MethodHandle getThreadAllocatedBytes;
+    private final List<Long> allocatedBytesPerIteration;
+
+    private volatile boolean counting;
+    private long excludedBytes;
+
+    public AllocationCountingClock() {
+      super(/* isAutoAdvancing= */ true);
+      getThreadAllocatedBytes = createGetThreadAllocatedBytesMethodHandle();
+      allocatedBytesPerIteration = new ArrayList<>();
+      if (getThreadAllocatedBytes != null) {
+        // The JVM compiles a specialized form of a method handle after it has been invoked a number
+        // of times, which would otherwise be counted as an allocation of the measured iteration.
+        for (int i = 0; i < METHOD_HANDLE_WARM_UP_INVOCATION_COUNT; i++) {
+          getCurrentThreadAllocatedBytes();
+        }
+      }
+    }
+
+    public boolean isSupported() {
+      return getThreadAllocatedBytes != null;
+    }
+
+    public synchronized void startCounting() {
+      allocatedBytesPerIteration.clear();
+      counting = true;
+    }
+
+    public synchronized int getCountedIterationCount() {
+      return allocatedBytesPerIteration.size();
+    }
+
+    public synchronized List<Long> stopCounting() {
+      counting = false;
+      return new ArrayList<>(allocatedBytesPerIteration);
+    }
+
+    @Override
+    public HandlerWrapper createHandler(Looper looper, @Nullable Handler.Callback callback) {
+      if (!(callback instanceof ExoPlayerImplInternal)) {
+        return super.createHandler(looper, callback);
+      }
+      HandlerWrapper handler =
+          super.createHandler(
+              looper,
+              message -> {
+                if (!counting) {
+                  return callback.handleMessage(message);
+                }
+                long measurementOverheadBytes = getCurrentThreadAllocatedBytes();
+                measurementOverheadBytes =
+                    getCurrentThreadAllocatedBytes() - measurementOverheadBytes;
+                excludedBytes = 0;
+                long startBytes = getCurrentThreadAllocatedBytes();
+                boolean handled = callback.handleMessage(message);
+                long allocatedBytes =
+                    getCurrentThreadAllocatedBytes() - startBytes - measurementOverheadBytes;
+                recordAllocation(allocatedBytes - excludedBytes);
+                return handled;
+              });
+      return new ExcludingHandlerWrapper(handler);
+    }
+
+    private long getCurrentThreadAllocatedBytes() {
+      try {
+        return (long)
+            checkNotNull(getThreadAllocatedBytes).invokeExact(Thread.currentThread().getId());
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private synchronized void recordAllocation(long allocatedBytes) {
+      allocatedBytesPerIteration.add(allocatedBytes);
+    }
+
+    @Nullable
+    private static MethodHandle createGetThreadAllocatedBytesMethodHandle() {
+      ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+      try {
+        Class<?> extendedThreadMxBeanClass = Class.forName("com.sun.management.ThreadMXBean");
+        if (!extendedThreadMxBeanClass.isInstance(threadMxBean)) {
+          return null;
+        }
+        return MethodHandles.publicLookup()
+            .findVirtual(
+                extendedThreadMxBeanClass,
+                "getThreadAllocatedBytes",
+                MethodType.methodType(long.class, long.class))
+            .bindTo(threadMxBean);
+      } catch (ReflectiveOperationException e) {
+        return null;
+      }
+    }
+
+    /**
+     * A {@link HandlerWrapper} that excludes the allocations of the wrapped {@link FakeClock}
+     * handler from the measurement.
+     */
+    private final class ExcludingHandlerWrapper implements HandlerWrapper {
+
+      private final HandlerWrapper handler;
+
+      public ExcludingHandlerWrapper(HandlerWrapper handler) {
+        this.handler = handler;
+      }
+
+      @Override
+      public Looper getLooper() {
+        return handler.getLooper();
+      }
+
+      @Override
+      public boolean hasMessages(int what) {
+        long startBytes = startExcluding();
+        boolean result = handler.hasMessages(what);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public Message obtainMessage(int what) {
+        long startBytes = startExcluding();
+        Message result = handler.obtainMessage(what);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public Message obtainMessage(int what, @Nullable Object obj) {
+        long startBytes = startExcluding();
+        Message result = handler.obtainMessage(what, obj);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public Message obtainMessage(int what, int arg1, int arg2) {
+        long startBytes = startExcluding();
+        Message result = handler.obtainMessage(what, arg1, arg2);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public Message obtainMessage(int what, int arg1, int arg2, @Nullable Object obj) {
+        long startBytes = startExcluding();
+        Message result = handler.obtainMessage(what, arg1, arg2, obj);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public boolean sendMessageAtFrontOfQueue(Message message) {
+        long startBytes = startExcluding();
+        boolean result = handler.sendMessageAtFrontOfQueue(message);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public boolean sendEmptyMessage(int what) {
+        long startBytes = startExcluding();
+        boolean result = handler.sendEmptyMessage(what);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public boolean sendEmptyMessageDelayed(int what, int delayMs) {
+        long startBytes = startExcluding();
+        boolean result = handler.sendEmptyMessageDelayed(what, delayMs);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public boolean sendEmptyMessageAtTime(int what, long uptimeMs) {
+        long startBytes = startExcluding();
+        boolean result = handler.sendEmptyMessageAtTime(what, uptimeMs);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public void removeMessages(int what) {
+        long startBytes = startExcluding();
+        handler.removeMessages(what);
+        stopExcluding(startBytes);
+      }
+
+      @Override
+      public void removeCallbacksAndMessages(@Nullable Object token) {
+        long startBytes = startExcluding();
+        handler.removeCallbacksAndMessages(token);
+        stopExcluding(startBytes);
+      }
+
+      @Override
+      public boolean post(Runnable runnable) {
+        long startBytes = startExcluding();
+        boolean result = handler.post(runnable);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public boolean postDelayed(Runnable runnable, long delayMs) {
+        long startBytes = startExcluding();
+        boolean result = handler.postDelayed(runnable, delayMs);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      @Override
+      public boolean postAtFrontOfQueue(Runnable runnable) {
+        long startBytes = startExcluding();
+        boolean result = handler.postAtFrontOfQueue(runnable);
+        stopExcluding(startBytes);
+        return result;
+      }
+
+      private long startExcluding() {
+        return counting && isOnHandlerThread() ? getCurrentThreadAllocatedBytes() : 0;
+      }
+
+      private void stopExcluding(long startBytes) {
+        if (counting && isOnHandlerThread()) {
+          excludedBytes += getCurrentThreadAllocatedBytes() - startBytes;
+        }
+      }
+
+      private boolean isOnHandlerThread() {
+        return handler.getLooper().getThread() == Thread.currentThread();
+      }
+    }
+  }
+
+  /** A renderer that is always ready and never ends, without reading any samples. */
+  private static final class IdleRenderer extends BaseRenderer {
+
+    public IdleRenderer() {
+      super(C.TRACK_TYPE_VIDEO);
+    }
+
+    @Override
+    public String getName() {
+      return "IdleRenderer";
+    }
+
+    @Override
+    public @Capabilities int supportsFormat(Format format) {
+      return RendererCapabilities.create(C.FORMAT_HANDLED);
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) {}
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public boolean isEnded() {
+      return false;
+    }
+  }
+
+  /**
+   * A {@link BaseMediaSource} with a single {@link IdleMediaPeriod}, so that the measurement isn't
+   * affected by allocations in the loading code of a real media source.
+   */
+  private static final class IdleMediaSource extends BaseMediaSource {
+
+    private static final MediaItem MEDIA_ITEM = MediaItem.fromUri("http://test.test");
+
+    private final long durationUs;
+
+    public IdleMediaSource(long durationUs) {
+      this.durationUs = durationUs;
+    }
+
+    @Override
+    public MediaItem getMediaItem() {
+      return MEDIA_ITEM;
+    }
+
+    @Override
+    public void maybeThrowSourceInfoRefreshError() {}
+
+    @Override
+    public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
+      return new IdleMediaPeriod(durationUs);
+    }
+
+    @Override
+    public void releasePeriod(MediaPeriod mediaPeriod) {}
+
+    @Override
+    protected void prepareSourceInternal(@Nullable TransferListener mediaTransferListener) {
+      refreshSourceInfo(
+          new SinglePeriodTimeline(
+              durationUs,
+              /* isSeekable= */ true,
+              /* isDynamic= */ false,
+              /* useLiveConfiguration= */ false,
+              /* manifest= */ null,
+              MEDIA_ITEM));
+    }
+
+    @Override
+    protected void releaseSourceInternal() {}
+  }
+
+  /**
+   * A {@link MediaPeriod} that reports media to be buffered up to a fixed duration ahead of the
+   * playback position, without loading or emitting samples.
+   */
+  private static final class IdleMediaPeriod implements MediaPeriod {
+
+    private static final long BUFFER_AHEAD_US = 30 * C.MICROS_PER_SECOND;
+
+    private final long durationUs;
+    private final TrackGroupArray trackGroups;
+
+    private long positionUs;
+
+    public IdleMediaPeriod(long durationUs) {
+      this.durationUs = durationUs;
+      trackGroups = new TrackGroupArray(new TrackGroup(VIDEO_FORMAT));
+    }
+
+    @Override
+    public void prepare(Callback callback, long positionUs) {
+      this.positionUs = positionUs;
+      callback.onPrepared(this);
+    }
+
+    @Override
+    public void maybeThrowPrepareError() {}
+
+    @Override
+    public TrackGroupArray getTrackGroups() {
+      return trackGroups;
+    }
+
+    @Override
+    public long selectTracks(
+        @NullableType ExoTrackSelection[] selections,
+        boolean[] mayRetainStreamFlags,
+        @NullableType SampleStream[] streams,
+        boolean[] streamResetFlags,
+        long positionUs) {
+      for (int i = 0; i < selections.length; i++) {
+        if (selections[i] == null) {
+          streams[i] = null;
+        } else if (streams[i] == null || !mayRetainStreamFlags[i]) {
+          streams[i] = new IdleSampleStream();
+          streamResetFlags[i] = true;
+        }
+      }
+      this.positionUs = positionUs;
+      return positionUs;
+    }
+
+    @Override
+    public void discardBuffer(long positionUs, boolean toKeyframe) {
+      this.positionUs = positionUs;
+    }
+
+    @Override
+    public long readDiscontinuity() {
+      return C.TIME_UNSET;
+    }
+
+    @Override
+    public long seekToUs(long positionUs) {
+      this.positionUs = positionUs;
+      return positionUs;
+    }
+
+    @Override
+    public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+      return positionUs;
+    }
+
+    @Override
+    public long getBufferedPositionUs() {
+      return min(durationUs, positionUs + BUFFER_AHEAD_US);
+    }
+
+    @Override
+    public long getNextLoadPositionUs() {
+      return getBufferedPositionUs();
+    }
+
+    @Override
+    public boolean continueLoading(long positionUs) {
+      return false;
+    }
+
+    @Override
+    public boolean isLoading() {
+      return false;
+    }
+
+    @Override
+    public void reevaluateBuffer(long positionUs) {}
+  }
+
+  /** A {@link SampleStream} that is always ready but never provides a sample. */
+  private static final class IdleSampleStream implements SampleStream {
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void maybeThrowError() {}
+
+    @Override
+    public int readData(
+        FormatHolder formatHolder, DecoderInputBuffer buffer, @ReadFlags int readFlags) {
+      return C.RESULT_NOTHING_READ;
+    }
+
+    @Override
+    public int skipData(long positionUs) {
+      return 0;
+    }
+  }
+}
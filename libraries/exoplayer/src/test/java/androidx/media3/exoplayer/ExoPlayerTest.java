@@ -80,6 +80,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.robolectric.Shadows.shadowOf;
 
 import android.content.Context;
@@ -10448,6 +10449,29 @@ public final class ExoPlayerTest {
     assertThat(containsEvent(allEvents, Player.EVENT_PLAYER_ERROR)).isTrue();
   }
 
+  @Test
+  public void coalesceListenerEvents_notifiesListenersInSingleBatch() {
+    ExoPlayer player =
+        new ExoPlayer.Builder(context).experimentalSetCoalesceListenerEvents(true).build();
+    Player.Listener listener = mock(Player.Listener.class);
+    player.addListener(listener);
+
+    player.setRepeatMode(Player.REPEAT_MODE_ONE);
+    player.setShuffleModeEnabled(true);
+    verifyNoMoreInteractions(listener);
+    ShadowLooper.idleMainLooper();
+
+    InOrder inOrder = inOrder(listener);
+    inOrder.verify(listener).onRepeatModeChanged(Player.REPEAT_MODE_ONE);
+    inOrder.verify(listener).onShuffleModeEnabledChanged(true);
+    ArgumentCaptor<Player.Events> eventCaptor = ArgumentCaptor.forClass(Player.Events.class);
+    inOrder.verify(listener).onEvents(eq(player), eventCaptor.capture());
+    Player.Events events = eventCaptor.getValue();
+    assertThat(events.contains(Player.EVENT_REPEAT_MODE_CHANGED)).isTrue();
+    assertThat(events.contains(Player.EVENT_SHUFFLE_MODE_ENABLED_CHANGED)).isTrue();
+    player.release();
+  }
+
   @Test
   public void repeatMode_windowTransition_callsOnPositionDiscontinuityAndOnMediaItemTransition()
       throws Exception {
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.TrackGroup;
+import androidx.media3.common.TrackGroupArray;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeRenderer;
+import androidx.media3.test.utils.FakeTrackSelection;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PredictiveLoadControl}. */
+@RunWith(AndroidJUnit4.class)
+public class PredictiveLoadControlTest {
+
+  private static final float SPEED = 1f;
+  private static final int VIDEO_BITRATE = 2_000_000;
+
+  /** A synthetic throughput trace of a stable broadband connection, in kbps for each second. */
+  private static final int[] STABLE_TRACE_KBPS = repeat(5_000, 60);
+
+  /**
+   * A synthetic throughput trace of a cellular connection with a throughput drop, in kbps for each
+   * second.
+   */
+  private static final int[] VARIABLE_TRACE_KBPS =
+      concat(repeat(6_000, 20), repeat(1_200, 15), repeat(500, 5), repeat(4_000, 20));
+
+  private FakeClock clock;
+  private FakeBandwidthMeter bandwidthMeter;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* isAutoAdvancing= */ false);
+    bandwidthMeter = new FakeBandwidthMeter();
+  }
+
+  @Test
+  public void shouldContinueLoading_withoutBandwidthEstimate_loadsUntilHighWatermark() {
+    PredictiveLoadControl loadControl =
+        buildLoadControl(/* minBufferMs= */ 10_000, /* maxBufferMs= */ 50_000);
+
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 0, SPEED)).isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 29_999_999, SPEED))
+        .isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 30_000_000, SPEED))
+        .isFalse();
+  }
+
+  @Test
+  public void shouldContinueLoading_onceLoadingStopped_idlesUntilLowWatermark() {
+    PredictiveLoadControl loadControl =
+        buildLoadControl(/* minBufferMs= */ 10_000, /* maxBufferMs= */ 50_000);
+
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 30_000_000, SPEED))
+        .isFalse();
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 10_000_000, SPEED))
+        .isFalse();
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 9_999_999, SPEED))
+        .isTrue();
+    assertThat(loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 20_000_000, SPEED))
+        .isTrue();
+  }
+
+  @Test
+  public void getLowWatermarkUs_withThroughputCloseToBitrate_increasesLowWatermark() {
+    PredictiveLoadControl loadControl =
+        buildLoadControl(/* minBufferMs= */ 10_000, /* maxBufferMs= */ 50_000);
+    loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 0, SPEED);
+
+    bandwidthMeter.bitrateEstimate = 10 * VIDEO_BITRATE;
+    sampleBandwidth(loadControl);
+    long lowWatermarkWithHeadroomUs = loadControl.getLowWatermarkUs();
+    bandwidthMeter.bitrateEstimate = VIDEO_BITRATE;
+    for (int i = 0; i < PredictiveLoadControl.DEFAULT_BANDWIDTH_HISTORY_SIZE; i++) {
+      sampleBandwidth(loadControl);
+    }
+    long lowWatermarkWithoutHeadroomUs = loadControl.getLowWatermarkUs();
+
+    assertThat(lowWatermarkWithHeadroomUs).isEqualTo(10_000_000);
+    assertThat(lowWatermarkWithoutHeadroomUs).isGreaterThan(lowWatermarkWithHeadroomUs);
+    assertThat(lowWatermarkWithoutHeadroomUs).isAtMost(30_000_000);
+  }
+
+  @Test
+  public void getThroughputForecast_withFluctuatingEstimates_isBelowMean() {
+    PredictiveLoadControl loadControl =
+        buildLoadControl(/* minBufferMs= */ 10_000, /* maxBufferMs= */ 50_000);
+    loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 0, SPEED);
+
+    bandwidthMeter.bitrateEstimate = 1_000_000;
+    sampleBandwidth(loadControl);
+    bandwidthMeter.bitrateEstimate = 3_000_000;
+    sampleBandwidth(loadControl);
+
+    // Mean 2 Mbps minus one standard deviation of 1 Mbps, times the default bandwidth fraction.
+    assertThat(loadControl.getThroughputForecast())
+        .isEqualTo((long) (1_000_000 * PredictiveLoadControl.DEFAULT_BANDWIDTH_FRACTION));
+  }
+
+  @Test
+  public void simulation_withStableTrace_loadsInFewerBurstsWithLessBufferThanDefault() {
+    SimulationResult defaultResult =
+        new LoadControlSimulation(new DefaultLoadControl.Builder().build(), STABLE_TRACE_KBPS)
+            .run();
+    SimulationResult predictiveResult =
+        new LoadControlSimulation(
+                new PredictiveLoadControl.Builder(bandwidthMeter).setClock(clock).build(),
+                STABLE_TRACE_KBPS)
+            .run();
+
+    assertThat(predictiveResult.rebufferDurationMs).isEqualTo(0);
+    assertThat(predictiveResult.rebufferDurationMs).isAtMost(defaultResult.rebufferDurationMs);
+    assertThat(predictiveResult.loadBurstCount).isLessThan(defaultResult.loadBurstCount / 10);
+    assertThat(predictiveResult.maxBufferedDurationUs)
+        .isLessThan(defaultResult.maxBufferedDurationUs);
+    assertThat(predictiveResult.bytesLoaded).isAtMost(defaultResult.bytesLoaded);
+  }
+
+  @Test
+  public void simulation_withVariableTrace_loadsInFewerBurstsWithoutRebuffering() {
+    SimulationResult defaultResult =
+        new LoadControlSimulation(new DefaultLoadControl.Builder().build(), VARIABLE_TRACE_KBPS)
+            .run();
+    SimulationResult predictiveResult =
+        new LoadControlSimulation(
+                new PredictiveLoadControl.Builder(bandwidthMeter).setClock(clock).build(),
+                VARIABLE_TRACE_KBPS)
+            .run();
+
+    assertThat(predictiveResult.rebufferDurationMs).isEqualTo(0);
+    assertThat(predictiveResult.rebufferDurationMs).isAtMost(defaultResult.rebufferDurationMs);
+    assertThat(predictiveResult.loadBurstCount).isLessThan(defaultResult.loadBurstCount / 10);
+    assertThat(predictiveResult.bytesLoaded).isAtMost(defaultResult.bytesLoaded);
+  }
+
+  private PredictiveLoadControl buildLoadControl(int minBufferMs, int maxBufferMs) {
+    PredictiveLoadControl loadControl =
+        new PredictiveLoadControl.Builder(bandwidthMeter)
+            .setAllocator(new DefaultAllocator(true, C.DEFAULT_BUFFER_SEGMENT_SIZE))
+            .setBufferDurationsMs(
+                minBufferMs,
+                maxBufferMs,
+                /* bufferForPlaybackMs= */ 0,
+                /* bufferForPlaybackAfterRebufferMs= */ 0)
+            .setMinBurstDurationMs(20_000)
+            .setClock(clock)
+            .build();
+    selectVideoTrack(loadControl);
+    return loadControl;
+  }
+
+  private void sampleBandwidth(PredictiveLoadControl loadControl) {
+    clock.advanceTime(PredictiveLoadControl.DEFAULT_BANDWIDTH_SAMPLE_INTERVAL_MS);
+    loadControl.shouldContinueLoading(/* playbackPositionUs= */ 0, 0, SPEED);
+  }
+
+  private static void selectVideoTrack(LoadControl loadControl) {
+    Format format =
+        new Format.Builder()
+            .setSampleMimeType(MimeTypes.VIDEO_H264)
+            .setAverageBitrate(VIDEO_BITRATE)
+            .build();
+    TrackGroup trackGroup = new TrackGroup(format);
+    loadControl.onTracksSelected(
+        new Renderer[] {new FakeRenderer(C.TRACK_TYPE_VIDEO)},
+        new TrackGroupArray(trackGroup),
+        new ExoTrackSelection[] {new FakeTrackSelection(trackGroup)});
+  }
+
+  private static int[] repeat(int value, int count) {
+    int[] values = new int[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = value;
+    }
+    return values;
+  }
+
+  private static int[] concat(int[]... arrays) {
+    int length = 0;
+    for (int[] array : arrays) {
+      length += array.length;
+    }
+    int[] values = new int[length];
+    int position = 0;
+    for (int[] array : arrays) {
+      System.arraycopy(array, 0, values, position, array.length);
+      position += array.length;
+    }
+    return values;
+  }
+
+  /** The aggregated QoE metrics of a {@link LoadControlSimulation}. */
+  private static final class SimulationResult {
+    public long rebufferDurationMs;
+    public int loadBurstCount;
+    public long maxBufferedDurationUs;
+    public long bytesLoaded;
+  }
+
+  /**
+   * Simulates the buffer of a player driven by a {@link LoadControl} over a bandwidth trace.
+   *
+   * <p>Time is advanced on the {@link FakeClock} of the test in fixed steps. While the load control
+   * requests loading, media is added to the buffer at the rate of the trace, and the bandwidth
+   * meter reports the throughput measured for the current step.
+   */
+  private final class LoadControlSimulation {
+
+    private static final long SESSION_DURATION_MS = 10 * 60 * 1000;
+    private static final long STEP_MS = 100;
+
+    private final LoadControl loadControl;
+    private final int[] traceKbps;
+
+    public LoadControlSimulation(LoadControl loadControl, int[] traceKbps) {
+      this.loadControl = loadControl;
+      this.traceKbps = traceKbps;
+    }
+
+    public SimulationResult run() {
+      SimulationResult result = new SimulationResult();
+      loadControl.onPrepared();
+      selectVideoTrack(loadControl);
+      bandwidthMeter.bitrateEstimate = 0;
+      long bufferedDurationUs = 0;
+      boolean isPlaying = false;
+      boolean isRebuffering = false;
+      boolean wasLoading = false;
+      for (long timeMs = 0; timeMs < SESSION_DURATION_MS; timeMs += STEP_MS) {
+        long bandwidthBps = traceKbps[(int) ((timeMs / 1000) % traceKbps.length)] * 1000L;
+        boolean isLoading =
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, bufferedDurationUs, SPEED);
+        if (isLoading) {
+          if (!wasLoading) {
+            result.loadBurstCount++;
+          }
+          bandwidthMeter.bitrateEstimate = bandwidthBps;
+          bufferedDurationUs += STEP_MS * 1000 * bandwidthBps / VIDEO_BITRATE;
+          result.bytesLoaded += bandwidthBps * STEP_MS / 1000 / C.BITS_PER_BYTE;
+        }
+        wasLoading = isLoading;
+        if (isPlaying) {
+          bufferedDurationUs -= STEP_MS * 1000;
+          if (bufferedDurationUs <= 0) {
+            bufferedDurationUs = 0;
+            isPlaying = false;
+            isRebuffering = true;
+          }
+        } else {
+          if (isRebuffering) {
+            result.rebufferDurationMs += STEP_MS;
+          }
+          isPlaying =
+              loadControl.shouldStartPlayback(
+                  bufferedDurationUs, SPEED, isRebuffering, /* targetLiveOffsetUs= */ C.TIME_UNSET);
+        }
+        result.maxBufferedDurationUs = Math.max(result.maxBufferedDurationUs, bufferedDurationUs);
+        clock.advanceTime(STEP_MS);
+      }
+      loadControl.onReleased();
+      return result;
+    }
+  }
+
+  private static final class FakeBandwidthMeter implements BandwidthMeter {
+
+    public long bitrateEstimate;
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+    @Nullable
+    @Override
+    public TransferListener getTransferListener() {
+      return null;
+    }
+
+    @Override
+    public void addEventListener(Handler eventHandler, EventListener eventListener) {}
+
+    @Override
+    public void removeEventListener(EventListener eventListener) {}
+  }
+}
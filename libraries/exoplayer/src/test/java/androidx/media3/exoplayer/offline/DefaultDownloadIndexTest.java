@@ -114,6 +114,24 @@ public class DefaultDownloadIndexTest {
     assertEqual(readDownload, download);
   }
 
+  @Test
+  public void putDownloads_addsAndUpdatesAllDownloads() throws DatabaseIOException {
+    downloadIndex.putDownload(new DownloadBuilder("id1").setStartTimeMs(0).build());
+    Download download1 =
+        new DownloadBuilder("id1")
+            .setState(STATE_STOPPED)
+            .setStartTimeMs(0)
+            .setStopReason(1)
+            .build();
+    Download download2 = new DownloadBuilder("id2").setStartTimeMs(1).build();
+
+    downloadIndex.putDownloads(ImmutableList.of(download1, download2));
+
+    assertEqual(downloadIndex.getDownload("id1"), download1);
+    assertEqual(downloadIndex.getDownload("id2"), download2);
+    assertThat(downloadIndex.getDownloads().getCount()).isEqualTo(2);
+  }
+
   @Test
   public void releaseAndRecreateDownloadIndex_returnsTheSameDownload() throws DatabaseIOException {
     String id = "id";
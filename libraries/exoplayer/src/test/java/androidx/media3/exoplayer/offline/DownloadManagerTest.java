@@ -584,6 +584,42 @@ public class DownloadManagerTest {
     assertThat(download2.state).isEqualTo(Download.STATE_REMOVING);
   }
 
+  @Test
+  public void addDownloads_manyDownloads_startsDownloadsInOrderAndQueuesTheRest() throws Throwable {
+    int downloadCount = 1_000;
+    setupDownloadManager(/* maxParallelDownloads= */ 2);
+    runOnMainThread(
+        () -> {
+          for (int i = 0; i < downloadCount; i++) {
+            downloadManager.addDownload(createDownloadRequest("id" + i));
+          }
+        });
+
+    FakeDownloader downloader0 = getDownloaderAt(0);
+    FakeDownloader downloader1 = getDownloaderAt(1);
+    downloader0.assertId("id0");
+    downloader1.assertId("id1");
+    assertNoDownloaderAt(2);
+    downloader0.finish();
+    assertCompleted("id0");
+    FakeDownloader downloader2 = getDownloaderAt(2);
+    downloader2.assertId("id2");
+    downloader2.assertDownloadStarted();
+    assertDownloading("id2");
+
+    List<Download> downloads = postGetCurrentDownloads();
+    assertThat(downloads).hasSize(downloadCount - 1);
+    assertThat(downloads.get(0).request.id).isEqualTo("id1");
+    assertThat(downloads.get(0).state).isEqualTo(Download.STATE_DOWNLOADING);
+    assertThat(downloads.get(1).request.id).isEqualTo("id2");
+    assertThat(downloads.get(1).state).isEqualTo(Download.STATE_DOWNLOADING);
+    for (int i = 2; i < downloads.size(); i++) {
+      assertThat(downloads.get(i).request.id).isEqualTo("id" + (i + 1));
+      assertThat(downloads.get(i).state).isEqualTo(Download.STATE_QUEUED);
+    }
+    assertDownloadIndexSize(downloadCount);
+  }
+
   @Test
   public void addDownload_whilstRemovingWithStopReason_addsStartedDownload() throws Throwable {
     runOnMainThread(
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.offline;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.StreamKey;
+import androidx.media3.common.util.ConditionVariable;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.TransferListener;
+import androidx.media3.datasource.cache.CacheDataSource;
+import androidx.media3.datasource.cache.NoOpCacheEvictor;
+import androidx.media3.datasource.cache.SimpleCache;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SegmentDownloader}. */
+@RunWith(AndroidJUnit4.class)
+public final class SegmentDownloaderTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final Uri MANIFEST_URI = Uri.parse("https://manifest.test/manifest");
+  private static final byte[] MANIFEST_DATA = Util.getUtf8Bytes("manifest");
+
+  private File tempFolder;
+  private SimpleCache cache;
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() throws Exception {
+    tempFolder =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    cache =
+        new SimpleCache(tempFolder, new NoOpCacheEvictor(), TestUtil.getInMemoryDatabaseProvider());
+    executorService = Executors.newFixedThreadPool(/* nThreads= */ 8);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdown();
+    cache.release();
+    Util.recursiveDelete(tempFolder);
+  }
+
+  @Test
+  public void download_withMaxParallelDownloadsPerHost_limitsParallelDownloadsPerHost()
+      throws Exception {
+    List<Uri> segmentUris = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      segmentUris.add(Uri.parse("https://host1.test/segment" + i));
+      segmentUris.add(Uri.parse("https://host2.test/segment" + i));
+    }
+    GatedDataSource.Factory upstreamFactory =
+        new GatedDataSource.Factory(createFakeDataSet(segmentUris));
+    TestSegmentDownloader downloader = createDownloader(upstreamFactory, segmentUris);
+    downloader.setMaxParallelDownloadsPerHost(2);
+
+    Future<?> downloadFuture = startDownload(downloader);
+    // Both hosts reach their limit while the segment opens are blocked.
+    upstreamFactory.blockUntilSegmentOpenCount(4);
+    assertThat(upstreamFactory.getOpenCount("host1.test")).isEqualTo(2);
+    assertThat(upstreamFactory.getOpenCount("host2.test")).isEqualTo(2);
+    upstreamFactory.openGate.open();
+    downloadFuture.get(TIMEOUT_MS, MILLISECONDS);
+
+    assertThat(upstreamFactory.getMaxOpenCount("host1.test")).isEqualTo(2);
+    assertThat(upstreamFactory.getMaxOpenCount("host2.test")).isEqualTo(2);
+    for (Uri segmentUri : segmentUris) {
+      assertThat(cache.isCached(segmentUri.toString(), /* position= */ 0, /* length= */ 100))
+          .isTrue();
+    }
+  }
+
+  @Test
+  public void download_hostAtLimit_downloadsNextSegmentFromOtherHostFirst() throws Exception {
+    ImmutableList<Uri> segmentUris =
+        ImmutableList.of(
+            Uri.parse("https://host1.test/segment0"),
+            Uri.parse("https://host1.test/segment1"),
+            Uri.parse("https://host2.test/segment2"));
+    GatedDataSource.Factory upstreamFactory =
+        new GatedDataSource.Factory(createFakeDataSet(segmentUris));
+    TestSegmentDownloader downloader = createDownloader(upstreamFactory, segmentUris);
+    downloader.setMaxParallelDownloadsPerHost(1);
+
+    Future<?> downloadFuture = startDownload(downloader);
+    // The second segment from host1 can't be requested until the first one has been downloaded,
+    // whereas the segment from host2 is requested straight away.
+    upstreamFactory.blockUntilSegmentOpenCount(2);
+    assertThat(upstreamFactory.getOpenedUris())
+        .containsExactly(MANIFEST_URI, segmentUris.get(0), segmentUris.get(2));
+    upstreamFactory.openGate.open();
+    downloadFuture.get(TIMEOUT_MS, MILLISECONDS);
+
+    assertThat(upstreamFactory.getOpenedUris())
+        .containsExactly(MANIFEST_URI, segmentUris.get(0), segmentUris.get(2), segmentUris.get(1));
+    assertThat(Iterables.getLast(upstreamFactory.getOpenedUris())).isEqualTo(segmentUris.get(1));
+  }
+
+  @Test
+  public void download_withMaxBytesPerSecond_downloadsAllSegments() throws Exception {
+    List<Uri> segmentUris = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      segmentUris.add(Uri.parse("https://host.test/segment" + i));
+    }
+    GatedDataSource.Factory upstreamFactory =
+        new GatedDataSource.Factory(createFakeDataSet(segmentUris));
+    upstreamFactory.openGate.open();
+    TestSegmentDownloader downloader = createDownloader(upstreamFactory, segmentUris);
+    downloader.setMaxBytesPerSecond(1_000_000);
+
+    downloader.download(/* progressListener= */ null);
+
+    for (Uri segmentUri : segmentUris) {
+      assertThat(cache.isCached(segmentUri.toString(), /* position= */ 0, /* length= */ 100))
+          .isTrue();
+    }
+  }
+
+  @Test
+  public void byteRateLimiter_delaysTransfersToMaxBytesPerSecond() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    SegmentDownloader.ByteRateLimiter byteRateLimiter =
+        new SegmentDownloader.ByteRateLimiter(/* maxBytesPerSecond= */ 100_000, clock);
+
+    // Transfers by parallel downloads are limited in aggregate.
+    assertThat(byteRateLimiter.reserveTransfer(/* byteCount= */ 10_000)).isEqualTo(100_000_000);
+    assertThat(byteRateLimiter.reserveTransfer(/* byteCount= */ 10_000)).isEqualTo(200_000_000);
+    clock.advanceTime(/* timeDiffMs= */ 200);
+    assertThat(byteRateLimiter.reserveTransfer(/* byteCount= */ 5_000)).isEqualTo(50_000_000);
+    // Time during which nothing is transferred isn't saved up for later bursts.
+    clock.advanceTime(/* timeDiffMs= */ 1_000);
+    assertThat(byteRateLimiter.reserveTransfer(/* byteCount= */ 10_000)).isEqualTo(100_000_000);
+  }
+
+  private static Future<?> startDownload(TestSegmentDownloader downloader) {
+    FutureTask<Void> downloadTask =
+        new FutureTask<>(
+            () -> {
+              downloader.download(/* progressListener= */ null);
+              return null;
+            });
+    new Thread(downloadTask).start();
+    return downloadTask;
+  }
+
+  private TestSegmentDownloader createDownloader(
+      DataSource.Factory upstreamFactory, List<Uri> segmentUris) {
+    return new TestSegmentDownloader(
+        new MediaItem.Builder().setUri(MANIFEST_URI).build(),
+        new CacheDataSource.Factory().setCache(cache).setUpstreamDataSourceFactory(upstreamFactory),
+        executorService,
+        segmentUris);
+  }
+
+  private static FakeDataSet createFakeDataSet(List<Uri> segmentUris) {
+    FakeDataSet fakeDataSet = new FakeDataSet().setData(MANIFEST_URI, MANIFEST_DATA);
+    for (Uri segmentUri : segmentUris) {
+      fakeDataSet.setRandomData(segmentUri, /* length= */ 100);
+    }
+    return fakeDataSet;
+  }
+
+  private static final class TestManifest implements FilterableManifest<TestManifest> {
+
+    @Override
+    public TestManifest copy(List<StreamKey> streamKeys) {
+      return this;
+    }
+  }
+
+  private static final class TestSegmentDownloader extends SegmentDownloader<TestManifest> {
+
+    private final List<Uri> segmentUris;
+
+    public TestSegmentDownloader(
+        MediaItem mediaItem,
+        CacheDataSource.Factory cacheDataSourceFactory,
+        ExecutorService executorService,
+        List<Uri> segmentUris) {
+      super(
+          mediaItem,
+          (uri, inputStream) -> new TestManifest(),
+          cacheDataSourceFactory,
+          executorService);
+      this.segmentUris = segmentUris;
+    }
+
+    @Override
+    protected List<Segment> getSegments(
+        DataSource dataSource, TestManifest manifest, boolean removing) {
+      List<Segment> segments = new ArrayList<>();
+      for (int i = 0; i < segmentUris.size(); i++) {
+        segments.add(
+            new Segment(
+                /* startTimeUs= */ i * C.MICROS_PER_SECOND, new DataSpec(segmentUris.get(i))));
+      }
+      return segments;
+    }
+  }
+
+  /**
+   * A {@link FakeDataSource} whose segment opens block until {@link Factory#openGate} is opened,
+   * and that records the opened URIs and the number of parallel open requests per host.
+   */
+  private static final class GatedDataSource implements DataSource {
+
+    public static final class Factory implements DataSource.Factory {
+
+      /** Opened to allow opens of segment URIs to complete. Starts closed. */
+      public final ConditionVariable openGate;
+
+      private final FakeDataSet fakeDataSet;
+      private final Map<String, Integer> openCountByHost;
+      private final Map<String, Integer> maxOpenCountByHost;
+      private final List<Uri> openedUris;
+
+      private int segmentOpenCount;
+
+      public Factory(FakeDataSet fakeDataSet) {
+        this.fakeDataSet = fakeDataSet;
+        openGate = new ConditionVariable();
+        openCountByHost = new HashMap<>();
+        maxOpenCountByHost = new HashMap<>();
+        openedUris = new ArrayList<>();
+      }
+
+      @Override
+      public DataSource createDataSource() {
+        return new GatedDataSource(this);
+      }
+
+      public synchronized int getOpenCount(String host) {
+        @Nullable Integer openCount = openCountByHost.get(host);
+        return openCount == null ? 0 : openCount;
+      }
+
+      public synchronized int getMaxOpenCount(String host) {
+        @Nullable Integer maxOpenCount = maxOpenCountByHost.get(host);
+        return maxOpenCount == null ? 0 : maxOpenCount;
+      }
+
+      public synchronized List<Uri> getOpenedUris() {
+        return new ArrayList<>(openedUris);
+      }
+
+      /** Blocks until {@code count} segment URIs have been opened. */
+      public synchronized void blockUntilSegmentOpenCount(int count)
+          throws InterruptedException, TimeoutException {
+        long endTimeMs = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+        while (segmentOpenCount < count) {
+          long remainingMs = endTimeMs - SystemClock.elapsedRealtime();
+          if (remainingMs <= 0) {
+            throw new TimeoutException();
+          }
+          wait(remainingMs);
+        }
+      }
+
+      private synchronized void onOpened(Uri uri) {
+        openedUris.add(uri);
+        if (uri.equals(MANIFEST_URI)) {
+          return;
+        }
+        String host = checkNotNull(uri.getHost());
+        int openCount = getOpenCount(host) + 1;
+        openCountByHost.put(host, openCount);
+        if (openCount > getMaxOpenCount(host)) {
+          maxOpenCountByHost.put(host, openCount);
+        }
+        segmentOpenCount++;
+        notifyAll();
+      }
+
+      private synchronized void onClosed(Uri uri) {
+        if (!uri.equals(MANIFEST_URI)) {
+          String host = checkNotNull(uri.getHost());
+          openCountByHost.put(host, getOpenCount(host) - 1);
+        }
+      }
+    }
+
+    private final Factory factory;
+    private final FakeDataSource fakeDataSource;
+    @Nullable private Uri openUri;
+
+    private GatedDataSource(Factory factory) {
+      this.factory = factory;
+      fakeDataSource = new FakeDataSource(factory.fakeDataSet);
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      fakeDataSource.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openUri = dataSpec.uri;
+      factory.onOpened(dataSpec.uri);
+      if (!dataSpec.uri.equals(MANIFEST_URI)) {
+        try {
+          factory.openGate.block();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      return fakeDataSource.open(dataSpec);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      return fakeDataSource.read(buffer, offset, length);
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+      return fakeDataSource.getUri();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (openUri != null) {
+        factory.onClosed(openUri);
+        openUri = null;
+      }
+      fakeDataSource.close();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.common.C;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.ExtractorInput;
+import androidx.media3.extractor.ExtractorOutput;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.mkv.MatroskaExtractor;
+import androidx.media3.extractor.mp3.Mp3Extractor;
+import androidx.media3.extractor.mp4.Mp4Extractor;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link BundledExtractorsAdapter}. */
+@RunWith(AndroidJUnit4.class)
+public final class BundledExtractorsAdapterTest {
+
+  private static final Uri TEST_URI = Uri.parse("asset:///media/test");
+
+  @Test
+  public void init_withSignatureMatchingLaterExtractor_sniffsMatchingExtractorFirst()
+      throws Exception {
+    List<Extractor> sniffedExtractors = new ArrayList<>();
+    Extractor fakeExtractor = createFakeExtractor(sniffedExtractors);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(
+            () -> new Extractor[] {fakeExtractor, new Mp4Extractor(), new MatroskaExtractor()});
+
+    adapter.init(
+        createDataSource(
+            TestUtil.getByteArray(
+                ApplicationProvider.getApplicationContext(), "media/mkv/sample.mkv")),
+        TEST_URI,
+        ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ C.LENGTH_UNSET,
+        new FakeExtractorOutput());
+
+    assertThat(sniffedExtractors).isEmpty();
+    assertThat(adapter.getCurrentInputPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void init_withUnrecognizedSignature_sniffsExtractorsInOrder() throws Exception {
+    List<Extractor> sniffedExtractors = new ArrayList<>();
+    Extractor fakeExtractor = createFakeExtractor(sniffedExtractors);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(
+            () -> new Extractor[] {fakeExtractor, new MatroskaExtractor(), new Mp3Extractor()});
+
+    adapter.init(
+        createDataSource(
+            TestUtil.getByteArray(
+                ApplicationProvider.getApplicationContext(), "media/mp3/bear-id3.mp3")),
+        TEST_URI,
+        ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ C.LENGTH_UNSET,
+        new FakeExtractorOutput());
+
+    assertThat(sniffedExtractors).containsExactly(fakeExtractor);
+  }
+
+  @Test
+  public void init_withMisleadingSignature_sniffsOtherExtractors() throws Exception {
+    List<Extractor> sniffedExtractors = new ArrayList<>();
+    Extractor fakeExtractor = createFakeExtractor(sniffedExtractors);
+    BundledExtractorsAdapter adapter =
+        new BundledExtractorsAdapter(
+            () -> new Extractor[] {fakeExtractor, new MatroskaExtractor()});
+    byte[] data = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0, 0, 0, 0};
+
+    adapter.init(
+        createDataSource(data),
+        TEST_URI,
+        ImmutableMap.of(),
+        /* position= */ 0,
+        /* length= */ C.LENGTH_UNSET,
+        new FakeExtractorOutput());
+
+    assertThat(sniffedExtractors).containsExactly(fakeExtractor);
+    assertThat(adapter.getCurrentInputPosition()).isEqualTo(0);
+  }
+
+  private static FakeDataSource createDataSource(byte[] data) throws IOException {
+    FakeDataSource dataSource = new FakeDataSource();
+    dataSource.getDataSet().setData(TEST_URI, data);
+    dataSource.open(new DataSpec(TEST_URI));
+    return dataSource;
+  }
+
+  /**
+   * Returns an extractor that claims to be able to read any input, and adds itself to {@code
+   * sniffedExtractors} when it's sniffed. It isn't recognized as one of the bundled extractors.
+   */
+  private static Extractor createFakeExtractor(List<Extractor> sniffedExtractors) {
+    return new Extractor() {
+      @Override
+      public boolean sniff(ExtractorInput input) {
+        sniffedExtractors.add(this);
+        return true;
+      }
+
+      @Override
+      public void init(ExtractorOutput output) {}
+
+      @Override
+      public int read(ExtractorInput input, PositionHolder seekPosition) {
+        return RESULT_END_OF_INPUT;
+      }
+
+      @Override
+      public void seek(long position, long timeUs) {}
+
+      @Override
+      public void release() {}
+    };
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.media3.common.Format;
+import androidx.media3.datasource.AssetDataSource;
+import androidx.media3.extractor.DefaultExtractorsFactory;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelExtractor}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelExtractorTest {
+
+  private ExecutorService executorService;
+  private AtomicInteger dataSourceCount;
+  private ParallelExtractor parallelExtractor;
+
+  @Before
+  public void setUp() {
+    Context context = ApplicationProvider.getApplicationContext();
+    executorService = Executors.newFixedThreadPool(/* nThreads= */ 4);
+    dataSourceCount = new AtomicInteger();
+    parallelExtractor =
+        new ParallelExtractor(
+            () -> {
+              dataSourceCount.incrementAndGet();
+              return new AssetDataSource(context);
+            },
+            new DefaultExtractorsFactory(),
+            executorService);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void extract_flacWithSeekTable_outputsSameSamplesAsSingleRange() throws Exception {
+    Uri uri = Uri.parse("asset:///media/flac/bear.flac");
+    RecordingOutput singleRangeOutput = new RecordingOutput();
+    RecordingOutput multipleRangeOutput = new RecordingOutput();
+
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 1, singleRangeOutput);
+    dataSourceCount.set(0);
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 4, multipleRangeOutput);
+
+    // One data source reads the seek map, and one reads each range.
+    assertThat(dataSourceCount.get()).isEqualTo(5);
+    assertThat(multipleRangeOutput.formats).hasSize(1);
+    assertThat(multipleRangeOutput.formats).isEqualTo(singleRangeOutput.formats);
+    assertThat(multipleRangeOutput.timesUs).isEqualTo(singleRangeOutput.timesUs);
+    assertThat(multipleRangeOutput.getData()).isEqualTo(singleRangeOutput.getData());
+  }
+
+  @Test
+  public void extract_wav_outputsSameDataAsSingleRange() throws Exception {
+    Uri uri = Uri.parse("asset:///media/wav/sample.wav");
+    RecordingOutput singleRangeOutput = new RecordingOutput();
+    RecordingOutput multipleRangeOutput = new RecordingOutput();
+
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 1, singleRangeOutput);
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 4, multipleRangeOutput);
+
+    assertThat(multipleRangeOutput.formats).isEqualTo(singleRangeOutput.formats);
+    assertThat(multipleRangeOutput.timesUs).isInStrictOrder();
+    assertThat(multipleRangeOutput.getData()).isEqualTo(singleRangeOutput.getData());
+  }
+
+  @Test
+  public void extract_mp3WithConstantBitrateSeekMap_extractsSingleRange() throws Exception {
+    Uri uri = Uri.parse("asset:///media/mp3/bear-cbr-variable-frame-size-no-seek-table.mp3");
+    RecordingOutput singleRangeOutput = new RecordingOutput();
+    RecordingOutput multipleRangeOutput = new RecordingOutput();
+
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 1, singleRangeOutput);
+    dataSourceCount.set(0);
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 4, multipleRangeOutput);
+
+    // The seek points of a constant bitrate seek map are estimated, so the stream isn't split.
+    assertThat(dataSourceCount.get()).isEqualTo(2);
+    assertThat(multipleRangeOutput.timesUs).isNotEmpty();
+    assertThat(multipleRangeOutput.timesUs).isEqualTo(singleRangeOutput.timesUs);
+    assertThat(multipleRangeOutput.getData()).isEqualTo(singleRangeOutput.getData());
+  }
+
+  @Test
+  public void extract_withMaxRangesInFlight_extractsLimitedNumberOfRangesAhead() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    AtomicInteger executedRangeCount = new AtomicInteger();
+    ParallelExtractor parallelExtractor =
+        new ParallelExtractor(
+            () -> new AssetDataSource(context),
+            new DefaultExtractorsFactory(),
+            task -> {
+              executedRangeCount.incrementAndGet();
+              executorService.execute(task);
+            },
+            /* maxRangesInFlight= */ 2);
+    List<Integer> executedRangeCounts = new ArrayList<>();
+
+    parallelExtractor.extract(
+        Uri.parse("asset:///media/flac/bear.flac"),
+        /* maxRangeCount= */ 4,
+        new RecordingOutput() {
+          @Override
+          public void onSample(int trackId, long timeUs, int flags, byte[] data) {
+            super.onSample(trackId, timeUs, flags, data);
+            executedRangeCounts.add(executedRangeCount.get());
+          }
+        });
+
+    // Each range is only submitted once the range two ranges before it has been output.
+    assertThat(ImmutableSet.copyOf(executedRangeCounts)).containsExactly(2, 3, 4).inOrder();
+  }
+
+  @Test
+  public void extract_unseekableStream_outputsAllSamples() throws Exception {
+    Uri uri = Uri.parse("asset:///media/flac/bear_no_seek_table_no_num_samples.flac");
+    RecordingOutput singleRangeOutput = new RecordingOutput();
+    RecordingOutput multipleRangeOutput = new RecordingOutput();
+
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 1, singleRangeOutput);
+    parallelExtractor.extract(uri, /* maxRangeCount= */ 4, multipleRangeOutput);
+
+    assertThat(multipleRangeOutput.timesUs).isNotEmpty();
+    assertThat(multipleRangeOutput.timesUs).isEqualTo(singleRangeOutput.timesUs);
+    assertThat(multipleRangeOutput.getData()).isEqualTo(singleRangeOutput.getData());
+  }
+
+  private static class RecordingOutput implements ParallelExtractor.Output {
+
+    public final List<Format> formats;
+    public final List<Long> timesUs;
+    private final List<byte[]> data;
+
+    public RecordingOutput() {
+      formats = new ArrayList<>();
+      timesUs = new ArrayList<>();
+      data = new ArrayList<>();
+    }
+
+    @Override
+    public void onFormat(int trackId, Format format) {
+      formats.add(format);
+    }
+
+    @Override
+    public void onSample(int trackId, long timeUs, int flags, byte[] data) {
+      timesUs.add(timeUs);
+      this.data.add(data);
+    }
+
+    public byte[] getData() {
+      return Bytes.concat(data.toArray(new byte[0][]));
+    }
+  }
+}
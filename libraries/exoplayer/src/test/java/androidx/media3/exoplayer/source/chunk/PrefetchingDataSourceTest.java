@@ -0,0 +1,130 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.chunk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.media3.datasource.DataSourceUtil;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PrefetchingDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class PrefetchingDataSourceTest {
+
+  private static final DataSpec DATA_SPEC_1 = new DataSpec(Uri.parse("uri1"));
+  private static final DataSpec DATA_SPEC_2 = new DataSpec(Uri.parse("uri2"));
+  private static final DataSpec DATA_SPEC_3 = new DataSpec(Uri.parse("uri3"));
+
+  private FakeDataSet fakeDataSet;
+  private FakeDataSource upstream;
+  private AtomicInteger prefetchDataSourceCount;
+
+  @Before
+  public void setUp() {
+    fakeDataSet =
+        new FakeDataSet()
+            .setData(DATA_SPEC_1.uri, TestUtil.buildTestData(/* length= */ 100, /* seed= */ 1))
+            .setData(DATA_SPEC_2.uri, TestUtil.buildTestData(/* length= */ 100, /* seed= */ 2))
+            .setData(DATA_SPEC_3.uri, TestUtil.buildTestData(/* length= */ 100, /* seed= */ 3));
+    upstream = new FakeDataSource(fakeDataSet);
+    prefetchDataSourceCount = new AtomicInteger();
+  }
+
+  @Test
+  public void read_prefetchedDataSpec_readsDataWithoutOpeningUpstream() throws Exception {
+    PrefetchingDataSource dataSource =
+        createPrefetchingDataSource(
+            /* maxParallelLoadCount= */ 3, PrefetchingDataSource.DEFAULT_MAX_PREFETCH_LENGTH);
+
+    dataSource.setUpcomingDataSpecs(ImmutableList.of(DATA_SPEC_1, DATA_SPEC_2, DATA_SPEC_3));
+    byte[] data1 = readFully(dataSource, DATA_SPEC_1);
+    byte[] data2 = readFully(dataSource, DATA_SPEC_2);
+    byte[] data3 = readFully(dataSource, DATA_SPEC_3);
+    dataSource.release();
+
+    assertThat(data1).isEqualTo(fakeDataSet.getData(DATA_SPEC_1.uri).getData());
+    assertThat(data2).isEqualTo(fakeDataSet.getData(DATA_SPEC_2.uri).getData());
+    assertThat(data3).isEqualTo(fakeDataSet.getData(DATA_SPEC_3.uri).getData());
+    assertThat(prefetchDataSourceCount.get()).isEqualTo(2);
+    assertThat(upstream.getAndClearOpenedDataSpecs()).asList().containsExactly(DATA_SPEC_1);
+  }
+
+  @Test
+  public void read_dataLongerThanMaxPrefetchLength_readsRemainingDataFromUpstream()
+      throws Exception {
+    PrefetchingDataSource dataSource =
+        createPrefetchingDataSource(/* maxParallelLoadCount= */ 2, /* maxPrefetchLength= */ 30);
+
+    dataSource.setUpcomingDataSpecs(ImmutableList.of(DATA_SPEC_1, DATA_SPEC_2));
+    readFully(dataSource, DATA_SPEC_1);
+    upstream.getAndClearOpenedDataSpecs();
+    byte[] data2 = readFully(dataSource, DATA_SPEC_2);
+    dataSource.release();
+
+    assertThat(data2).isEqualTo(fakeDataSet.getData(DATA_SPEC_2.uri).getData());
+    DataSpec[] openedDataSpecs = upstream.getAndClearOpenedDataSpecs();
+    assertThat(openedDataSpecs).hasLength(1);
+    assertThat(openedDataSpecs[0].uri).isEqualTo(DATA_SPEC_2.uri);
+    assertThat(openedDataSpecs[0].position).isEqualTo(30);
+  }
+
+  @Test
+  public void setUpcomingDataSpecs_withoutPrefetchedDataSpec_cancelsPrefetch() throws Exception {
+    PrefetchingDataSource dataSource =
+        createPrefetchingDataSource(
+            /* maxParallelLoadCount= */ 2, PrefetchingDataSource.DEFAULT_MAX_PREFETCH_LENGTH);
+
+    dataSource.setUpcomingDataSpecs(ImmutableList.of(DATA_SPEC_1, DATA_SPEC_2));
+    dataSource.setUpcomingDataSpecs(ImmutableList.of(DATA_SPEC_1, DATA_SPEC_3));
+    byte[] data2 = readFully(dataSource, DATA_SPEC_2);
+    dataSource.release();
+
+    assertThat(data2).isEqualTo(fakeDataSet.getData(DATA_SPEC_2.uri).getData());
+    assertThat(upstream.getAndClearOpenedDataSpecs()).asList().containsExactly(DATA_SPEC_2);
+  }
+
+  private PrefetchingDataSource createPrefetchingDataSource(
+      int maxParallelLoadCount, int maxPrefetchLength) {
+    return new PrefetchingDataSource(
+        upstream,
+        () -> {
+          prefetchDataSourceCount.incrementAndGet();
+          return new FakeDataSource(fakeDataSet);
+        },
+        maxParallelLoadCount,
+        maxPrefetchLength);
+  }
+
+  private static byte[] readFully(PrefetchingDataSource dataSource, DataSpec dataSpec)
+      throws Exception {
+    try {
+      dataSource.open(dataSpec);
+      return DataSourceUtil.readToEnd(dataSource);
+    } finally {
+      dataSource.close();
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.preload;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Pair;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.Timeline;
+import androidx.media3.exoplayer.RendererCapabilities;
+import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.source.MediaPeriod;
+import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.MediaSource.MediaSourceCaller;
+import androidx.media3.exoplayer.trackselection.DefaultTrackSelector;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
+import androidx.media3.test.utils.FakeMediaSource;
+import androidx.media3.test.utils.FakeRenderer;
+import androidx.media3.test.utils.FakeTimeline;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultPreloadManager}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultPreloadManagerTest {
+
+  private static final Format VIDEO_FORMAT =
+      new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build();
+
+  private DefaultAllocator allocator;
+  private DefaultPreloadManager.Builder builder;
+  private List<FakeMediaSource> fakeMediaSources;
+
+  @Before
+  public void setUp() {
+    Context context = ApplicationProvider.getApplicationContext();
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    builder =
+        new DefaultPreloadManager.Builder(
+            new DefaultTrackSelector(context),
+            new DefaultBandwidthMeter.Builder(context).build(),
+            new RendererCapabilities[] {new FakeRenderer(C.TRACK_TYPE_VIDEO).getCapabilities()},
+            allocator,
+            Looper.getMainLooper());
+    fakeMediaSources = new ArrayList<>();
+  }
+
+  @Test
+  public void setCurrentIndex_preloadsItemsInPreloadRange() {
+    DefaultPreloadManager preloadManager = builder.build();
+    addFakeMediaSources(preloadManager, /* count= */ 5);
+
+    preloadManager.setCurrentIndex(1);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(fakeMediaSources.get(0).isPrepared()).isTrue();
+    assertThat(fakeMediaSources.get(1).isPrepared()).isFalse();
+    assertThat(fakeMediaSources.get(2).isPrepared()).isTrue();
+    assertThat(fakeMediaSources.get(3).isPrepared()).isTrue();
+    assertThat(fakeMediaSources.get(4).isPrepared()).isFalse();
+    assertThat(fakeMediaSources.get(2).getCreatedMediaPeriods()).hasSize(1);
+    assertThat(preloadManager.getTotalPreloadedBytes()).isGreaterThan(0);
+  }
+
+  @Test
+  public void setCurrentIndex_clearsItemsOutOfPreloadRange() {
+    DefaultPreloadManager preloadManager = builder.setPreloadItemCounts(0, 1).build();
+    addFakeMediaSources(preloadManager, /* count= */ 4);
+    preloadManager.setCurrentIndex(0);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    preloadManager.setCurrentIndex(2);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    fakeMediaSources.get(1).assertReleased();
+    assertThat(fakeMediaSources.get(3).isPrepared()).isTrue();
+    assertThat(preloadManager.getMediaSource(1).getPreloadedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void setCurrentIndex_withExhaustedByteBudget_doesNotPreloadMedia() {
+    DefaultPreloadManager preloadManager = builder.setMaxPreloadBytes(0).build();
+    addFakeMediaSources(preloadManager, /* count= */ 3);
+
+    preloadManager.setCurrentIndex(0);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(fakeMediaSources.get(1).getCreatedMediaPeriods()).isEmpty();
+    assertThat(fakeMediaSources.get(2).getCreatedMediaPeriods()).isEmpty();
+    assertThat(preloadManager.getTotalPreloadedBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void playerUsingPreloadedItem_incrementsUsedPreloadCount() {
+    DefaultPreloadManager preloadManager = builder.build();
+    addFakeMediaSources(preloadManager, /* count= */ 2);
+    preloadManager.setCurrentIndex(0);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    PreloadMediaSource mediaSource = preloadManager.getMediaSource(1);
+    MediaSourceCaller playerCaller = (source, timeline) -> {};
+    mediaSource.prepareSource(playerCaller, /* mediaTransferListener= */ null, PlayerId.UNSET);
+    Pair<Object, Long> periodPosition =
+        checkNotNull(mediaSource.getTimeline())
+            .getPeriodPositionUs(
+                new Timeline.Window(),
+                new Timeline.Period(),
+                /* windowIndex= */ 0,
+                /* windowPositionUs= */ C.TIME_UNSET);
+    MediaPeriod mediaPeriod =
+        mediaSource.createPeriod(
+            new MediaPeriodId(periodPosition.first, /* windowSequenceNumber= */ 0),
+            allocator,
+            periodPosition.second);
+
+    assertThat(preloadManager.getUsedPreloadCount()).isEqualTo(1);
+    assertThat(preloadManager.getTotalStartupTimeSavedMs()).isAtLeast(0);
+    assertThat(fakeMediaSources.get(1).getCreatedMediaPeriods()).hasSize(1);
+
+    mediaSource.releasePeriod(mediaPeriod);
+    mediaSource.releaseSource(playerCaller);
+    preloadManager.release();
+    shadowOf(Looper.getMainLooper()).idle();
+    fakeMediaSources.get(1).assertReleased();
+  }
+
+  @Test
+  public void swipeBackToItemReleasedByPlayer_usesNewlyPreloadedPeriod() {
+    DefaultPreloadManager preloadManager = builder.build();
+    addFakeMediaSources(preloadManager, /* count= */ 3);
+    preloadManager.setCurrentIndex(0);
+    shadowOf(Looper.getMainLooper()).idle();
+    PreloadMediaSource mediaSource = preloadManager.getMediaSource(1);
+    MediaSourceCaller playerCaller = (source, timeline) -> {};
+    mediaSource.prepareSource(playerCaller, /* mediaTransferListener= */ null, PlayerId.UNSET);
+    MediaPeriod mediaPeriod = createFirstPeriod(mediaSource);
+    preloadManager.setCurrentIndex(1);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    // Swipe forward, so that the player releases the item, and back again.
+    mediaSource.releasePeriod(mediaPeriod);
+    mediaSource.releaseSource(playerCaller);
+    preloadManager.setCurrentIndex(2);
+    shadowOf(Looper.getMainLooper()).idle();
+    long preloadedBytesAfterSwipeForward = mediaSource.getPreloadedBytes();
+    mediaSource.prepareSource(playerCaller, /* mediaTransferListener= */ null, PlayerId.UNSET);
+    mediaPeriod = createFirstPeriod(mediaSource);
+    preloadManager.setCurrentIndex(1);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(preloadedBytesAfterSwipeForward).isGreaterThan(0);
+    assertThat(mediaSource.isUsedByPlayer()).isTrue();
+    assertThat(preloadManager.getUsedPreloadCount()).isEqualTo(2);
+    assertThat(fakeMediaSources.get(1).getCreatedMediaPeriods()).hasSize(2);
+
+    mediaSource.releasePeriod(mediaPeriod);
+    mediaSource.releaseSource(playerCaller);
+    preloadManager.release();
+    shadowOf(Looper.getMainLooper()).idle();
+    fakeMediaSources.get(1).assertReleased();
+  }
+
+  @Test
+  public void trimMemory_keepNextItem_clearsAllOtherPreloadedItems() {
+    DefaultPreloadManager preloadManager = builder.build();
+    addFakeMediaSources(preloadManager, /* count= */ 4);
+    preloadManager.setCurrentIndex(1);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    preloadManager.trimMemory(/* keepNextItem= */ true);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    fakeMediaSources.get(0).assertReleased();
+    fakeMediaSources.get(3).assertReleased();
+    assertThat(fakeMediaSources.get(2).isPrepared()).isTrue();
+    assertThat(preloadManager.getTotalPreloadedBytes())
+        .isEqualTo(preloadManager.getMediaSource(2).getPreloadedBytes());
+  }
+
+  @Test
+  public void addAndRemove_updateCurrentIndex() {
+    DefaultPreloadManager preloadManager = builder.build();
+    addFakeMediaSources(preloadManager, /* count= */ 3);
+    preloadManager.setCurrentIndex(1);
+
+    preloadManager.add(/* index= */ 0, new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT));
+    int indexAfterAdd = preloadManager.getCurrentIndex();
+    preloadManager.remove(/* index= */ 0);
+    preloadManager.remove(/* index= */ 0);
+    int indexAfterRemove = preloadManager.getCurrentIndex();
+
+    assertThat(indexAfterAdd).isEqualTo(2);
+    assertThat(indexAfterRemove).isEqualTo(0);
+    assertThat(preloadManager.getSize()).isEqualTo(2);
+    preloadManager.release();
+    shadowOf(Looper.getMainLooper()).idle();
+  }
+
+  private MediaPeriod createFirstPeriod(PreloadMediaSource mediaSource) {
+    Pair<Object, Long> periodPosition =
+        checkNotNull(mediaSource.getTimeline())
+            .getPeriodPositionUs(
+                new Timeline.Window(),
+                new Timeline.Period(),
+                /* windowIndex= */ 0,
+                /* windowPositionUs= */ C.TIME_UNSET);
+    return mediaSource.createPeriod(
+        new MediaPeriodId(periodPosition.first, /* windowSequenceNumber= */ 0),
+        allocator,
+        periodPosition.second);
+  }
+
+  private void addFakeMediaSources(DefaultPreloadManager preloadManager, int count) {
+    for (int i = 0; i < count; i++) {
+      FakeMediaSource fakeMediaSource = new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT);
+      fakeMediaSources.add(fakeMediaSource);
+      preloadManager.add(fakeMediaSource);
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.source.preload;
+
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static androidx.media3.test.utils.robolectric.RobolectricUtil.runMainLooperUntil;
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Pair;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DefaultDataSource;
+import androidx.media3.exoplayer.RendererCapabilities;
+import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
+import androidx.media3.exoplayer.source.MediaPeriod;
+import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.MediaSource.MediaSourceCaller;
+import androidx.media3.exoplayer.source.MediaSourceEventListener;
+import androidx.media3.exoplayer.source.ProgressiveMediaSource;
+import androidx.media3.exoplayer.source.SampleStream;
+import androidx.media3.exoplayer.trackselection.DefaultTrackSelector;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import androidx.media3.exoplayer.upstream.Allocator;
+import androidx.media3.exoplayer.upstream.DefaultAllocator;
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
+import androidx.media3.test.utils.FakeMediaSource;
+import androidx.media3.test.utils.FakeRenderer;
+import androidx.media3.test.utils.FakeTimeline;
+import androidx.media3.test.utils.FakeTrackSelection;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PreloadMediaSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class PreloadMediaSourceTest {
+
+  private static final Format VIDEO_FORMAT =
+      new Format.Builder().setSampleMimeType(MimeTypes.VIDEO_H264).build();
+
+  private RecordingPreloadControl preloadControl;
+  private DefaultAllocator allocator;
+  private PreloadMediaSource.Factory factory;
+
+  @Before
+  public void setUp() {
+    Context context = ApplicationProvider.getApplicationContext();
+    preloadControl = new RecordingPreloadControl();
+    allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    factory =
+        new PreloadMediaSource.Factory(
+            preloadControl,
+            new DefaultTrackSelector(context),
+            new DefaultBandwidthMeter.Builder(context).build(),
+            new RendererCapabilities[] {new FakeRenderer(C.TRACK_TYPE_VIDEO).getCapabilities()},
+            allocator,
+            Looper.getMainLooper());
+  }
+
+  @Test
+  public void preload_preparesSourceAndPeriodAndSelectsTracks() {
+    FakeMediaSource fakeMediaSource = new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT);
+    PreloadMediaSource preloadMediaSource = factory.createMediaSource(fakeMediaSource);
+
+    preloadMediaSource.preload();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(fakeMediaSource.isPrepared()).isTrue();
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(preloadControl.sourcePreparedCount).isEqualTo(1);
+    assertThat(preloadControl.tracksSelectedCount).isEqualTo(1);
+    assertThat(preloadMediaSource.getPreloadedBytes()).isGreaterThan(0);
+    assertThat(preloadMediaSource.isUsedByPlayer()).isFalse();
+  }
+
+  @Test
+  public void preload_withControlStoppingAfterSourcePrepared_doesNotCreatePeriod() {
+    preloadControl.continueAfterSourcePrepared = false;
+    FakeMediaSource fakeMediaSource = new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT);
+    PreloadMediaSource preloadMediaSource = factory.createMediaSource(fakeMediaSource);
+
+    preloadMediaSource.preload();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(fakeMediaSource.isPrepared()).isTrue();
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).isEmpty();
+    assertThat(preloadControl.tracksSelectedCount).isEqualTo(0);
+  }
+
+  @Test
+  public void createPeriod_atPreloadedPosition_reusesPreloadedPeriodAndStreams() {
+    FakeMediaSource fakeMediaSource = new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT);
+    PreloadMediaSource preloadMediaSource = factory.createMediaSource(fakeMediaSource);
+    preloadMediaSource.preload();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    MediaSourceCaller playerCaller = (source, timeline) -> {};
+    preloadMediaSource.prepareSource(
+        playerCaller, /* mediaTransferListener= */ null, PlayerId.UNSET);
+    Pair<Object, Long> periodPosition = getDefaultPeriodPosition(preloadMediaSource);
+    MediaPeriod mediaPeriod =
+        preloadMediaSource.createPeriod(
+            new MediaPeriodId(periodPosition.first, /* windowSequenceNumber= */ 1),
+            allocator,
+            periodPosition.second);
+    PreparedCallback callback = new PreparedCallback();
+    mediaPeriod.prepare(callback, periodPosition.second);
+    ExoTrackSelection[] selections =
+        new ExoTrackSelection[] {
+          new FakeTrackSelection(mediaPeriod.getTrackGroups().get(/* index= */ 0))
+        };
+    SampleStream[] streams = new SampleStream[1];
+    boolean[] streamResetFlags = new boolean[1];
+    long positionUs =
+        mediaPeriod.selectTracks(
+            selections, new boolean[1], streams, streamResetFlags, periodPosition.second);
+
+    assertThat(callback.prepared).isTrue();
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(preloadMediaSource.isUsedByPlayer()).isTrue();
+    assertThat(preloadControl.usedByPlayerCount).isEqualTo(1);
+    assertThat(streams[0]).isNotNull();
+    assertThat(streamResetFlags[0]).isTrue();
+    assertThat(positionUs).isEqualTo(periodPosition.second);
+
+    preloadMediaSource.releasePeriod(mediaPeriod);
+    preloadMediaSource.releaseSource(playerCaller);
+    preloadMediaSource.clear();
+    shadowOf(Looper.getMainLooper()).idle();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void createPeriod_atDifferentPosition_reusesPreparedPeriodWithNewStreams() {
+    FakeMediaSource fakeMediaSource = new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT);
+    PreloadMediaSource preloadMediaSource = factory.createMediaSource(fakeMediaSource);
+    preloadMediaSource.preload();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    MediaSourceCaller playerCaller = (source, timeline) -> {};
+    preloadMediaSource.prepareSource(
+        playerCaller, /* mediaTransferListener= */ null, PlayerId.UNSET);
+    Pair<Object, Long> periodPosition = getDefaultPeriodPosition(preloadMediaSource);
+    long startPositionUs = periodPosition.second + 1_000_000;
+    MediaPeriod mediaPeriod =
+        preloadMediaSource.createPeriod(
+            new MediaPeriodId(periodPosition.first, /* windowSequenceNumber= */ 1),
+            allocator,
+            startPositionUs);
+    PreparedCallback callback = new PreparedCallback();
+    mediaPeriod.prepare(callback, startPositionUs);
+    ExoTrackSelection[] selections =
+        new ExoTrackSelection[] {
+          new FakeTrackSelection(mediaPeriod.getTrackGroups().get(/* index= */ 0))
+        };
+    SampleStream[] streams = new SampleStream[1];
+    boolean[] streamResetFlags = new boolean[1];
+    long positionUs =
+        mediaPeriod.selectTracks(
+            selections, new boolean[1], streams, streamResetFlags, startPositionUs);
+
+    assertThat(callback.prepared).isTrue();
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(preloadMediaSource.isUsedByPlayer()).isTrue();
+    assertThat(streams[0]).isNotNull();
+    assertThat(streamResetFlags[0]).isTrue();
+    assertThat(positionUs).isEqualTo(startPositionUs);
+
+    preloadMediaSource.releasePeriod(mediaPeriod);
+    preloadMediaSource.releaseSource(playerCaller);
+    preloadMediaSource.clear();
+    shadowOf(Looper.getMainLooper()).idle();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void createPeriod_afterPreloadingWithPlayerId_createsPeriodsWithPlayerIdOfPlayer() {
+    List<PlayerId> createdPeriodPlayerIds = new ArrayList<>();
+    FakeMediaSource fakeMediaSource =
+        new FakeMediaSource(new FakeTimeline(/* windowCount= */ 2), VIDEO_FORMAT) {
+          @Override
+          public MediaPeriod createPeriod(
+              MediaPeriodId id, Allocator allocator, long startPositionUs) {
+            createdPeriodPlayerIds.add(getPlayerId());
+            return super.createPeriod(id, allocator, startPositionUs);
+          }
+        };
+    PlayerId playerId = new PlayerId();
+    PreloadMediaSource preloadMediaSource =
+        factory.setPlayerId(playerId).createMediaSource(fakeMediaSource);
+    preloadMediaSource.preload();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    MediaSourceCaller playerCaller = (source, timeline) -> {};
+    preloadMediaSource.prepareSource(playerCaller, /* mediaTransferListener= */ null, playerId);
+    Timeline timeline = checkNotNull(preloadMediaSource.getTimeline());
+    MediaPeriod mediaPeriod =
+        preloadMediaSource.createPeriod(
+            new MediaPeriodId(
+                timeline.getUidOfPeriod(/* periodIndex= */ 1), /* windowSequenceNumber= */ 1),
+            allocator,
+            /* startPositionUs= */ 0);
+
+    assertThat(createdPeriodPlayerIds).containsExactly(playerId, playerId);
+
+    preloadMediaSource.releasePeriod(mediaPeriod);
+    preloadMediaSource.releaseSource(playerCaller);
+    preloadMediaSource.clear();
+    shadowOf(Looper.getMainLooper()).idle();
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void preload_progressiveSource_countsBufferedBytesBeforeLoadCompletes()
+      throws TimeoutException {
+    preloadControl.continueLoading = false;
+    Context context = ApplicationProvider.getApplicationContext();
+    MediaSource progressiveMediaSource =
+        new ProgressiveMediaSource.Factory(new DefaultDataSource.Factory(context))
+            .setContinueLoadingCheckIntervalBytes(1024)
+            .createMediaSource(MediaItem.fromUri("asset:///media/mp4/sample.mp4"));
+    PreloadMediaSource preloadMediaSource = factory.createMediaSource(progressiveMediaSource);
+    AtomicInteger loadCompletedCount = new AtomicInteger();
+    preloadMediaSource.addEventListener(
+        Util.createHandlerForCurrentLooper(),
+        new MediaSourceEventListener() {
+          @Override
+          public void onLoadCompleted(
+              int windowIndex,
+              @Nullable MediaPeriodId mediaPeriodId,
+              LoadEventInfo loadEventInfo,
+              MediaLoadData mediaLoadData) {
+            loadCompletedCount.incrementAndGet();
+          }
+        });
+
+    preloadMediaSource.preload();
+    // The control stops the preload at the first continue loading request, so the load never
+    // completes.
+    runMainLooperUntil(
+        () ->
+            preloadControl.continueLoadingRequestedCount > 0
+                && preloadMediaSource.getPreloadedBytes() > 0);
+
+    assertThat(loadCompletedCount.get()).isEqualTo(0);
+
+    preloadMediaSource.clear();
+    runMainLooperUntil(() -> preloadMediaSource.getPreloadedBytes() == 0);
+  }
+
+  @Test
+  public void clear_releasesPreloadedSourceAndPeriod() {
+    FakeMediaSource fakeMediaSource = new FakeMediaSource(new FakeTimeline(), VIDEO_FORMAT);
+    PreloadMediaSource preloadMediaSource = factory.createMediaSource(fakeMediaSource);
+    preloadMediaSource.preload();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    preloadMediaSource.clear();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    fakeMediaSource.assertReleased();
+    assertThat(preloadMediaSource.getPreloadedBytes()).isEqualTo(0);
+  }
+
+  private static Pair<Object, Long> getDefaultPeriodPosition(PreloadMediaSource mediaSource) {
+    return checkNotNull(mediaSource.getTimeline())
+        .getPeriodPositionUs(
+            new Timeline.Window(),
+            new Timeline.Period(),
+            /* windowIndex= */ 0,
+            /* windowPositionUs= */ C.TIME_UNSET);
+  }
+
+  private static final class RecordingPreloadControl implements PreloadMediaSource.PreloadControl {
+
+    public boolean continueAfterSourcePrepared;
+    public boolean continueLoading;
+    public int sourcePreparedCount;
+    public int tracksSelectedCount;
+    public int continueLoadingRequestedCount;
+    public int usedByPlayerCount;
+
+    public RecordingPreloadControl() {
+      continueAfterSourcePrepared = true;
+      continueLoading = true;
+    }
+
+    @Override
+    public boolean onSourcePrepared(PreloadMediaSource mediaSource) {
+      sourcePreparedCount++;
+      return continueAfterSourcePrepared;
+    }
+
+    @Override
+    public boolean onTracksSelected(PreloadMediaSource mediaSource) {
+      tracksSelectedCount++;
+      return true;
+    }
+
+    @Override
+    public boolean onContinueLoadingRequested(
+        PreloadMediaSource mediaSource, long bufferedDurationUs) {
+      continueLoadingRequestedCount++;
+      return continueLoading;
+    }
+
+    @Override
+    public void onUsedByPlayer(PreloadMediaSource mediaSource) {
+      usedByPlayerCount++;
+    }
+  }
+
+  private static final class PreparedCallback implements MediaPeriod.Callback {
+
+    public boolean prepared;
+
+    @Override
+    public void onPrepared(MediaPeriod mediaPeriod) {
+      prepared = true;
+    }
+
+    @Override
+    public void onContinueLoadingRequested(MediaPeriod source) {}
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.MimeTypes;
+import androidx.media3.common.TrackGroup;
+import androidx.media3.common.TrackSelection;
+import androidx.media3.exoplayer.source.chunk.MediaChunk;
+import androidx.media3.exoplayer.source.chunk.MediaChunkIterator;
+import androidx.media3.exoplayer.upstream.BandwidthMeter;
+import androidx.media3.test.utils.FakeAdaptiveDataSet;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeMediaChunk;
+import androidx.media3.test.utils.FakeMediaChunkIterator;
+import androidx.media3.test.utils.TrackSelectionSimulator;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+/** Unit test for {@link HybridAdaptiveTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+public final class HybridAdaptiveTrackSelectionTest {
+
+  private static final long TEST_CHUNK_DURATION_SEC = 2;
+  private static final int TEST_CHUNK_COUNT = 5;
+
+  private static final Format FORMAT_LOW =
+      videoFormat(/* bitrate= */ 500_000, /* width= */ 320, /* height= */ 240);
+  private static final Format FORMAT_MEDIUM =
+      videoFormat(/* bitrate= */ 1_000_000, /* width= */ 640, /* height= */ 480);
+  private static final Format FORMAT_HIGH =
+      videoFormat(/* bitrate= */ 2_000_000, /* width= */ 960, /* height= */ 720);
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private FakeClock fakeClock;
+  private TrackGroup trackGroup;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    fakeClock = new FakeClock(0);
+    trackGroup = new TrackGroup(FORMAT_LOW, FORMAT_MEDIUM, FORMAT_HIGH);
+    when(mockBandwidthMeter.getTimeToFirstByteEstimateUs()).thenReturn(C.TIME_UNSET);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_selectsTrackThatCanBeLoadedWithoutLongRebuffering() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1_200_000L);
+    HybridAdaptiveTrackSelection trackSelection = createTrackSelection();
+
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(/* highChunkLengthFactor= */ 1f));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_MEDIUM);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void initial_updateSelectedTrack_withSmallForecastChunks_selectsHigherTrack() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1_200_000L);
+    HybridAdaptiveTrackSelection trackSelection = createTrackSelection();
+
+    // The upcoming chunks of the highest track are much smaller than its average bitrate suggests.
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(/* highChunkLengthFactor= */ 0.25f));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_HIGH);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferAboveReserve_switchesUpBeyondThroughput() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1_200_000L);
+    HybridAdaptiveTrackSelection trackSelection = prepareTrackSelection();
+    List<MediaChunk> queue =
+        ImmutableList.of(
+            new FakeMediaChunk(
+                FORMAT_MEDIUM,
+                /* startTimeUs= */ 0,
+                /* endTimeUs= */ 50_000_000,
+                C.SELECTION_REASON_INITIAL));
+
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 50_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        queue,
+        createMediaChunkIterators(/* highChunkLengthFactor= */ 1f));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_HIGH);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withBufferAtReserve_keepsTrackWithinThroughput() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1_200_000L);
+    HybridAdaptiveTrackSelection trackSelection = prepareTrackSelection();
+    List<MediaChunk> queue =
+        ImmutableList.of(
+            new FakeMediaChunk(
+                FORMAT_MEDIUM,
+                /* startTimeUs= */ 0,
+                /* endTimeUs= */ 10_000_000,
+                C.SELECTION_REASON_INITIAL));
+
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 10_000_000,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        queue,
+        createMediaChunkIterators(/* highChunkLengthFactor= */ 1f));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_MEDIUM);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withExcludedTrack_selectsOtherTrack() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(1_200_000L);
+    HybridAdaptiveTrackSelection trackSelection = createTrackSelection();
+
+    trackSelection.blacklist(
+        trackSelection.indexOf(FORMAT_MEDIUM), /* exclusionDurationMs= */ 60_000);
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(/* highChunkLengthFactor= */ 1f));
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(FORMAT_LOW);
+  }
+
+  @Test
+  public void simulate_withVariableThroughput_improvesQualityOfExperience() {
+    TrackGroup trackGroup =
+        new TrackGroup(
+            videoFormat(/* bitrate= */ 300_000, /* width= */ 320, /* height= */ 180),
+            videoFormat(/* bitrate= */ 750_000, /* width= */ 640, /* height= */ 360),
+            videoFormat(/* bitrate= */ 1_500_000, /* width= */ 960, /* height= */ 540),
+            videoFormat(/* bitrate= */ 3_000_000, /* width= */ 1280, /* height= */ 720),
+            videoFormat(/* bitrate= */ 6_000_000, /* width= */ 1920, /* height= */ 1080));
+    FakeAdaptiveDataSet dataSet =
+        new FakeAdaptiveDataSet.Factory(
+                /* chunkDurationUs= */ 4_000_000,
+                /* bitratePercentStdDev= */ 20,
+                new Random(/* seed= */ 0))
+            .createDataSet(trackGroup, /* mediaDurationUs= */ 600_000_000);
+    TrackSelectionSimulator simulator =
+        new TrackSelectionSimulator(
+            ApplicationProvider.getApplicationContext(), trackGroup, dataSet);
+    long[] throughputTrace =
+        new long[] {
+          1_000_000,
+          2_000_000,
+          6_000_000,
+          3_000_000,
+          800_000,
+          10_000_000,
+          1_500_000,
+          1_500_000,
+          500_000,
+          4_000_000
+        };
+
+    TrackSelectionSimulator.Result adaptiveResult =
+        simulator.simulate(
+            new AdaptiveTrackSelection.Factory(), throughputTrace, /* traceIntervalMs= */ 5_000);
+    TrackSelectionSimulator.Result hybridResult =
+        simulator.simulate(
+            new HybridAdaptiveTrackSelection.Factory(),
+            throughputTrace,
+            /* traceIntervalMs= */ 5_000);
+
+    assertThat(hybridResult.getLinearQualityOfExperience(/* stallPenaltyPerSecond= */ 6))
+        .isGreaterThan(adaptiveResult.getLinearQualityOfExperience(/* stallPenaltyPerSecond= */ 6));
+    assertThat(hybridResult.averageBitrate).isGreaterThan(adaptiveResult.averageBitrate);
+    assertThat(hybridResult.switchCount).isLessThan(adaptiveResult.switchCount);
+    assertThat(hybridResult.rebufferDurationUs).isAtMost(adaptiveResult.rebufferDurationUs);
+  }
+
+  private HybridAdaptiveTrackSelection createTrackSelection() {
+    HybridAdaptiveTrackSelection trackSelection =
+        new HybridAdaptiveTrackSelection(
+            trackGroup,
+            /* tracks= */ new int[] {0, 1, 2},
+            TrackSelection.TYPE_UNSET,
+            mockBandwidthMeter,
+            HybridAdaptiveTrackSelection.DEFAULT_LOOKAHEAD_CHUNK_COUNT,
+            HybridAdaptiveTrackSelection.DEFAULT_BUFFER_RESERVE_MS,
+            /* bandwidthFraction= */ 1f,
+            HybridAdaptiveTrackSelection.DEFAULT_REBUFFER_PENALTY,
+            HybridAdaptiveTrackSelection.DEFAULT_SWITCH_PENALTY,
+            fakeClock);
+    trackSelection.enable();
+    return trackSelection;
+  }
+
+  /** Returns a track selection that made its initial selection of {@link #FORMAT_MEDIUM}. */
+  private HybridAdaptiveTrackSelection prepareTrackSelection() {
+    HybridAdaptiveTrackSelection trackSelection = createTrackSelection();
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ 0,
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        createMediaChunkIterators(/* highChunkLengthFactor= */ 1f));
+    return trackSelection;
+  }
+
+  /**
+   * Returns chunk iterators for the tracks of the selection, in selection order, with chunk lengths
+   * matching the bitrate of each format. The chunk lengths of the highest track are scaled by
+   * {@code highChunkLengthFactor}.
+   */
+  private static MediaChunkIterator[] createMediaChunkIterators(float highChunkLengthFactor) {
+    return new MediaChunkIterator[] {
+      createMediaChunkIterator(FORMAT_HIGH, highChunkLengthFactor),
+      createMediaChunkIterator(FORMAT_MEDIUM, /* chunkLengthFactor= */ 1f),
+      createMediaChunkIterator(FORMAT_LOW, /* chunkLengthFactor= */ 1f)
+    };
+  }
+
+  private static MediaChunkIterator createMediaChunkIterator(
+      Format format, float chunkLengthFactor) {
+    long[] chunkTimeBoundariesSec = new long[TEST_CHUNK_COUNT + 1];
+    long[] chunkLengths = new long[TEST_CHUNK_COUNT];
+    for (int i = 0; i < TEST_CHUNK_COUNT; i++) {
+      chunkTimeBoundariesSec[i + 1] = (i + 1) * TEST_CHUNK_DURATION_SEC;
+      chunkLengths[i] =
+          (long) (format.bitrate * TEST_CHUNK_DURATION_SEC / C.BITS_PER_BYTE * chunkLengthFactor);
+    }
+    return new FakeMediaChunkIterator(chunkTimeBoundariesSec, chunkLengths);
+  }
+
+  private static Format videoFormat(int bitrate, int width, int height) {
+    return new Format.Builder()
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .setWidth(width)
+        .setHeight(height)
+        .build();
+  }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.Util;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.DefaultHttpDataSource;
+import androidx.media3.datasource.HttpDataSource;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ManifestResponseCache}. */
+@RunWith(AndroidJUnit4.class)
+public final class ManifestResponseCacheTest {
+
+  private static final String MANIFEST = "manifest content";
+
+  private MockWebServer mockWebServer;
+  private AtomicInteger parseCount;
+  private ParsingLoadable.Parser<String> parser;
+
+  @Before
+  public void setUp() throws Exception {
+    mockWebServer = new MockWebServer();
+    mockWebServer.start();
+    parseCount = new AtomicInteger();
+    parser =
+        (uri, inputStream) -> {
+          parseCount.incrementAndGet();
+          return Util.fromUtf8Bytes(ByteStreams.toByteArray(inputStream));
+        };
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void load_notModifiedResponse_returnsCachedResultWithoutParsing() throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache();
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setBody(MANIFEST)
+            .setHeader("ETag", "\"v1\"")
+            .setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+    Uri uri = Uri.parse(mockWebServer.url("/manifest").toString());
+
+    String firstResult = loadFromServer(uri, cache);
+    ParsingLoadable<String> secondLoadable = createHttpLoadable(uri, cache);
+    secondLoadable.load();
+
+    RecordedRequest firstRequest = mockWebServer.takeRequest();
+    RecordedRequest secondRequest = mockWebServer.takeRequest();
+    assertThat(firstRequest.getHeader("If-None-Match")).isNull();
+    assertThat(secondRequest.getHeader("If-None-Match")).isEqualTo("\"v1\"");
+    assertThat(secondRequest.getHeader("If-Modified-Since"))
+        .isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+    assertThat(secondLoadable.getResult()).isSameInstanceAs(firstResult);
+    assertThat(secondLoadable.bytesLoaded()).isEqualTo(0);
+    assertThat(parseCount.get()).isEqualTo(1);
+    assertThat(cache.getSavedBytes()).isEqualTo(MANIFEST.length());
+  }
+
+  @Test
+  public void load_modifiedResponse_parsesNewResponse() throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache();
+    mockWebServer.enqueue(new MockResponse().setBody(MANIFEST).setHeader("ETag", "\"v1\""));
+    mockWebServer.enqueue(new MockResponse().setBody("new content").setHeader("ETag", "\"v2\""));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+    Uri uri = Uri.parse(mockWebServer.url("/manifest").toString());
+
+    loadFromServer(uri, cache);
+    String secondResult = loadFromServer(uri, cache);
+    String thirdResult = loadFromServer(uri, cache);
+
+    mockWebServer.takeRequest();
+    mockWebServer.takeRequest();
+    assertThat(mockWebServer.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v2\"");
+    assertThat(secondResult).isEqualTo("new content");
+    assertThat(thirdResult).isSameInstanceAs(secondResult);
+    assertThat(parseCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void load_notModifiedResponseWithoutCachedResponse_throws() throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache();
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+    Uri uri = Uri.parse(mockWebServer.url("/manifest").toString());
+
+    ParsingLoadable<String> loadable = createHttpLoadable(uri, cache);
+
+    HttpDataSource.InvalidResponseCodeException exception =
+        assertThrows(HttpDataSource.InvalidResponseCodeException.class, loadable::load);
+    assertThat(exception.responseCode).isEqualTo(304);
+  }
+
+  @Test
+  public void load_unchangedContent_returnsCachedResultWithoutParsing() throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache();
+    FakeDataSet fakeDataSet = new FakeDataSet().setData("manifest", Util.getUtf8Bytes(MANIFEST));
+
+    String firstResult = loadFromFakeDataSet(fakeDataSet, cache);
+    String secondResult = loadFromFakeDataSet(fakeDataSet, cache);
+    fakeDataSet.setData("manifest", Util.getUtf8Bytes("new content"));
+    String thirdResult = loadFromFakeDataSet(fakeDataSet, cache);
+
+    assertThat(secondResult).isSameInstanceAs(firstResult);
+    assertThat(thirdResult).isEqualTo("new content");
+    assertThat(parseCount.get()).isEqualTo(2);
+    assertThat(cache.getSavedBytes()).isEqualTo(0);
+    assertThat(cache.getSavedParseTimeUs()).isAtMost(cache.getParseTimeUs());
+  }
+
+  @Test
+  public void load_notModifiedResponseWithUnequalParser_parsesCachedResponse() throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache();
+    mockWebServer.enqueue(new MockResponse().setBody(MANIFEST).setHeader("ETag", "\"v1\""));
+    mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+    Uri uri = Uri.parse(mockWebServer.url("/manifest").toString());
+    ParsingLoadable.Parser<String> otherParser = (parserUri, inputStream) -> "other result";
+
+    loadFromServer(uri, cache);
+    ParsingLoadable<String> secondLoadable =
+        new ParsingLoadable<>(
+            new DefaultHttpDataSource.Factory().createDataSource(),
+            uri,
+            C.DATA_TYPE_MANIFEST,
+            otherParser,
+            cache);
+    secondLoadable.load();
+
+    assertThat(mockWebServer.takeRequest().getHeader("If-None-Match")).isNull();
+    assertThat(mockWebServer.takeRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+    assertThat(secondLoadable.getResult()).isEqualTo("other result");
+    assertThat(cache.getSavedBytes()).isEqualTo(MANIFEST.length());
+  }
+
+  @Test
+  public void load_unchangedContentWithEqualParser_returnsCachedResultWithoutParsing()
+      throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache();
+    FakeDataSet fakeDataSet = new FakeDataSet().setData("manifest", Util.getUtf8Bytes(MANIFEST));
+
+    String firstResult = loadFromFakeDataSet(fakeDataSet, new ContextParser("context"), cache);
+    String secondResult = loadFromFakeDataSet(fakeDataSet, new ContextParser("context"), cache);
+    String thirdResult = loadFromFakeDataSet(fakeDataSet, new ContextParser("other"), cache);
+
+    assertThat(secondResult).isSameInstanceAs(firstResult);
+    assertThat(thirdResult).isEqualTo("other:" + MANIFEST);
+  }
+
+  @Test
+  public void load_moreUrisThanMaxEntryCount_evictsLeastRecentlyUsedResponse() throws Exception {
+    ManifestResponseCache cache = new ManifestResponseCache(/* maxEntryCount= */ 1);
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData("manifest1", Util.getUtf8Bytes(MANIFEST))
+            .setData("manifest2", Util.getUtf8Bytes(MANIFEST));
+
+    loadFromFakeDataSet(fakeDataSet, Uri.parse("manifest1"), cache);
+    loadFromFakeDataSet(fakeDataSet, Uri.parse("manifest2"), cache);
+    loadFromFakeDataSet(fakeDataSet, Uri.parse("manifest1"), cache);
+
+    assertThat(parseCount.get()).isEqualTo(3);
+  }
+
+  private String loadFromServer(Uri uri, ManifestResponseCache cache) throws IOException {
+    ParsingLoadable<String> loadable = createHttpLoadable(uri, cache);
+    loadable.load();
+    return loadable.getResult();
+  }
+
+  private String loadFromFakeDataSet(FakeDataSet fakeDataSet, ManifestResponseCache cache)
+      throws IOException {
+    return loadFromFakeDataSet(fakeDataSet, Uri.parse("manifest"), cache);
+  }
+
+  private String loadFromFakeDataSet(FakeDataSet fakeDataSet, Uri uri, ManifestResponseCache cache)
+      throws IOException {
+    ParsingLoadable<String> loadable =
+        new ParsingLoadable<>(
+            new FakeDataSource(fakeDataSet),
+            new DataSpec(uri),
+            C.DATA_TYPE_MANIFEST,
+            parser,
+            cache);
+    loadable.load();
+    return loadable.getResult();
+  }
+
+  private String loadFromFakeDataSet(
+      FakeDataSet fakeDataSet, ParsingLoadable.Parser<String> parser, ManifestResponseCache cache)
+      throws IOException {
+    ParsingLoadable<String> loadable =
+        new ParsingLoadable<>(
+            new FakeDataSource(fakeDataSet),
+            new DataSpec(Uri.parse("manifest")),
+            C.DATA_TYPE_MANIFEST,
+            parser,
+            cache);
+    loadable.load();
+    return loadable.getResult();
+  }
+
+  private ParsingLoadable<String> createHttpLoadable(Uri uri, ManifestResponseCache cache) {
+    return new ParsingLoadable<>(
+        new DefaultHttpDataSource.Factory().createDataSource(),
+        new DataSpec(uri),
+        C.DATA_TYPE_MANIFEST,
+        parser,
+        cache);
+  }
+
+  /** A parser whose output depends on a context, and that is equal to parsers with an equal one. */
+  private static final class ContextParser implements ParsingLoadable.Parser<String> {
+
+    private final String context;
+
+    public ContextParser(String context) {
+      this.context = context;
+    }
+
+    @Override
+    public String parse(Uri uri, InputStream inputStream) throws IOException {
+      return context + ":" + Util.fromUtf8Bytes(ByteStreams.toByteArray(inputStream));
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      return obj instanceof ContextParser && context.equals(((ContextParser) obj).context);
+    }
+
+    @Override
+    public int hashCode() {
+      return context.hashCode();
+    }
+  }
+}
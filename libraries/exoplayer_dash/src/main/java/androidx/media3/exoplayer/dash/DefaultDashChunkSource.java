@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer.dash;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
@@ -48,6 +49,7 @@ import androidx.media3.exoplayer.source.chunk.ContainerMediaChunk;
 import androidx.media3.exoplayer.source.chunk.InitializationChunk;
 import androidx.media3.exoplayer.source.chunk.MediaChunk;
 import androidx.media3.exoplayer.source.chunk.MediaChunkIterator;
+import androidx.media3.exoplayer.source.chunk.PrefetchingDataSource;
 import androidx.media3.exoplayer.source.chunk.SingleSampleMediaChunk;
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
@@ -65,6 +67,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
 
     private final DataSource.Factory dataSourceFactory;
     private final int maxSegmentsPerLoad;
+    private final int maxParallelSegmentLoads;
     private final ChunkExtractor.Factory chunkExtractorFactory;
 
     /**
@@ -95,9 +98,37 @@ public class DefaultDashChunkSource implements DashChunkSource {
         ChunkExtractor.Factory chunkExtractorFactory,
         DataSource.Factory dataSourceFactory,
         int maxSegmentsPerLoad) {
+      this(
+          chunkExtractorFactory,
+          dataSourceFactory,
+          maxSegmentsPerLoad,
+          /* maxParallelSegmentLoads= */ 1);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param chunkExtractorFactory Creates {@link ChunkExtractor} instances to use for extracting
+     *     chunks.
+     * @param dataSourceFactory Creates the {@link DataSource} to use for downloading chunks.
+     * @param maxSegmentsPerLoad See {@link DefaultDashChunkSource#DefaultDashChunkSource}.
+     * @param maxParallelSegmentLoads The maximum number of segment requests per track that are in
+     *     flight at the same time. If greater than 1, the data of upcoming segments of the selected
+     *     representation is loaded in parallel with the segment that's being loaded, using a {@link
+     *     PrefetchingDataSource}. This reduces the effect of the request round trip time on links
+     *     with a high latency. Must be 1 if {@code maxSegmentsPerLoad} is greater than 1.
+     */
+    public Factory(
+        ChunkExtractor.Factory chunkExtractorFactory,
+        DataSource.Factory dataSourceFactory,
+        int maxSegmentsPerLoad,
+        int maxParallelSegmentLoads) {
+      checkArgument(maxParallelSegmentLoads >= 1);
+      checkArgument(maxSegmentsPerLoad == 1 || maxParallelSegmentLoads == 1);
       this.chunkExtractorFactory = chunkExtractorFactory;
       this.dataSourceFactory = dataSourceFactory;
       this.maxSegmentsPerLoad = maxSegmentsPerLoad;
+      this.maxParallelSegmentLoads = maxParallelSegmentLoads;
     }
 
     @Override
@@ -116,6 +147,14 @@ public class DefaultDashChunkSource implements DashChunkSource {
         @Nullable TransferListener transferListener,
         PlayerId playerId) {
       DataSource dataSource = dataSourceFactory.createDataSource();
+      if (maxParallelSegmentLoads > 1) {
+        dataSource =
+            new PrefetchingDataSource(
+                dataSource,
+                dataSourceFactory,
+                maxParallelSegmentLoads,
+                PrefetchingDataSource.DEFAULT_MAX_PREFETCH_LENGTH);
+      }
       if (transferListener != null) {
         dataSource.addTransferListener(transferListener);
       }
@@ -446,6 +485,16 @@ public class DefaultDashChunkSource implements DashChunkSource {
             maxSegmentCount,
             seekTimeUs,
             nowPeriodTimeUs);
+    if (dataSource instanceof PrefetchingDataSource) {
+      PrefetchingDataSource prefetchingDataSource = (PrefetchingDataSource) dataSource;
+      prefetchingDataSource.setUpcomingDataSpecs(
+          getUpcomingSegmentDataSpecs(
+              representationHolder,
+              segmentNum,
+              lastAvailableSegmentNum,
+              nowPeriodTimeUs,
+              prefetchingDataSource.getMaxParallelLoadCount()));
+    }
   }
 
   @Override
@@ -547,6 +596,9 @@ public class DefaultDashChunkSource implements DashChunkSource {
         chunkExtractor.release();
       }
     }
+    if (dataSource instanceof PrefetchingDataSource) {
+      ((PrefetchingDataSource) dataSource).release();
+    }
   }
 
   // Internal methods.
@@ -726,6 +778,37 @@ public class DefaultDashChunkSource implements DashChunkSource {
     }
   }
 
+  private List<DataSpec> getUpcomingSegmentDataSpecs(
+      RepresentationHolder representationHolder,
+      long firstSegmentNum,
+      long lastAvailableSegmentNum,
+      long nowPeriodTimeUs,
+      int maxCount) {
+    List<DataSpec> dataSpecs = new ArrayList<>(maxCount);
+    long periodDurationUs = representationHolder.periodDurationUs;
+    for (long segmentNum = firstSegmentNum;
+        segmentNum <= lastAvailableSegmentNum && dataSpecs.size() < maxCount;
+        segmentNum++) {
+      if ((missingLastSegment && segmentNum == lastAvailableSegmentNum)
+          || (periodDurationUs != C.TIME_UNSET
+              && representationHolder.getSegmentStartTimeUs(segmentNum) >= periodDurationUs)) {
+        // The segment is beyond the end of the period.
+        break;
+      }
+      int flags =
+          representationHolder.isSegmentAvailableAtFullNetworkSpeed(segmentNum, nowPeriodTimeUs)
+              ? 0
+              : DataSpec.FLAG_MIGHT_NOT_USE_FULL_NETWORK_SPEED;
+      dataSpecs.add(
+          DashUtil.buildDataSpec(
+              representationHolder.representation,
+              representationHolder.selectedBaseUrl.url,
+              representationHolder.getSegmentUrl(segmentNum),
+              flags));
+    }
+    return dataSpecs;
+  }
+
   private RepresentationHolder updateSelectedBaseUrl(int trackIndex) {
     RepresentationHolder representationHolder = representationHolders[trackIndex];
     @Nullable
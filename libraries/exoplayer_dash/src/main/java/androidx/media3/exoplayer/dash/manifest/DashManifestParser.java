@@ -87,13 +87,27 @@ public class DashManifestParser extends DefaultHandler
       };
 
   private final XmlPullParserFactory xmlParserFactory;
+  private final boolean buildSegmentTimelineElementPerSegment;
 
   public DashManifestParser() {
+    this(/* buildSegmentTimelineElementPerSegment= */ false);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param buildSegmentTimelineElementPerSegment Whether {@link #buildSegmentTimelineElement(long,
+   *     long)} is called for every segment of a SegmentTimeline, rather than once per {@code S}
+   *     element. Subclasses that override it to customize individual segments must pass {@code
+   *     true}, at the cost of holding an element for every segment in memory.
+   */
+  protected DashManifestParser(boolean buildSegmentTimelineElementPerSegment) {
     try {
       xmlParserFactory = XmlPullParserFactory.newInstance();
     } catch (XmlPullParserException e) {
       throw new RuntimeException("Couldn't create XmlPullParserFactory instance", e);
     }
+    this.buildSegmentTimelineElementPerSegment = buildSegmentTimelineElementPerSegment;
   }
 
   // MPD parsing.
@@ -1242,7 +1256,7 @@ public class DashManifestParser extends DefaultHandler
   protected List<SegmentTimelineElement> parseSegmentTimeline(
       XmlPullParser xpp, long timescale, long periodDurationMs)
       throws XmlPullParserException, IOException {
-    List<SegmentTimelineElement> segmentTimeline = new ArrayList<>();
+    RunLengthSegmentTimeline segmentTimeline = new RunLengthSegmentTimeline();
     long startTime = 0;
     long elementDuration = C.TIME_UNSET;
     int elementRepeatCount = 0;
@@ -1283,7 +1297,7 @@ public class DashManifestParser extends DefaultHandler
   }
 
   /**
-   * Adds timeline elements for one S tag to the segment timeline.
+   * Adds timeline elements for one S tag to the segment timeline, as a single run.
    *
    * @param startTime Start time of the first timeline element.
    * @param elementDuration Duration of one timeline element.
@@ -1292,24 +1306,47 @@ public class DashManifestParser extends DefaultHandler
    * @param endTime End time of the last timeline element for this S tag, or {@link C#TIME_UNSET} if
    *     unknown. Only needed if {@code repeatCount} is negative.
    * @return Calculated next start time.
+   * @throws ParserException If the segment timeline has more than {@link Integer#MAX_VALUE}
+   *     segments.
    */
   private long addSegmentTimelineElementsToList(
-      List<SegmentTimelineElement> segmentTimeline,
+      RunLengthSegmentTimeline segmentTimeline,
       long startTime,
       long elementDuration,
       int elementRepeatCount,
-      long endTime) {
-    int count =
+      long endTime)
+      throws ParserException {
+    long count =
         elementRepeatCount >= 0
-            ? 1 + elementRepeatCount
-            : (int) Util.ceilDivide(endTime - startTime, elementDuration);
-    for (int i = 0; i < count; i++) {
-      segmentTimeline.add(buildSegmentTimelineElement(startTime, elementDuration));
-      startTime += elementDuration;
+            ? 1L + elementRepeatCount
+            : Util.ceilDivide(endTime - startTime, elementDuration);
+    if (count <= 0) {
+      return startTime;
     }
-    return startTime;
+    if (buildSegmentTimelineElementPerSegment) {
+      for (long i = 0; i < count; i++) {
+        segmentTimeline.appendRun(
+            buildSegmentTimelineElement(startTime + i * elementDuration, elementDuration),
+            /* count= */ 1);
+      }
+    } else {
+      segmentTimeline.appendRun(buildSegmentTimelineElement(startTime, elementDuration), count);
+    }
+    return startTime + count * elementDuration;
   }
 
+  /**
+   * Builds a {@link SegmentTimelineElement}.
+   *
+   * <p>By default, this method is called once per {@code S} element, for the first segment it
+   * defines, and the elements of the following segments of the same {@code S} element are derived
+   * from the returned element's start time and duration. It's instead called once for every segment
+   * if {@code true} is passed to {@link #DashManifestParser(boolean)}.
+   *
+   * @param startTime The start time of the segment, in timescale units.
+   * @param duration The duration of the segment, in timescale units.
+   * @return The {@link SegmentTimelineElement}.
+   */
   protected SegmentTimelineElement buildSegmentTimelineElement(long startTime, long duration) {
     return new SegmentTimelineElement(startTime, duration);
   }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+
+import androidx.media3.common.ParserException;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A segment timeline that stores each run of consecutive segments with the same duration, as
+ * defined by an {@code S} element and its {@code r} attribute, as a single entry.
+ *
+ * <p>Elements are created when accessed through {@link #get(int)}. {@link #getStartTime(int)} and
+ * {@link #getDuration(int)} can be used to look up segments without allocating, in time that's
+ * logarithmic in the number of runs.
+ */
+/* package */ final class RunLengthSegmentTimeline extends AbstractList<SegmentTimelineElement>
+    implements RandomAccess {
+
+  private static final int INITIAL_RUN_CAPACITY = 4;
+
+  private SegmentTimelineElement[] runFirstElements;
+  private int[] runFirstIndices;
+  private int runCount;
+  private int size;
+
+  public RunLengthSegmentTimeline() {
+    runFirstElements = new SegmentTimelineElement[INITIAL_RUN_CAPACITY];
+    runFirstIndices = new int[INITIAL_RUN_CAPACITY];
+  }
+
+  /**
+   * Appends a run of segments to the timeline. This method must not be called after the timeline
+   * has been passed to a {@link SegmentBase}.
+   *
+   * @param firstElement The first element of the run. Later elements in the run have the same
+   *     duration and follow each other without gaps.
+   * @param count The number of segments in the run. Must be positive.
+   * @throws ParserException If the timeline would have more than {@link Integer#MAX_VALUE}
+   *     segments.
+   */
+  public void appendRun(SegmentTimelineElement firstElement, long count) throws ParserException {
+    checkArgument(count > 0);
+    if (count > Integer.MAX_VALUE - size) {
+      throw ParserException.createForMalformedManifest(
+          "Too many segments in SegmentTimeline: " + (size + count), /* cause= */ null);
+    }
+    if (runCount == runFirstElements.length) {
+      runFirstElements = Arrays.copyOf(runFirstElements, runCount * 2);
+      runFirstIndices = Arrays.copyOf(runFirstIndices, runCount * 2);
+    }
+    runFirstElements[runCount] = firstElement;
+    runFirstIndices[runCount] = size;
+    runCount++;
+    size += (int) count;
+  }
+
+  /** Returns the start time of the segment at the given index. */
+  public long getStartTime(int index) {
+    int runIndex = getRunIndex(index);
+    SegmentTimelineElement runFirstElement = runFirstElements[runIndex];
+    return runFirstElement.startTime
+        + (index - runFirstIndices[runIndex]) * runFirstElement.duration;
+  }
+
+  /** Returns the duration of the segment at the given index. */
+  public long getDuration(int index) {
+    return runFirstElements[getRunIndex(index)].duration;
+  }
+
+  @Override
+  public SegmentTimelineElement get(int index) {
+    int runIndex = getRunIndex(index);
+    SegmentTimelineElement runFirstElement = runFirstElements[runIndex];
+    int indexInRun = index - runFirstIndices[runIndex];
+    return indexInRun == 0
+        ? runFirstElement
+        : new SegmentTimelineElement(
+            runFirstElement.startTime + indexInRun * runFirstElement.duration,
+            runFirstElement.duration);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  private int getRunIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    int lowRunIndex = 0;
+    int highRunIndex = runCount - 1;
+    while (lowRunIndex < highRunIndex) {
+      int midRunIndex = (lowRunIndex + highRunIndex + 1) >>> 1;
+      if (runFirstIndices[midRunIndex] <= index) {
+        lowRunIndex = midRunIndex;
+      } else {
+        highRunIndex = midRunIndex - 1;
+      }
+    }
+    return lowRunIndex;
+  }
+}
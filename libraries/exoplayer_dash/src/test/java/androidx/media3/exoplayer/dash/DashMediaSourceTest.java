@@ -19,28 +19,49 @@ import static com.google.common.truth.Truth.assertThat;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.fail;
 
+import android.content.Context;
 import android.net.Uri;
 import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.MediaItem.LiveConfiguration;
 import androidx.media3.common.ParserException;
+import androidx.media3.common.Player;
 import androidx.media3.common.Timeline;
 import androidx.media3.common.Timeline.Window;
 import androidx.media3.common.util.Util;
 import androidx.media3.datasource.ByteArrayDataSource;
 import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DefaultHttpDataSource;
 import androidx.media3.datasource.FileDataSource;
+import androidx.media3.exoplayer.ExoPlayer;
+import androidx.media3.exoplayer.analytics.AnalyticsListener;
 import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.source.LoadEventInfo;
+import androidx.media3.exoplayer.source.MediaLoadData;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.MediaSource.MediaSourceCaller;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
+import androidx.media3.extractor.mp4.FragmentedMp4Extractor;
+import androidx.media3.test.utils.FakeClock;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.FakeRenderer;
+import androidx.media3.test.utils.TestExoPlayerBuilder;
 import androidx.media3.test.utils.TestUtil;
+import androidx.media3.test.utils.WebServerDispatcher;
+import androidx.media3.test.utils.robolectric.RobolectricUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.shadows.ShadowLooper;
@@ -62,6 +83,8 @@ public final class DashMediaSourceTest {
       "media/mpd/sample_mpd_live_with_offset_too_short";
   private static final String SAMPLE_MPD_LIVE_WITH_OFFSET_TOO_LONG =
       "media/mpd/sample_mpd_live_with_offset_too_long";
+  private static final String CHUNKED_CMAF_MPD = "media/dash/chunked-cmaf/sample.mpd";
+  private static final String CHUNKED_CMAF_SEGMENT = "media/dash/emsg/sample.audio.mp4";
 
   @Test
   public void iso8601ParserParse() throws IOException {
@@ -444,6 +467,98 @@ public final class DashMediaSourceTest {
     assertThat(window.liveConfiguration.targetOffsetMs).isEqualTo(60_000 - 16_000);
   }
 
+  @Test
+  public void playback_segmentSentInDelayedChunks_readsAllSamples() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    // The clock only advances when told to. The manifest is loaded at the UTC time of its UTCTiming
+    // element, 0.6s after the availability start time, and the segment is fully available only 1.1s
+    // after the availability start time.
+    long availabilityStartTimeMs = Util.parseXsDateTime("2020-01-01T00:00:00Z");
+    FakeClock clock =
+        new FakeClock(
+            /* bootTimeMs= */ availabilityStartTimeMs,
+            /* initialTimeMs= */ 600,
+            /* isAutoAdvancing= */ false);
+    AtomicLong segmentRequestTimeMs = new AtomicLong(C.TIME_UNSET);
+    WebServerDispatcher webServerDispatcher =
+        WebServerDispatcher.forResources(
+            ImmutableList.of(
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath("/sample.mpd")
+                    .setData(TestUtil.getByteArray(context, CHUNKED_CMAF_MPD))
+                    .build(),
+                // Serve the CMAF segment as a live origin would while it's still being written.
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath("/sample.audio.mp4")
+                    .setData(TestUtil.getByteArray(context, CHUNKED_CMAF_SEGMENT))
+                    .resolvesToUnknownLength(true)
+                    .setMaxChunkSize(1024)
+                    .setChunkDelayMs(10)
+                    .build()));
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if ("/sample.audio.mp4".equals(request.getPath())) {
+              segmentRequestTimeMs.compareAndSet(C.TIME_UNSET, clock.currentTimeMillis());
+            }
+            return webServerDispatcher.dispatch(request);
+          }
+        });
+    FakeRenderer audioRenderer = new FakeRenderer(C.TRACK_TYPE_AUDIO);
+    ExoPlayer player =
+        new TestExoPlayerBuilder(context)
+            .setClock(clock)
+            .setRenderers(audioRenderer)
+            .setMediaSourceFactory(new DashMediaSource.Factory(new DefaultHttpDataSource.Factory()))
+            .build();
+
+    AtomicBoolean segmentLoaded = new AtomicBoolean();
+    player.addAnalyticsListener(
+        new AnalyticsListener() {
+          @Override
+          public void onLoadCompleted(
+              EventTime eventTime, LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData) {
+            if (mediaLoadData.dataType == C.DATA_TYPE_MEDIA) {
+              segmentLoaded.set(true);
+            }
+          }
+        });
+
+    // Start at the beginning of the segment rather than at the default position of the live window,
+    // so that all of its samples are read.
+    player.setMediaItem(
+        MediaItem.fromUri(mockWebServer.url("/sample.mpd").toString()), /* startPositionMs= */ 1);
+    player.prepare();
+    player.play();
+    // Keep the clock still until the segment is fully received, then play it out.
+    RobolectricUtil.runMainLooperUntil(segmentLoaded::get);
+    Window window = player.getCurrentTimeline().getWindow(/* windowIndex= */ 0, new Window());
+    RobolectricUtil.runMainLooperUntil(
+        () -> {
+          clock.advanceTime(/* timeDiffMs= */ 10);
+          return player.getPlaybackState() == Player.STATE_ENDED;
+        });
+    player.release();
+    mockWebServer.takeRequest();
+    RecordedRequest segmentRequest = mockWebServer.takeRequest();
+    mockWebServer.shutdown();
+
+    // The segment was requested before the end of the segment became available.
+    assertThat(segmentRequestTimeMs.get()).isLessThan(availabilityStartTimeMs + 1100);
+    // The target live offset of the service description was applied.
+    assertThat(window.liveConfiguration.targetOffsetMs).isEqualTo(400);
+    // The whole segment was requested at once, so it was sent using chunked transfer encoding.
+    assertThat(segmentRequest.getPath()).isEqualTo("/sample.audio.mp4");
+    assertThat(segmentRequest.getHeader("Range")).isNull();
+    FakeExtractorOutput extractorOutput =
+        TestUtil.extractAllSamplesFromFile(
+            new FragmentedMp4Extractor(), context, CHUNKED_CMAF_SEGMENT);
+    assertThat(audioRenderer.sampleBufferReadCount)
+        .isEqualTo(extractorOutput.trackOutputs.valueAt(0).getSampleCount());
+  }
+
   private static Window prepareAndWaitForTimelineRefresh(MediaSource mediaSource)
       throws InterruptedException {
     AtomicReference<Window> windowReference = new AtomicReference<>();
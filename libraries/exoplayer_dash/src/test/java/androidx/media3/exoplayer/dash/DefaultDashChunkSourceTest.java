@@ -55,6 +55,7 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.shadows.ShadowSystemClock;
@@ -159,6 +160,52 @@ public class DefaultDashChunkSourceTest {
         .isEqualTo(0);
   }
 
+  @Test
+  public void getNextChunk_withParallelSegmentLoads_prefetchesUpcomingSegments() throws Exception {
+    DashManifest manifest =
+        new DashManifestParser()
+            .parse(
+                Uri.parse("https://example.com/test.mpd"),
+                TestUtil.getInputStream(
+                    ApplicationProvider.getApplicationContext(), SAMPLE_MPD_VOD));
+    AtomicInteger dataSourceCount = new AtomicInteger();
+    DashChunkSource chunkSource =
+        new DefaultDashChunkSource.Factory(
+                BundledChunkExtractor.FACTORY,
+                () -> {
+                  dataSourceCount.incrementAndGet();
+                  return new FakeDataSource();
+                },
+                /* maxSegmentsPerLoad= */ 1,
+                /* maxParallelSegmentLoads= */ 3)
+            .createDashChunkSource(
+                new LoaderErrorThrower.Dummy(),
+                manifest,
+                new BaseUrlExclusionList(),
+                /* periodIndex= */ 0,
+                /* adaptationSetIndices= */ new int[] {0},
+                new FixedTrackSelection(
+                    new TrackGroup(new Format.Builder().build()), /* track= */ 0),
+                C.TRACK_TYPE_VIDEO,
+                /* elapsedRealtimeOffsetMs= */ 0,
+                /* enableEventMessageTrack= */ false,
+                /* closedCaptionFormats= */ ImmutableList.of(),
+                /* playerEmsgHandler= */ null,
+                /* transferListener= */ null,
+                PlayerId.UNSET);
+
+    ChunkHolder output = new ChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ ImmutableList.of(),
+        output);
+    chunkSource.release();
+
+    // One data source for the chunk, and one for each of the two following segments.
+    assertThat(dataSourceCount.get()).isEqualTo(3);
+  }
+
   @Test
   public void getNextChunk_onChunkLoadErrorLocationExclusionEnabled_correctFallbackBehavior()
       throws Exception {
@@ -16,12 +16,14 @@
 package androidx.media3.exoplayer.dash.manifest;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import android.net.Uri;
 import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
+import androidx.media3.common.ParserException;
 import androidx.media3.common.util.Util;
 import androidx.media3.exoplayer.dash.manifest.Representation.MultiSegmentRepresentation;
 import androidx.media3.exoplayer.dash.manifest.Representation.SingleSegmentRepresentation;
@@ -34,6 +36,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.junit.Test;
@@ -366,6 +369,92 @@ public class DashManifestParserTest {
     assertNextTag(xpp);
   }
 
+  @Test
+  public void parseSegmentTimeline_buildingElementPerSegment_callsElementBuilderForEverySegment()
+      throws Exception {
+    List<SegmentTimelineElement> builtElements = new ArrayList<>();
+    DashManifestParser parser =
+        new DashManifestParser(/* buildSegmentTimelineElementPerSegment= */ true) {
+          @Override
+          protected SegmentTimelineElement buildSegmentTimelineElement(
+              long startTime, long duration) {
+            SegmentTimelineElement element = super.buildSegmentTimelineElement(startTime, duration);
+            builtElements.add(element);
+            return element;
+          }
+        };
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S d=\"96000\" r=\"2\"/><S d=\"48000\" r=\"0\"/></SegmentTimeline>"
+                + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+
+    assertThat(builtElements)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 96000),
+            new SegmentTimelineElement(/* startTime= */ 96000, /* duration= */ 96000),
+            new SegmentTimelineElement(/* startTime= */ 192000, /* duration= */ 96000),
+            new SegmentTimelineElement(/* startTime= */ 288000, /* duration= */ 48000))
+        .inOrder();
+    assertThat(elements).hasSize(4);
+    for (int i = 0; i < elements.size(); i++) {
+      assertThat(elements.get(i)).isSameInstanceAs(builtElements.get(i));
+    }
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseSegmentTimeline_byDefault_callsElementBuilderForEveryElement() throws Exception {
+    List<SegmentTimelineElement> builtElements = new ArrayList<>();
+    DashManifestParser parser =
+        new DashManifestParser() {
+          @Override
+          protected SegmentTimelineElement buildSegmentTimelineElement(
+              long startTime, long duration) {
+            SegmentTimelineElement element = super.buildSegmentTimelineElement(startTime, duration);
+            builtElements.add(element);
+            return element;
+          }
+        };
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S d=\"96000\" r=\"2\"/><S d=\"48000\" r=\"0\"/></SegmentTimeline>"
+                + NEXT_TAG));
+    xpp.next();
+
+    List<SegmentTimelineElement> elements =
+        parser.parseSegmentTimeline(xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000);
+
+    assertThat(builtElements)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 96000),
+            new SegmentTimelineElement(/* startTime= */ 288000, /* duration= */ 48000))
+        .inOrder();
+    assertThat(elements).hasSize(4);
+    assertNextTag(xpp);
+  }
+
+  @Test
+  public void parseSegmentTimeline_withTooManySegments_throwsParserException() throws Exception {
+    DashManifestParser parser = new DashManifestParser();
+    XmlPullParser xpp = XmlPullParserFactory.newInstance().newPullParser();
+    xpp.setInput(
+        new StringReader(
+            "<SegmentTimeline><S d=\"1\" r=\"2147483647\"/></SegmentTimeline>" + NEXT_TAG));
+    xpp.next();
+
+    assertThrows(
+        ParserException.class,
+        () ->
+            parser.parseSegmentTimeline(
+                xpp, /* timescale= */ 48000, /* periodDurationMs= */ 10000));
+  }
+
   @Test
   public void parseSegmentTimeline_singleUndefinedRepeatCount() throws Exception {
     DashManifestParser parser = new DashManifestParser();
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.exoplayer.dash.manifest;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.media3.common.ParserException;
+import androidx.media3.exoplayer.dash.manifest.SegmentBase.SegmentTimelineElement;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link RunLengthSegmentTimeline}. */
+@RunWith(AndroidJUnit4.class)
+public final class RunLengthSegmentTimelineTest {
+
+  @Test
+  public void get_returnsElementsOfAllRuns() throws Exception {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+    timeline.appendRun(new SegmentTimelineElement(/* startTime= */ 100, /* duration= */ 10), 3);
+    timeline.appendRun(new SegmentTimelineElement(/* startTime= */ 200, /* duration= */ 5), 1);
+    timeline.appendRun(new SegmentTimelineElement(/* startTime= */ 205, /* duration= */ 20), 2);
+
+    assertThat(timeline)
+        .containsExactly(
+            new SegmentTimelineElement(/* startTime= */ 100, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 110, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 120, /* duration= */ 10),
+            new SegmentTimelineElement(/* startTime= */ 200, /* duration= */ 5),
+            new SegmentTimelineElement(/* startTime= */ 205, /* duration= */ 20),
+            new SegmentTimelineElement(/* startTime= */ 225, /* duration= */ 20))
+        .inOrder();
+  }
+
+  @Test
+  public void getStartTimeAndDuration_withManyRuns_returnsValuesOfRun() throws Exception {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+    // Four hours of two second segments, with every 100th segment one second long.
+    long startTime = 0;
+    for (int i = 0; i < 72; i++) {
+      timeline.appendRun(new SegmentTimelineElement(startTime, /* duration= */ 2000), 99);
+      startTime += 99 * 2000;
+      timeline.appendRun(new SegmentTimelineElement(startTime, /* duration= */ 1000), 1);
+      startTime += 1000;
+    }
+
+    assertThat(timeline).hasSize(7200);
+    assertThat(timeline.getStartTime(0)).isEqualTo(0);
+    assertThat(timeline.getDuration(0)).isEqualTo(2000);
+    assertThat(timeline.getStartTime(99)).isEqualTo(198_000);
+    assertThat(timeline.getDuration(99)).isEqualTo(1000);
+    assertThat(timeline.getStartTime(150)).isEqualTo(199_000 + 50 * 2000);
+    assertThat(timeline.getStartTime(7199)).isEqualTo(71 * 199_000 + 99 * 2000);
+    assertThat(timeline.getDuration(7199)).isEqualTo(1000);
+    assertThat(timeline.get(150))
+        .isEqualTo(new SegmentTimelineElement(/* startTime= */ 299_000, /* duration= */ 2000));
+  }
+
+  @Test
+  public void get_withIndexOutOfBounds_throwsException() throws Exception {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+    timeline.appendRun(new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10), 2);
+
+    assertThrows(IndexOutOfBoundsException.class, () -> timeline.get(2));
+    assertThrows(IndexOutOfBoundsException.class, () -> timeline.getStartTime(-1));
+  }
+
+  @Test
+  public void appendRun_withTooManySegments_throwsParserException() throws Exception {
+    RunLengthSegmentTimeline timeline = new RunLengthSegmentTimeline();
+    timeline.appendRun(
+        new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10), Integer.MAX_VALUE);
+
+    assertThrows(
+        ParserException.class,
+        () ->
+            timeline.appendRun(
+                new SegmentTimelineElement(/* startTime= */ 0, /* duration= */ 10), 1));
+    assertThat(timeline).hasSize(Integer.MAX_VALUE);
+  }
+}
@@ -45,6 +45,7 @@ import androidx.media3.exoplayer.source.chunk.Chunk;
 import androidx.media3.exoplayer.source.chunk.DataChunk;
 import androidx.media3.exoplayer.source.chunk.MediaChunk;
 import androidx.media3.exoplayer.source.chunk.MediaChunkIterator;
+import androidx.media3.exoplayer.source.chunk.PrefetchingDataSource;
 import androidx.media3.exoplayer.trackselection.BaseTrackSelection;
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
 import com.google.common.collect.ImmutableList;
@@ -160,6 +161,9 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    *     provider.
    * @param muxedCaptionFormats List of muxed caption {@link Format}s. Null if no closed caption
    *     information is available in the multivariant playlist.
+   * @param maxParallelSegmentLoads The maximum number of segment requests that are in flight at the
+   *     same time. If greater than 1, upcoming segments of the selected variant are loaded in
+   *     parallel with the segment that's being loaded, using a {@link PrefetchingDataSource}.
    */
   public HlsChunkSource(
       HlsExtractorFactory extractorFactory,
@@ -170,6 +174,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       @Nullable TransferListener mediaTransferListener,
       TimestampAdjusterProvider timestampAdjusterProvider,
       @Nullable List<Format> muxedCaptionFormats,
+      int maxParallelSegmentLoads,
       PlayerId playerId) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
@@ -181,10 +186,19 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     keyCache = new FullSegmentEncryptionKeyCache(KEY_CACHE_SIZE);
     scratchSpace = Util.EMPTY_BYTE_ARRAY;
     liveEdgeInPeriodTimeUs = C.TIME_UNSET;
-    mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
+    DataSource mediaDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA);
+    if (maxParallelSegmentLoads > 1) {
+      mediaDataSource =
+          new PrefetchingDataSource(
+              mediaDataSource,
+              () -> dataSourceFactory.createDataSource(C.DATA_TYPE_MEDIA),
+              maxParallelSegmentLoads,
+              PrefetchingDataSource.DEFAULT_MAX_PREFETCH_LENGTH);
+    }
     if (mediaTransferListener != null) {
       mediaDataSource.addTransferListener(mediaTransferListener);
     }
+    this.mediaDataSource = mediaDataSource;
     encryptionDataSource = dataSourceFactory.createDataSource(C.DATA_TYPE_DRM);
     trackGroup = new TrackGroup(playlistFormats);
     // Use only non-trickplay variants for preparation. See [Internal ref: b/161529098].
@@ -237,6 +251,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     fatalError = null;
   }
 
+  /** Releases the source. */
+  public void release() {
+    if (mediaDataSource instanceof PrefetchingDataSource) {
+      ((PrefetchingDataSource) mediaDataSource).release();
+    }
+  }
+
   /**
    * Sets whether this chunk source is responsible for initializing timestamp adjusters.
    *
@@ -512,6 +533,38 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             /* initSegmentKey= */ keyCache.get(initSegmentKeyUri),
             shouldSpliceIn,
             playerId);
+    if (mediaDataSource instanceof PrefetchingDataSource) {
+      PrefetchingDataSource prefetchingDataSource = (PrefetchingDataSource) mediaDataSource;
+      prefetchingDataSource.setUpcomingDataSpecs(
+          getUpcomingSegmentDataSpecs(
+              playlist, segmentBaseHolder, prefetchingDataSource.getMaxParallelLoadCount()));
+    }
+  }
+
+  private static List<DataSpec> getUpcomingSegmentDataSpecs(
+      HlsMediaPlaylist mediaPlaylist, SegmentBaseHolder segmentBaseHolder, int maxCount) {
+    List<DataSpec> dataSpecs = new ArrayList<>(maxCount);
+    if (segmentBaseHolder.partIndex != C.INDEX_UNSET) {
+      // Parts are only loaded close to the live edge, where upcoming segments aren't published yet.
+      return dataSpecs;
+    }
+    int segmentIndexInPlaylist =
+        (int) (segmentBaseHolder.mediaSequence - mediaPlaylist.mediaSequence);
+    for (int i = segmentIndexInPlaylist;
+        i < mediaPlaylist.segments.size() && dataSpecs.size() < maxCount;
+        i++) {
+      Segment segment = mediaPlaylist.segments.get(i);
+      if (segment.hasGapTag) {
+        // Gap segments are never loaded, so there's nothing to prefetch.
+        continue;
+      }
+      dataSpecs.add(
+          new DataSpec(
+              UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url),
+              segment.byteRangeOffset,
+              segment.byteRangeLength));
+    }
+    return dataSpecs;
   }
 
   @Nullable
@@ -83,6 +83,7 @@ public final class HlsMediaPeriod
   private final boolean allowChunklessPreparation;
   private final @HlsMediaSource.MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final int maxParallelSegmentLoads;
   private final PlayerId playerId;
 
   @Nullable private Callback callback;
@@ -113,6 +114,8 @@ public final class HlsMediaPeriod
    *     SequenceableLoader}s for when this media source loads data from multiple streams.
    * @param allowChunklessPreparation Whether chunkless preparation is allowed.
    * @param useSessionKeys Whether to use #EXT-X-SESSION-KEY tags.
+   * @param maxParallelSegmentLoads The maximum number of segment requests per track that are in
+   *     flight at the same time.
    */
   public HlsMediaPeriod(
       HlsExtractorFactory extractorFactory,
@@ -128,6 +131,7 @@ public final class HlsMediaPeriod
       boolean allowChunklessPreparation,
       @HlsMediaSource.MetadataType int metadataType,
       boolean useSessionKeys,
+      int maxParallelSegmentLoads,
       PlayerId playerId) {
     this.extractorFactory = extractorFactory;
     this.playlistTracker = playlistTracker;
@@ -142,6 +146,7 @@ public final class HlsMediaPeriod
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.maxParallelSegmentLoads = maxParallelSegmentLoads;
     this.playerId = playerId;
     compositeSequenceableLoader =
         compositeSequenceableLoaderFactory.createCompositeSequenceableLoader();
@@ -803,6 +808,7 @@ public final class HlsMediaPeriod
             mediaTransferListener,
             timestampAdjusterProvider,
             muxedCaptionFormats,
+            maxParallelSegmentLoads,
             playerId);
     return new HlsSampleStreamWrapper(
         uid,
@@ -15,6 +15,7 @@
  */
 package androidx.media3.exoplayer.hls;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static java.lang.annotation.ElementType.TYPE_USE;
 import static java.lang.annotation.RetentionPolicy.SOURCE;
@@ -55,6 +56,7 @@ import androidx.media3.exoplayer.source.SinglePeriodTimeline;
 import androidx.media3.exoplayer.upstream.Allocator;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.ManifestResponseCache;
 import androidx.media3.extractor.Extractor;
 import java.io.IOException;
 import java.lang.annotation.Documented;
@@ -109,7 +111,9 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     private @MetadataType int metadataType;
     private boolean useSessionKeys;
+    private int maxParallelSegmentLoads;
     private long elapsedRealTimeOffsetMs;
+    @Nullable private ManifestResponseCache playlistResponseCache;
 
     /**
      * Creates a new factory for {@link HlsMediaSource}s.
@@ -139,6 +143,7 @@ public final class HlsMediaSource extends BaseMediaSource
       metadataType = METADATA_TYPE_ID3;
       elapsedRealTimeOffsetMs = C.TIME_UNSET;
       allowChunklessPreparation = true;
+      maxParallelSegmentLoads = 1;
     }
 
     /**
@@ -203,6 +208,26 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link ManifestResponseCache} used to avoid reloading and reparsing playlists that
+     * haven't changed since they were last loaded. The default value is {@code null}, meaning that
+     * playlists are always loaded and parsed in full.
+     *
+     * <p>The cache is passed to the {@linkplain #setPlaylistTrackerFactory playlist tracker
+     * factory}, which must support it. {@link DefaultHlsPlaylistTracker#FACTORY} does, but a
+     * factory that doesn't override {@link HlsPlaylistTracker.Factory#createTracker(
+     * HlsDataSourceFactory, LoadErrorHandlingPolicy, HlsPlaylistParserFactory,
+     * ManifestResponseCache)} causes {@link #createMediaSource(MediaItem)} to throw.
+     *
+     * @param playlistResponseCache A {@link ManifestResponseCache}, or {@code null} to disable
+     *     caching.
+     * @return This factory, for convenience.
+     */
+    public Factory setPlaylistResponseCache(@Nullable ManifestResponseCache playlistResponseCache) {
+      this.playlistResponseCache = playlistResponseCache;
+      return this;
+    }
+
     /**
      * Sets the factory to create composite {@link SequenceableLoader}s for when this media source
      * loads data from multiple streams (video, audio etc...). The default is an instance of {@link
@@ -273,6 +298,26 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the maximum number of segment requests per track that are in flight at the same time.
+     * The default value is 1.
+     *
+     * <p>If greater than 1, the data of upcoming segments of the selected variant or rendition is
+     * loaded in parallel with the segment that's being loaded, and held in memory until it's
+     * needed. This reduces the effect of the request round trip time on throughput on links with a
+     * high latency, at the cost of additional memory and possibly loading segments that are
+     * discarded after a track selection change.
+     *
+     * @param maxParallelSegmentLoads The maximum number of segment requests per track that are in
+     *     flight at the same time. Must be at least 1.
+     * @return This factory, for convenience.
+     */
+    public Factory setMaxParallelSegmentLoads(int maxParallelSegmentLoads) {
+      checkArgument(maxParallelSegmentLoads >= 1);
+      this.maxParallelSegmentLoads = maxParallelSegmentLoads;
+      return this;
+    }
+
     @Override
     public Factory setDrmSessionManagerProvider(
         @Nullable DrmSessionManagerProvider drmSessionManagerProvider) {
@@ -303,6 +348,8 @@ public final class HlsMediaSource extends BaseMediaSource
      * @param mediaItem The {@link MediaItem}.
      * @return The new {@link HlsMediaSource}.
      * @throws NullPointerException if {@link MediaItem#localConfiguration} is {@code null}.
+     * @throws UnsupportedOperationException if a {@linkplain #setPlaylistResponseCache playlist
+     *     response cache} is set and the playlist tracker factory doesn't support it.
      */
     @Override
     public HlsMediaSource createMediaSource(MediaItem mediaItem) {
@@ -313,6 +360,12 @@ public final class HlsMediaSource extends BaseMediaSource
         playlistParserFactory =
             new FilteringHlsPlaylistParserFactory(playlistParserFactory, streamKeys);
       }
+      HlsPlaylistTracker playlistTracker =
+          playlistTrackerFactory.createTracker(
+              hlsDataSourceFactory,
+              loadErrorHandlingPolicy,
+              playlistParserFactory,
+              playlistResponseCache);
 
       return new HlsMediaSource(
           mediaItem,
@@ -321,12 +374,12 @@ public final class HlsMediaSource extends BaseMediaSource
           compositeSequenceableLoaderFactory,
           drmSessionManagerProvider.get(mediaItem),
           loadErrorHandlingPolicy,
-          playlistTrackerFactory.createTracker(
-              hlsDataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory),
+          playlistTracker,
           elapsedRealTimeOffsetMs,
           allowChunklessPreparation,
           metadataType,
-          useSessionKeys);
+          useSessionKeys,
+          maxParallelSegmentLoads);
     }
 
     @Override
@@ -344,6 +397,7 @@ public final class HlsMediaSource extends BaseMediaSource
   private final boolean allowChunklessPreparation;
   private final @MetadataType int metadataType;
   private final boolean useSessionKeys;
+  private final int maxParallelSegmentLoads;
   private final HlsPlaylistTracker playlistTracker;
   private final long elapsedRealTimeOffsetMs;
   private final MediaItem mediaItem;
@@ -362,7 +416,8 @@ public final class HlsMediaSource extends BaseMediaSource
       long elapsedRealTimeOffsetMs,
       boolean allowChunklessPreparation,
       @MetadataType int metadataType,
-      boolean useSessionKeys) {
+      boolean useSessionKeys,
+      int maxParallelSegmentLoads) {
     this.localConfiguration = checkNotNull(mediaItem.localConfiguration);
     this.mediaItem = mediaItem;
     this.liveConfiguration = mediaItem.liveConfiguration;
@@ -376,6 +431,7 @@ public final class HlsMediaSource extends BaseMediaSource
     this.allowChunklessPreparation = allowChunklessPreparation;
     this.metadataType = metadataType;
     this.useSessionKeys = useSessionKeys;
+    this.maxParallelSegmentLoads = maxParallelSegmentLoads;
   }
 
   @Override
@@ -418,6 +474,7 @@ public final class HlsMediaSource extends BaseMediaSource
         allowChunklessPreparation,
         metadataType,
         useSessionKeys,
+        maxParallelSegmentLoads,
         getPlayerId());
   }
 
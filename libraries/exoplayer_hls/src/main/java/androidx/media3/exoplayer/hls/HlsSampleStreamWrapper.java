@@ -555,6 +555,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     for (SampleQueue sampleQueue : sampleQueues) {
       sampleQueue.release();
     }
+    chunkSource.release();
   }
 
   public void setIsTimestampMaster(boolean isTimestampMaster) {
@@ -34,6 +34,7 @@ import androidx.media3.exoplayer.hls.HlsDataSourceFactory;
 import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist.Part;
 import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist.RenditionReport;
 import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist.Segment;
+import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist.Rendition;
 import androidx.media3.exoplayer.hls.playlist.HlsMultivariantPlaylist.Variant;
 import androidx.media3.exoplayer.source.LoadEventInfo;
 import androidx.media3.exoplayer.source.MediaLoadData;
@@ -42,6 +43,7 @@ import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import androidx.media3.exoplayer.upstream.Loader;
 import androidx.media3.exoplayer.upstream.Loader.LoadErrorAction;
+import androidx.media3.exoplayer.upstream.ManifestResponseCache;
 import androidx.media3.exoplayer.upstream.ParsingLoadable;
 import com.google.common.collect.Iterables;
 import java.io.IOException;
@@ -55,7 +57,32 @@ public final class DefaultHlsPlaylistTracker
     implements HlsPlaylistTracker, Loader.Callback<ParsingLoadable<HlsPlaylist>> {
 
   /** Factory for {@link DefaultHlsPlaylistTracker} instances. */
-  public static final Factory FACTORY = DefaultHlsPlaylistTracker::new;
+  public static final Factory FACTORY =
+      new Factory() {
+        @Override
+        public HlsPlaylistTracker createTracker(
+            HlsDataSourceFactory dataSourceFactory,
+            LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+            HlsPlaylistParserFactory playlistParserFactory) {
+          return new DefaultHlsPlaylistTracker(
+              dataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory);
+        }
+
+        @Override
+        public HlsPlaylistTracker createTracker(
+            HlsDataSourceFactory dataSourceFactory,
+            LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+            HlsPlaylistParserFactory playlistParserFactory,
+            @Nullable ManifestResponseCache playlistResponseCache) {
+          return new DefaultHlsPlaylistTracker(
+              dataSourceFactory,
+              loadErrorHandlingPolicy,
+              playlistParserFactory,
+              DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+              /* prefetchDefaultRenditionPlaylists= */ false,
+              playlistResponseCache);
+        }
+      };
 
   /**
    * Default coefficient applied on the target duration of a playlist to determine the amount of
@@ -69,6 +96,8 @@ public final class DefaultHlsPlaylistTracker
   private final HashMap<Uri, MediaPlaylistBundle> playlistBundles;
   private final CopyOnWriteArrayList<PlaylistEventListener> listeners;
   private final double playlistStuckTargetDurationCoefficient;
+  private final boolean prefetchDefaultRenditionPlaylists;
+  @Nullable private final ManifestResponseCache playlistResponseCache;
 
   @Nullable private EventDispatcher eventDispatcher;
   @Nullable private Loader initialPlaylistLoader;
@@ -114,10 +143,75 @@ public final class DefaultHlsPlaylistTracker
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       HlsPlaylistParserFactory playlistParserFactory,
       double playlistStuckTargetDurationCoefficient) {
+    this(
+        dataSourceFactory,
+        loadErrorHandlingPolicy,
+        playlistParserFactory,
+        playlistStuckTargetDurationCoefficient,
+        /* prefetchDefaultRenditionPlaylists= */ false);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param playlistParserFactory An {@link HlsPlaylistParserFactory}.
+   * @param playlistStuckTargetDurationCoefficient A coefficient to apply to the target duration of
+   *     media playlists in order to determine that a non-changing playlist is stuck. Once a
+   *     playlist is deemed stuck, a {@link PlaylistStuckException} is thrown via {@link
+   *     #maybeThrowPlaylistRefreshError(Uri)}.
+   * @param prefetchDefaultRenditionPlaylists Whether to load the media playlists of the default
+   *     audio and subtitle renditions of the initial variant in parallel with the initial variant's
+   *     media playlist. If false, they're loaded once requested by the player, which is after the
+   *     initial variant's media playlist has loaded.
+   */
+  public DefaultHlsPlaylistTracker(
+      HlsDataSourceFactory dataSourceFactory,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      HlsPlaylistParserFactory playlistParserFactory,
+      double playlistStuckTargetDurationCoefficient,
+      boolean prefetchDefaultRenditionPlaylists) {
+    this(
+        dataSourceFactory,
+        loadErrorHandlingPolicy,
+        playlistParserFactory,
+        playlistStuckTargetDurationCoefficient,
+        prefetchDefaultRenditionPlaylists,
+        /* playlistResponseCache= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param dataSourceFactory A factory for {@link DataSource} instances.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param playlistParserFactory An {@link HlsPlaylistParserFactory}.
+   * @param playlistStuckTargetDurationCoefficient A coefficient to apply to the target duration of
+   *     media playlists in order to determine that a non-changing playlist is stuck. Once a
+   *     playlist is deemed stuck, a {@link PlaylistStuckException} is thrown via {@link
+   *     #maybeThrowPlaylistRefreshError(Uri)}.
+   * @param prefetchDefaultRenditionPlaylists Whether to load the media playlists of the default
+   *     audio and subtitle renditions of the initial variant in parallel with the initial variant's
+   *     media playlist. If false, they're loaded once requested by the player, which is after the
+   *     initial variant's media playlist has loaded.
+   * @param playlistResponseCache A {@link ManifestResponseCache} used to avoid reloading and
+   *     reparsing playlists that haven't changed since they were last loaded, or {@code null} to
+   *     always load and parse playlists in full.
+   */
+  public DefaultHlsPlaylistTracker(
+      HlsDataSourceFactory dataSourceFactory,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      HlsPlaylistParserFactory playlistParserFactory,
+      double playlistStuckTargetDurationCoefficient,
+      boolean prefetchDefaultRenditionPlaylists,
+      @Nullable ManifestResponseCache playlistResponseCache) {
     this.dataSourceFactory = dataSourceFactory;
     this.playlistParserFactory = playlistParserFactory;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
     this.playlistStuckTargetDurationCoefficient = playlistStuckTargetDurationCoefficient;
+    this.prefetchDefaultRenditionPlaylists = prefetchDefaultRenditionPlaylists;
+    this.playlistResponseCache = playlistResponseCache;
     listeners = new CopyOnWriteArrayList<>();
     playlistBundles = new HashMap<>();
     initialStartTimeUs = C.TIME_UNSET;
@@ -138,7 +232,8 @@ public final class DefaultHlsPlaylistTracker
             dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
             initialPlaylistUri,
             C.DATA_TYPE_MANIFEST,
-            playlistParserFactory.createPlaylistParser());
+            playlistParserFactory.createPlaylistParser(),
+            playlistResponseCache);
     Assertions.checkState(initialPlaylistLoader == null);
     initialPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MultivariantPlaylist");
     long elapsedRealtime =
@@ -277,6 +372,12 @@ public final class DefaultHlsPlaylistTracker
     } else {
       primaryBundle.loadPlaylist();
     }
+    if (prefetchDefaultRenditionPlaylists) {
+      Variant primaryVariant = multivariantPlaylist.variants.get(0);
+      maybeLoadDefaultRenditionPlaylist(multivariantPlaylist.audios, primaryVariant.audioGroupId);
+      maybeLoadDefaultRenditionPlaylist(
+          multivariantPlaylist.subtitles, primaryVariant.subtitleGroupId);
+    }
     loadErrorHandlingPolicy.onLoadTaskConcluded(loadable.loadTaskId);
     eventDispatcher.loadCompleted(loadEventInfo, C.DATA_TYPE_MANIFEST);
   }
@@ -402,6 +503,34 @@ public final class DefaultHlsPlaylistTracker
     return false;
   }
 
+  /**
+   * Loads the media playlist of the rendition in the given group that's most likely to be selected
+   * initially. This is the first rendition with the default flag, or else the first rendition in
+   * the group.
+   */
+  private void maybeLoadDefaultRenditionPlaylist(
+      List<Rendition> renditions, @Nullable String groupId) {
+    if (groupId == null) {
+      return;
+    }
+    @Nullable Rendition defaultRendition = null;
+    for (int i = 0; i < renditions.size(); i++) {
+      Rendition rendition = renditions.get(i);
+      if (rendition.url == null || !groupId.equals(rendition.groupId)) {
+        continue;
+      }
+      if ((rendition.format.selectionFlags & C.SELECTION_FLAG_DEFAULT) != 0) {
+        defaultRendition = rendition;
+        break;
+      } else if (defaultRendition == null) {
+        defaultRendition = rendition;
+      }
+    }
+    if (defaultRendition != null) {
+      checkNotNull(playlistBundles.get(defaultRendition.url)).loadPlaylist();
+    }
+  }
+
   private void createBundles(List<Uri> urls) {
     int listSize = urls.size();
     for (int i = 0; i < listSize; i++) {
@@ -702,7 +831,8 @@ public final class DefaultHlsPlaylistTracker
               mediaPlaylistDataSource,
               playlistRequestUri,
               C.DATA_TYPE_MANIFEST,
-              mediaPlaylistParser);
+              mediaPlaylistParser,
+              playlistResponseCache);
       long elapsedRealtime =
           mediaPlaylistLoader.startLoading(
               mediaPlaylistLoadable,
@@ -823,13 +953,16 @@ public final class DefaultHlsPlaylistTracker
 
     @Override
     public void onPlaylistChanged() {
-      // Remove the temporary playlist listener that is waiting for the first playlist only.
-      listeners.remove(this);
+      // Remove the temporary playlist listener that is waiting for the first primary playlist only.
+      // Prefetched rendition playlists may be loaded before it.
+      if (primaryMediaPlaylistSnapshot != null) {
+        listeners.remove(this);
+      }
     }
 
     @Override
     public boolean onPlaylistError(Uri url, LoadErrorInfo loadErrorInfo, boolean forceRetry) {
-      if (primaryMediaPlaylistSnapshot == null) {
+      if (primaryMediaPlaylistSnapshot == null && isVariantUrl(url)) {
         long nowMs = SystemClock.elapsedRealtime();
         int variantExclusionCounter = 0;
         List<Variant> variants = castNonNull(multivariantPlaylist).variants;
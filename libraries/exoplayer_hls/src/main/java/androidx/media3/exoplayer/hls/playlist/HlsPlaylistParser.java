@@ -18,6 +18,7 @@ package androidx.media3.exoplayer.hls.playlist;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Assertions.checkState;
 import static androidx.media3.common.util.Util.castNonNull;
+import static java.lang.Math.max;
 
 import android.net.Uri;
 import android.text.TextUtils;
@@ -294,6 +295,30 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
         "Failed to parse the playlist, could not identify any tags.", /* cause= */ null);
   }
 
+  /**
+   * Returns whether the other object is a parser for the same multivariant playlist and previous
+   * media playlist instances, which parses the same input into an equal playlist.
+   */
+  @Override
+  public boolean equals(@Nullable Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    HlsPlaylistParser other = (HlsPlaylistParser) obj;
+    return multivariantPlaylist == other.multivariantPlaylist
+        && previousMediaPlaylist == other.previousMediaPlaylist;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = System.identityHashCode(multivariantPlaylist);
+    result = 31 * result + System.identityHashCode(previousMediaPlaylist);
+    return result;
+  }
+
   private static boolean checkPlaylistHeader(BufferedReader reader) throws IOException {
     int last = reader.read();
     if (last == 0xEF) {
@@ -764,8 +789,21 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
               parseStringAttr(line, REGEX_VALUE, variableDefinitions));
         }
       } else if (line.startsWith(TAG_MEDIA_DURATION)) {
-        segmentDurationUs = parseTimeSecondsToUs(line, REGEX_MEDIA_DURATION);
-        segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        // Media segment tags are the most common lines in large playlists, so the simple form is
+        // parsed without regular expressions.
+        int durationEndIndex = findSimpleMediaDurationEndIndex(line);
+        if (durationEndIndex != C.INDEX_UNSET) {
+          segmentDurationUs =
+              parseDecimalSecondsToUs(line, TAG_MEDIA_DURATION.length() + 1, durationEndIndex);
+          segmentTitle =
+              durationEndIndex < line.length() - 1
+                  ? replaceVariableReferences(
+                      line.substring(durationEndIndex + 1), variableDefinitions)
+                  : "";
+        } else {
+          segmentDurationUs = parseTimeSecondsToUs(line, REGEX_MEDIA_DURATION);
+          segmentTitle = parseOptionalStringAttr(line, REGEX_MEDIA_TITLE, "", variableDefinitions);
+        }
       } else if (line.startsWith(TAG_SKIP)) {
         int skippedSegmentCount = parseIntAttr(line, REGEX_SKIPPED_SEGMENTS);
         checkState(previousMediaPlaylist != null && segments.isEmpty());
@@ -834,11 +872,20 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
       } else if (line.startsWith(TAG_BYTERANGE)) {
-        String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
-        String[] splitByteRange = Util.split(byteRange, "@");
-        segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
-        if (splitByteRange.length > 1) {
-          segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+        int lengthStartIndex = TAG_BYTERANGE.length() + 1;
+        int lengthEndIndex = findSimpleByteRangeLengthEndIndex(line);
+        if (lengthEndIndex != C.INDEX_UNSET) {
+          segmentByteRangeLength = parseDigits(line, lengthStartIndex, lengthEndIndex);
+          if (lengthEndIndex < line.length()) {
+            segmentByteRangeOffset = parseDigits(line, lengthEndIndex + 1, line.length());
+          }
+        } else {
+          String byteRange = parseStringAttr(line, REGEX_BYTERANGE, variableDefinitions);
+          String[] splitByteRange = Util.split(byteRange, "@");
+          segmentByteRangeLength = Long.parseLong(splitByteRange[0]);
+          if (splitByteRange.length > 1) {
+            segmentByteRangeOffset = Long.parseLong(splitByteRange[1]);
+          }
         }
       } else if (line.startsWith(TAG_DISCONTINUITY_SEQUENCE)) {
         hasDiscontinuitySequence = true;
@@ -992,10 +1039,18 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
           }
         }
 
-        segments.add(
-            new Segment(
+        @Nullable
+        Segment segmentInitializationSegment =
+            initializationSegment != null ? initializationSegment : inferredInitSegment;
+        // segmentMediaSequence has already been incremented past this segment.
+        @Nullable
+        Segment previousSegment =
+            getSegmentWithMediaSequence(previousMediaPlaylist, segmentMediaSequence - 1);
+        if (previousSegment != null
+            && isSameSegment(
+                previousSegment,
                 segmentUri,
-                initializationSegment != null ? initializationSegment : inferredInitSegment,
+                segmentInitializationSegment,
                 segmentTitle,
                 segmentDurationUs,
                 relativeDiscontinuitySequence,
@@ -1006,7 +1061,41 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
                 segmentByteRangeOffset,
                 segmentByteRangeLength,
                 hasGapTag,
-                trailingParts));
+                trailingParts)) {
+          // The segment is unchanged since the previous playlist, so reuse it. Its initialization
+          // segment and DRM data are also reused, so that they stay shared with the new segments.
+          // If a sliding window has advanced, only the start time and discontinuity sequence
+          // relative to the start of the playlist have changed, so those are updated in a copy.
+          segments.add(
+              previousSegment.relativeStartTimeUs == segmentStartTimeUs
+                      && previousSegment.relativeDiscontinuitySequence
+                          == relativeDiscontinuitySequence
+                  ? previousSegment
+                  : previousSegment.copyWith(segmentStartTimeUs, relativeDiscontinuitySequence));
+          if (initializationSegment != null) {
+            initializationSegment = previousSegment.initializationSegment;
+          } else if (inferredInitSegment != null) {
+            urlToInferredInitSegment.put(
+                segmentUri, checkNotNull(previousSegment.initializationSegment));
+          }
+          cachedDrmInitData = previousSegment.drmInitData;
+        } else {
+          segments.add(
+              new Segment(
+                  segmentUri,
+                  segmentInitializationSegment,
+                  segmentTitle,
+                  segmentDurationUs,
+                  relativeDiscontinuitySequence,
+                  segmentStartTimeUs,
+                  cachedDrmInitData,
+                  fullSegmentEncryptionKeyUri,
+                  segmentEncryptionIV,
+                  segmentByteRangeOffset,
+                  segmentByteRangeLength,
+                  hasGapTag,
+                  trailingParts));
+        }
         segmentStartTimeUs += segmentDurationUs;
         partStartTimeUs = segmentStartTimeUs;
         segmentDurationUs = 0;
@@ -1087,6 +1176,106 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return Long.toHexString(segmentMediaSequence);
   }
 
+  /**
+   * Returns the segment of {@code playlist} with the given media sequence number, or null if the
+   * playlist is null or doesn't contain it.
+   */
+  @Nullable
+  private static Segment getSegmentWithMediaSequence(
+      @Nullable HlsMediaPlaylist playlist, long mediaSequence) {
+    if (playlist == null) {
+      return null;
+    }
+    long segmentIndex = mediaSequence - playlist.mediaSequence;
+    return segmentIndex >= 0 && segmentIndex < playlist.segments.size()
+        ? playlist.segments.get((int) segmentIndex)
+        : null;
+  }
+
+  /**
+   * Returns whether {@code segment} is equal to a segment created with the given values, in which
+   * case it can be used in place of a new instance.
+   *
+   * <p>The start time and discontinuity sequence of {@code segment} are relative to the start of
+   * the previous playlist, so they aren't compared. Those of its parts are compared relative to
+   * {@code segment}, which is what {@link Segment#copyWith(long, int)} preserves.
+   */
+  private static boolean isSameSegment(
+      Segment segment,
+      String url,
+      @Nullable Segment initializationSegment,
+      String title,
+      long durationUs,
+      int relativeDiscontinuitySequence,
+      long relativeStartTimeUs,
+      @Nullable DrmInitData drmInitData,
+      @Nullable String fullSegmentEncryptionKeyUri,
+      @Nullable String encryptionIV,
+      long byteRangeOffset,
+      long byteRangeLength,
+      boolean hasGapTag,
+      List<Part> parts) {
+    if (segment.durationUs != durationUs
+        || segment.byteRangeOffset != byteRangeOffset
+        || segment.byteRangeLength != byteRangeLength
+        || segment.hasGapTag != hasGapTag
+        || segment.parts.size() != parts.size()
+        || !segment.url.equals(url)
+        || !segment.title.equals(title)
+        || !Util.areEqual(segment.fullSegmentEncryptionKeyUri, fullSegmentEncryptionKeyUri)
+        || !Util.areEqual(segment.encryptionIV, encryptionIV)
+        || !Util.areEqual(segment.drmInitData, drmInitData)
+        || !isSameInitializationSegment(segment.initializationSegment, initializationSegment)) {
+      return false;
+    }
+    long startTimeOffsetUs = relativeStartTimeUs - segment.relativeStartTimeUs;
+    for (int i = 0; i < parts.size(); i++) {
+      Part part = segment.parts.get(i);
+      Part other = parts.get(i);
+      if (part.relativeStartTimeUs + startTimeOffsetUs != other.relativeStartTimeUs
+          || part.relativeDiscontinuitySequence != segment.relativeDiscontinuitySequence
+          || other.relativeDiscontinuitySequence != relativeDiscontinuitySequence
+          || !isSamePart(part, other)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether {@code part} is equal to {@code other}, ignoring their start times and
+   * discontinuity sequences.
+   */
+  private static boolean isSamePart(Part part, Part other) {
+    return part.durationUs == other.durationUs
+        && part.byteRangeOffset == other.byteRangeOffset
+        && part.byteRangeLength == other.byteRangeLength
+        && part.hasGapTag == other.hasGapTag
+        && part.isIndependent == other.isIndependent
+        && part.isPreload == other.isPreload
+        && part.url.equals(other.url)
+        && Util.areEqual(part.fullSegmentEncryptionKeyUri, other.fullSegmentEncryptionKeyUri)
+        && Util.areEqual(part.encryptionIV, other.encryptionIV)
+        && Util.areEqual(part.drmInitData, other.drmInitData)
+        && isSameInitializationSegment(part.initializationSegment, other.initializationSegment);
+  }
+
+  private static boolean isSameInitializationSegment(
+      @Nullable Segment initializationSegment, @Nullable Segment other) {
+    if (initializationSegment == other) {
+      return true;
+    }
+    if (initializationSegment == null || other == null) {
+      return false;
+    }
+    return initializationSegment.byteRangeOffset == other.byteRangeOffset
+        && initializationSegment.byteRangeLength == other.byteRangeLength
+        && initializationSegment.url.equals(other.url)
+        && Util.areEqual(
+            initializationSegment.fullSegmentEncryptionKeyUri, other.fullSegmentEncryptionKeyUri)
+        && Util.areEqual(initializationSegment.encryptionIV, other.encryptionIV);
+  }
+
   private static @C.SelectionFlags int parseSelectionFlags(String line) {
     int flags = 0;
     if (parseOptionalBooleanAttribute(line, REGEX_DEFAULT, false)) {
@@ -1211,6 +1400,117 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
     return timeValue.multiply(new BigDecimal(C.MICROS_PER_SECOND)).longValue();
   }
 
+  /**
+   * Returns the index of the end of the duration in a {@link #TAG_MEDIA_DURATION} line of the form
+   * {@code #EXTINF:<duration>[,<title>]}, where the duration has at most 12 integer digits and ends
+   * with a digit, or {@link C#INDEX_UNSET} if the line has any other form and needs to be parsed
+   * using {@link #REGEX_MEDIA_DURATION} and {@link #REGEX_MEDIA_TITLE}.
+   */
+  private static int findSimpleMediaDurationEndIndex(String line) {
+    int startIndex = TAG_MEDIA_DURATION.length();
+    if (line.length() <= startIndex + 1 || line.charAt(startIndex) != ':') {
+      return C.INDEX_UNSET;
+    }
+    startIndex++;
+    int index = startIndex;
+    int decimalPointIndex = C.INDEX_UNSET;
+    while (index < line.length() && line.charAt(index) != ',') {
+      char c = line.charAt(index);
+      if (c == '.' && decimalPointIndex == C.INDEX_UNSET) {
+        decimalPointIndex = index;
+      } else if (c < '0' || c > '9') {
+        return C.INDEX_UNSET;
+      }
+      index++;
+    }
+    int integerDigitCount =
+        (decimalPointIndex != C.INDEX_UNSET ? decimalPointIndex : index) - startIndex;
+    if (index == startIndex || integerDigitCount > 12 || decimalPointIndex == index - 1) {
+      return C.INDEX_UNSET;
+    }
+    // The title pattern doesn't match line terminators.
+    for (int i = index + 1; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return C.INDEX_UNSET;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the index of the end of the length in a {@link #TAG_BYTERANGE} line of the form {@code
+   * #EXT-X-BYTERANGE:<length>[@<offset>]}, where the length and offset have at most 18 digits, or
+   * {@link C#INDEX_UNSET} if the line has any other form and needs to be parsed using {@link
+   * #REGEX_BYTERANGE}.
+   */
+  private static int findSimpleByteRangeLengthEndIndex(String line) {
+    int startIndex = TAG_BYTERANGE.length();
+    if (line.length() <= startIndex + 1 || line.charAt(startIndex) != ':') {
+      return C.INDEX_UNSET;
+    }
+    startIndex++;
+    int lengthEndIndex = line.indexOf('@', startIndex);
+    if (lengthEndIndex == C.INDEX_UNSET) {
+      lengthEndIndex = line.length();
+    } else if (!isSimpleNumber(line, lengthEndIndex + 1, line.length())) {
+      return C.INDEX_UNSET;
+    }
+    return isSimpleNumber(line, startIndex, lengthEndIndex) ? lengthEndIndex : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns whether the characters of {@code string} in {@code [startIndex, endIndex)} are between
+   * 1 and 18 decimal digits, so that they can be parsed using {@link #parseDigits}.
+   */
+  private static boolean isSimpleNumber(String string, int startIndex, int endIndex) {
+    if (endIndex <= startIndex || endIndex - startIndex > 18) {
+      return false;
+    }
+    for (int i = startIndex; i < endIndex; i++) {
+      char c = string.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Parses the decimal digits of {@code string} in {@code [startIndex, endIndex)}. */
+  private static long parseDigits(String string, int startIndex, int endIndex) {
+    long value = 0;
+    for (int i = startIndex; i < endIndex; i++) {
+      value = value * 10 + (string.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Parses a decimal number of seconds in {@code line} between {@code startIndex} and {@code
+   * endIndex}, as validated by {@link #findSimpleMediaDurationEndIndex}, and returns it in
+   * microseconds. Like {@link #parseTimeSecondsToUs(String, Pattern)}, sub-microsecond digits are
+   * truncated.
+   */
+  private static long parseDecimalSecondsToUs(String line, int startIndex, int endIndex) {
+    long valueUs = 0;
+    int fractionDigitCount = C.INDEX_UNSET;
+    for (int i = startIndex; i < endIndex; i++) {
+      char c = line.charAt(i);
+      if (c == '.') {
+        fractionDigitCount = 0;
+      } else if (fractionDigitCount == C.INDEX_UNSET) {
+        valueUs = valueUs * 10 + (c - '0');
+      } else if (fractionDigitCount < 6) {
+        valueUs = valueUs * 10 + (c - '0');
+        fractionDigitCount++;
+      }
+    }
+    for (int i = max(fractionDigitCount, 0); i < 6; i++) {
+      valueUs *= 10;
+    }
+    return valueUs;
+  }
+
   private static double parseDoubleAttr(String line, Pattern pattern) throws ParserException {
     return Double.parseDouble(parseStringAttr(line, pattern, Collections.emptyMap()));
   }
@@ -1255,6 +1555,10 @@ public final class HlsPlaylistParser implements ParsingLoadable.Parser<HlsPlayli
 
   private static String replaceVariableReferences(
       String string, Map<String, String> variableDefinitions) {
+    if (variableDefinitions.isEmpty() || !string.contains("{$")) {
+      // There's nothing to replace, which is the case for most lines.
+      return string;
+    }
     Matcher matcher = REGEX_VARIABLE_REFERENCE.matcher(string);
     // TODO: Replace StringBuffer with StringBuilder once Java 9 is available.
     StringBuffer stringWithReplacements = new StringBuffer();
@@ -22,6 +22,7 @@ import androidx.media3.common.util.UnstableApi;
 import androidx.media3.exoplayer.hls.HlsDataSourceFactory;
 import androidx.media3.exoplayer.source.MediaSourceEventListener.EventDispatcher;
 import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.ManifestResponseCache;
 import java.io.IOException;
 
 /**
@@ -53,6 +54,35 @@ public interface HlsPlaylistTracker {
         HlsDataSourceFactory dataSourceFactory,
         LoadErrorHandlingPolicy loadErrorHandlingPolicy,
         HlsPlaylistParserFactory playlistParserFactory);
+
+    /**
+     * Creates a new tracker instance that uses a {@link ManifestResponseCache} for playlist
+     * loading.
+     *
+     * <p>The default implementation only supports a {@code null} cache, for which it returns a
+     * tracker created by {@link #createTracker(HlsDataSourceFactory, LoadErrorHandlingPolicy,
+     * HlsPlaylistParserFactory)}. Factories of trackers that can use a cache should override it.
+     *
+     * @param dataSourceFactory The {@link HlsDataSourceFactory} to use for playlist loading.
+     * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy} for playlist load errors.
+     * @param playlistParserFactory The {@link HlsPlaylistParserFactory} for playlist parsing.
+     * @param playlistResponseCache The {@link ManifestResponseCache} used to avoid reloading and
+     *     reparsing playlists that haven't changed since they were last loaded, or {@code null} to
+     *     always load and parse playlists in full.
+     * @throws UnsupportedOperationException If {@code playlistResponseCache} is not {@code null}
+     *     and the factory doesn't support a response cache.
+     */
+    default HlsPlaylistTracker createTracker(
+        HlsDataSourceFactory dataSourceFactory,
+        LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+        HlsPlaylistParserFactory playlistParserFactory,
+        @Nullable ManifestResponseCache playlistResponseCache) {
+      if (playlistResponseCache != null) {
+        throw new UnsupportedOperationException(
+            "The playlist tracker factory doesn't support a playlist response cache");
+      }
+      return createTracker(dataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory);
+    }
   }
 
   /** Listener for primary playlist changes. */
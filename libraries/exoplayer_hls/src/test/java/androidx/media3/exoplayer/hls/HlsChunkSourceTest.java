@@ -24,6 +24,7 @@ import android.net.Uri;
 import androidx.media3.common.C;
 import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
+import androidx.media3.common.util.Util;
 import androidx.media3.exoplayer.SeekParameters;
 import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist;
@@ -34,8 +35,11 @@ import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -87,6 +91,7 @@ public class HlsChunkSourceTest {
             /* mediaTransferListener= */ null,
             new TimestampAdjusterProvider(),
             /* muxedCaptionFormats= */ null,
+            /* maxParallelSegmentLoads= */ 1,
             PlayerId.UNSET);
 
     when(mockPlaylistTracker.isSnapshotValid(eq(PLAYLIST_URI))).thenReturn(true);
@@ -96,6 +101,99 @@ public class HlsChunkSourceTest {
         .thenReturn(playlist.startTimeUs - PLAYLIST_START_PERIOD_OFFSET_US);
   }
 
+  @Test
+  public void getNextChunk_withParallelSegmentLoads_prefetchesUpcomingSegments() {
+    AtomicInteger mediaDataSourceCount = new AtomicInteger();
+    HlsChunkSource chunkSource =
+        new HlsChunkSource(
+            HlsExtractorFactory.DEFAULT,
+            mockPlaylistTracker,
+            new Uri[] {IFRAME_URI, PLAYLIST_URI},
+            new Format[] {IFRAME_FORMAT, ExoPlayerTestRunner.VIDEO_FORMAT},
+            dataType -> {
+              if (dataType == C.DATA_TYPE_MEDIA) {
+                mediaDataSourceCount.incrementAndGet();
+              }
+              return new FakeDataSource();
+            },
+            /* mediaTransferListener= */ null,
+            new TimestampAdjusterProvider(),
+            /* muxedCaptionFormats= */ null,
+            /* maxParallelSegmentLoads= */ 3,
+            PlayerId.UNSET);
+
+    HlsChunkSource.HlsChunkHolder output = new HlsChunkSource.HlsChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ PLAYLIST_START_PERIOD_OFFSET_US,
+        /* loadPositionUs= */ PLAYLIST_START_PERIOD_OFFSET_US,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        output);
+    chunkSource.release();
+
+    assertThat(output.chunk).isInstanceOf(HlsMediaChunk.class);
+    // One data source for the chunk, and one for each of the two following segments.
+    assertThat(mediaDataSourceCount.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void getNextChunk_withParallelSegmentLoadsAndGapSegment_doesNotPrefetchGapSegment()
+      throws IOException {
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-MEDIA-SEQUENCE:2\n"
+            + "#EXT-X-INDEPENDENT-SEGMENTS\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4,\n"
+            + "2.mp4\n"
+            + "#EXT-X-GAP\n"
+            + "#EXTINF:4,\n"
+            + "3.mp4\n"
+            + "#EXTINF:4,\n"
+            + "4.mp4\n"
+            + "#EXT-X-ENDLIST\n";
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(PLAYLIST_URI, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+    when(mockPlaylistTracker.getPlaylistSnapshot(eq(PLAYLIST_URI), anyBoolean()))
+        .thenReturn(playlist);
+    when(mockPlaylistTracker.getInitialStartTimeUs())
+        .thenReturn(playlist.startTimeUs - PLAYLIST_START_PERIOD_OFFSET_US);
+    AtomicInteger mediaDataSourceCount = new AtomicInteger();
+    HlsChunkSource chunkSource =
+        new HlsChunkSource(
+            HlsExtractorFactory.DEFAULT,
+            mockPlaylistTracker,
+            new Uri[] {IFRAME_URI, PLAYLIST_URI},
+            new Format[] {IFRAME_FORMAT, ExoPlayerTestRunner.VIDEO_FORMAT},
+            dataType -> {
+              if (dataType == C.DATA_TYPE_MEDIA) {
+                mediaDataSourceCount.incrementAndGet();
+              }
+              return new FakeDataSource();
+            },
+            /* mediaTransferListener= */ null,
+            new TimestampAdjusterProvider(),
+            /* muxedCaptionFormats= */ null,
+            /* maxParallelSegmentLoads= */ 3,
+            PlayerId.UNSET);
+
+    HlsChunkSource.HlsChunkHolder output = new HlsChunkSource.HlsChunkHolder();
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ PLAYLIST_START_PERIOD_OFFSET_US,
+        /* loadPositionUs= */ PLAYLIST_START_PERIOD_OFFSET_US,
+        /* queue= */ ImmutableList.of(),
+        /* allowEndOfStream= */ true,
+        output);
+    chunkSource.release();
+
+    assertThat(output.chunk).isInstanceOf(HlsMediaChunk.class);
+    assertThat(((HlsMediaChunk) output.chunk).dataSpec.uri.toString()).endsWith("2.mp4");
+    // One data source for the chunk, and one for the segment after the gap segment.
+    assertThat(mediaDataSourceCount.get()).isEqualTo(2);
+  }
+
   @Test
   public void getAdjustedSeekPositionUs_previousSync() {
     long adjustedPositionUs =
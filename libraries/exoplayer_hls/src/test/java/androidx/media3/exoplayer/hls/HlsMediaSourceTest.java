@@ -17,18 +17,25 @@ package androidx.media3.exoplayer.hls;
 
 import static androidx.media3.test.utils.robolectric.RobolectricUtil.runMainLooperUntil;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
 
 import android.net.Uri;
 import android.os.SystemClock;
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.ParserException;
 import androidx.media3.common.Timeline;
 import androidx.media3.common.util.Util;
 import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.hls.playlist.DefaultHlsPlaylistTracker;
 import androidx.media3.exoplayer.hls.playlist.HlsMediaPlaylist;
 import androidx.media3.exoplayer.hls.playlist.HlsPlaylistParser;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylistParserFactory;
+import androidx.media3.exoplayer.hls.playlist.HlsPlaylistTracker;
 import androidx.media3.exoplayer.source.MediaSource;
+import androidx.media3.exoplayer.upstream.LoadErrorHandlingPolicy;
+import androidx.media3.exoplayer.upstream.ManifestResponseCache;
 import androidx.media3.test.utils.FakeDataSet;
 import androidx.media3.test.utils.FakeDataSource;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -45,6 +52,57 @@ import org.junit.runner.RunWith;
 @RunWith(AndroidJUnit4.class)
 public class HlsMediaSourceTest {
 
+  @Test
+  public void createMediaSource_withPlaylistResponseCache_passesCacheToPlaylistTrackerFactory() {
+    ManifestResponseCache playlistResponseCache = new ManifestResponseCache();
+    AtomicReference<ManifestResponseCache> trackerResponseCache = new AtomicReference<>();
+    HlsPlaylistTracker.Factory playlistTrackerFactory =
+        new HlsPlaylistTracker.Factory() {
+          @Override
+          public HlsPlaylistTracker createTracker(
+              HlsDataSourceFactory dataSourceFactory,
+              LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+              HlsPlaylistParserFactory playlistParserFactory) {
+            throw new AssertionError();
+          }
+
+          @Override
+          public HlsPlaylistTracker createTracker(
+              HlsDataSourceFactory dataSourceFactory,
+              LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+              HlsPlaylistParserFactory playlistParserFactory,
+              @Nullable ManifestResponseCache playlistResponseCache) {
+            trackerResponseCache.set(playlistResponseCache);
+            return DefaultHlsPlaylistTracker.FACTORY.createTracker(
+                dataSourceFactory,
+                loadErrorHandlingPolicy,
+                playlistParserFactory,
+                playlistResponseCache);
+          }
+        };
+    HlsMediaSource.Factory factory =
+        new HlsMediaSource.Factory(new FakeDataSource.Factory())
+            .setPlaylistTrackerFactory(playlistTrackerFactory)
+            .setPlaylistResponseCache(playlistResponseCache);
+
+    factory.createMediaSource(MediaItem.fromUri("fake://foo.bar/media0/playlist.m3u8"));
+
+    assertThat(trackerResponseCache.get()).isSameInstanceAs(playlistResponseCache);
+  }
+
+  @Test
+  public void
+      createMediaSource_withPlaylistResponseCacheAndTrackerFactoryWithoutCacheSupport_throws() {
+    HlsMediaSource.Factory factory =
+        new HlsMediaSource.Factory(new FakeDataSource.Factory())
+            .setPlaylistTrackerFactory(DefaultHlsPlaylistTracker::new)
+            .setPlaylistResponseCache(new ManifestResponseCache());
+
+    assertThrows(
+        UnsupportedOperationException.class,
+        () -> factory.createMediaSource(MediaItem.fromUri("fake://foo.bar/media0/playlist.m3u8")));
+  }
+
   @Test
   public void loadLivePlaylist_noTargetLiveOffsetDefined_fallbackToThreeTargetDuration()
       throws TimeoutException, ParserException {
@@ -18,10 +18,13 @@ package androidx.media3.exoplayer.hls.playlist;
 import static com.google.common.truth.Truth.assertThat;
 
 import android.net.Uri;
+import androidx.media3.common.util.Util;
 import androidx.media3.datasource.DataSource;
 import androidx.media3.datasource.DefaultHttpDataSource;
 import androidx.media3.exoplayer.source.MediaSourceEventListener;
 import androidx.media3.exoplayer.upstream.DefaultLoadErrorHandlingPolicy;
+import androidx.media3.test.utils.FakeDataSet;
+import androidx.media3.test.utils.FakeDataSource;
 import androidx.media3.test.utils.TestUtil;
 import androidx.media3.test.utils.robolectric.RobolectricUtil;
 import androidx.test.core.app.ApplicationProvider;
@@ -30,6 +33,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.HttpUrl;
 import okhttp3.mockwebserver.MockResponse;
@@ -395,6 +399,62 @@ public class DefaultHlsPlaylistTrackerTest {
     assertThat(mediaPlaylists.get(2).mediaSequence).isEqualTo(12);
   }
 
+  @Test
+  public void start_withPrefetchDefaultRenditionPlaylists_loadsDefaultRenditionPlaylists()
+      throws TimeoutException {
+    String mediaPlaylist =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXTINF:4.0,\n"
+            + "segment0.ts\n"
+            + "#EXT-X-ENDLIST\n";
+    FakeDataSet fakeDataSet =
+        new FakeDataSet()
+            .setData(
+                "https://example.com/multivariant.m3u8",
+                Util.getUtf8Bytes(
+                    "#EXTM3U\n"
+                        + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aud\",NAME=\"en\",URI=\"audio_en.m3u8\"\n"
+                        + "#EXT-X-MEDIA:TYPE=AUDIO,GROUP-ID=\"aud\",NAME=\"fr\",DEFAULT=YES,URI=\"audio_fr.m3u8\"\n"
+                        + "#EXT-X-MEDIA:TYPE=SUBTITLES,GROUP-ID=\"sub\",NAME=\"en\",URI=\"subtitles_en.m3u8\"\n"
+                        + "#EXT-X-STREAM-INF:BANDWIDTH=1280000,AUDIO=\"aud\",SUBTITLES=\"sub\"\n"
+                        + "video.m3u8\n"))
+            .setData("https://example.com/video.m3u8", Util.getUtf8Bytes(mediaPlaylist))
+            .setData("https://example.com/audio_en.m3u8", Util.getUtf8Bytes(mediaPlaylist))
+            .setData("https://example.com/audio_fr.m3u8", Util.getUtf8Bytes(mediaPlaylist))
+            .setData("https://example.com/subtitles_en.m3u8", Util.getUtf8Bytes(mediaPlaylist));
+    DefaultHlsPlaylistTracker defaultHlsPlaylistTracker =
+        new DefaultHlsPlaylistTracker(
+            dataType -> new FakeDataSource(fakeDataSet),
+            new DefaultLoadErrorHandlingPolicy(),
+            new DefaultHlsPlaylistParserFactory(),
+            DefaultHlsPlaylistTracker.DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+            /* prefetchDefaultRenditionPlaylists= */ true);
+    Uri defaultAudioUri = Uri.parse("https://example.com/audio_fr.m3u8");
+    Uri subtitlesUri = Uri.parse("https://example.com/subtitles_en.m3u8");
+    AtomicBoolean primaryPlaylistLoaded = new AtomicBoolean();
+
+    defaultHlsPlaylistTracker.start(
+        Uri.parse("https://example.com/multivariant.m3u8"),
+        new MediaSourceEventListener.EventDispatcher(),
+        playlist -> primaryPlaylistLoaded.set(true));
+    RobolectricUtil.runMainLooperUntil(
+        () ->
+            primaryPlaylistLoaded.get()
+                && defaultHlsPlaylistTracker.getPlaylistSnapshot(
+                        defaultAudioUri, /* isForPlayback= */ false)
+                    != null
+                && defaultHlsPlaylistTracker.getPlaylistSnapshot(
+                        subtitlesUri, /* isForPlayback= */ false)
+                    != null);
+
+    assertThat(
+            defaultHlsPlaylistTracker.getPlaylistSnapshot(
+                Uri.parse("https://example.com/audio_en.m3u8"), /* isForPlayback= */ false))
+        .isNull();
+    defaultHlsPlaylistTracker.stop();
+  }
+
   private List<HttpUrl> enqueueWebServerResponses(String[] paths, MockResponse... mockResponses) {
     assertThat(paths).hasLength(mockResponses.length);
     for (MockResponse mockResponse : mockResponses) {
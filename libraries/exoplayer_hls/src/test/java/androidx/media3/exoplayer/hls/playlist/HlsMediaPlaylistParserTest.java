@@ -207,6 +207,55 @@ public class HlsMediaPlaylistParserTest {
     assertThat(segment.byteRangeLength).isEqualTo(C.LENGTH_UNSET);
   }
 
+  @Test
+  public void parseMediaPlaylist_withUnusualSegmentTags_parsesDurationsTitlesAndByteRanges()
+      throws Exception {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:10\n"
+            + "#EXTINF:2.0000019,\n"
+            + "segment1.ts\n"
+            + "#EXTINF:.5,title\n"
+            + "segment2.ts\n"
+            + "#EXTINF:10.,title\n"
+            + "segment3.ts\n"
+            + "#EXTINF:3 ,title\n"
+            + "segment4.ts\n"
+            + "#EXTINF:4,title,with,commas\n"
+            + "#EXT-X-BYTERANGE:100\n"
+            + "segment5.ts\n"
+            + "#EXTINF:4\n"
+            + "#EXT-X-BYTERANGE:200@1000\n"
+            + "segment5.ts\n"
+            + "#EXTINF:4\n"
+            + "#EXT-X-BYTERANGE:300@2000x\n"
+            + "segment5.ts\n";
+    InputStream inputStream = new ByteArrayInputStream(Util.getUtf8Bytes(playlistString));
+
+    HlsMediaPlaylist mediaPlaylist =
+        (HlsMediaPlaylist) new HlsPlaylistParser().parse(playlistUri, inputStream);
+
+    List<Segment> segments = mediaPlaylist.segments;
+    assertThat(segments).hasSize(7);
+    assertThat(segments.get(0).durationUs).isEqualTo(2_000_001);
+    assertThat(segments.get(0).title).isEmpty();
+    assertThat(segments.get(1).durationUs).isEqualTo(500_000);
+    assertThat(segments.get(1).title).isEqualTo("title");
+    assertThat(segments.get(2).durationUs).isEqualTo(10_000_000);
+    assertThat(segments.get(2).title).isEmpty();
+    assertThat(segments.get(3).durationUs).isEqualTo(3_000_000);
+    assertThat(segments.get(3).title).isEmpty();
+    assertThat(segments.get(4).title).isEqualTo("title,with,commas");
+    assertThat(segments.get(4).byteRangeOffset).isEqualTo(0);
+    assertThat(segments.get(4).byteRangeLength).isEqualTo(100);
+    assertThat(segments.get(5).byteRangeOffset).isEqualTo(1000);
+    assertThat(segments.get(5).byteRangeLength).isEqualTo(200);
+    // The offset isn't followed by a word boundary, so only the length is parsed.
+    assertThat(segments.get(6).byteRangeOffset).isEqualTo(1200);
+    assertThat(segments.get(6).byteRangeLength).isEqualTo(300);
+  }
+
   @Test
   public void parseSampleAesMethod() throws Exception {
     Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
@@ -405,6 +454,155 @@ public class HlsMediaPlaylistParserTest {
     assertThat(playlist.segments.get(2).relativeDiscontinuitySequence).isEqualTo(1);
   }
 
+  @Test
+  public void parseMediaPlaylist_withPreviousPlaylist_reusesUnchangedSegments() throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-PLAYLIST-TYPE:EVENT\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4,\n"
+            + "segment10.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment11.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-PLAYLIST-TYPE:EVENT\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4,\n"
+            + "segment10.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment11-replaced.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment12.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    assertThat(playlist.segments.get(0)).isSameInstanceAs(previousPlaylist.segments.get(0));
+    assertThat(playlist.segments.get(1)).isNotSameInstanceAs(previousPlaylist.segments.get(1));
+    assertThat(playlist.segments.get(1).url).isEqualTo("segment11-replaced.mp4");
+    assertThat(playlist.segments.get(2).url).isEqualTo("segment12.mp4");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(8_000_000);
+    // All segments share the same initialization segment instance.
+    assertThat(playlist.segments.get(1).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+    assertThat(playlist.segments.get(2).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+  }
+
+  @Test
+  public void parseMediaPlaylist_withPreviousPlaylistAndNewMediaSequence_updatesStartTimes()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXTINF:4,\n"
+            + "segment10.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment11.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:11\n"
+            + "#EXTINF:4,\n"
+            + "segment11.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment12.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(2);
+    assertThat(playlist.segments.get(0).url).isEqualTo("segment11.mp4");
+    assertThat(playlist.segments.get(0).relativeStartTimeUs).isEqualTo(0);
+    assertThat(playlist.segments.get(1).relativeStartTimeUs).isEqualTo(4_000_000);
+  }
+
+  @Test
+  public void parseMediaPlaylist_withPreviousPlaylistAndSlidingWindow_reusesRetainedSegments()
+      throws IOException {
+    Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
+    String previousPlaylistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:10\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:3\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4,\n"
+            + "segment10.mp4\n"
+            + "#EXT-X-DISCONTINUITY\n"
+            + "#EXTINF:3,\n"
+            + "segment11.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment12.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment13.mp4\n";
+    String playlistString =
+        "#EXTM3U\n"
+            + "#EXT-X-TARGETDURATION:4\n"
+            + "#EXT-X-MEDIA-SEQUENCE:12\n"
+            + "#EXT-X-DISCONTINUITY-SEQUENCE:4\n"
+            + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+            + "#EXTINF:4,\n"
+            + "segment12.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment13.mp4\n"
+            + "#EXTINF:4,\n"
+            + "segment14.mp4\n";
+    HlsMediaPlaylist previousPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    playlistUri,
+                    new ByteArrayInputStream(Util.getUtf8Bytes(previousPlaylistString)));
+
+    HlsMediaPlaylist playlist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser(HlsMultivariantPlaylist.EMPTY, previousPlaylist)
+                .parse(playlistUri, new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+
+    assertThat(playlist.segments).hasSize(3);
+    // The retained segments are reused with start times and discontinuity sequences relative to
+    // the start of the new playlist.
+    assertThat(playlist.segments.get(0).url).isSameInstanceAs(previousPlaylist.segments.get(2).url);
+    assertThat(playlist.segments.get(0).relativeStartTimeUs).isEqualTo(0);
+    assertThat(playlist.segments.get(0).relativeDiscontinuitySequence).isEqualTo(0);
+    assertThat(playlist.segments.get(1).url).isSameInstanceAs(previousPlaylist.segments.get(3).url);
+    assertThat(playlist.segments.get(1).relativeStartTimeUs).isEqualTo(4_000_000);
+    assertThat(playlist.segments.get(1).relativeDiscontinuitySequence).isEqualTo(0);
+    assertThat(playlist.segments.get(2).url).isEqualTo("segment14.mp4");
+    assertThat(playlist.segments.get(2).relativeStartTimeUs).isEqualTo(8_000_000);
+    // All segments share the same initialization segment instance.
+    assertThat(playlist.segments.get(0).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+    assertThat(playlist.segments.get(2).initializationSegment)
+        .isSameInstanceAs(previousPlaylist.segments.get(0).initializationSegment);
+  }
+
   @Test
   public void parseMediaPlaylist_withSkippedSegments_correctlyMergedParts() throws IOException {
     Uri playlistUri = Uri.parse("https://example.com/test.m3u8");
@@ -1472,4 +1670,28 @@ public class HlsMediaPlaylistParserTest {
       assertThat(playlist.segments.get(i - 1).url).isEqualTo("long_path" + i + ".ts");
     }
   }
+
+  @Test
+  public void equals_onlyForSameMultivariantAndPreviousMediaPlaylist() throws IOException {
+    String playlistString =
+        "#EXTM3U\n" + "#EXT-X-TARGETDURATION:4\n" + "#EXTINF:4.0,\n" + "segment0.ts\n";
+    HlsMediaPlaylist previousMediaPlaylist =
+        (HlsMediaPlaylist)
+            new HlsPlaylistParser()
+                .parse(
+                    Uri.parse("https://example.com/test.m3u8"),
+                    new ByteArrayInputStream(Util.getUtf8Bytes(playlistString)));
+    HlsMultivariantPlaylist multivariantPlaylist = HlsMultivariantPlaylist.EMPTY;
+
+    HlsPlaylistParser parser = new HlsPlaylistParser(multivariantPlaylist, previousMediaPlaylist);
+
+    assertThat(parser)
+        .isEqualTo(new HlsPlaylistParser(multivariantPlaylist, previousMediaPlaylist));
+    assertThat(parser.hashCode())
+        .isEqualTo(new HlsPlaylistParser(multivariantPlaylist, previousMediaPlaylist).hashCode());
+    assertThat(parser)
+        .isNotEqualTo(
+            new HlsPlaylistParser(multivariantPlaylist, /* previousMediaPlaylist= */ null));
+    assertThat(new HlsPlaylistParser()).isEqualTo(new HlsPlaylistParser());
+  }
 }
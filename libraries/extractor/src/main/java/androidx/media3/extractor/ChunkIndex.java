@@ -15,14 +15,25 @@
  */
 package androidx.media3.extractor;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /** Defines chunks of samples within a media stream. */
 @UnstableApi
 public final class ChunkIndex implements SeekMap {
 
+  /** The version of the format written by {@link #toByteArray()}. */
+  private static final int SERIALIZATION_VERSION = 1;
+
+  /** The number of bytes written by {@link #toByteArray()} before the per-chunk data. */
+  private static final int SERIALIZATION_HEADER_SIZE = 8;
+
+  /** The number of bytes written by {@link #toByteArray()} for each chunk. */
+  private static final int SERIALIZATION_CHUNK_SIZE = 4 + 8 + 8 + 8;
+
   /** The number of chunks. */
   public final int length;
 
@@ -69,6 +80,70 @@ public final class ChunkIndex implements SeekMap {
     return Util.binarySearchFloor(timesUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ true);
   }
 
+  /**
+   * Serializes the index so that it can be persisted, for example alongside a cached copy of the
+   * media, and restored with {@link #fromByteArray(byte[])}.
+   */
+  public byte[] toByteArray() {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(SERIALIZATION_HEADER_SIZE + length * SERIALIZATION_CHUNK_SIZE);
+    buffer.putInt(SERIALIZATION_VERSION);
+    buffer.putInt(length);
+    for (int i = 0; i < length; i++) {
+      buffer.putInt(sizes[i]);
+      buffer.putLong(offsets[i]);
+      buffer.putLong(durationsUs[i]);
+      buffer.putLong(timesUs[i]);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Restores an index serialized by {@link #toByteArray()}.
+   *
+   * @param data The serialized index.
+   * @return The restored index, or null if the data is malformed or was written by an incompatible
+   *     version.
+   */
+  @Nullable
+  public static ChunkIndex fromByteArray(byte[] data) {
+    return fromByteArray(data, /* offset= */ 0, data.length);
+  }
+
+  /**
+   * Restores an index serialized by {@link #toByteArray()} from part of an array, without copying
+   * the serialized data.
+   *
+   * @param data The array holding the serialized index.
+   * @param offset The position in {@code data} at which the serialized index starts.
+   * @param length The length of the serialized index, in bytes.
+   * @return The restored index, or null if the data is malformed or was written by an incompatible
+   *     version.
+   */
+  @Nullable
+  public static ChunkIndex fromByteArray(byte[] data, int offset, int length) {
+    ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+    if (buffer.remaining() < SERIALIZATION_HEADER_SIZE
+        || buffer.getInt() != SERIALIZATION_VERSION) {
+      return null;
+    }
+    int chunkCount = buffer.getInt();
+    if (chunkCount < 0 || buffer.remaining() != (long) chunkCount * SERIALIZATION_CHUNK_SIZE) {
+      return null;
+    }
+    int[] sizes = new int[chunkCount];
+    long[] offsets = new long[chunkCount];
+    long[] durationsUs = new long[chunkCount];
+    long[] timesUs = new long[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      sizes[i] = buffer.getInt();
+      offsets[i] = buffer.getLong();
+      durationsUs[i] = buffer.getLong();
+      timesUs[i] = buffer.getLong();
+    }
+    return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+  }
+
   // SeekMap implementation.
 
   @Override
@@ -17,6 +17,7 @@ package androidx.media3.extractor;
 
 import static java.lang.Math.min;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.DataReader;
 import androidx.media3.common.MediaLibraryInfo;
@@ -26,7 +27,6 @@ import androidx.media3.common.util.Util;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.Arrays;
 
 /** An {@link ExtractorInput} that wraps a {@link DataReader}. */
 @UnstableApi
@@ -40,12 +40,13 @@ public final class DefaultExtractorInput implements ExtractorInput {
   private static final int PEEK_MAX_FREE_SPACE = 512 * 1024;
   private static final int SCRATCH_SPACE_SIZE = 4096;
 
-  private final byte[] scratchSpace;
   private final DataReader dataReader;
   private final long streamLength;
 
+  @Nullable private byte[] scratchSpace;
   private long position;
   private byte[] peekBuffer;
+  private int peekBufferStart;
   private int peekBufferPosition;
   private int peekBufferLength;
 
@@ -58,8 +59,8 @@ public final class DefaultExtractorInput implements ExtractorInput {
     this.dataReader = dataReader;
     this.position = position;
     this.streamLength = length;
-    peekBuffer = new byte[PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
-    scratchSpace = new byte[SCRATCH_SPACE_SIZE];
+    // The buffers are allocated when first needed, since many inputs are never peeked or skipped.
+    peekBuffer = Util.EMPTY_BYTE_ARRAY;
   }
 
   @Override
@@ -94,6 +95,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
   public int skip(int length) throws IOException {
     int bytesSkipped = skipFromPeekBuffer(length);
     if (bytesSkipped == 0) {
+      byte[] scratchSpace = getScratchSpace();
       bytesSkipped = readFromUpstream(scratchSpace, 0, min(length, scratchSpace.length), 0, true);
     }
     commitBytesRead(bytesSkipped);
@@ -104,6 +106,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
   public boolean skipFully(int length, boolean allowEndOfInput) throws IOException {
     int bytesSkipped = skipFromPeekBuffer(length);
     while (bytesSkipped < length && bytesSkipped != C.RESULT_END_OF_INPUT) {
+      byte[] scratchSpace = getScratchSpace();
       int minLength = min(length, bytesSkipped + scratchSpace.length);
       bytesSkipped =
           readFromUpstream(scratchSpace, -bytesSkipped, minLength, bytesSkipped, allowEndOfInput);
@@ -126,7 +129,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
       bytesPeeked =
           readFromUpstream(
               peekBuffer,
-              peekBufferPosition,
+              peekBufferStart + peekBufferPosition,
               length,
               /* bytesAlreadyRead= */ 0,
               /* allowEndOfInput= */ true);
@@ -137,7 +140,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
     } else {
       bytesPeeked = min(length, peekBufferRemainingBytes);
     }
-    System.arraycopy(peekBuffer, peekBufferPosition, target, offset, bytesPeeked);
+    System.arraycopy(peekBuffer, peekBufferStart + peekBufferPosition, target, offset, bytesPeeked);
     peekBufferPosition += bytesPeeked;
     return bytesPeeked;
   }
@@ -148,7 +151,8 @@ public final class DefaultExtractorInput implements ExtractorInput {
     if (!advancePeekPosition(length, allowEndOfInput)) {
       return false;
     }
-    System.arraycopy(peekBuffer, peekBufferPosition - length, target, offset, length);
+    System.arraycopy(
+        peekBuffer, peekBufferStart + peekBufferPosition - length, target, offset, length);
     return true;
   }
 
@@ -163,7 +167,12 @@ public final class DefaultExtractorInput implements ExtractorInput {
     int bytesPeeked = peekBufferLength - peekBufferPosition;
     while (bytesPeeked < length) {
       bytesPeeked =
-          readFromUpstream(peekBuffer, peekBufferPosition, length, bytesPeeked, allowEndOfInput);
+          readFromUpstream(
+              peekBuffer,
+              peekBufferStart + peekBufferPosition,
+              length,
+              bytesPeeked,
+              allowEndOfInput);
       if (bytesPeeked == C.RESULT_END_OF_INPUT) {
         return false;
       }
@@ -208,17 +217,28 @@ public final class DefaultExtractorInput implements ExtractorInput {
   /**
    * Ensures {@code peekBuffer} is large enough to store at least {@code length} bytes from the
    * current peek position.
+   *
+   * <p>Bytes that have been consumed from the start of the peek buffer are only discarded here,
+   * when space is needed at its end, so that reading from the peek buffer doesn't move the
+   * remaining data each time.
    */
   private void ensureSpaceForPeek(int length) {
     int requiredLength = peekBufferPosition + length;
-    if (requiredLength > peekBuffer.length) {
+    if (peekBufferStart + requiredLength <= peekBuffer.length) {
+      return;
+    }
+    byte[] newPeekBuffer = peekBuffer;
+    if (requiredLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE > peekBuffer.length) {
       int newPeekCapacity =
           Util.constrainValue(
               peekBuffer.length * 2,
               requiredLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE,
               requiredLength + PEEK_MAX_FREE_SPACE);
-      peekBuffer = Arrays.copyOf(peekBuffer, newPeekCapacity);
+      newPeekBuffer = new byte[newPeekCapacity];
     }
+    System.arraycopy(peekBuffer, peekBufferStart, newPeekBuffer, 0, peekBufferLength);
+    peekBuffer = newPeekBuffer;
+    peekBufferStart = 0;
   }
 
   /**
@@ -246,7 +266,7 @@ public final class DefaultExtractorInput implements ExtractorInput {
       return 0;
     }
     int peekBytes = min(peekBufferLength, length);
-    System.arraycopy(peekBuffer, 0, target, offset, peekBytes);
+    System.arraycopy(peekBuffer, peekBufferStart, target, offset, peekBytes);
     updatePeekBuffer(peekBytes);
     return peekBytes;
   }
@@ -259,12 +279,21 @@ public final class DefaultExtractorInput implements ExtractorInput {
   private void updatePeekBuffer(int bytesConsumed) {
     peekBufferLength -= bytesConsumed;
     peekBufferPosition = 0;
-    byte[] newPeekBuffer = peekBuffer;
+    peekBufferStart = peekBufferLength == 0 ? 0 : peekBufferStart + bytesConsumed;
     if (peekBufferLength < peekBuffer.length - PEEK_MAX_FREE_SPACE) {
-      newPeekBuffer = new byte[peekBufferLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
+      byte[] newPeekBuffer = new byte[peekBufferLength + PEEK_MIN_FREE_SPACE_AFTER_RESIZE];
+      System.arraycopy(peekBuffer, peekBufferStart, newPeekBuffer, 0, peekBufferLength);
+      peekBuffer = newPeekBuffer;
+      peekBufferStart = 0;
     }
-    System.arraycopy(peekBuffer, bytesConsumed, newPeekBuffer, 0, peekBufferLength);
-    peekBuffer = newPeekBuffer;
+  }
+
+  /** Returns the scratch space used to skip data that isn't in the peek buffer. */
+  private byte[] getScratchSpace() {
+    if (scratchSpace == null) {
+      scratchSpace = new byte[SCRATCH_SPACE_SIZE];
+    }
+    return scratchSpace;
   }
 
   /**
@@ -47,6 +47,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 
   private static final int MAX_ID_BYTES = 4;
   private static final int MAX_LENGTH_BYTES = 8;
+  private static final int MAX_HEADER_BYTES = MAX_ID_BYTES + MAX_LENGTH_BYTES;
 
   private static final int MAX_INTEGER_ELEMENT_SIZE_BYTES = 8;
   private static final int VALID_FLOAT32_ELEMENT_SIZE_BYTES = 4;
@@ -62,7 +63,7 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
   private long elementContentSize;
 
   public DefaultEbmlReader() {
-    scratch = new byte[8];
+    scratch = new byte[MAX_HEADER_BYTES];
     masterElementsStack = new ArrayDeque<>();
     varintReader = new VarintReader();
   }
@@ -89,6 +90,12 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
         return true;
       }
 
+      if (elementState == ELEMENT_STATE_READ_ID
+          && !varintReader.isReadingVarint()
+          && maybeReadElementHeaderFromPeek(input)) {
+        elementState = ELEMENT_STATE_READ_CONTENT;
+      }
+
       if (elementState == ELEMENT_STATE_READ_ID) {
         long result = varintReader.readUnsignedVarint(input, true, false, MAX_ID_BYTES);
         if (result == C.RESULT_MAX_LENGTH_EXCEEDED) {
@@ -156,6 +163,37 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
     }
   }
 
+  /**
+   * Reads the ID and content size of the next element from a single peek at the input, so that the
+   * two varints don't have to be read from the input one by one.
+   *
+   * <p>If the peeked data doesn't contain a complete, valid element header, nothing is read, and
+   * the header should be read one varint at a time instead.
+   *
+   * @param input The {@link ExtractorInput} from which to read.
+   * @return Whether {@link #elementId} and {@link #elementContentSize} were read.
+   * @throws IOException If an error occurs peeking from the input.
+   */
+  private boolean maybeReadElementHeaderFromPeek(ExtractorInput input) throws IOException {
+    int bytesPeeked = input.peek(scratch, 0, MAX_HEADER_BYTES);
+    if (bytesPeeked == C.RESULT_END_OF_INPUT) {
+      return false;
+    }
+    int idLength = VarintReader.parseUnsignedVarintLength(scratch[0]);
+    if (idLength == C.LENGTH_UNSET || idLength > MAX_ID_BYTES || idLength >= bytesPeeked) {
+      return false;
+    }
+    int contentSizeLength = VarintReader.parseUnsignedVarintLength(scratch[idLength]);
+    if (contentSizeLength == C.LENGTH_UNSET || idLength + contentSizeLength > bytesPeeked) {
+      return false;
+    }
+    // Element IDs are at most 4 bytes, so we can cast to integers.
+    elementId = (int) VarintReader.assembleVarint(scratch, 0, idLength, false);
+    elementContentSize = VarintReader.assembleVarint(scratch, idLength, contentSizeLength, true);
+    input.skipFully(idLength + contentSizeLength);
+    return true;
+  }
+
   /**
    * Does a byte by byte search to try and find the next level 1 element. This method is called if
    * some invalid data is encountered in the parser.
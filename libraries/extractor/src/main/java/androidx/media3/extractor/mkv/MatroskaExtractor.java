@@ -381,6 +381,7 @@ public class MatroskaExtractor implements Extractor {
   private final VarintReader varintReader;
   private final SparseArray<Track> tracks;
   private final boolean seekForCuesEnabled;
+  @Nullable private final MatroskaSeekIndex persistedSeekIndex;
 
   // Temporary arrays.
   private final ParsableByteArray nalStartCode;
@@ -406,6 +407,7 @@ public class MatroskaExtractor implements Extractor {
 
   // Whether a seek map has been sent to the output.
   private boolean sentSeekMap;
+  @Nullable private MatroskaSeekIndex seekIndex;
 
   // Master seek entry related elements.
   private int seekEntryId;
@@ -456,12 +458,32 @@ public class MatroskaExtractor implements Extractor {
   }
 
   public MatroskaExtractor(@Flags int flags) {
-    this(new DefaultEbmlReader(), flags);
+    this(flags, /* persistedSeekIndex= */ null);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param flags Flags that control the extractor's behavior.
+   * @param persistedSeekIndex A seek index previously obtained from {@link #getSeekIndex()} for the
+   *     same media, or null. If non-null, the index is used when the first Cluster is reached
+   *     before the Cues element has been read, which avoids having to seek to the Cues element or
+   *     treat the media as unseekable. The index is ignored if the position, size or duration of
+   *     the Segment don't match those recorded in the index.
+   */
+  public MatroskaExtractor(@Flags int flags, @Nullable MatroskaSeekIndex persistedSeekIndex) {
+    this(new DefaultEbmlReader(), flags, persistedSeekIndex);
   }
 
   /* package */ MatroskaExtractor(EbmlReader reader, @Flags int flags) {
+    this(reader, flags, /* persistedSeekIndex= */ null);
+  }
+
+  private MatroskaExtractor(
+      EbmlReader reader, @Flags int flags, @Nullable MatroskaSeekIndex persistedSeekIndex) {
     this.reader = reader;
     this.reader.init(new InnerEbmlProcessor());
+    this.persistedSeekIndex = persistedSeekIndex;
     seekForCuesEnabled = (flags & FLAG_DISABLE_SEEK_FOR_CUES) == 0;
     varintReader = new VarintReader();
     tracks = new SparseArray<>();
@@ -478,6 +500,18 @@ public class MatroskaExtractor implements Extractor {
     blockSampleSizes = new int[1];
   }
 
+  /**
+   * Returns the seek index output by the extractor, or null if the extractor hasn't output a
+   * seekable {@link SeekMap}.
+   *
+   * <p>The index can be persisted using {@link MatroskaSeekIndex#toByteArray()}, and passed to
+   * {@link #MatroskaExtractor(int, MatroskaSeekIndex)} when the same media is opened again.
+   */
+  @Nullable
+  public final MatroskaSeekIndex getSeekIndex() {
+    return seekIndex;
+  }
+
   @Override
   public final boolean sniff(ExtractorInput input) throws IOException {
     return new Sniffer().sniff(input);
@@ -680,7 +714,14 @@ public class MatroskaExtractor implements Extractor {
       case ID_CLUSTER:
         if (!sentSeekMap) {
           // We need to build cues before parsing the cluster.
-          if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
+          if (persistedSeekIndex != null
+              && persistedSeekIndex.matchesSegment(
+                  segmentContentPosition, segmentContentSize, durationUs)) {
+            // We already know the cues from a previous extraction of the same media.
+            seekIndex = persistedSeekIndex;
+            extractorOutput.seekMap(persistedSeekIndex.chunkIndex);
+            sentSeekMap = true;
+          } else if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
             // We know where the Cues element is located. Seek to request it.
             seekForCues = true;
           } else {
@@ -741,7 +782,13 @@ public class MatroskaExtractor implements Extractor {
         break;
       case ID_CUES:
         if (!sentSeekMap) {
-          extractorOutput.seekMap(buildSeekMap(cueTimesUs, cueClusterPositions));
+          SeekMap seekMap = buildSeekMap(cueTimesUs, cueClusterPositions);
+          if (seekMap instanceof ChunkIndex) {
+            seekIndex =
+                new MatroskaSeekIndex(
+                    segmentContentPosition, segmentContentSize, durationUs, (ChunkIndex) seekMap);
+          }
+          extractorOutput.seekMap(seekMap);
           sentSeekMap = true;
         } else {
           // We have already built the cues. Ignore.
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mkv;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.extractor.ChunkIndex;
+import java.nio.ByteBuffer;
+
+/**
+ * A seek index built by {@link MatroskaExtractor} from the Cues element of a Matroska file, which
+ * can be persisted and passed to {@link MatroskaExtractor#MatroskaExtractor(int,
+ * MatroskaSeekIndex)} when the same file is opened again.
+ *
+ * <p>The index records the position, size and duration of the Segment it was built for. An
+ * extractor ignores a persisted index if these don't match the Segment being read, for example
+ * because the file has been replaced since the index was persisted.
+ */
+@UnstableApi
+public final class MatroskaSeekIndex {
+
+  /** The version of the format written by {@link #toByteArray()}. */
+  private static final int SERIALIZATION_VERSION = 1;
+
+  /** The number of bytes written by {@link #toByteArray()} before the serialized chunk index. */
+  private static final int SERIALIZATION_HEADER_SIZE = 4 + 8 + 8 + 8;
+
+  /** The position of the content of the Segment element, in bytes. */
+  public final long segmentContentPosition;
+  /** The size of the content of the Segment element in bytes, or {@link C#LENGTH_UNSET}. */
+  public final long segmentContentSize;
+  /** The duration of the Segment in microseconds, or {@link C#TIME_UNSET}. */
+  public final long durationUs;
+  /** The chunks of the Segment, as defined by its Cues element. */
+  public final ChunkIndex chunkIndex;
+
+  /**
+   * Creates an instance.
+   *
+   * @param segmentContentPosition The position of the content of the Segment element, in bytes.
+   * @param segmentContentSize The size of the content of the Segment element in bytes, or {@link
+   *     C#LENGTH_UNSET}.
+   * @param durationUs The duration of the Segment in microseconds, or {@link C#TIME_UNSET}.
+   * @param chunkIndex The chunks of the Segment, as defined by its Cues element.
+   */
+  public MatroskaSeekIndex(
+      long segmentContentPosition,
+      long segmentContentSize,
+      long durationUs,
+      ChunkIndex chunkIndex) {
+    this.segmentContentPosition = segmentContentPosition;
+    this.segmentContentSize = segmentContentSize;
+    this.durationUs = durationUs;
+    this.chunkIndex = chunkIndex;
+  }
+
+  /**
+   * Serializes the index so that it can be persisted, for example alongside a cached copy of the
+   * media, and restored with {@link #fromByteArray(byte[])}.
+   */
+  public byte[] toByteArray() {
+    byte[] chunkIndexData = chunkIndex.toByteArray();
+    return ByteBuffer.allocate(SERIALIZATION_HEADER_SIZE + chunkIndexData.length)
+        .putInt(SERIALIZATION_VERSION)
+        .putLong(segmentContentPosition)
+        .putLong(segmentContentSize)
+        .putLong(durationUs)
+        .put(chunkIndexData)
+        .array();
+  }
+
+  /**
+   * Restores an index serialized by {@link #toByteArray()}.
+   *
+   * @param data The serialized index.
+   * @return The restored index, or null if the data is malformed or was written by an incompatible
+   *     version.
+   */
+  @Nullable
+  public static MatroskaSeekIndex fromByteArray(byte[] data) {
+    if (data.length < SERIALIZATION_HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    if (buffer.getInt() != SERIALIZATION_VERSION) {
+      return null;
+    }
+    long segmentContentPosition = buffer.getLong();
+    long segmentContentSize = buffer.getLong();
+    long durationUs = buffer.getLong();
+    @Nullable
+    ChunkIndex chunkIndex =
+        ChunkIndex.fromByteArray(
+            data, SERIALIZATION_HEADER_SIZE, data.length - SERIALIZATION_HEADER_SIZE);
+    if (chunkIndex == null) {
+      return null;
+    }
+    return new MatroskaSeekIndex(
+        segmentContentPosition, segmentContentSize, durationUs, chunkIndex);
+  }
+
+  /**
+   * Returns whether the index was built for a Segment with the given content position, content size
+   * and duration.
+   */
+  /* package */ boolean matchesSegment(
+      long segmentContentPosition, long segmentContentSize, long durationUs) {
+    return this.segmentContentPosition == segmentContentPosition
+        && this.segmentContentSize == segmentContentSize
+        && this.durationUs == durationUs;
+  }
+}
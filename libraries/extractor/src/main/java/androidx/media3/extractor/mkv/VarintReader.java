@@ -105,6 +105,11 @@ import java.io.IOException;
     return assembleVarint(scratch, length, removeLengthMask);
   }
 
+  /** Returns whether some, but not all, of a variable-length integer has been read. */
+  public boolean isReadingVarint() {
+    return state == STATE_READ_CONTENTS;
+  }
+
   /** Returns the number of bytes occupied by the most recently parsed varint. */
   public int getLastLength() {
     return length;
@@ -118,14 +123,12 @@ import java.io.IOException;
    *     C#LENGTH_UNSET} otherwise.
    */
   public static int parseUnsignedVarintLength(int firstByte) {
-    int varIntLength = C.LENGTH_UNSET;
-    for (int i = 0; i < VARINT_LENGTH_MASKS.length; i++) {
-      if ((VARINT_LENGTH_MASKS[i] & firstByte) != 0) {
-        varIntLength = i + 1;
-        break;
-      }
+    firstByte &= 0xFF;
+    if (firstByte == 0) {
+      return C.LENGTH_UNSET;
     }
-    return varIntLength;
+    // The length is one more than the number of leading zero bits in the first byte.
+    return Integer.numberOfLeadingZeros(firstByte) - 23;
   }
 
   /**
@@ -138,12 +141,26 @@ import java.io.IOException;
    */
   public static long assembleVarint(
       byte[] varintBytes, int varintLength, boolean removeLengthMask) {
-    long varint = varintBytes[0] & 0xFFL;
+    return assembleVarint(varintBytes, /* offset= */ 0, varintLength, removeLengthMask);
+  }
+
+  /**
+   * Assemble a varint from the given byte array.
+   *
+   * @param data An array containing the bytes that make up the varint.
+   * @param offset The offset of the first byte of the varint in {@code data}.
+   * @param varintLength Length of the varint to assemble.
+   * @param removeLengthMask Removes the variable-length integer length mask from the value.
+   * @return Parsed and assembled varint.
+   */
+  public static long assembleVarint(
+      byte[] data, int offset, int varintLength, boolean removeLengthMask) {
+    long varint = data[offset] & 0xFFL;
     if (removeLengthMask) {
       varint &= ~VARINT_LENGTH_MASKS[varintLength - 1];
     }
     for (int i = 1; i < varintLength; i++) {
-      varint = (varint << 8) | (varintBytes[i] & 0xFFL);
+      varint = (varint << 8) | (data[offset + i] & 0xFFL);
     }
     return varint;
   }
@@ -127,30 +127,81 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         continue;
       }
       @Nullable
-      Track track =
-          modifyTrackFunction.apply(
-              parseTrak(
-                  atom,
-                  checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
-                  duration,
-                  drmInitData,
-                  ignoreEditLists,
-                  isQuickTime));
-      if (track == null) {
-        continue;
+      TrackSampleTable trackSampleTable =
+          parseTrakSampleTable(
+              atom,
+              checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
+              gaplessInfoHolder,
+              duration,
+              drmInitData,
+              ignoreEditLists,
+              isQuickTime,
+              modifyTrackFunction);
+      if (trackSampleTable != null) {
+        trackSampleTables.add(trackSampleTable);
       }
-      Atom.ContainerAtom stblAtom =
-          checkNotNull(
-              checkNotNull(
-                      checkNotNull(atom.getContainerAtomOfType(Atom.TYPE_mdia))
-                          .getContainerAtomOfType(Atom.TYPE_minf))
-                  .getContainerAtomOfType(Atom.TYPE_stbl));
-      TrackSampleTable trackSampleTable = parseStbl(track, stblAtom, gaplessInfoHolder);
-      trackSampleTables.add(trackSampleTable);
     }
     return trackSampleTables;
   }
 
+  /**
+   * Parses a trak atom and its sample table (defined in ISO/IEC 14496-12).
+   *
+   * @param trak The trak atom to decode.
+   * @param mvhd The movie header atom of the moov atom containing {@code trak}.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @param duration The duration in units of the timescale declared in the mvhd atom, or {@link
+   *     C#TIME_UNSET} if the duration should be parsed from the tkhd atom.
+   * @param drmInitData {@link DrmInitData} to be included in the format, or {@code null}.
+   * @param ignoreEditLists Whether to ignore any edit lists in the trak box.
+   * @param isQuickTime True for QuickTime media. False otherwise.
+   * @param modifyTrackFunction A function to apply to the {@link Track} before its sample table is
+   *     parsed.
+   * @return The {@link TrackSampleTable}, or {@code null} if the track's type isn't supported.
+   * @throws ParserException Thrown if the trak atom can't be parsed.
+   */
+  @Nullable
+  public static TrackSampleTable parseTrakSampleTable(
+      Atom.ContainerAtom trak,
+      Atom.LeafAtom mvhd,
+      GaplessInfoHolder gaplessInfoHolder,
+      long duration,
+      @Nullable DrmInitData drmInitData,
+      boolean ignoreEditLists,
+      boolean isQuickTime,
+      Function<@NullableType Track, @NullableType Track> modifyTrackFunction)
+      throws ParserException {
+    @Nullable
+    Track track =
+        modifyTrackFunction.apply(
+            parseTrak(trak, mvhd, duration, drmInitData, ignoreEditLists, isQuickTime));
+    if (track == null) {
+      return null;
+    }
+    return parseSampleTable(track, trak, gaplessInfoHolder);
+  }
+
+  /**
+   * Parses the sample table of a trak atom (defined in ISO/IEC 14496-12).
+   *
+   * @param track The track parsed from {@code trak}.
+   * @param trak The trak atom to decode.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @return The {@link TrackSampleTable}.
+   * @throws ParserException Thrown if the sample table can't be parsed.
+   */
+  public static TrackSampleTable parseSampleTable(
+      Track track, Atom.ContainerAtom trak, GaplessInfoHolder gaplessInfoHolder)
+      throws ParserException {
+    Atom.ContainerAtom stblAtom =
+        checkNotNull(
+            checkNotNull(
+                    checkNotNull(trak.getContainerAtomOfType(Atom.TYPE_mdia))
+                        .getContainerAtomOfType(Atom.TYPE_minf))
+                .getContainerAtomOfType(Atom.TYPE_stbl));
+    return parseStbl(track, stblAtom, gaplessInfoHolder);
+  }
+
   /**
    * Parses a udta atom.
    *
@@ -273,7 +324,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    * @throws ParserException Thrown if the trak atom can't be parsed.
    */
   @Nullable
-  private static Track parseTrak(
+  public static Track parseTrak(
       Atom.ContainerAtom trak,
       Atom.LeafAtom mvhd,
       long duration,
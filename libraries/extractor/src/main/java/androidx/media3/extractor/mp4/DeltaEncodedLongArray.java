@@ -0,0 +1,217 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * An immutable array of {@code long} values that stores each value as a 32-bit delta from the first
+ * value of its block, which roughly halves the memory needed for values that change slowly, such as
+ * sample offsets and timestamps.
+ *
+ * <p>If the values can't be delta encoded, they're stored as given.
+ *
+ * <p>The encoding is computed from a fully populated array, so it reduces the memory retained once
+ * that array is released, not the peak memory used while creating an instance.
+ */
+/* package */ final class DeltaEncodedLongArray {
+
+  private static final int BLOCK_SIZE_SHIFT = 6;
+
+  /** The number of values. */
+  public final int length;
+
+  @Nullable private final long[] values;
+  private final long[] blockFirstValues;
+  private final int[] deltas;
+
+  /**
+   * Creates an instance holding the given values.
+   *
+   * @param values The values. Must not be modified after being passed to this constructor.
+   */
+  public DeltaEncodedLongArray(long[] values) {
+    length = values.length;
+    long[] blockFirstValues = new long[getBlockCount(length)];
+    int[] deltas = new int[length];
+    for (int i = 0; i < length; i++) {
+      int blockIndex = i >> BLOCK_SIZE_SHIFT;
+      if ((i & ((1 << BLOCK_SIZE_SHIFT) - 1)) == 0) {
+        blockFirstValues[blockIndex] = values[i];
+      }
+      long delta = values[i] - blockFirstValues[blockIndex];
+      if (delta != (int) delta) {
+        // The values are too far apart to be delta encoded.
+        this.values = values;
+        this.blockFirstValues = new long[0];
+        this.deltas = new int[0];
+        return;
+      }
+      deltas[i] = (int) delta;
+    }
+    this.values = null;
+    this.blockFirstValues = blockFirstValues;
+    this.deltas = deltas;
+  }
+
+  private DeltaEncodedLongArray(
+      int length, @Nullable long[] values, long[] blockFirstValues, int[] deltas) {
+    this.length = length;
+    this.values = values;
+    this.blockFirstValues = blockFirstValues;
+    this.deltas = deltas;
+  }
+
+  /**
+   * Reads an array written by {@link #writeTo(ByteBuffer)}, advancing the position of the buffer
+   * past it.
+   *
+   * @param buffer The buffer to read from.
+   * @return The array, or null if the data is malformed.
+   */
+  @Nullable
+  public static DeltaEncodedLongArray readFrom(ByteBuffer buffer) {
+    if (buffer.remaining() < 8) {
+      return null;
+    }
+    int length = buffer.getInt();
+    boolean isDeltaEncoded = buffer.getInt() != 0;
+    if (length < 0) {
+      return null;
+    }
+    if (!isDeltaEncoded) {
+      if (buffer.remaining() < (long) length * 8) {
+        return null;
+      }
+      long[] values = new long[length];
+      for (int i = 0; i < length; i++) {
+        values[i] = buffer.getLong();
+      }
+      return new DeltaEncodedLongArray(length, values, new long[0], new int[0]);
+    }
+    int blockCount = getBlockCount(length);
+    if (buffer.remaining() < (long) blockCount * 8 + (long) length * 4) {
+      return null;
+    }
+    long[] blockFirstValues = new long[blockCount];
+    for (int i = 0; i < blockCount; i++) {
+      blockFirstValues[i] = buffer.getLong();
+    }
+    int[] deltas = new int[length];
+    for (int i = 0; i < length; i++) {
+      deltas[i] = buffer.getInt();
+    }
+    return new DeltaEncodedLongArray(length, /* values= */ null, blockFirstValues, deltas);
+  }
+
+  /** Returns the number of bytes written by {@link #writeTo(ByteBuffer)}. */
+  public int getSerializedSize() {
+    return 8 + (values != null ? length * 8 : blockFirstValues.length * 8 + length * 4);
+  }
+
+  /** Writes the array to the given buffer, in the format read by {@link #readFrom(ByteBuffer)}. */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(length);
+    buffer.putInt(values == null ? 1 : 0);
+    if (values != null) {
+      for (long value : values) {
+        buffer.putLong(value);
+      }
+      return;
+    }
+    for (long blockFirstValue : blockFirstValues) {
+      buffer.putLong(blockFirstValue);
+    }
+    for (int delta : deltas) {
+      buffer.putInt(delta);
+    }
+  }
+
+  /**
+   * Returns the value at the given index.
+   *
+   * @param index The index, which must be in the range {@code [0, length)}.
+   */
+  public long get(int index) {
+    if (values != null) {
+      return values[index];
+    }
+    return blockFirstValues[index >> BLOCK_SIZE_SHIFT] + deltas[index];
+  }
+
+  /**
+   * Equivalent to {@link androidx.media3.common.util.Util#binarySearchFloor(long[], long, boolean,
+   * boolean)} on the values held by this array.
+   */
+  public int binarySearchFloor(long value, boolean inclusive, boolean stayInBounds) {
+    int index = binarySearch(value);
+    if (index < 0) {
+      index = -(index + 2);
+    } else {
+      while (--index >= 0 && get(index) == value) {}
+      if (inclusive) {
+        index++;
+      }
+    }
+    return stayInBounds ? max(0, index) : index;
+  }
+
+  /**
+   * Equivalent to {@link androidx.media3.common.util.Util#binarySearchCeil(long[], long, boolean,
+   * boolean)} on the values held by this array.
+   */
+  public int binarySearchCeil(long value, boolean inclusive, boolean stayInBounds) {
+    int index = binarySearch(value);
+    if (index < 0) {
+      index = ~index;
+    } else {
+      while (++index < length && get(index) == value) {}
+      if (inclusive) {
+        index--;
+      }
+    }
+    return stayInBounds ? min(length - 1, index) : index;
+  }
+
+  private static int getBlockCount(int length) {
+    return ((length - 1) >> BLOCK_SIZE_SHIFT) + 1;
+  }
+
+  /**
+   * Equivalent to {@link java.util.Arrays#binarySearch(long[], long)}, including which index is
+   * returned for arrays that aren't sorted or contain duplicate values.
+   */
+  private int binarySearch(long value) {
+    int lowIndex = 0;
+    int highIndex = length - 1;
+    while (lowIndex <= highIndex) {
+      int midIndex = (lowIndex + highIndex) >>> 1;
+      long midValue = get(midIndex);
+      if (midValue < value) {
+        lowIndex = midIndex + 1;
+      } else if (midValue > value) {
+        highIndex = midIndex - 1;
+      } else {
+        return midIndex;
+      }
+    }
+    return -(lowIndex + 1);
+  }
+}
@@ -17,7 +17,6 @@ package androidx.media3.extractor.mp4;
 
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Util.castNonNull;
-import static androidx.media3.extractor.mp4.AtomParsers.parseTraks;
 import static androidx.media3.extractor.mp4.Sniffer.BRAND_HEIC;
 import static androidx.media3.extractor.mp4.Sniffer.BRAND_QUICKTIME;
 import static java.lang.Math.max;
@@ -142,6 +141,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private static final long MAXIMUM_READ_AHEAD_BYTES_STREAM = 10 * 1024 * 1024;
 
   private final @Flags int flags;
+  @Nullable private final Mp4SampleIndex persistedSampleIndex;
 
   // Temporary arrays.
   private final ParsableByteArray nalStartCode;
@@ -152,7 +152,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private final ArrayDeque<ContainerAtom> containerAtoms;
   private final SefReader sefReader;
   private final List<Metadata.Entry> slowMotionMetadataEntries;
+  private final List<TrackSampleTable> parsedTrackSampleTables;
 
+  private GaplessInfoHolder parsedTracksGaplessInfoHolder;
+  private long moovPosition;
+  private long moovSize;
   private @State int parserState;
   private int atomType;
   private long atomSize;
@@ -168,11 +172,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   private @MonotonicNonNull ExtractorOutput extractorOutput;
   private Mp4Track @MonotonicNonNull [] tracks;
 
-  private long @MonotonicNonNull [][] accumulatedSampleSizes;
+  private DeltaEncodedLongArray @MonotonicNonNull [] accumulatedSampleSizes;
   private int firstVideoTrackIndex;
   private long durationUs;
   private @FileType int fileType;
   @Nullable private MotionPhotoMetadata motionPhotoMetadata;
+  @Nullable private List<TrackSampleTable> trackSampleTables;
+  @Nullable private GaplessInfoHolder trackSampleTablesGaplessInfoHolder;
+  @Nullable private Mp4SampleIndex sampleIndex;
 
   /** Creates a new extractor for unfragmented MP4 streams. */
   public Mp4Extractor() {
@@ -186,11 +193,27 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * @param flags Flags that control the extractor's behavior.
    */
   public Mp4Extractor(@Flags int flags) {
+    this(flags, /* persistedSampleIndex= */ null);
+  }
+
+  /**
+   * Creates a new extractor for unfragmented MP4 streams.
+   *
+   * @param flags Flags that control the extractor's behavior.
+   * @param persistedSampleIndex A sample index previously obtained from {@link #getSampleIndex()}
+   *     for the same media, or null. If non-null, the sample tables of the tracks are taken from
+   *     the index rather than parsed from the {@code stbl} boxes. The index is ignored if the
+   *     position or size of the {@code moov} box don't match those recorded in the index.
+   */
+  public Mp4Extractor(@Flags int flags, @Nullable Mp4SampleIndex persistedSampleIndex) {
     this.flags = flags;
+    this.persistedSampleIndex = persistedSampleIndex;
     parserState =
         ((flags & FLAG_READ_SEF_DATA) != 0) ? STATE_READING_SEF : STATE_READING_ATOM_HEADER;
     sefReader = new SefReader();
     slowMotionMetadataEntries = new ArrayList<>();
+    parsedTrackSampleTables = new ArrayList<>();
+    parsedTracksGaplessInfoHolder = new GaplessInfoHolder();
     atomHeader = new ParsableByteArray(Atom.LONG_HEADER_SIZE);
     containerAtoms = new ArrayDeque<>();
     nalStartCode = new ParsableByteArray(NalUnitUtil.NAL_START_CODE);
@@ -199,6 +222,28 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     sampleTrackIndex = C.INDEX_UNSET;
   }
 
+  /**
+   * Returns the sample index of the media, or null if the extractor hasn't read the {@code moov}
+   * box yet.
+   *
+   * <p>The index can be persisted using {@link Mp4SampleIndex#toByteArray()}, and passed to {@link
+   * #Mp4Extractor(int, Mp4SampleIndex)} when the same media is opened again.
+   */
+  @Nullable
+  public Mp4SampleIndex getSampleIndex() {
+    @Nullable List<TrackSampleTable> trackSampleTables = this.trackSampleTables;
+    if (sampleIndex == null && trackSampleTables != null) {
+      sampleIndex =
+          Mp4SampleIndex.create(
+              moovPosition,
+              moovSize,
+              /* ignoreEditLists= */ (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0,
+              checkNotNull(trackSampleTablesGaplessInfoHolder),
+              trackSampleTables);
+    }
+    return sampleIndex;
+  }
+
   @Override
   public boolean sniff(ExtractorInput input) throws IOException {
     return Sniffer.sniffUnfragmented(
@@ -213,6 +258,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   @Override
   public void seek(long position, long timeUs) {
     containerAtoms.clear();
+    resetParsedTracks();
     atomHeaderBytesRead = 0;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesRead = 0;
@@ -296,14 +342,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -379,6 +425,10 @@ public final class Mp4Extractor implements Extractor, SeekMap {
 
     if (shouldParseContainerAtom(atomType)) {
       long endPosition = input.getPosition() + atomSize - atomHeaderBytesRead;
+      if (atomType == Atom.TYPE_moov) {
+        moovPosition = input.getPosition() - atomHeaderBytesRead;
+        moovSize = atomSize;
+      }
       if (atomSize != atomHeaderBytesRead && atomType == Atom.TYPE_meta) {
         maybeSkipRemainingMetaAtomHeaderBytes(input);
       }
@@ -455,6 +505,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         processMoovAtom(containerAtom);
         containerAtoms.clear();
         parserState = STATE_READING_SAMPLE;
+      } else if (containerAtom.type == Atom.TYPE_trak && maybeParseTrakAtom(containerAtom)) {
+        // The trak atom has been parsed, so its data doesn't need to be kept.
       } else if (!containerAtoms.isEmpty()) {
         containerAtoms.peek().add(containerAtom);
       }
@@ -464,6 +516,81 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  /**
+   * Parses a trak atom as soon as it ends, rather than when the enclosing moov atom ends, so that
+   * the data of its leaf atoms doesn't need to be kept for the rest of the moov atom.
+   *
+   * @param trak The trak atom.
+   * @return Whether the trak atom was parsed. If not, it should be parsed with the moov atom.
+   * @throws ParserException If the trak atom can't be parsed.
+   */
+  private boolean maybeParseTrakAtom(ContainerAtom trak) throws ParserException {
+    @Nullable ContainerAtom moov = containerAtoms.peek();
+    if (moov == null
+        || moov.type != Atom.TYPE_moov
+        || moov.getContainerAtomOfType(Atom.TYPE_trak) != null) {
+      // Parsing this trak atom now would change the order of the tracks.
+      return false;
+    }
+    @Nullable Atom.LeafAtom mvhd = moov.getLeafAtomOfType(Atom.TYPE_mvhd);
+    if (mvhd == null) {
+      // The mvhd atom is after the trak atom, which is needed to parse it.
+      return false;
+    }
+    @Nullable
+    TrackSampleTable trackSampleTable =
+        parseTrak(trak, mvhd, /* trackIndex= */ parsedTrackSampleTables.size());
+    if (trackSampleTable != null) {
+      parsedTrackSampleTables.add(trackSampleTable);
+    }
+    return true;
+  }
+
+  /**
+   * Parses a trak atom and its sample table, or takes the sample table from the {@link
+   * #persistedSampleIndex} if it holds the table of the track.
+   *
+   * @param trak The trak atom.
+   * @param mvhd The movie header atom of the moov atom containing {@code trak}.
+   * @param trackIndex The index of the track among the tracks parsed from the moov atom so far.
+   * @return The {@link TrackSampleTable}, or {@code null} if the track's type isn't supported.
+   * @throws ParserException If the trak atom can't be parsed.
+   */
+  @Nullable
+  private TrackSampleTable parseTrak(ContainerAtom trak, Atom.LeafAtom mvhd, int trackIndex)
+      throws ParserException {
+    boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
+    @Nullable
+    Track track =
+        AtomParsers.parseTrak(
+            trak,
+            mvhd,
+            /* duration= */ C.TIME_UNSET,
+            /* drmInitData= */ null,
+            ignoreEditLists,
+            /* isQuickTime= */ fileType == FILE_TYPE_QUICKTIME);
+    if (track == null) {
+      return null;
+    }
+    @Nullable Mp4SampleIndex persistedSampleIndex = this.persistedSampleIndex;
+    if (persistedSampleIndex != null
+        && persistedSampleIndex.matchesMoov(moovPosition, moovSize, ignoreEditLists)) {
+      @Nullable
+      TrackSampleTable trackSampleTable = persistedSampleIndex.getSampleTable(trackIndex, track);
+      if (trackSampleTable != null) {
+        // We already know the sample table from a previous extraction of the same media.
+        persistedSampleIndex.populateGaplessInfo(parsedTracksGaplessInfoHolder);
+        return trackSampleTable;
+      }
+    }
+    return AtomParsers.parseSampleTable(track, trak, parsedTracksGaplessInfoHolder);
+  }
+
+  private void resetParsedTracks() {
+    parsedTrackSampleTables.clear();
+    parsedTracksGaplessInfoHolder = new GaplessInfoHolder();
+  }
+
   /** Updates the stored track metadata to reflect the contents of the specified moov atom. */
   private void processMoovAtom(ContainerAtom moov) throws ParserException {
     int firstVideoTrackIndex = C.INDEX_UNSET;
@@ -473,7 +600,6 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     // Process metadata.
     @Nullable Metadata udtaMetaMetadata = null;
     @Nullable Metadata smtaMetadata = null;
-    boolean isQuickTime = fileType == FILE_TYPE_QUICKTIME;
     GaplessInfoHolder gaplessInfoHolder = new GaplessInfoHolder();
     @Nullable Atom.LeafAtom udta = moov.getLeafAtomOfType(Atom.TYPE_udta);
     if (udta != null) {
@@ -491,16 +617,32 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       mdtaMetadata = AtomParsers.parseMdtaFromMeta(meta);
     }
 
-    boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
-    List<TrackSampleTable> trackSampleTables =
-        parseTraks(
-            moov,
-            gaplessInfoHolder,
-            /* duration= */ C.TIME_UNSET,
-            /* drmInitData= */ null,
-            ignoreEditLists,
-            isQuickTime,
-            /* modifyTrackFunction= */ track -> track);
+    List<TrackSampleTable> trackSampleTables = new ArrayList<>(parsedTrackSampleTables);
+    for (int i = 0; i < moov.containerChildren.size(); i++) {
+      ContainerAtom trak = moov.containerChildren.get(i);
+      if (trak.type != Atom.TYPE_trak) {
+        continue;
+      }
+      @Nullable
+      TrackSampleTable trackSampleTable =
+          parseTrak(
+              trak,
+              checkNotNull(moov.getLeafAtomOfType(Atom.TYPE_mvhd)),
+              /* trackIndex= */ trackSampleTables.size());
+      if (trackSampleTable != null) {
+        trackSampleTables.add(trackSampleTable);
+      }
+    }
+
+    // Gapless information from the edit lists of trak atoms takes precedence over udta metadata.
+    if (parsedTracksGaplessInfoHolder.hasGaplessInfo()) {
+      gaplessInfoHolder.encoderDelay = parsedTracksGaplessInfoHolder.encoderDelay;
+      gaplessInfoHolder.encoderPadding = parsedTracksGaplessInfoHolder.encoderPadding;
+    }
+    this.trackSampleTables = trackSampleTables;
+    trackSampleTablesGaplessInfoHolder = parsedTracksGaplessInfoHolder;
+    sampleIndex = null;
+    resetParsedTracks();
 
     ExtractorOutput extractorOutput = checkNotNull(this.extractorOutput);
     int trackCount = trackSampleTables.size();
@@ -585,8 +727,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = castNonNull(tracks)[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     @Nullable TrueHdSampleRechunker trueHdSampleRechunker = track.trueHdSampleRechunker;
     long skipAmount = position - inputPosition + sampleBytesRead;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
@@ -657,8 +799,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
     }
 
-    long timeUs = track.sampleTable.timestampsUs[sampleIndex];
-    @C.BufferFlags int flags = track.sampleTable.flags[sampleIndex];
+    long timeUs = track.sampleTable.getTimestampUs(sampleIndex);
+    @C.BufferFlags int flags = track.sampleTable.getFlags(sampleIndex);
     if (trueHdSampleRechunker != null) {
       trueHdSampleRechunker.sampleMetadata(
           trackOutput, timeUs, flags, sampleSize, /* offset= */ 0, /* cryptoData= */ null);
@@ -705,8 +847,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = castNonNull(accumulatedSampleSizes)[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
+      long sampleAccumulatedBytes =
+          castNonNull(accumulatedSampleSizes)[trackIndex].get(sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -781,14 +924,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
    * For each sample of each track, calculates accumulated size of all samples which need to be read
    * before this sample can be used.
    */
-  private static long[][] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
+  private static DeltaEncodedLongArray[] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
     long[][] accumulatedSampleSizes = new long[tracks.length][];
     int[] nextSampleIndex = new int[tracks.length];
     long[] nextSampleTimesUs = new long[tracks.length];
     boolean[] tracksFinished = new boolean[tracks.length];
     for (int i = 0; i < tracks.length; i++) {
       accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+      nextSampleTimesUs[i] = tracks[i].sampleTable.getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
@@ -803,17 +946,22 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
       accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
       if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            tracks[minTimeTrackIndex].sampleTable.getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
       }
     }
-    return accumulatedSampleSizes;
+    DeltaEncodedLongArray[] encodedAccumulatedSampleSizes =
+        new DeltaEncodedLongArray[tracks.length];
+    for (int i = 0; i < tracks.length; i++) {
+      encodedAccumulatedSampleSizes[i] = new DeltaEncodedLongArray(accumulatedSampleSizes[i]);
+    }
+    return encodedAccumulatedSampleSizes;
   }
 
   /**
@@ -831,7 +979,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return min(sampleOffset, offset);
   }
 
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.Format;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.extractor.GaplessInfoHolder;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The sample tables built by {@link Mp4Extractor} from the {@code stbl} boxes of an MP4 file, which
+ * can be persisted and passed to {@link Mp4Extractor#Mp4Extractor(int, Mp4SampleIndex)} when the
+ * same file is opened again.
+ *
+ * <p>An extractor that is passed an index still parses the {@code moov} box to obtain the formats
+ * of the tracks, but skips parsing the sample tables of the tracks found in the index.
+ *
+ * <p>The index records the position and size of the {@code moov} box it was built for. An extractor
+ * ignores a persisted index if these don't match the {@code moov} box being read, for example
+ * because the file has been replaced since the index was persisted.
+ */
+@UnstableApi
+public final class Mp4SampleIndex {
+
+  /** The version of the format written by {@link #toByteArray()}. */
+  private static final int SERIALIZATION_VERSION = 2;
+
+  /** The number of bytes written by {@link #toByteArray()} before the serialized sample tables. */
+  private static final int SERIALIZATION_HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 4 + 4;
+
+  /** The number of bytes written by {@link #toByteArray()} before each serialized sample table. */
+  private static final int SERIALIZATION_SAMPLE_TABLE_HEADER_SIZE = 4 + 4;
+
+  /** The position of the {@code moov} box, in bytes. */
+  public final long moovPosition;
+  /** The size of the {@code moov} box, in bytes. */
+  public final long moovSize;
+
+  private final boolean ignoreEditLists;
+  private final int encoderDelay;
+  private final int encoderPadding;
+  private final byte[] data;
+  private final int[] trackIds;
+  private final int[] sampleTableOffsets;
+  private final int[] sampleTableSizes;
+
+  private Mp4SampleIndex(
+      long moovPosition,
+      long moovSize,
+      boolean ignoreEditLists,
+      int encoderDelay,
+      int encoderPadding,
+      byte[] data,
+      int[] trackIds,
+      int[] sampleTableOffsets,
+      int[] sampleTableSizes) {
+    this.moovPosition = moovPosition;
+    this.moovSize = moovSize;
+    this.ignoreEditLists = ignoreEditLists;
+    this.encoderDelay = encoderDelay;
+    this.encoderPadding = encoderPadding;
+    this.data = data;
+    this.trackIds = trackIds;
+    this.sampleTableOffsets = sampleTableOffsets;
+    this.sampleTableSizes = sampleTableSizes;
+  }
+
+  /**
+   * Creates an index holding the given sample tables.
+   *
+   * @param moovPosition The position of the {@code moov} box, in bytes.
+   * @param moovSize The size of the {@code moov} box, in bytes.
+   * @param ignoreEditLists Whether edit lists were ignored when building the sample tables.
+   * @param gaplessInfoHolder The gapless information parsed from the edit lists of the tracks.
+   * @param sampleTables The sample tables of the tracks, in the order of their {@code trak} boxes.
+   */
+  /* package */ static Mp4SampleIndex create(
+      long moovPosition,
+      long moovSize,
+      boolean ignoreEditLists,
+      GaplessInfoHolder gaplessInfoHolder,
+      List<TrackSampleTable> sampleTables) {
+    int trackCount = sampleTables.size();
+    int size = SERIALIZATION_HEADER_SIZE;
+    for (int i = 0; i < trackCount; i++) {
+      size += SERIALIZATION_SAMPLE_TABLE_HEADER_SIZE + sampleTables.get(i).getSerializedSize();
+    }
+    ByteBuffer buffer =
+        ByteBuffer.allocate(size)
+            .putInt(SERIALIZATION_VERSION)
+            .putLong(moovPosition)
+            .putLong(moovSize)
+            .putInt(ignoreEditLists ? 1 : 0)
+            .putInt(gaplessInfoHolder.encoderDelay)
+            .putInt(gaplessInfoHolder.encoderPadding)
+            .putInt(trackCount);
+    int[] trackIds = new int[trackCount];
+    int[] sampleTableOffsets = new int[trackCount];
+    int[] sampleTableSizes = new int[trackCount];
+    for (int i = 0; i < trackCount; i++) {
+      TrackSampleTable sampleTable = sampleTables.get(i);
+      trackIds[i] = sampleTable.track.id;
+      sampleTableSizes[i] = sampleTable.getSerializedSize();
+      buffer.putInt(trackIds[i]).putInt(sampleTableSizes[i]);
+      sampleTableOffsets[i] = buffer.position();
+      sampleTable.writeTo(buffer);
+    }
+    return new Mp4SampleIndex(
+        moovPosition,
+        moovSize,
+        ignoreEditLists,
+        gaplessInfoHolder.encoderDelay,
+        gaplessInfoHolder.encoderPadding,
+        buffer.array(),
+        trackIds,
+        sampleTableOffsets,
+        sampleTableSizes);
+  }
+
+  /**
+   * Serializes the index so that it can be persisted, for example alongside a cached copy of the
+   * media, and restored with {@link #fromByteArray(byte[])}.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(data, data.length);
+  }
+
+  /**
+   * Restores an index serialized by {@link #toByteArray()}.
+   *
+   * <p>The sample tables are read from {@code data} when the index is used, so the array must not
+   * be modified afterwards.
+   *
+   * @param data The serialized index.
+   * @return The restored index, or null if the data is malformed or was written by an incompatible
+   *     version.
+   */
+  @Nullable
+  public static Mp4SampleIndex fromByteArray(byte[] data) {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    if (buffer.remaining() < SERIALIZATION_HEADER_SIZE
+        || buffer.getInt() != SERIALIZATION_VERSION) {
+      return null;
+    }
+    long moovPosition = buffer.getLong();
+    long moovSize = buffer.getLong();
+    boolean ignoreEditLists = buffer.getInt() != 0;
+    int encoderDelay = buffer.getInt();
+    int encoderPadding = buffer.getInt();
+    int trackCount = buffer.getInt();
+    if (trackCount < 0
+        || buffer.remaining() < (long) trackCount * SERIALIZATION_SAMPLE_TABLE_HEADER_SIZE) {
+      return null;
+    }
+    int[] trackIds = new int[trackCount];
+    int[] sampleTableOffsets = new int[trackCount];
+    int[] sampleTableSizes = new int[trackCount];
+    for (int i = 0; i < trackCount; i++) {
+      if (buffer.remaining() < SERIALIZATION_SAMPLE_TABLE_HEADER_SIZE) {
+        return null;
+      }
+      trackIds[i] = buffer.getInt();
+      sampleTableSizes[i] = buffer.getInt();
+      sampleTableOffsets[i] = buffer.position();
+      if (sampleTableSizes[i] < 0 || sampleTableSizes[i] > buffer.remaining()) {
+        return null;
+      }
+      buffer.position(buffer.position() + sampleTableSizes[i]);
+    }
+    if (buffer.hasRemaining()) {
+      return null;
+    }
+    return new Mp4SampleIndex(
+        moovPosition,
+        moovSize,
+        ignoreEditLists,
+        encoderDelay,
+        encoderPadding,
+        data,
+        trackIds,
+        sampleTableOffsets,
+        sampleTableSizes);
+  }
+
+  /**
+   * Returns whether the index was built for a {@code moov} box with the given position and size,
+   * with edit lists ignored as specified.
+   */
+  /* package */ boolean matchesMoov(long moovPosition, long moovSize, boolean ignoreEditLists) {
+    return this.moovPosition == moovPosition
+        && this.moovSize == moovSize
+        && this.ignoreEditLists == ignoreEditLists;
+  }
+
+  /**
+   * Returns the sample table of a track, read in place from the serialized index.
+   *
+   * @param trackIndex The index of the track among the tracks in the index, which are in the order
+   *     of their {@code trak} boxes.
+   * @param track The track, parsed from the {@code trak} box.
+   * @return The sample table, or null if the index doesn't hold a valid sample table for the track.
+   */
+  @Nullable
+  /* package */ TrackSampleTable getSampleTable(int trackIndex, Track track) {
+    if (trackIndex >= trackIds.length || trackIds[trackIndex] != track.id) {
+      return null;
+    }
+    ByteBuffer buffer =
+        ByteBuffer.wrap(data, sampleTableOffsets[trackIndex], sampleTableSizes[trackIndex]);
+    @Nullable TrackSampleTable sampleTable = TrackSampleTable.readFrom(buffer, track);
+    return sampleTable != null && !buffer.hasRemaining() ? sampleTable : null;
+  }
+
+  /**
+   * Populates the given holder with the gapless information parsed from the edit lists of the
+   * tracks, if any.
+   */
+  /* package */ void populateGaplessInfo(GaplessInfoHolder gaplessInfoHolder) {
+    if (encoderDelay != Format.NO_VALUE && encoderPadding != Format.NO_VALUE) {
+      gaplessInfoHolder.encoderDelay = encoderDelay;
+      gaplessInfoHolder.encoderPadding = encoderPadding;
+    }
+  }
+}
@@ -15,30 +15,53 @@
  */
 package androidx.media3.extractor.mp4;
 
+import androidx.annotation.Nullable;
 import androidx.media3.common.C;
 import androidx.media3.common.util.Assertions;
-import androidx.media3.common.util.Util;
+import java.nio.ByteBuffer;
 
-/** Sample table for a track in an MP4 file. */
+/**
+ * Sample table for a track in an MP4 file.
+ *
+ * <p>Sample offsets and timestamps are delta encoded, sample sizes are stored once if they're all
+ * the same, and sample flags are stored as a bitset with one bit per sample marking the
+ * synchronization samples, so that the table of a long recording takes a fraction of the memory of
+ * the fully expanded arrays while the flags of a sample can still be looked up in constant time.
+ *
+ * <p>Only the memory retained after parsing shrinks. The table is built from fully expanded arrays,
+ * which are held alongside the compact representation while it's constructed, so the peak memory
+ * use while parsing the {@code stbl} box is higher than if the arrays were kept as is.
+ */
 /* package */ final class TrackSampleTable {
 
+  private static final int FLAGS_MODE_ALL_SYNCHRONIZATION_SAMPLES = 0;
+  private static final int FLAGS_MODE_SYNCHRONIZATION_SAMPLE_BITS = 1;
+  private static final int FLAGS_MODE_FLAGS = 2;
+
   /** The track corresponding to this sample table. */
   public final Track track;
   /** Number of samples. */
   public final int sampleCount;
-  /** Sample offsets in bytes. */
-  public final long[] offsets;
-  /** Sample sizes in bytes. */
-  public final int[] sizes;
-  /** Maximum sample size in {@link #sizes}. */
+  /** Maximum sample size in bytes. */
   public final int maximumSize;
-  /** Sample timestamps in microseconds. */
-  public final long[] timestampsUs;
-  /** Sample flags. */
-  public final int[] flags;
   /** The duration of the track sample table in microseconds. */
   public final long durationUs;
 
+  private final DeltaEncodedLongArray offsets;
+  private final DeltaEncodedLongArray timestampsUs;
+  /** The size of every sample, or {@link C#LENGTH_UNSET} if sizes are held in {@link #sizes}. */
+  private final int fixedSize;
+
+  @Nullable private final int[] sizes;
+  /**
+   * A bitset in which bit {@code i % 64} of element {@code i / 64} is set if sample {@code i} is a
+   * synchronization sample, or null if every sample is a synchronization sample or flags are held
+   * in {@link #flags}.
+   */
+  @Nullable private final long[] synchronizationSampleBits;
+  /** The sample flags, or null if they can be derived from {@link #synchronizationSampleBits}. */
+  @Nullable private final int[] flags;
+
   public TrackSampleTable(
       Track track,
       long[] offsets,
@@ -52,16 +75,209 @@ import androidx.media3.common.util.Util;
     Assertions.checkArgument(flags.length == timestampsUs.length);
 
     this.track = track;
-    this.offsets = offsets;
-    this.sizes = sizes;
+    this.offsets = new DeltaEncodedLongArray(offsets);
     this.maximumSize = maximumSize;
-    this.timestampsUs = timestampsUs;
-    this.flags = flags;
+    this.timestampsUs = new DeltaEncodedLongArray(timestampsUs);
     this.durationUs = durationUs;
     sampleCount = offsets.length;
-    if (flags.length > 0) {
-      flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+
+    if (sampleCount > 0 && areAllEqual(sizes)) {
+      fixedSize = sizes[0];
+      this.sizes = null;
+    } else {
+      fixedSize = C.LENGTH_UNSET;
+      this.sizes = sizes;
+    }
+
+    int synchronizationSampleCount = 0;
+    boolean hasOtherFlags = false;
+    for (int flag : flags) {
+      if (flag == C.BUFFER_FLAG_KEY_FRAME) {
+        synchronizationSampleCount++;
+      } else if (flag != 0) {
+        hasOtherFlags = true;
+        break;
+      }
+    }
+    if (hasOtherFlags) {
+      this.flags = flags;
+      synchronizationSampleBits = null;
+      if (flags.length > 0) {
+        flags[flags.length - 1] |= C.BUFFER_FLAG_LAST_SAMPLE;
+      }
+    } else if (synchronizationSampleCount == sampleCount) {
+      this.flags = null;
+      synchronizationSampleBits = null;
+    } else {
+      this.flags = null;
+      synchronizationSampleBits = new long[getBitsetLength(sampleCount)];
+      for (int i = 0; i < sampleCount; i++) {
+        if (flags[i] == C.BUFFER_FLAG_KEY_FRAME) {
+          synchronizationSampleBits[i >>> 6] |= 1L << i;
+        }
+      }
+    }
+  }
+
+  private TrackSampleTable(
+      Track track,
+      int sampleCount,
+      int maximumSize,
+      long durationUs,
+      DeltaEncodedLongArray offsets,
+      DeltaEncodedLongArray timestampsUs,
+      int fixedSize,
+      @Nullable int[] sizes,
+      @Nullable long[] synchronizationSampleBits,
+      @Nullable int[] flags) {
+    this.track = track;
+    this.sampleCount = sampleCount;
+    this.maximumSize = maximumSize;
+    this.durationUs = durationUs;
+    this.offsets = offsets;
+    this.timestampsUs = timestampsUs;
+    this.fixedSize = fixedSize;
+    this.sizes = sizes;
+    this.synchronizationSampleBits = synchronizationSampleBits;
+    this.flags = flags;
+  }
+
+  /**
+   * Reads a sample table written by {@link #writeTo(ByteBuffer)}, advancing the position of the
+   * buffer past it.
+   *
+   * @param buffer The buffer to read from.
+   * @param track The track corresponding to the sample table.
+   * @return The sample table, or null if the data is malformed.
+   */
+  @Nullable
+  public static TrackSampleTable readFrom(ByteBuffer buffer, Track track) {
+    if (buffer.remaining() < 16) {
+      return null;
+    }
+    int sampleCount = buffer.getInt();
+    int maximumSize = buffer.getInt();
+    long durationUs = buffer.getLong();
+    @Nullable DeltaEncodedLongArray offsets = DeltaEncodedLongArray.readFrom(buffer);
+    if (sampleCount < 0 || offsets == null || offsets.length != sampleCount) {
+      return null;
+    }
+    @Nullable DeltaEncodedLongArray timestampsUs = DeltaEncodedLongArray.readFrom(buffer);
+    if (timestampsUs == null || timestampsUs.length != sampleCount || buffer.remaining() < 4) {
+      return null;
+    }
+    int fixedSize = buffer.getInt();
+    @Nullable int[] sizes = null;
+    if (fixedSize == C.LENGTH_UNSET) {
+      sizes = readIntArray(buffer, sampleCount);
+      if (sizes == null) {
+        return null;
+      }
+    }
+    if (buffer.remaining() < 4) {
+      return null;
+    }
+    @Nullable long[] synchronizationSampleBits = null;
+    @Nullable int[] flags = null;
+    switch (buffer.getInt()) {
+      case FLAGS_MODE_ALL_SYNCHRONIZATION_SAMPLES:
+        break;
+      case FLAGS_MODE_SYNCHRONIZATION_SAMPLE_BITS:
+        synchronizationSampleBits = readLongArray(buffer, getBitsetLength(sampleCount));
+        if (synchronizationSampleBits == null
+            || !isValidSynchronizationSampleBitset(synchronizationSampleBits, sampleCount)) {
+          return null;
+        }
+        break;
+      case FLAGS_MODE_FLAGS:
+        flags = readIntArray(buffer, sampleCount);
+        if (flags == null) {
+          return null;
+        }
+        break;
+      default:
+        return null;
+    }
+    return new TrackSampleTable(
+        track,
+        sampleCount,
+        maximumSize,
+        durationUs,
+        offsets,
+        timestampsUs,
+        fixedSize,
+        sizes,
+        synchronizationSampleBits,
+        flags);
+  }
+
+  /** Returns the number of bytes written by {@link #writeTo(ByteBuffer)}. */
+  public int getSerializedSize() {
+    int size = 16 + offsets.getSerializedSize() + timestampsUs.getSerializedSize() + 8;
+    if (sizes != null) {
+      size += sizes.length * 4;
+    }
+    if (synchronizationSampleBits != null) {
+      size += synchronizationSampleBits.length * 8;
+    } else if (flags != null) {
+      size += flags.length * 4;
     }
+    return size;
+  }
+
+  /**
+   * Writes the sample table to the given buffer, in the format read by {@link #readFrom(ByteBuffer,
+   * Track)}. The {@link #track} isn't written.
+   */
+  public void writeTo(ByteBuffer buffer) {
+    buffer.putInt(sampleCount);
+    buffer.putInt(maximumSize);
+    buffer.putLong(durationUs);
+    offsets.writeTo(buffer);
+    timestampsUs.writeTo(buffer);
+    buffer.putInt(fixedSize);
+    if (sizes != null) {
+      writeIntArray(buffer, sizes);
+    }
+    if (synchronizationSampleBits != null) {
+      buffer.putInt(FLAGS_MODE_SYNCHRONIZATION_SAMPLE_BITS);
+      for (long bits : synchronizationSampleBits) {
+        buffer.putLong(bits);
+      }
+    } else if (flags != null) {
+      buffer.putInt(FLAGS_MODE_FLAGS);
+      writeIntArray(buffer, flags);
+    } else {
+      buffer.putInt(FLAGS_MODE_ALL_SYNCHRONIZATION_SAMPLES);
+    }
+  }
+
+  /** Returns the offset of the sample at the given index, in bytes. */
+  public long getOffset(int sampleIndex) {
+    return offsets.get(sampleIndex);
+  }
+
+  /** Returns the size of the sample at the given index, in bytes. */
+  public int getSize(int sampleIndex) {
+    return sizes != null ? sizes[sampleIndex] : fixedSize;
+  }
+
+  /** Returns the timestamp of the sample at the given index, in microseconds. */
+  public long getTimestampUs(int sampleIndex) {
+    return timestampsUs.get(sampleIndex);
+  }
+
+  /** Returns the {@link C.BufferFlags} of the sample at the given index. */
+  public @C.BufferFlags int getFlags(int sampleIndex) {
+    if (flags != null) {
+      return flags[sampleIndex];
+    }
+    @C.BufferFlags
+    int sampleFlags = isSynchronizationSample(sampleIndex) ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    if (sampleIndex == sampleCount - 1) {
+      sampleFlags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    return sampleFlags;
   }
 
   /**
@@ -74,13 +290,31 @@ import androidx.media3.common.util.Util;
   public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
     // Video frame timestamps may not be sorted, so the behavior of this call can be undefined.
     // Frames are not reordered past synchronization samples so this works in practice.
-    int startIndex = Util.binarySearchFloor(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i >= 0; i--) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
+    int startIndex = timestampsUs.binarySearchFloor(timeUs, true, false);
+    if (startIndex < 0) {
+      return C.INDEX_UNSET;
+    }
+    if (flags != null) {
+      for (int i = startIndex; i >= 0; i--) {
+        if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+          return i;
+        }
       }
+      return C.INDEX_UNSET;
     }
-    return C.INDEX_UNSET;
+    if (synchronizationSampleBits == null) {
+      return startIndex;
+    }
+    int bitsIndex = startIndex >>> 6;
+    // Clear the bits of the samples after startIndex.
+    long bits = synchronizationSampleBits[bitsIndex] & (-1L >>> (63 - (startIndex & 63)));
+    while (bits == 0) {
+      if (--bitsIndex < 0) {
+        return C.INDEX_UNSET;
+      }
+      bits = synchronizationSampleBits[bitsIndex];
+    }
+    return (bitsIndex << 6) + 63 - Long.numberOfLeadingZeros(bits);
   }
 
   /**
@@ -91,12 +325,85 @@ import androidx.media3.common.util.Util;
    * @return index Index of the synchronization sample, or {@link C#INDEX_UNSET} if none.
    */
   public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
-    int startIndex = Util.binarySearchCeil(timestampsUs, timeUs, true, false);
-    for (int i = startIndex; i < timestampsUs.length; i++) {
-      if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
-        return i;
+    int startIndex = timestampsUs.binarySearchCeil(timeUs, true, false);
+    if (startIndex >= sampleCount) {
+      return C.INDEX_UNSET;
+    }
+    if (flags != null) {
+      for (int i = startIndex; i < sampleCount; i++) {
+        if ((flags[i] & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+          return i;
+        }
+      }
+      return C.INDEX_UNSET;
+    }
+    if (synchronizationSampleBits == null) {
+      return startIndex;
+    }
+    int bitsIndex = startIndex >>> 6;
+    // Clear the bits of the samples before startIndex.
+    long bits = synchronizationSampleBits[bitsIndex] & (-1L << startIndex);
+    while (bits == 0) {
+      if (++bitsIndex == synchronizationSampleBits.length) {
+        return C.INDEX_UNSET;
+      }
+      bits = synchronizationSampleBits[bitsIndex];
+    }
+    return (bitsIndex << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  private boolean isSynchronizationSample(int sampleIndex) {
+    return synchronizationSampleBits == null
+        || (synchronizationSampleBits[sampleIndex >>> 6] & (1L << sampleIndex)) != 0;
+  }
+
+  /** Returns the number of elements of a bitset with one bit for each of the given samples. */
+  private static int getBitsetLength(int sampleCount) {
+    return (sampleCount + 63) >>> 6;
+  }
+
+  @Nullable
+  private static int[] readIntArray(ByteBuffer buffer, int length) {
+    if (length < 0 || buffer.remaining() < (long) length * 4) {
+      return null;
+    }
+    int[] values = new int[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = buffer.getInt();
+    }
+    return values;
+  }
+
+  @Nullable
+  private static long[] readLongArray(ByteBuffer buffer, int length) {
+    if (buffer.remaining() < (long) length * 8) {
+      return null;
+    }
+    long[] values = new long[length];
+    for (int i = 0; i < length; i++) {
+      values[i] = buffer.getLong();
+    }
+    return values;
+  }
+
+  private static void writeIntArray(ByteBuffer buffer, int[] values) {
+    for (int value : values) {
+      buffer.putInt(value);
+    }
+  }
+
+  /** Returns whether no bits are set for samples at or after {@code sampleCount}. */
+  private static boolean isValidSynchronizationSampleBitset(long[] bitset, int sampleCount) {
+    int usedBitCount = sampleCount & 63;
+    return usedBitCount == 0 || (bitset[bitset.length - 1] & (-1L << usedBitCount)) == 0;
+  }
+
+  private static boolean areAllEqual(int[] values) {
+    for (int i = 1; i < values.length; i++) {
+      if (values[i] != values[0]) {
+        return false;
       }
     }
-    return C.INDEX_UNSET;
+    return true;
   }
 }
@@ -326,12 +326,33 @@ public final class TsExtractor implements Extractor {
       return RESULT_END_OF_INPUT;
     }
 
+    // Demux all complete packets that are already in the buffer, rather than returning after each
+    // one. We stop early if the tracks end, so that the checks above run before any further packets
+    // are consumed.
+    boolean wereTracksEnded = tracksEnded;
     int endOfPacket = findEndOfFirstTsPacketInBuffer();
-    int limit = tsPacketBuffer.limit();
-    if (endOfPacket > limit) {
-      return RESULT_CONTINUE;
+    while (endOfPacket <= tsPacketBuffer.limit()) {
+      readTsPacket(endOfPacket, inputLength);
+      if (tracksEnded != wereTracksEnded || tsPacketBuffer.bytesLeft() < TS_PACKET_SIZE) {
+        break;
+      }
+      endOfPacket = findEndOfFirstTsPacketInBuffer();
     }
+    return RESULT_CONTINUE;
+  }
+
+  // Internals.
 
+  /**
+   * Reads the TS packet at the current position of the packet buffer, and sets the position to
+   * {@code endOfPacket}.
+   *
+   * @param endOfPacket The position of the end of the packet (exclusive) in the packet buffer.
+   * @param inputLength The length of the input, or {@link C#LENGTH_UNSET} if unknown.
+   * @throws ParserException If an error occurs parsing the packet payload.
+   */
+  private void readTsPacket(int endOfPacket, long inputLength) throws ParserException {
+    int limit = tsPacketBuffer.limit();
     @TsPayloadReader.Flags int packetHeaderFlags = 0;
 
     // Note: See ISO/IEC 13818-1, section 2.4.3.2 for details of the header format.
@@ -339,7 +360,7 @@ public final class TsExtractor implements Extractor {
     if ((tsPacketHeader & 0x800000) != 0) { // transport_error_indicator
       // There are uncorrectable errors in this packet.
       tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
     packetHeaderFlags |= (tsPacketHeader & 0x400000) != 0 ? FLAG_PAYLOAD_UNIT_START_INDICATOR : 0;
     // Ignoring transport_priority (tsPacketHeader & 0x200000)
@@ -351,7 +372,7 @@ public final class TsExtractor implements Extractor {
     TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
     if (payloadReader == null) {
       tsPacketBuffer.setPosition(endOfPacket);
-      return RESULT_CONTINUE;
+      return;
     }
 
     // Discontinuity check.
@@ -362,7 +383,7 @@ public final class TsExtractor implements Extractor {
       if (previousCounter == continuityCounter) {
         // Duplicate packet found.
         tsPacketBuffer.setPosition(endOfPacket);
-        return RESULT_CONTINUE;
+        return;
       } else if (continuityCounter != ((previousCounter + 1) & 0xF)) {
         // Discontinuity found.
         payloadReader.seek();
@@ -396,11 +417,8 @@ public final class TsExtractor implements Extractor {
     }
 
     tsPacketBuffer.setPosition(endOfPacket);
-    return RESULT_CONTINUE;
   }
 
-  // Internals.
-
   private void maybeOutputSeekMap(long inputLength) {
     if (!hasOutputSeekMap) {
       hasOutputSeekMap = true;
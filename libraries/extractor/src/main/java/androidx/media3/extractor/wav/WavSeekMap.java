@@ -16,11 +16,14 @@
 package androidx.media3.extractor.wav;
 
 import androidx.media3.common.C;
+import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.util.Util;
 import androidx.media3.extractor.SeekMap;
 import androidx.media3.extractor.SeekPoint;
 
-/* package */ final class WavSeekMap implements SeekMap {
+/** A {@link SeekMap} for WAV streams, whose seek points are exact block boundaries. */
+@UnstableApi
+public final class WavSeekMap implements SeekMap {
 
   private final WavFormat wavFormat;
   private final int framesPerBlock;
@@ -28,7 +31,7 @@ import androidx.media3.extractor.SeekPoint;
   private final long blockCount;
   private final long durationUs;
 
-  public WavSeekMap(
+  /* package */ WavSeekMap(
       WavFormat wavFormat, int framesPerBlock, long dataStartPosition, long dataEndPosition) {
     this.wavFormat = wavFormat;
     this.framesPerBlock = framesPerBlock;
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ChunkIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class ChunkIndexTest {
+
+  @Test
+  public void toByteArray_fromByteArray_restoresIndex() {
+    ChunkIndex chunkIndex =
+        new ChunkIndex(
+            /* sizes= */ new int[] {100, 200, 300},
+            /* offsets= */ new long[] {1000, 1100, 1300},
+            /* durationsUs= */ new long[] {500_000, 500_000, 250_000},
+            /* timesUs= */ new long[] {0, 500_000, 1_000_000});
+
+    ChunkIndex restoredChunkIndex = ChunkIndex.fromByteArray(chunkIndex.toByteArray());
+
+    assertThat(restoredChunkIndex).isNotNull();
+    assertThat(restoredChunkIndex.length).isEqualTo(3);
+    assertThat(restoredChunkIndex.sizes).isEqualTo(chunkIndex.sizes);
+    assertThat(restoredChunkIndex.offsets).isEqualTo(chunkIndex.offsets);
+    assertThat(restoredChunkIndex.durationsUs).isEqualTo(chunkIndex.durationsUs);
+    assertThat(restoredChunkIndex.timesUs).isEqualTo(chunkIndex.timesUs);
+    assertThat(restoredChunkIndex.getDurationUs()).isEqualTo(1_250_000);
+  }
+
+  @Test
+  public void fromByteArray_withOffset_restoresIndexFromPartOfArray() {
+    byte[] data =
+        new ChunkIndex(
+                /* sizes= */ new int[] {100, 200},
+                /* offsets= */ new long[] {1000, 1100},
+                /* durationsUs= */ new long[] {500_000, 500_000},
+                /* timesUs= */ new long[] {0, 500_000})
+            .toByteArray();
+    byte[] paddedData = new byte[data.length + 5];
+    System.arraycopy(data, 0, paddedData, /* destPos= */ 3, data.length);
+
+    ChunkIndex restoredChunkIndex =
+        ChunkIndex.fromByteArray(paddedData, /* offset= */ 3, /* length= */ data.length);
+
+    assertThat(restoredChunkIndex).isNotNull();
+    assertThat(restoredChunkIndex.sizes).isEqualTo(new int[] {100, 200});
+    assertThat(restoredChunkIndex.timesUs).isEqualTo(new long[] {0, 500_000});
+  }
+
+  @Test
+  public void fromByteArray_withTruncatedData_returnsNull() {
+    byte[] data =
+        new ChunkIndex(
+                /* sizes= */ new int[] {100},
+                /* offsets= */ new long[] {1000},
+                /* durationsUs= */ new long[] {500_000},
+                /* timesUs= */ new long[] {0})
+            .toByteArray();
+
+    assertThat(ChunkIndex.fromByteArray(Arrays.copyOf(data, data.length - 1))).isNull();
+    assertThat(ChunkIndex.fromByteArray(new byte[0])).isNull();
+  }
+
+  @Test
+  public void fromByteArray_withUnknownVersion_returnsNull() {
+    byte[] data =
+        new ChunkIndex(
+                /* sizes= */ new int[0],
+                /* offsets= */ new long[0],
+                /* durationsUs= */ new long[0],
+                /* timesUs= */ new long[0])
+            .toByteArray();
+    data[3]++;
+
+    assertThat(ChunkIndex.fromByteArray(data)).isNull();
+  }
+}
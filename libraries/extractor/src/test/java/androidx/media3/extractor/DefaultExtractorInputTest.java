@@ -17,6 +17,7 @@ package androidx.media3.extractor;
 
 import static androidx.media3.common.C.RESULT_END_OF_INPUT;
 import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
 import static java.util.Arrays.copyOf;
 import static java.util.Arrays.copyOfRange;
 import static org.junit.Assert.fail;
@@ -25,10 +26,12 @@ import android.net.Uri;
 import androidx.media3.common.C;
 import androidx.media3.datasource.DataSpec;
 import androidx.media3.test.utils.FakeDataSource;
+import androidx.media3.test.utils.TestUtil;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import java.io.EOFException;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -605,6 +608,45 @@ public class DefaultExtractorInputTest {
     }
   }
 
+  @Test
+  public void interleavedPeeksReadsAndSkips_returnExpectedData() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1024 * 1024);
+    FakeDataSource testDataSource = new FakeDataSource();
+    testDataSource.getDataSet().newDefaultData().appendReadData(data);
+    testDataSource.open(new DataSpec(Uri.parse(TEST_URI)));
+    DefaultExtractorInput input = new DefaultExtractorInput(testDataSource, 0, C.LENGTH_UNSET);
+    Random random = new Random(/* seed= */ 0);
+
+    while (input.getPosition() < data.length) {
+      int position = (int) input.getPosition();
+      int peekPosition = (int) input.getPeekPosition();
+      int maxLength = random.nextBoolean() ? 100 : 200 * 1024;
+      switch (random.nextInt(4)) {
+        case 0:
+          int peekLength = random.nextInt(min(maxLength, data.length - peekPosition) + 1);
+          byte[] peeked = new byte[peekLength];
+          input.peekFully(peeked, 0, peekLength);
+          assertThat(peeked).isEqualTo(copyOfRange(data, peekPosition, peekPosition + peekLength));
+          break;
+        case 1:
+          int readLength = random.nextInt(min(maxLength, data.length - position)) + 1;
+          byte[] read = new byte[readLength];
+          input.readFully(read, 0, readLength);
+          assertThat(read).isEqualTo(copyOfRange(data, position, position + readLength));
+          break;
+        case 2:
+          input.skipFully(random.nextInt(min(maxLength, data.length - position)) + 1);
+          break;
+        default:
+          input.resetPeekPosition();
+          break;
+      }
+    }
+
+    assertThat(input.getPosition()).isEqualTo(data.length);
+    assertThat(input.read(new byte[1], 0, 1)).isEqualTo(RESULT_END_OF_INPUT);
+  }
+
   private static FakeDataSource buildDataSource() throws Exception {
     FakeDataSource testDataSource = new FakeDataSource();
     testDataSource
@@ -152,6 +152,43 @@ public final class NalUnitUtilTest {
     assertUnescapeMatchesExpected("0000030200000300", "000002000000");
   }
 
+  @Test
+  public void unescapeModifiesBuffersWithAdjacentAndTrailingStartCodes() {
+    assertUnescapeMatchesExpected("000003", "0000");
+    assertUnescapeMatchesExpected("00000003", "000000");
+    assertUnescapeMatchesExpected("000003000003", "00000000");
+    assertUnescapeMatchesExpected("FF000003FFFF00000300000301", "FF0000FFFF0000000001");
+  }
+
+  @Test
+  public void unescapeLongBuffer_matchesByteByByteUnescape() {
+    byte[] data = new byte[10_000];
+    for (int i = 0; i < data.length; i++) {
+      // Produce a mix of zero runs, emulation prevention bytes and other values.
+      data[i] = (byte) (i % 7 == 2 ? 3 : (i % 5 < 3 ? 0 : i));
+    }
+    byte[] expected = new byte[data.length];
+    int expectedLength = 0;
+    int position = 0;
+    while (position < data.length) {
+      if (position + 2 < data.length
+          && data[position] == 0
+          && data[position + 1] == 0
+          && data[position + 2] == 3) {
+        expected[expectedLength++] = 0;
+        expected[expectedLength++] = 0;
+        position += 3;
+      } else {
+        expected[expectedLength++] = data[position++];
+      }
+    }
+
+    int length = NalUnitUtil.unescapeStream(data, data.length);
+
+    assertThat(length).isEqualTo(expectedLength);
+    assertThat(Arrays.copyOf(data, length)).isEqualTo(Arrays.copyOf(expected, expectedLength));
+  }
+
   @Test
   public void discardToSps() {
     assertDiscardToSpsMatchesExpected("", "");
@@ -131,6 +131,41 @@ public class DefaultEbmlReaderTest {
     assertEvents(input, expected.events);
   }
 
+  @Test
+  public void elementsWithPartialReadsAndIoErrors_outputsSameEvents() throws IOException {
+    byte[] data =
+        TestUtil.createByteArray(
+            0x1A, 0x45, 0xDF, 0xA3, 0x8B, 0x42, 0x85, 0x81, 0x01, 0x42, 0x82, 0x83, 0x41, 0x62,
+            0x63, 0xA3, 0x82, 0x01, 0x02);
+    TestProcessor expected = new TestProcessor();
+    expected.startMasterElement(TestProcessor.ID_EBML, 5, 11);
+    expected.integerElement(TestProcessor.ID_DOC_TYPE_READ_VERSION, 1);
+    expected.stringElement(TestProcessor.ID_DOC_TYPE, "Abc");
+    expected.endMasterElement(TestProcessor.ID_EBML);
+    expected.binaryElement(
+        TestProcessor.ID_SIMPLE_BLOCK, 2, createTestInput(/* data...= */ 0x01, 0x02));
+    ExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(data)
+            .setSimulatePartialReads(true)
+            .setSimulateIOErrors(true)
+            .build();
+    DefaultEbmlReader reader = new DefaultEbmlReader();
+    TestProcessor output = new TestProcessor();
+    reader.init(output);
+
+    boolean readElement = true;
+    while (readElement) {
+      try {
+        readElement = reader.read(input);
+      } catch (FakeExtractorInput.SimulatedIOException e) {
+        // Ignore and retry.
+      }
+    }
+
+    assertThat(output.events).containsExactlyElementsIn(expected.events).inOrder();
+  }
+
   private static void assertEvents(ExtractorInput input, List<String> expectedEvents)
       throws IOException {
     DefaultEbmlReader reader = new DefaultEbmlReader();
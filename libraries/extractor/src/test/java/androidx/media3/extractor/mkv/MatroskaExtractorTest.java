@@ -15,7 +15,16 @@
  */
 package androidx.media3.extractor.mkv;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.extractor.ChunkIndex;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.PositionHolder;
 import androidx.media3.test.utils.ExtractorAsserts;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
 import com.google.common.collect.ImmutableList;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -118,4 +127,107 @@ public final class MatroskaExtractorTest {
     ExtractorAsserts.assertBehavior(
         MatroskaExtractor::new, "media/mkv/subsample_encrypted_altref.webm", simulationConfig);
   }
+
+  @Test
+  public void mkvSample_withPersistedSeekIndex_doesNotSeekForCues() throws Exception {
+    byte[] data =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/mkv/sample.mkv");
+    MatroskaExtractor extractor = new MatroskaExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    assertThat(extractAll(extractor, output, data)).isTrue();
+    MatroskaSeekIndex seekIndex = extractor.getSeekIndex();
+    assertThat(seekIndex).isNotNull();
+
+    MatroskaSeekIndex persistedSeekIndex = MatroskaSeekIndex.fromByteArray(seekIndex.toByteArray());
+    MatroskaExtractor extractorWithSeekIndex =
+        new MatroskaExtractor(/* flags= */ 0, persistedSeekIndex);
+    FakeExtractorOutput outputWithSeekIndex = new FakeExtractorOutput();
+    boolean sawSeek = extractAll(extractorWithSeekIndex, outputWithSeekIndex, data);
+
+    assertThat(sawSeek).isFalse();
+    assertThat(extractorWithSeekIndex.getSeekIndex()).isSameInstanceAs(persistedSeekIndex);
+    assertThat(outputWithSeekIndex.seekMap).isSameInstanceAs(persistedSeekIndex.chunkIndex);
+    assertThat(outputWithSeekIndex.seekMap.getSeekPoints(/* timeUs= */ 500_000))
+        .isEqualTo(output.seekMap.getSeekPoints(/* timeUs= */ 500_000));
+    assertThat(outputWithSeekIndex.trackOutputs.get(1).getSampleCount())
+        .isEqualTo(output.trackOutputs.get(1).getSampleCount());
+  }
+
+  @Test
+  public void mkvSample_withPersistedSeekIndexForOtherSegment_ignoresIndex() throws Exception {
+    byte[] data =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/mkv/sample.mkv");
+    MatroskaExtractor extractor = new MatroskaExtractor();
+    extractAll(extractor, new FakeExtractorOutput(), data);
+    MatroskaSeekIndex seekIndex = extractor.getSeekIndex();
+    MatroskaSeekIndex seekIndexWithOtherDuration =
+        new MatroskaSeekIndex(
+            seekIndex.segmentContentPosition,
+            seekIndex.segmentContentSize,
+            seekIndex.durationUs + 1,
+            seekIndex.chunkIndex);
+    MatroskaSeekIndex seekIndexWithOtherSize =
+        new MatroskaSeekIndex(
+            seekIndex.segmentContentPosition,
+            seekIndex.segmentContentSize + 1,
+            seekIndex.durationUs,
+            seekIndex.chunkIndex);
+
+    for (MatroskaSeekIndex persistedSeekIndex :
+        ImmutableList.of(seekIndexWithOtherDuration, seekIndexWithOtherSize)) {
+      MatroskaExtractor extractorWithSeekIndex =
+          new MatroskaExtractor(/* flags= */ 0, persistedSeekIndex);
+      FakeExtractorOutput outputWithSeekIndex = new FakeExtractorOutput();
+      boolean sawSeek = extractAll(extractorWithSeekIndex, outputWithSeekIndex, data);
+
+      assertThat(sawSeek).isTrue();
+      assertThat(extractorWithSeekIndex.getSeekIndex()).isNotSameInstanceAs(persistedSeekIndex);
+      assertThat(outputWithSeekIndex.seekMap).isNotSameInstanceAs(persistedSeekIndex.chunkIndex);
+    }
+  }
+
+  @Test
+  public void seekIndex_serializeAndDeserialize_preservesSegment() {
+    MatroskaSeekIndex seekIndex =
+        new MatroskaSeekIndex(
+            /* segmentContentPosition= */ 48,
+            /* segmentContentSize= */ 10_000,
+            /* durationUs= */ 2_000_000,
+            new ChunkIndex(
+                /* sizes= */ new int[] {4_000, 5_952},
+                /* offsets= */ new long[] {48, 4_048},
+                /* durationsUs= */ new long[] {1_000_000, 1_000_000},
+                /* timesUs= */ new long[] {0, 1_000_000}));
+
+    MatroskaSeekIndex restoredSeekIndex = MatroskaSeekIndex.fromByteArray(seekIndex.toByteArray());
+
+    assertThat(restoredSeekIndex.segmentContentPosition).isEqualTo(48);
+    assertThat(restoredSeekIndex.segmentContentSize).isEqualTo(10_000);
+    assertThat(restoredSeekIndex.durationUs).isEqualTo(2_000_000);
+    assertThat(restoredSeekIndex.chunkIndex.offsets).isEqualTo(seekIndex.chunkIndex.offsets);
+    assertThat(restoredSeekIndex.chunkIndex.timesUs).isEqualTo(seekIndex.chunkIndex.timesUs);
+  }
+
+  @Test
+  public void seekIndex_deserializeTruncatedData_returnsNull() {
+    assertThat(MatroskaSeekIndex.fromByteArray(new byte[] {0, 0, 0, 1})).isNull();
+  }
+
+  /** Extracts all samples from {@code data} and returns whether the extractor requested a seek. */
+  private static boolean extractAll(Extractor extractor, FakeExtractorOutput output, byte[] data)
+      throws Exception {
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    boolean sawSeek = false;
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        sawSeek = true;
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+    return sawSeek;
+  }
 }
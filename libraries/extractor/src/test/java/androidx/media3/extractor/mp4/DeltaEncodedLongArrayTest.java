@@ -0,0 +1,81 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.util.Util;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link DeltaEncodedLongArray}. */
+@RunWith(AndroidJUnit4.class)
+public final class DeltaEncodedLongArrayTest {
+
+  @Test
+  public void get_returnsValues() {
+    long[] values = new long[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = 5_000_000_000L + i * 33_333L - (i % 3) * 66_666L;
+    }
+
+    DeltaEncodedLongArray array = new DeltaEncodedLongArray(values.clone());
+
+    assertThat(array.length).isEqualTo(values.length);
+    for (int i = 0; i < values.length; i++) {
+      assertThat(array.get(i)).isEqualTo(values[i]);
+    }
+  }
+
+  @Test
+  public void get_withValuesTooFarApartToDeltaEncode_returnsValues() {
+    long[] values = new long[] {0, Long.MAX_VALUE, Long.MIN_VALUE, 1};
+
+    DeltaEncodedLongArray array = new DeltaEncodedLongArray(values.clone());
+
+    for (int i = 0; i < values.length; i++) {
+      assertThat(array.get(i)).isEqualTo(values[i]);
+    }
+  }
+
+  @Test
+  public void binarySearch_matchesUtilBinarySearch() {
+    // Includes duplicates and out of order values, as found in sample timestamps with ctts offsets.
+    long[] values = new long[] {0, 0, 10, 30, 20, 20, 40, 50, 50, 50, 45, 60};
+    DeltaEncodedLongArray array = new DeltaEncodedLongArray(values.clone());
+
+    for (long value = -5; value <= 65; value += 5) {
+      for (int flags = 0; flags < 4; flags++) {
+        boolean inclusive = (flags & 1) != 0;
+        boolean stayInBounds = (flags & 2) != 0;
+        assertThat(array.binarySearchFloor(value, inclusive, stayInBounds))
+            .isEqualTo(Util.binarySearchFloor(values, value, inclusive, stayInBounds));
+        assertThat(array.binarySearchCeil(value, inclusive, stayInBounds))
+            .isEqualTo(Util.binarySearchCeil(values, value, inclusive, stayInBounds));
+      }
+    }
+  }
+
+  @Test
+  public void emptyArray() {
+    DeltaEncodedLongArray array = new DeltaEncodedLongArray(new long[0]);
+
+    assertThat(array.length).isEqualTo(0);
+    assertThat(array.binarySearchFloor(0, true, false)).isEqualTo(-1);
+    assertThat(array.binarySearchCeil(0, true, false)).isEqualTo(0);
+  }
+}
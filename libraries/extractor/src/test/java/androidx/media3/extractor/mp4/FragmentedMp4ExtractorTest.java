@@ -15,10 +15,17 @@
  */
 package androidx.media3.extractor.mp4;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import androidx.media3.common.Format;
 import androidx.media3.common.MimeTypes;
+import androidx.media3.extractor.NalUnitUtil;
 import androidx.media3.test.utils.ExtractorAsserts;
 import androidx.media3.test.utils.ExtractorAsserts.ExtractorFactory;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.FakeTrackOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
 import com.google.common.collect.ImmutableList;
 import java.util.Collections;
 import java.util.List;
@@ -122,6 +129,24 @@ public final class FragmentedMp4ExtractorTest {
         simulationConfig);
   }
 
+  @Test
+  public void sample_readsSampleDataDirectlyFromInput() throws Exception {
+    FakeExtractorOutput output =
+        TestUtil.extractAllSamplesFromFile(
+            new FragmentedMp4Extractor(),
+            ApplicationProvider.getApplicationContext(),
+            "media/mp4/sample_fragmented.mp4");
+
+    // The 31 NAL units of the video track have 4 byte length fields, which are replaced by start
+    // codes. The extractor also reads the NAL unit type byte, and outputs it from the same
+    // intermediate buffer. All other sample data is read from the input.
+    FakeTrackOutput videoTrackOutput = output.trackOutputs.get(0);
+    FakeTrackOutput audioTrackOutput = output.trackOutputs.get(1);
+    assertThat(videoTrackOutput.getBufferedSampleDataLength())
+        .isEqualTo(31 * (NalUnitUtil.NAL_START_CODE.length + 1));
+    assertThat(audioTrackOutput.getBufferedSampleDataLength()).isEqualTo(0);
+  }
+
   private static ExtractorFactory getExtractorFactory(final List<Format> closedCaptionFormats) {
     return () ->
         new FragmentedMp4Extractor(
@@ -15,8 +15,33 @@
  */
 package androidx.media3.extractor.mp4;
 
+import static androidx.media3.common.util.Assertions.checkNotNull;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.Format;
+import androidx.media3.common.util.ParsableByteArray;
+import androidx.media3.common.util.Util;
+import androidx.media3.extractor.Extractor;
+import androidx.media3.extractor.NalUnitUtil;
+import androidx.media3.extractor.PositionHolder;
+import androidx.media3.extractor.metadata.id3.InternalFrame;
+import androidx.media3.test.utils.Dumper;
 import androidx.media3.test.utils.ExtractorAsserts;
+import androidx.media3.test.utils.FakeExtractorInput;
+import androidx.media3.test.utils.FakeExtractorOutput;
+import androidx.media3.test.utils.FakeTrackOutput;
+import androidx.media3.test.utils.TestUtil;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
@@ -125,4 +150,302 @@ public final class Mp4ExtractorTest {
     ExtractorAsserts.assertBehavior(
         Mp4Extractor::new, "media/mp4/sample_with_colr_mdcv_and_clli.mp4", simulationConfig);
   }
+
+  @Test
+  public void mp4Sample_readsSampleDataDirectlyFromInput() throws Exception {
+    FakeExtractorOutput output =
+        TestUtil.extractAllSamplesFromFile(
+            new Mp4Extractor(),
+            ApplicationProvider.getApplicationContext(),
+            "media/mp4/sample.mp4");
+
+    // The 31 NAL units of the video track have 4 byte length fields, which are replaced by start
+    // codes output from an intermediate buffer. All other sample data is read from the input.
+    FakeTrackOutput videoTrackOutput = output.trackOutputs.get(0);
+    FakeTrackOutput audioTrackOutput = output.trackOutputs.get(1);
+    assertThat(videoTrackOutput.getBufferedSampleDataLength())
+        .isEqualTo(31 * NalUnitUtil.NAL_START_CODE.length);
+    assertThat(audioTrackOutput.getBufferedSampleDataLength()).isEqualTo(0);
+  }
+
+  @Test
+  public void mp4Sample_withMvhdAfterTraks_outputsSameTracks() throws Exception {
+    byte[] data = getByteArray("media/mp4/sample.mp4");
+
+    FakeExtractorOutput output = extractAllSamples(rewriteMoov(data, moovChildren -> moovChildren));
+    FakeExtractorOutput outputWithMvhdAfterTraks =
+        extractAllSamples(
+            rewriteMoov(data, moovChildren -> moveAtom(moovChildren, "mvhd", /* index= */ 4)));
+
+    // The trak atoms are parsed when the moov atom ends, rather than as soon as each one ends.
+    assertThat(output.numberOfTracks).isEqualTo(2);
+    assertThat(dump(outputWithMvhdAfterTraks)).isEqualTo(dump(output));
+  }
+
+  @Test
+  public void mp4Sample_withMvhdBetweenTraks_keepsTrackOrder() throws Exception {
+    byte[] data = getByteArray("media/mp4/sample.mp4");
+
+    FakeExtractorOutput output = extractAllSamples(rewriteMoov(data, moovChildren -> moovChildren));
+    FakeExtractorOutput outputWithMvhdBetweenTraks =
+        extractAllSamples(
+            rewriteMoov(data, moovChildren -> moveAtom(moovChildren, "mvhd", /* index= */ 2)));
+
+    // The second trak atom is deferred along with the first one, so the track order is unchanged.
+    assertThat(dump(outputWithMvhdBetweenTraks)).isEqualTo(dump(output));
+  }
+
+  @Test
+  public void mp4Sample_withEditListAndUdtaGaplessInfo_usesEditListGaplessInfo() throws Exception {
+    byte[] data = getByteArray("media/mp4/sample_mpegh_mha1.mp4");
+    // The edit list of the audio track implies an encoder delay of 3072 and a padding of 255.
+    byte[] udta = buildUdtaWithGaplessInfo(/* encoderDelay= */ 512, /* encoderPadding= */ 256);
+
+    FakeExtractorOutput output =
+        extractAllSamples(rewriteMoov(data, moovChildren -> append(moovChildren, udta)));
+    FakeExtractorOutput outputWithMvhdAfterTrak =
+        extractAllSamples(
+            rewriteMoov(
+                data,
+                moovChildren -> append(moveAtom(moovChildren, "mvhd", /* index= */ 2), udta)));
+
+    for (FakeExtractorOutput extractorOutput : ImmutableList.of(output, outputWithMvhdAfterTrak)) {
+      Format format = checkNotNull(extractorOutput.trackOutputs.get(0).lastFormat);
+      assertThat(format.encoderDelay).isEqualTo(3072);
+      assertThat(format.encoderPadding).isEqualTo(255);
+      assertThat(checkNotNull(format.metadata).get(0))
+          .isEqualTo(
+              new InternalFrame(
+                  "com.apple.iTunes", "iTunSMPB", " 00000000 00000200 00000100 0000000000000000"));
+    }
+  }
+
+  @Test
+  public void mp4Sample_withUdtaGaplessInfo_usesUdtaGaplessInfo() throws Exception {
+    byte[] data = getByteArray("media/mp4/sample.mp4");
+    // The audio track of this file has no edit list gapless information.
+    byte[] udta = buildUdtaWithGaplessInfo(/* encoderDelay= */ 512, /* encoderPadding= */ 256);
+
+    FakeExtractorOutput output =
+        extractAllSamples(
+            rewriteMoov(data, moovChildren -> append(removeAtom(moovChildren, "udta"), udta)));
+
+    Format audioFormat = checkNotNull(output.trackOutputs.get(1).lastFormat);
+    assertThat(audioFormat.encoderDelay).isEqualTo(512);
+    assertThat(audioFormat.encoderPadding).isEqualTo(256);
+  }
+
+  @Test
+  public void mp4Sample_withPersistedSampleIndex_usesSampleTablesFromIndex() throws Exception {
+    byte[] data = getByteArray("media/mp4/sample.mp4");
+    Mp4Extractor extractor = new Mp4Extractor();
+    FakeExtractorOutput output = extractAllSamples(extractor, data);
+    Mp4SampleIndex sampleIndex = checkNotNull(extractor.getSampleIndex());
+    // Sample sizes that differ from the actual ones, so that parsing the stsz atoms changes the
+    // output.
+    byte[] dataWithWrongSampleSizes = overwriteStszEntries(data, /* sampleSize= */ 1);
+
+    Mp4SampleIndex persistedSampleIndex =
+        checkNotNull(Mp4SampleIndex.fromByteArray(sampleIndex.toByteArray()));
+    FakeExtractorOutput outputWithSampleIndex =
+        extractAllSamples(
+            new Mp4Extractor(/* flags= */ 0, persistedSampleIndex), dataWithWrongSampleSizes);
+
+    assertThat(persistedSampleIndex.moovPosition).isEqualTo(sampleIndex.moovPosition);
+    assertThat(persistedSampleIndex.moovSize).isEqualTo(sampleIndex.moovSize);
+    assertThat(dump(outputWithSampleIndex)).isEqualTo(dump(output));
+    assertThat(dump(extractAllSamples(dataWithWrongSampleSizes))).isNotEqualTo(dump(output));
+  }
+
+  @Test
+  public void mp4Sample_withPersistedSampleIndexForOtherMoov_ignoresIndex() throws Exception {
+    byte[] data = getByteArray("media/mp4/sample.mp4");
+    Mp4Extractor extractor = new Mp4Extractor();
+    extractAllSamples(extractor, data);
+    Mp4SampleIndex sampleIndex = checkNotNull(extractor.getSampleIndex());
+    // Moving the moov atom to the end of the file changes its position.
+    byte[] dataWithMovedMoov =
+        rewriteMoov(overwriteStszEntries(data, /* sampleSize= */ 1), moovChildren -> moovChildren);
+
+    FakeExtractorOutput outputWithSampleIndex =
+        extractAllSamples(new Mp4Extractor(/* flags= */ 0, sampleIndex), dataWithMovedMoov);
+
+    assertThat(dump(outputWithSampleIndex)).isEqualTo(dump(extractAllSamples(dataWithMovedMoov)));
+  }
+
+  @Test
+  public void mp4SampleWithEditList_withPersistedSampleIndex_keepsEditListGaplessInfo()
+      throws Exception {
+    byte[] data = getByteArray("media/mp4/sample_mpegh_mha1.mp4");
+    Mp4Extractor extractor = new Mp4Extractor();
+    extractAllSamples(extractor, data);
+
+    FakeExtractorOutput outputWithSampleIndex =
+        extractAllSamples(
+            new Mp4Extractor(/* flags= */ 0, checkNotNull(extractor.getSampleIndex())), data);
+
+    // The edit list of the audio track implies an encoder delay of 3072 and a padding of 255.
+    Format format = checkNotNull(outputWithSampleIndex.trackOutputs.get(0).lastFormat);
+    assertThat(format.encoderDelay).isEqualTo(3072);
+    assertThat(format.encoderPadding).isEqualTo(255);
+  }
+
+  @Test
+  public void sampleIndex_deserializeTruncatedData_returnsNull() throws Exception {
+    Mp4Extractor extractor = new Mp4Extractor();
+    extractAllSamples(extractor, getByteArray("media/mp4/sample.mp4"));
+    byte[] data = checkNotNull(extractor.getSampleIndex()).toByteArray();
+
+    assertThat(Mp4SampleIndex.fromByteArray(Arrays.copyOf(data, data.length - 1))).isNull();
+    assertThat(Mp4SampleIndex.fromByteArray(new byte[] {0, 0, 0, 1})).isNull();
+  }
+
+  private static byte[] getByteArray(String fileName) throws IOException {
+    return TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), fileName);
+  }
+
+  private static FakeExtractorOutput extractAllSamples(byte[] data) throws IOException {
+    return extractAllSamples(new Mp4Extractor(), data);
+  }
+
+  private static FakeExtractorOutput extractAllSamples(Mp4Extractor extractor, byte[] data)
+      throws IOException {
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult != Extractor.RESULT_END_OF_INPUT) {
+      readResult = extractor.read(input, positionHolder);
+      if (readResult == Extractor.RESULT_SEEK) {
+        input.setPosition((int) positionHolder.position);
+      }
+    }
+    return output;
+  }
+
+  private static String dump(FakeExtractorOutput output) {
+    return new Dumper().add(output).toString();
+  }
+
+  /**
+   * Returns a copy of {@code data} whose moov atom has the child atoms returned by {@code
+   * moovChildrenFunction}. The moov atom is moved to the end of the file and replaced by a free
+   * atom of the same size, so that the positions of the samples don't change.
+   */
+  private static byte[] rewriteMoov(
+      byte[] data, Function<List<byte[]>, List<byte[]>> moovChildrenFunction) {
+    List<byte[]> atoms = splitIntoAtoms(data, /* position= */ 0, data.length);
+    List<byte[]> rewrittenAtoms = new ArrayList<>();
+    @Nullable byte[] moov = null;
+    for (byte[] atom : atoms) {
+      if (getAtomType(atom).equals("moov")) {
+        List<byte[]> moovChildren =
+            moovChildrenFunction.apply(
+                splitIntoAtoms(atom, /* position= */ Atom.HEADER_SIZE, atom.length));
+        moov = buildAtom("moov", Bytes.concat(moovChildren.toArray(new byte[0][])));
+        rewrittenAtoms.add(buildAtom("free", new byte[atom.length - Atom.HEADER_SIZE]));
+      } else {
+        rewrittenAtoms.add(atom);
+      }
+    }
+    rewrittenAtoms.add(checkNotNull(moov));
+    return Bytes.concat(rewrittenAtoms.toArray(new byte[0][]));
+  }
+
+  /**
+   * Returns a copy of {@code data} with all entries of its stsz atoms set to {@code sampleSize}.
+   */
+  private static byte[] overwriteStszEntries(byte[] data, int sampleSize) {
+    byte[] overwrittenData = Arrays.copyOf(data, data.length);
+    byte[] stsz = "stsz".getBytes(Charsets.ISO_8859_1);
+    ParsableByteArray atom = new ParsableByteArray(overwrittenData);
+    for (int typePosition = Bytes.indexOf(data, stsz);
+        typePosition != -1;
+        typePosition = indexOf(data, stsz, typePosition + 1)) {
+      atom.setPosition(typePosition - 4);
+      int atomEndPosition = typePosition - 4 + atom.readInt();
+      // Skip the type, version, flags, fixed sample size and sample count.
+      for (int position = typePosition + 16; position < atomEndPosition; position += 4) {
+        System.arraycopy(Ints.toByteArray(sampleSize), 0, overwrittenData, position, 4);
+      }
+    }
+    return overwrittenData;
+  }
+
+  private static int indexOf(byte[] data, byte[] target, int fromIndex) {
+    int index = Bytes.indexOf(Arrays.copyOfRange(data, fromIndex, data.length), target);
+    return index == -1 ? -1 : fromIndex + index;
+  }
+
+  private static List<byte[]> splitIntoAtoms(byte[] data, int position, int limit) {
+    List<byte[]> atoms = new ArrayList<>();
+    while (position < limit) {
+      ParsableByteArray atomHeader = new ParsableByteArray(data, limit);
+      atomHeader.setPosition(position);
+      int size = atomHeader.readInt();
+      atoms.add(Arrays.copyOfRange(data, position, position + size));
+      position += size;
+    }
+    return atoms;
+  }
+
+  private static List<byte[]> moveAtom(List<byte[]> atoms, String type, int index) {
+    List<byte[]> movedAtoms = new ArrayList<>(atoms);
+    byte[] atom = atoms.get(indexOfAtom(atoms, type));
+    movedAtoms.remove(atom);
+    movedAtoms.add(index, atom);
+    return movedAtoms;
+  }
+
+  private static List<byte[]> removeAtom(List<byte[]> atoms, String type) {
+    List<byte[]> remainingAtoms = new ArrayList<>(atoms);
+    remainingAtoms.remove(indexOfAtom(atoms, type));
+    return remainingAtoms;
+  }
+
+  private static List<byte[]> append(List<byte[]> atoms, byte[] atom) {
+    List<byte[]> appendedAtoms = new ArrayList<>(atoms);
+    appendedAtoms.add(atom);
+    return appendedAtoms;
+  }
+
+  private static int indexOfAtom(List<byte[]> atoms, String type) {
+    for (int i = 0; i < atoms.size(); i++) {
+      if (getAtomType(atoms.get(i)).equals(type)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(type);
+  }
+
+  private static String getAtomType(byte[] atom) {
+    return new String(atom, /* offset= */ 4, /* length= */ 4, Charsets.ISO_8859_1);
+  }
+
+  /** Returns a udta atom with iTunes gapless playback information. */
+  private static byte[] buildUdtaWithGaplessInfo(int encoderDelay, int encoderPadding) {
+    String comment =
+        String.format(" 00000000 %08X %08X 0000000000000000", encoderDelay, encoderPadding);
+    byte[] noVersionOrFlags = new byte[4];
+    byte[] internalEntry =
+        buildAtom(
+            "----",
+            buildAtom("mean", noVersionOrFlags, Util.getUtf8Bytes("com.apple.iTunes")),
+            buildAtom("name", noVersionOrFlags, Util.getUtf8Bytes("iTunSMPB")),
+            buildAtom(
+                "data",
+                /* typeIndicator= */ new byte[] {0, 0, 0, 1},
+                /* localeIndicator= */ new byte[4],
+                Util.getUtf8Bytes(comment)));
+    return buildAtom("udta", buildAtom("meta", noVersionOrFlags, buildAtom("ilst", internalEntry)));
+  }
+
+  private static byte[] buildAtom(String type, byte[]... payloads) {
+    byte[] payload = Bytes.concat(payloads);
+    return Bytes.concat(
+        Ints.toByteArray(Atom.HEADER_SIZE + payload.length),
+        type.getBytes(Charsets.ISO_8859_1),
+        payload);
+  }
 }
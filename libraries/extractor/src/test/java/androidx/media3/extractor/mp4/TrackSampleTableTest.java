@@ -0,0 +1,186 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link TrackSampleTable}. */
+@RunWith(AndroidJUnit4.class)
+public final class TrackSampleTableTest {
+
+  private static final Track TRACK =
+      new Track(
+          /* id= */ 1,
+          C.TRACK_TYPE_VIDEO,
+          /* timescale= */ 30,
+          /* movieTimescale= */ 30,
+          /* durationUs= */ C.TIME_UNSET,
+          new Format.Builder().build(),
+          Track.TRANSFORMATION_NONE,
+          /* sampleDescriptionEncryptionBoxes= */ null,
+          /* nalUnitLengthFieldLength= */ 4,
+          /* editListDurations= */ null,
+          /* editListMediaTimes= */ null);
+
+  @Test
+  public void getters_returnSampleValues() {
+    TrackSampleTable sampleTable =
+        new TrackSampleTable(
+            TRACK,
+            /* offsets= */ new long[] {100, 200, 5_000_000_000L, 5_000_000_300L},
+            /* sizes= */ new int[] {100, 300, 300, 50},
+            /* maximumSize= */ 300,
+            /* timestampsUs= */ new long[] {0, 1000, 2000, 3000},
+            /* flags= */ new int[] {C.BUFFER_FLAG_KEY_FRAME, 0, C.BUFFER_FLAG_KEY_FRAME, 0},
+            /* durationUs= */ 4000);
+
+    assertThat(sampleTable.sampleCount).isEqualTo(4);
+    assertThat(sampleTable.getOffset(2)).isEqualTo(5_000_000_000L);
+    assertThat(sampleTable.getSize(3)).isEqualTo(50);
+    assertThat(sampleTable.getTimestampUs(1)).isEqualTo(1000);
+    assertThat(sampleTable.getFlags(0)).isEqualTo(C.BUFFER_FLAG_KEY_FRAME);
+    assertThat(sampleTable.getFlags(1)).isEqualTo(0);
+    assertThat(sampleTable.getFlags(3)).isEqualTo(C.BUFFER_FLAG_LAST_SAMPLE);
+  }
+
+  @Test
+  public void getters_withFixedSizeSyncSamples_returnSampleValues() {
+    TrackSampleTable sampleTable =
+        new TrackSampleTable(
+            TRACK,
+            /* offsets= */ new long[] {0, 10, 20},
+            /* sizes= */ new int[] {10, 10, 10},
+            /* maximumSize= */ 10,
+            /* timestampsUs= */ new long[] {0, 1000, 2000},
+            /* flags= */ new int[] {
+              C.BUFFER_FLAG_KEY_FRAME, C.BUFFER_FLAG_KEY_FRAME, C.BUFFER_FLAG_KEY_FRAME
+            },
+            /* durationUs= */ 3000);
+
+    assertThat(sampleTable.getSize(1)).isEqualTo(10);
+    assertThat(sampleTable.getFlags(1)).isEqualTo(C.BUFFER_FLAG_KEY_FRAME);
+    assertThat(sampleTable.getFlags(2))
+        .isEqualTo(C.BUFFER_FLAG_KEY_FRAME | C.BUFFER_FLAG_LAST_SAMPLE);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(1500)).isEqualTo(1);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(1500)).isEqualTo(2);
+  }
+
+  @Test
+  public void getIndexOfSynchronizationSample_returnsNearestSynchronizationSample() {
+    int sampleCount = 300;
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestampsUs = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      offsets[i] = i * 1000L;
+      sizes[i] = 1000;
+      timestampsUs[i] = i * 33_333L;
+      flags[i] = i % 30 == 10 ? C.BUFFER_FLAG_KEY_FRAME : 0;
+    }
+    TrackSampleTable sampleTable =
+        new TrackSampleTable(
+            TRACK,
+            offsets,
+            sizes,
+            /* maximumSize= */ 1000,
+            timestampsUs,
+            flags,
+            /* durationUs= */ sampleCount * 33_333L);
+
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(0))
+        .isEqualTo(C.INDEX_UNSET);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(40 * 33_333L))
+        .isEqualTo(40);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(69 * 33_333L))
+        .isEqualTo(40);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(41 * 33_333L)).isEqualTo(70);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(281 * 33_333L))
+        .isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void
+      getIndexOfSynchronizationSample_withSparseSynchronizationSamples_skipsSamplesBetween() {
+    int sampleCount = 1000;
+    long[] offsets = new long[sampleCount];
+    int[] sizes = new int[sampleCount];
+    long[] timestampsUs = new long[sampleCount];
+    int[] flags = new int[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      offsets[i] = i * 1000L;
+      sizes[i] = 1000;
+      timestampsUs[i] = i * 1000L;
+    }
+    flags[63] = C.BUFFER_FLAG_KEY_FRAME;
+    flags[64] = C.BUFFER_FLAG_KEY_FRAME;
+    flags[700] = C.BUFFER_FLAG_KEY_FRAME;
+    TrackSampleTable sampleTable =
+        new TrackSampleTable(
+            TRACK,
+            offsets,
+            sizes,
+            /* maximumSize= */ 1000,
+            timestampsUs,
+            flags,
+            /* durationUs= */ sampleCount * 1000L);
+
+    assertThat(sampleTable.getFlags(63)).isEqualTo(C.BUFFER_FLAG_KEY_FRAME);
+    assertThat(sampleTable.getFlags(64)).isEqualTo(C.BUFFER_FLAG_KEY_FRAME);
+    assertThat(sampleTable.getFlags(65)).isEqualTo(0);
+    assertThat(sampleTable.getFlags(999)).isEqualTo(C.BUFFER_FLAG_LAST_SAMPLE);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(62_000))
+        .isEqualTo(C.INDEX_UNSET);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(699_000)).isEqualTo(64);
+    assertThat(sampleTable.getIndexOfEarlierOrEqualSynchronizationSample(999_000)).isEqualTo(700);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(0)).isEqualTo(63);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(65_000)).isEqualTo(700);
+    assertThat(sampleTable.getIndexOfLaterOrEqualSynchronizationSample(701_000))
+        .isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void readFrom_withSynchronizationSampleBitset_restoresFlags() {
+    TrackSampleTable sampleTable =
+        new TrackSampleTable(
+            TRACK,
+            /* offsets= */ new long[] {0, 10, 20},
+            /* sizes= */ new int[] {10, 10, 10},
+            /* maximumSize= */ 10,
+            /* timestampsUs= */ new long[] {0, 1000, 2000},
+            /* flags= */ new int[] {0, C.BUFFER_FLAG_KEY_FRAME, 0},
+            /* durationUs= */ 3000);
+    ByteBuffer buffer = ByteBuffer.allocate(sampleTable.getSerializedSize());
+    sampleTable.writeTo(buffer);
+    buffer.flip();
+
+    TrackSampleTable restoredSampleTable = TrackSampleTable.readFrom(buffer, TRACK);
+
+    assertThat(buffer.hasRemaining()).isFalse();
+    assertThat(restoredSampleTable.getFlags(0)).isEqualTo(0);
+    assertThat(restoredSampleTable.getFlags(1)).isEqualTo(C.BUFFER_FLAG_KEY_FRAME);
+    assertThat(restoredSampleTable.getFlags(2)).isEqualTo(C.BUFFER_FLAG_LAST_SAMPLE);
+    assertThat(restoredSampleTable.getIndexOfEarlierOrEqualSynchronizationSample(2000))
+        .isEqualTo(1);
+  }
+}
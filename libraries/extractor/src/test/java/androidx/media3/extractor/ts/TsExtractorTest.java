@@ -210,6 +210,32 @@ public final class TsExtractorTest {
     assertThat(factory.sdtReader.consumedSdts).isEqualTo(2);
   }
 
+  @Test
+  public void read_demuxesMultiplePacketsPerCall() throws Exception {
+    byte[] fileData =
+        TestUtil.getByteArray(
+            ApplicationProvider.getApplicationContext(), "media/ts/sample_h262_mpeg_audio.ts");
+    TsExtractor tsExtractor =
+        new TsExtractor(
+            TsExtractor.MODE_HLS, new TimestampAdjuster(0), new DefaultTsPayloadReaderFactory());
+    FakeExtractorInput input =
+        new FakeExtractorInput.Builder()
+            .setData(fileData)
+            .setSimulateIOErrors(false)
+            .setSimulateUnknownLength(false)
+            .setSimulatePartialReads(false)
+            .build();
+    tsExtractor.init(new FakeExtractorOutput());
+    PositionHolder seekPositionHolder = new PositionHolder();
+    int readCount = 0;
+    while (tsExtractor.read(input, seekPositionHolder) != Extractor.RESULT_END_OF_INPUT) {
+      readCount++;
+    }
+
+    int packetCount = fileData.length / TsExtractor.TS_PACKET_SIZE;
+    assertThat(readCount).isLessThan(packetCount / 10);
+  }
+
   private static final class CustomTsPayloadReaderFactory implements TsPayloadReader.Factory {
 
     private final boolean provideSdtReader;
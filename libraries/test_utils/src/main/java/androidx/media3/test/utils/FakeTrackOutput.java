@@ -52,6 +52,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
   private final ArrayList<Dumpable> dumpables;
 
   private byte[] sampleData;
+  private int bufferedSampleDataLength;
   private int formatCount;
   private boolean receivedSampleInFormat;
 
@@ -70,10 +71,25 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     sampleInfos.clear();
     dumpables.clear();
     sampleData = Util.EMPTY_BYTE_ARRAY;
+    bufferedSampleDataLength = 0;
     formatCount = 0;
     receivedSampleInFormat = true;
   }
 
+  /**
+   * Returns the number of bytes of sample data that were output from a {@link ParsableByteArray},
+   * rather than read directly from the {@link DataReader} passed to the extractor. Each of these
+   * bytes was copied into an intermediate buffer by the extractor before being output.
+   */
+  public int getBufferedSampleDataLength() {
+    return bufferedSampleDataLength;
+  }
+
+  /** Returns the total number of bytes of sample data that have been output. */
+  public int getSampleDataLength() {
+    return sampleData.length;
+  }
+
   @Override
   public void format(Format format) {
     if (!deduplicateConsecutiveFormats) {
@@ -115,6 +131,7 @@ public final class FakeTrackOutput implements TrackOutput, Dumper.Dumpable {
     byte[] newData = new byte[length];
     data.readBytes(newData, 0, length);
     sampleData = Bytes.concat(sampleData, newData);
+    bufferedSampleDataLength += length;
   }
 
   @Override
@@ -33,6 +33,7 @@ import androidx.media3.exoplayer.Renderer;
 import androidx.media3.exoplayer.SeekParameters;
 import androidx.media3.exoplayer.analytics.AnalyticsCollector;
 import androidx.media3.exoplayer.analytics.AnalyticsListener;
+import androidx.media3.exoplayer.analytics.PlayerId;
 import androidx.media3.exoplayer.source.MediaSource;
 import androidx.media3.exoplayer.source.ShuffleOrder;
 import androidx.media3.exoplayer.trackselection.TrackSelector;
@@ -81,6 +82,11 @@ public class StubExoPlayer extends StubPlayer implements ExoPlayer {
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public PlayerId getPlayerId() {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public void addAudioOffloadListener(AudioOffloadListener listener) {
     throw new UnsupportedOperationException();
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.media3.test.utils;
+
+import static androidx.media3.common.util.Assertions.checkArgument;
+import static androidx.media3.common.util.Assertions.checkStateNotNull;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.media3.common.C;
+import androidx.media3.common.Format;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.TrackGroup;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.datasource.DataSource;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.exoplayer.source.MediaSource.MediaPeriodId;
+import androidx.media3.exoplayer.source.chunk.MediaChunk;
+import androidx.media3.exoplayer.source.chunk.MediaChunkIterator;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import androidx.media3.exoplayer.upstream.DefaultBandwidthMeter;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simulates the adaptive loading of a {@link FakeAdaptiveDataSet} over a network whose throughput
+ * follows a trace, to compare the quality of experience provided by {@link ExoTrackSelection}
+ * implementations.
+ *
+ * <p>Chunks are loaded one after another, as by {@link FakeChunkSource}, and playback starts once
+ * the first chunk has been loaded. Loading pauses while the buffer is full. The time taken by each
+ * load is derived from the trace, and loads are reported to a {@link DefaultBandwidthMeter} whose
+ * clock follows the simulated time.
+ */
+@UnstableApi
+public final class TrackSelectionSimulator {
+
+  /** The quality of experience metrics of a simulation. */
+  public static final class Result {
+
+    /** The {@link Format} selected for each chunk, in playback order. */
+    public final ImmutableList<Format> selectedFormats;
+    /** The average bitrate of the selected formats, weighted by chunk duration. */
+    public final long averageBitrate;
+    /** The number of times the selected format changed between consecutive chunks. */
+    public final int switchCount;
+    /** The time between the start of loading and the start of playback, in microseconds. */
+    public final long startupDelayUs;
+    /** The total time playback was stalled after it started, in microseconds. */
+    public final long rebufferDurationUs;
+
+    private Result(
+        ImmutableList<Format> selectedFormats,
+        long averageBitrate,
+        int switchCount,
+        long startupDelayUs,
+        long rebufferDurationUs) {
+      this.selectedFormats = selectedFormats;
+      this.averageBitrate = averageBitrate;
+      this.switchCount = switchCount;
+      this.startupDelayUs = startupDelayUs;
+      this.rebufferDurationUs = rebufferDurationUs;
+    }
+
+    /**
+     * Returns a linear quality of experience score, as used to evaluate adaptation algorithms.
+     *
+     * <p>The score is the sum of the bitrates of all chunks in Mbit/s, minus the sum of the
+     * absolute bitrate changes between consecutive chunks in Mbit/s, minus {@code
+     * stallPenaltyPerSecond} for each second of startup delay and rebuffering.
+     *
+     * @param stallPenaltyPerSecond The penalty for each second without playback.
+     * @return The quality of experience score.
+     */
+    public double getLinearQualityOfExperience(double stallPenaltyPerSecond) {
+      double score = 0;
+      for (int i = 0; i < selectedFormats.size(); i++) {
+        score += selectedFormats.get(i).bitrate / 1_000_000d;
+        if (i > 0) {
+          score -=
+              Math.abs(selectedFormats.get(i).bitrate - selectedFormats.get(i - 1).bitrate)
+                  / 1_000_000d;
+        }
+      }
+      return score
+          - stallPenaltyPerSecond * (startupDelayUs + rebufferDurationUs) / C.MICROS_PER_SECOND;
+    }
+  }
+
+  /** The default maximum duration of media that is buffered, in milliseconds. */
+  public static final int DEFAULT_MAX_BUFFER_MS = 50_000;
+  /** The default initial bitrate estimate of the bandwidth meter, in bits per second. */
+  public static final long DEFAULT_INITIAL_BITRATE_ESTIMATE = 1_000_000;
+
+  private final Context context;
+  private final TrackGroup trackGroup;
+  private final FakeAdaptiveDataSet dataSet;
+
+  private long maxBufferUs;
+  private long initialBitrateEstimate;
+
+  /**
+   * Creates a simulator.
+   *
+   * @param context A {@link Context}.
+   * @param trackGroup The {@link TrackGroup} from which tracks are selected.
+   * @param dataSet The {@link FakeAdaptiveDataSet} providing the chunks of each track in {@code
+   *     trackGroup}.
+   */
+  public TrackSelectionSimulator(
+      Context context, TrackGroup trackGroup, FakeAdaptiveDataSet dataSet) {
+    this.context = context;
+    this.trackGroup = trackGroup;
+    this.dataSet = dataSet;
+    maxBufferUs = DEFAULT_MAX_BUFFER_MS * 1000L;
+    initialBitrateEstimate = DEFAULT_INITIAL_BITRATE_ESTIMATE;
+  }
+
+  /**
+   * Sets the maximum duration of media that is buffered. The default is {@link
+   * #DEFAULT_MAX_BUFFER_MS}.
+   *
+   * @param maxBufferMs The maximum duration of media that is buffered, in milliseconds.
+   * @return This simulator, for convenience.
+   */
+  public TrackSelectionSimulator setMaxBufferMs(int maxBufferMs) {
+    this.maxBufferUs = maxBufferMs * 1000L;
+    return this;
+  }
+
+  /**
+   * Sets the initial bitrate estimate of the bandwidth meter. The default is {@link
+   * #DEFAULT_INITIAL_BITRATE_ESTIMATE}.
+   *
+   * @param initialBitrateEstimate The initial bitrate estimate, in bits per second.
+   * @return This simulator, for convenience.
+   */
+  public TrackSelectionSimulator setInitialBitrateEstimate(long initialBitrateEstimate) {
+    this.initialBitrateEstimate = initialBitrateEstimate;
+    return this;
+  }
+
+  /**
+   * Simulates loading and playing all chunks of the data set.
+   *
+   * @param trackSelectionFactory The {@link ExoTrackSelection.Factory} creating the selection to
+   *     simulate. The selection must be adaptive over all tracks of the track group.
+   * @param throughputTrace The network throughput in bits per second, one value for each {@code
+   *     traceIntervalMs}. The trace is repeated if the simulation outlasts it. Must contain at
+   *     least one positive value.
+   * @param traceIntervalMs The duration of each value of the trace, in milliseconds.
+   * @return The {@link Result} of the simulation.
+   */
+  public Result simulate(
+      ExoTrackSelection.Factory trackSelectionFactory,
+      long[] throughputTrace,
+      long traceIntervalMs) {
+    boolean hasPositiveThroughput = false;
+    for (long throughput : throughputTrace) {
+      hasPositiveThroughput |= throughput > 0;
+    }
+    checkArgument(hasPositiveThroughput && traceIntervalMs > 0);
+
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0, /* isAutoAdvancing= */ false);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(context)
+            .setInitialBitrateEstimate(initialBitrateEstimate)
+            .setResetOnNetworkTypeChange(false)
+            .setClock(clock)
+            .build();
+    int[] tracks = new int[trackGroup.length];
+    for (int i = 0; i < tracks.length; i++) {
+      tracks[i] = i;
+    }
+    ExoTrackSelection trackSelection =
+        checkStateNotNull(
+            trackSelectionFactory
+                .createTrackSelections(
+                    new ExoTrackSelection.Definition[] {
+                      new ExoTrackSelection.Definition(trackGroup, tracks)
+                    },
+                    bandwidthMeter,
+                    new MediaPeriodId(/* periodUid= */ new Object()),
+                    Timeline.EMPTY)[0]);
+    DataSource dataSource = new FakeDataSource(dataSet);
+    long traceIntervalUs = traceIntervalMs * 1000;
+
+    trackSelection.enable();
+    List<MediaChunk> queue = new ArrayList<>();
+    ImmutableList.Builder<Format> selectedFormats = ImmutableList.builder();
+    @Nullable Format previousFormat = null;
+    long bitrateSum = 0;
+    int switchCount = 0;
+    long startupDelayUs = C.TIME_UNSET;
+    long rebufferDurationUs = 0;
+    long timeUs = 0;
+    long playbackPositionUs = 0;
+    long loadPositionUs = 0;
+    for (int chunkIndex = 0; chunkIndex < dataSet.getChunkCount(); chunkIndex++) {
+      long bufferedDurationUs = loadPositionUs - playbackPositionUs;
+      if (bufferedDurationUs > maxBufferUs) {
+        // Wait until the buffer has space for the next chunk.
+        timeUs += bufferedDurationUs - maxBufferUs;
+        playbackPositionUs += bufferedDurationUs - maxBufferUs;
+        bufferedDurationUs = maxBufferUs;
+      }
+      clock.advanceTime(timeUs / 1000 - clock.elapsedRealtime());
+      while (!queue.isEmpty() && queue.get(0).endTimeUs <= playbackPositionUs) {
+        queue.remove(0);
+      }
+
+      MediaChunkIterator[] chunkIterators = new MediaChunkIterator[trackSelection.length()];
+      for (int i = 0; i < chunkIterators.length; i++) {
+        chunkIterators[i] =
+            new FakeAdaptiveDataSet.Iterator(
+                dataSet, trackSelection.getIndexInTrackGroup(i), chunkIndex);
+      }
+      trackSelection.updateSelectedTrack(
+          playbackPositionUs, bufferedDurationUs, C.TIME_UNSET, queue, chunkIterators);
+      Format format = trackSelection.getSelectedFormat();
+      String uri =
+          dataSet.getUri(trackSelection.getIndexInTrackGroup(trackSelection.getSelectedIndex()));
+      int chunkLength =
+          checkStateNotNull(dataSet.getData(uri)).getSegments().get(chunkIndex).length;
+
+      DataSpec dataSpec = new DataSpec(Uri.parse(uri));
+      bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+      long loadDurationUs =
+          getLoadDurationUs(
+              timeUs, (long) chunkLength * C.BITS_PER_BYTE, throughputTrace, traceIntervalUs);
+      timeUs += loadDurationUs;
+      if (startupDelayUs != C.TIME_UNSET) {
+        if (loadDurationUs > bufferedDurationUs) {
+          rebufferDurationUs += loadDurationUs - bufferedDurationUs;
+          playbackPositionUs = loadPositionUs;
+        } else {
+          playbackPositionUs += loadDurationUs;
+        }
+      }
+      clock.advanceTime(timeUs / 1000 - clock.elapsedRealtime());
+      bandwidthMeter.onBytesTransferred(dataSource, dataSpec, /* isNetwork= */ true, chunkLength);
+      bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+      if (startupDelayUs == C.TIME_UNSET) {
+        startupDelayUs = timeUs;
+      }
+
+      long chunkDurationUs = dataSet.getChunkDuration(chunkIndex);
+      queue.add(
+          new FakeMediaChunk(
+              format,
+              loadPositionUs,
+              loadPositionUs + chunkDurationUs,
+              trackSelection.getSelectionReason()));
+      loadPositionUs += chunkDurationUs;
+      selectedFormats.add(format);
+      bitrateSum += format.bitrate * chunkDurationUs;
+      if (previousFormat != null && !format.equals(previousFormat)) {
+        switchCount++;
+      }
+      previousFormat = format;
+    }
+    trackSelection.disable();
+
+    return new Result(
+        selectedFormats.build(),
+        loadPositionUs == 0 ? 0 : bitrateSum / loadPositionUs,
+        switchCount,
+        startupDelayUs,
+        rebufferDurationUs);
+  }
+
+  private static long getLoadDurationUs(
+      long startTimeUs, long sizeBits, long[] throughputTrace, long traceIntervalUs) {
+    long timeUs = startTimeUs;
+    double remainingBits = sizeBits;
+    while (true) {
+      long throughput =
+          throughputTrace[(int) ((timeUs / traceIntervalUs) % throughputTrace.length)];
+      long intervalEndTimeUs = (timeUs / traceIntervalUs + 1) * traceIntervalUs;
+      double intervalBits =
+          (double) throughput * (intervalEndTimeUs - timeUs) / C.MICROS_PER_SECOND;
+      if (intervalBits >= remainingBits) {
+        return timeUs - startTimeUs + (long) (remainingBits * C.MICROS_PER_SECOND / throughput);
+      }
+      remainingBits -= intervalBits;
+      timeUs = intervalEndTimeUs;
+    }
+  }
+}
@@ -15,6 +15,7 @@
  */
 package androidx.media3.test.utils;
 
+import static androidx.media3.common.util.Assertions.checkArgument;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 import static androidx.media3.common.util.Assertions.checkState;
 import static androidx.media3.test.utils.WebServerDispatcher.Resource.GZIP_SUPPORT_DISABLED;
@@ -39,6 +40,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import okhttp3.mockwebserver.Dispatcher;
@@ -101,10 +103,13 @@ public class WebServerDispatcher extends Dispatcher {
       private boolean supportsRangeRequests;
       private boolean resolvesToUnknownLength;
       private @GzipSupport int gzipSupport;
+      private int maxChunkSize;
+      private long chunkDelayMs;
 
       /** Constructs an instance. */
       public Builder() {
         this.gzipSupport = GZIP_SUPPORT_DISABLED;
+        this.maxChunkSize = Integer.MAX_VALUE;
       }
 
       private Builder(Resource resource) {
@@ -113,6 +118,8 @@ public class WebServerDispatcher extends Dispatcher {
         this.supportsRangeRequests = resource.supportsRangeRequests();
         this.resolvesToUnknownLength = resource.resolvesToUnknownLength();
         this.gzipSupport = resource.getGzipSupport();
+        this.maxChunkSize = resource.getMaxChunkSize();
+        this.chunkDelayMs = resource.getChunkDelayMs();
       }
 
       /**
@@ -169,18 +176,52 @@ public class WebServerDispatcher extends Dispatcher {
         return this;
       }
 
+      /**
+       * Sets the maximum size of each chunk of responses that use chunked transfer encoding, which
+       * are the responses to unbounded requests if {@link #resolvesToUnknownLength(boolean)} is
+       * true. Defaults to {@link Integer#MAX_VALUE}, which sends the whole body in a single chunk.
+       *
+       * @return this builder, for convenience.
+       */
+      public Builder setMaxChunkSize(int maxChunkSize) {
+        checkArgument(maxChunkSize > 0);
+        this.maxChunkSize = maxChunkSize;
+        return this;
+      }
+
+      /**
+       * Sets the delay between sending consecutive chunks of responses that use chunked transfer
+       * encoding, in milliseconds. Defaults to 0.
+       *
+       * <p>Together with {@link #setMaxChunkSize(int)}, this can be used to simulate a live origin
+       * that serves a media segment while it's still being produced, for example a CMAF segment
+       * whose chunks are written as they're encoded.
+       *
+       * @return this builder, for convenience.
+       */
+      public Builder setChunkDelayMs(long chunkDelayMs) {
+        checkArgument(chunkDelayMs >= 0);
+        this.chunkDelayMs = chunkDelayMs;
+        return this;
+      }
+
       /** Builds the {@link Resource}. */
       public Resource build() {
         if (gzipSupport != GZIP_SUPPORT_DISABLED) {
           checkState(!supportsRangeRequests, "Can't enable compression & range requests.");
           checkState(!resolvesToUnknownLength, "Can't enable compression if length isn't known.");
         }
+        if (maxChunkSize != Integer.MAX_VALUE || chunkDelayMs != 0) {
+          checkState(resolvesToUnknownLength, "Can't configure chunks if length is known.");
+        }
         return new Resource(
             checkNotNull(path),
             checkNotNull(data),
             supportsRangeRequests,
             resolvesToUnknownLength,
-            gzipSupport);
+            gzipSupport,
+            maxChunkSize,
+            chunkDelayMs);
       }
     }
 
@@ -189,18 +230,24 @@ public class WebServerDispatcher extends Dispatcher {
     private final boolean supportsRangeRequests;
     private final boolean resolvesToUnknownLength;
     private final @GzipSupport int gzipSupport;
+    private final int maxChunkSize;
+    private final long chunkDelayMs;
 
     private Resource(
         String path,
         byte[] data,
         boolean supportsRangeRequests,
         boolean resolvesToUnknownLength,
-        @GzipSupport int gzipSupport) {
+        @GzipSupport int gzipSupport,
+        int maxChunkSize,
+        long chunkDelayMs) {
       this.path = path;
       this.data = data;
       this.supportsRangeRequests = supportsRangeRequests;
       this.resolvesToUnknownLength = resolvesToUnknownLength;
       this.gzipSupport = gzipSupport;
+      this.maxChunkSize = maxChunkSize;
+      this.chunkDelayMs = chunkDelayMs;
     }
 
     /** Returns the path this resource is available at. */
@@ -228,6 +275,18 @@ public class WebServerDispatcher extends Dispatcher {
       return gzipSupport;
     }
 
+    /** Returns the maximum size of each chunk of chunked responses. */
+    public int getMaxChunkSize() {
+      return maxChunkSize;
+    }
+
+    /**
+     * Returns the delay between sending consecutive chunks of chunked responses, in milliseconds.
+     */
+    public long getChunkDelayMs() {
+      return chunkDelayMs;
+    }
+
     /** Returns a new {@link Builder} initialized with the values from this instance. */
     public Builder buildUpon() {
       return new Builder(this);
@@ -290,11 +349,15 @@ public class WebServerDispatcher extends Dispatcher {
       switch (preferredContentCoding) {
         case "gzip":
           setResponseBody(
-              response, Util.gzip(resourceData), /* chunked= */ resource.resolvesToUnknownLength);
+              response,
+              Util.gzip(resourceData),
+              /* chunked= */ resource.resolvesToUnknownLength,
+              resource);
           response.setHeader("Content-Encoding", "gzip");
           break;
         case "identity":
-          setResponseBody(response, resourceData, /* chunked= */ resource.resolvesToUnknownLength);
+          setResponseBody(
+              response, resourceData, /* chunked= */ resource.resolvesToUnknownLength, resource);
           response.setHeader("Content-Encoding", "identity");
           break;
         default:
@@ -340,7 +403,8 @@ public class WebServerDispatcher extends Dispatcher {
       setResponseBody(
           response,
           Arrays.copyOfRange(resourceData, start, resourceData.length),
-          /* chunked= */ resource.resolvesToUnknownLength);
+          /* chunked= */ resource.resolvesToUnknownLength,
+          resource);
       return response;
     }
 
@@ -364,7 +428,10 @@ public class WebServerDispatcher extends Dispatcher {
                 + "/"
                 + (resource.resolvesToUnknownLength() ? "*" : resourceData.length));
     setResponseBody(
-        response, Arrays.copyOfRange(resourceData, range.first, end), /* chunked= */ false);
+        response,
+        Arrays.copyOfRange(resourceData, range.first, end),
+        /* chunked= */ false,
+        resource);
     return response;
   }
 
@@ -375,10 +442,20 @@ public class WebServerDispatcher extends Dispatcher {
    * @param body The body data.
    * @param chunked Whether to use chunked transfer encoding. Note that if set to {@code true}, the
    *     "Content-Length" header will not be set.
+   * @param resource The resource being served, which defines the size of and delay between chunks.
    */
-  private static void setResponseBody(MockResponse response, byte[] body, boolean chunked) {
+  private static void setResponseBody(
+      MockResponse response, byte[] body, boolean chunked, Resource resource) {
     if (chunked) {
-      response.setChunkedBody(new Buffer().write(body), /* maxChunkSize= */ Integer.MAX_VALUE);
+      int maxChunkSize = resource.getMaxChunkSize();
+      response.setChunkedBody(new Buffer().write(body), maxChunkSize);
+      long chunkDelayMs = resource.getChunkDelayMs();
+      if (chunkDelayMs > 0 && maxChunkSize < body.length) {
+        // Each full chunk is framed by its hexadecimal size and two CRLFs. Throttle the response so
+        // that the delay is applied after each chunk has been sent.
+        long framedChunkSize = Integer.toHexString(maxChunkSize).length() + 4 + maxChunkSize;
+        response.throttleBody(framedChunkSize, chunkDelayMs, TimeUnit.MILLISECONDS);
+      }
     } else {
       response.setBody(new Buffer().write(body));
     }
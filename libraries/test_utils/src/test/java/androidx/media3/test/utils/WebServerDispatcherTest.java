@@ -20,6 +20,9 @@ import static com.google.common.truth.Truth.assertThat;
 import androidx.media3.common.util.Util;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import com.google.common.io.ByteStreams;
+import java.io.InputStream;
 import java.util.Arrays;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -74,6 +77,8 @@ public class WebServerDispatcherTest {
   private static final byte[] GZIP_ENABLED_DATA = TestUtil.buildTestData(/* length= */ 20, seed++);
   private static final String GZIP_FORCED_PATH = "/gzip/forced";
   private static final byte[] GZIP_FORCED_DATA = TestUtil.buildTestData(/* length= */ 20, seed++);
+  private static final String CHUNKED_PATH = "/chunked";
+  private static final byte[] CHUNKED_DATA = TestUtil.buildTestData(/* length= */ 30, seed++);
 
   private MockWebServer mockWebServer;
 
@@ -114,6 +119,13 @@ public class WebServerDispatcherTest {
                     .setPath(GZIP_FORCED_PATH)
                     .setData(GZIP_FORCED_DATA)
                     .setGzipSupport(WebServerDispatcher.Resource.GZIP_SUPPORT_FORCED)
+                    .build(),
+                new WebServerDispatcher.Resource.Builder()
+                    .setPath(CHUNKED_PATH)
+                    .setData(CHUNKED_DATA)
+                    .resolvesToUnknownLength(true)
+                    .setMaxChunkSize(10)
+                    .setChunkDelayMs(100)
                     .build())));
   }
 
@@ -269,6 +281,28 @@ public class WebServerDispatcherTest {
     }
   }
 
+  @Test
+  public void chunkedResource_sendsDataInChunks() throws Exception {
+    OkHttpClient client = new OkHttpClient();
+    Request request = new Request.Builder().url(mockWebServer.url(CHUNKED_PATH)).build();
+    try (Response response = client.newCall(request).execute()) {
+      assertThat(response.code()).isEqualTo(200);
+      assertThat(response.header("Transfer-Encoding")).isEqualTo("chunked");
+      InputStream inputStream = response.body().byteStream();
+      byte[] actualBytes = new byte[30];
+
+      // The chunks are sent one at a time, so no single read returns data from more than one chunk.
+      assertThat(inputStream.read(actualBytes, /* off= */ 0, /* len= */ 30)).isEqualTo(10);
+      int secondReadLength = inputStream.read(actualBytes, /* off= */ 10, /* len= */ 20);
+      assertThat(secondReadLength).isIn(Range.closed(1, 10));
+      ByteStreams.readFully(
+          inputStream, actualBytes, /* off= */ 10 + secondReadLength, 20 - secondReadLength);
+
+      assertThat(actualBytes).isEqualTo(CHUNKED_DATA);
+      assertThat(inputStream.read()).isEqualTo(-1);
+    }
+  }
+
   @Test
   public void rangeRequestsSupported_lengthUnknown_boundedRange() throws Exception {
     OkHttpClient client = new OkHttpClient();